@@ -17,6 +17,7 @@
 package com.netflix.titus.api.jobmanager.service;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -80,6 +81,12 @@ public interface V3JobOperations {
      */
     Completable updateTask(String taskId, Function<Task, Optional<Task>> changeFunction, Trigger trigger, String reason);
 
+    /**
+     * Batch version of {@link #updateTask(String, Function, Trigger, String)}, which applies the update functions
+     * to tasks of a single job in one change action. Tasks that no longer exist are skipped.
+     */
+    Completable updateTasks(String jobId, Map<String, Function<Task, Optional<Task>>> changeFunctions, Trigger trigger, String reason);
+
     /**
      * Called by scheduler when a task is assigned to an agent. The new task state is written to store first, and next
      * internal models are updated.
@@ -20,6 +20,7 @@ import java.util.List;
 
 import com.netflix.titus.api.jobmanager.model.job.Job;
 import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.common.util.tuple.Either;
 import com.netflix.titus.common.util.tuple.Pair;
 import rx.Completable;
 import rx.Observable;
@@ -42,6 +43,15 @@ public interface JobStore {
      */
     Observable<Pair<List<Job<?>>, Integer>> retrieveJobs();
 
+    /**
+     * Streaming version of {@link #retrieveJobs()}. Jobs are emitted one by one, as soon as they are loaded from the
+     * database, so the caller can start processing them before the whole job set is read. Records that could not be
+     * loaded or mapped to {@link Job} instance are emitted as errors.
+     *
+     * @return all the jobs, or loading errors.
+     */
+    Observable<Either<Job<?>, Throwable>> streamJobs();
+
     /**
      * Retrieve the job with the specified jobId.
      *
@@ -25,6 +25,7 @@ public class JobStoreException extends RuntimeException {
 
     public enum ErrorCode {
         CASSANDRA_DRIVER_ERROR,
+        STORE_IO_ERROR,
         JOB_ALREADY_EXISTS,
         JOB_MUST_BE_ACTIVE,
         JOB_DOES_NOT_EXIST,
@@ -65,4 +66,8 @@ public class JobStoreException extends RuntimeException {
     public static JobStoreException cassandraDriverError(Throwable e) {
         return new JobStoreException(e.getMessage(), ErrorCode.CASSANDRA_DRIVER_ERROR, e);
     }
+
+    public static JobStoreException storeIOError(Throwable e) {
+        return new JobStoreException(e.getMessage(), ErrorCode.STORE_IO_ERROR, e);
+    }
 }
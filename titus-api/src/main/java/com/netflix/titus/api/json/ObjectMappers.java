@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.util.Collection;
 
 import com.fasterxml.jackson.annotation.JsonView;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.JsonStreamContext;
@@ -147,7 +148,7 @@ public class ObjectMappers {
 
     private static final ObjectMapper DEFAULT = createDefaultMapper();
     private static final ObjectMapper COMPACT = createCompactMapper();
-    private static final ObjectMapper STORE = createStoreMapper();
+    private static final ObjectMapper STORE = createStoreMapper(new ObjectMapper());
     private static final ObjectMapper APP_SCALE_STORE = createAppScalePolicyMapper();
 
     /**
@@ -171,6 +172,14 @@ public class ObjectMappers {
         return STORE;
     }
 
+    /**
+     * Creates a new instance of the store mapper, backed by the given {@link JsonFactory}. This is useful when the
+     * same object mapping should be used with a different data format (for example a binary one).
+     */
+    public static ObjectMapper newStoreMapper(JsonFactory jsonFactory) {
+        return createStoreMapper(new ObjectMapper(jsonFactory));
+    }
+
     public static ObjectMapper appScalePolicyMapper() {
         return APP_SCALE_STORE;
     }
@@ -311,9 +320,7 @@ public class ObjectMappers {
         return objectMapper;
     }
 
-    private static ObjectMapper createStoreMapper() {
-        ObjectMapper objectMapper = new ObjectMapper();
-
+    private static ObjectMapper createStoreMapper(ObjectMapper objectMapper) {
         objectMapper.registerModule(new Jdk8Module());
 
         // Common
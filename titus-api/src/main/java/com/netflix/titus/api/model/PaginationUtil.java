@@ -84,6 +84,81 @@ public final class PaginationUtil {
         return Pair.of(pageItems, pagination);
     }
 
+    /**
+     * Returns a page that a source must provide to {@link #takePageWithCursorAndWindow} for the given request.
+     * This is the requested cursor with the requested page size, or if the cursor is not set, all items up to the end
+     * of the requested page.
+     */
+    public static Page windowOf(Page page) {
+        if (!StringExt.isEmpty(page.getCursor())) {
+            return page.toBuilder().withPageNumber(0).build();
+        }
+        long windowSize = ((long) page.getPageNumber() + 1) * page.getPageSize();
+        return page.toBuilder()
+                .withPageNumber(0)
+                .withPageSize((int) Math.min(windowSize, Page.unlimited().getPageSize()))
+                .build();
+    }
+
+    /**
+     * Cursor-based pagination over items coming from two sources. All matching items of the first source are
+     * provided, while the second source provides only a window of its items, as requested by {@link #windowOf(Page)},
+     * together with its own pagination data. The result is the same as if {@link #takePageWithCursor} was called with
+     * all items from both sources, but the second source does not have to materialize all its items.
+     */
+    public static <T> Pair<List<T>, Pagination> takePageWithCursorAndWindow(Page page,
+                                                                            List<T> allItems,
+                                                                            List<T> windowItems,
+                                                                            Pagination windowPagination,
+                                                                            Comparator<T> cursorComparator,
+                                                                            CursorIndexOf<T> cursorIndexOf,
+                                                                            Function<T, String> cursorFactory) {
+        List<T> allItemsCopy = new ArrayList<>(allItems);
+        allItemsCopy.sort(cursorComparator);
+
+        int totalItems = allItemsCopy.size() + windowPagination.getTotalItems();
+        if (totalItems <= 0 || page.getPageSize() <= 0) {
+            return Pair.of(Collections.emptyList(), new Pagination(page, false, 0, 0, "", 0));
+        }
+
+        if (StringExt.isEmpty(page.getCursor())) {
+            List<T> merged = merge(allItemsCopy, windowItems, cursorComparator, Integer.MAX_VALUE);
+            int firstItem = page.getPageNumber() * page.getPageSize();
+            int lastItem = Math.min(totalItems, firstItem + page.getPageSize());
+            List<T> pageItems = firstItem < Math.min(lastItem, merged.size())
+                    ? merged.subList(firstItem, Math.min(lastItem, merged.size()))
+                    : Collections.emptyList();
+
+            String cursor = pageItems.isEmpty() ? "" : cursorFactory.apply(pageItems.get(pageItems.size() - 1));
+            int cursorPosition = pageItems.isEmpty() ? 0 : lastItem - 1;
+            return Pair.of(pageItems, new Pagination(page, totalItems > lastItem, numberOfPages(page, totalItems), totalItems, cursor, cursorPosition));
+        }
+
+        int allItemsBefore = cursorIndexOf.apply(allItemsCopy, page.getCursor())
+                .orElseThrow(() -> new IllegalArgumentException("Invalid cursor: " + page.getCursor())) + 1;
+        // The window starts right after the cursor, so its position in the second source can be computed from its
+        // last item position. If the window is empty, all items of the second source precede the cursor.
+        int windowItemsBefore = windowItems.isEmpty()
+                ? windowPagination.getTotalItems()
+                : windowPagination.getCursorPosition() - windowItems.size() + 1;
+        int offset = allItemsBefore + windowItemsBefore;
+
+        List<T> pageItems = merge(allItemsCopy.subList(allItemsBefore, allItemsCopy.size()), windowItems, cursorComparator, page.getPageSize());
+        boolean hasMore = totalItems > (offset + page.getPageSize());
+        int numberOfPages = numberOfPages(page, totalItems);
+        int pageNumber = Math.min(numberOfPages, offset / page.getPageSize());
+
+        Pagination pagination = new Pagination(
+                page.toBuilder().withPageNumber(pageNumber).build(),
+                hasMore,
+                numberOfPages,
+                totalItems,
+                pageItems.isEmpty() ? page.getCursor() : cursorFactory.apply(pageItems.get(pageItems.size() - 1)),
+                pageItems.isEmpty() ? totalItems - 1 : offset + pageItems.size() - 1
+        );
+        return Pair.of(pageItems, pagination);
+    }
+
     /**
      * {@link Page#getPageNumber() Number} (index) based pagination.
      * <p>
@@ -111,6 +186,20 @@ public final class PaginationUtil {
         return Pair.of(pageItems, new Pagination(page, more, totalPages, totalItems, cursor, cursorPosition));
     }
 
+    private static <T> List<T> merge(List<T> first, List<T> second, Comparator<T> comparator, int limit) {
+        List<T> result = new ArrayList<>(Math.min(limit, first.size() + second.size()));
+        int firstIdx = 0;
+        int secondIdx = 0;
+        while (result.size() < limit && (firstIdx < first.size() || secondIdx < second.size())) {
+            if (secondIdx >= second.size() || (firstIdx < first.size() && comparator.compare(first.get(firstIdx), second.get(secondIdx)) <= 0)) {
+                result.add(first.get(firstIdx++));
+            } else {
+                result.add(second.get(secondIdx++));
+            }
+        }
+        return result;
+    }
+
     public static int numberOfPages(Page page, int totalItems) {
         return (totalItems + page.getPageSize() - 1) / page.getPageSize();
     }
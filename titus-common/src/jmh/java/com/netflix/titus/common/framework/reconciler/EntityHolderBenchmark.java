@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.common.framework.reconciler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a task update in a job with many tasks (job root -> task children), and a task lookup from the root.
+ * The copy-on-write variant reproduces the previous {@link EntityHolder} implementation, which copied the whole
+ * child map and list on each child update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityHolderBenchmark {
+
+    @Param({"1000", "10000"})
+    public int taskCount;
+
+    private final Random random = new Random(123);
+
+    private EntityHolder root;
+    private Map<String, EntityHolder> copyOnWriteChildren;
+    private long nextValue;
+
+    @Setup
+    public void setUp() {
+        EntityHolder job = EntityHolder.newRoot("job", 0L);
+        copyOnWriteChildren = new HashMap<>();
+        for (int i = 0; i < taskCount; i++) {
+            EntityHolder task = EntityHolder.newRoot(taskId(i), 0L);
+            job = job.addChild(task);
+            copyOnWriteChildren.put(task.getId(), task);
+        }
+        root = EntityHolder.newRoot("root", 0L).addChild(job);
+    }
+
+    @Benchmark
+    public EntityHolder updateTask() {
+        EntityHolder job = root.findDirectChildById("job").get();
+        EntityHolder task = job.findDirectChildById(randomTaskId()).get();
+        root = root.addChild(job.addChild(task.setEntity(nextValue++)));
+        return root;
+    }
+
+    @Benchmark
+    public List<EntityHolder> updateTaskCopyOnWrite() {
+        String taskId = randomTaskId();
+        Map<String, EntityHolder> newChildren = new HashMap<>(copyOnWriteChildren);
+        newChildren.put(taskId, newChildren.get(taskId).setEntity(nextValue++));
+        copyOnWriteChildren = newChildren;
+        return new ArrayList<>(newChildren.values());
+    }
+
+    @Benchmark
+    public Optional<EntityHolder> findTask() {
+        return root.findChildById(randomTaskId());
+    }
+
+    private String randomTaskId() {
+        return taskId(random.nextInt(taskCount));
+    }
+
+    private static String taskId(int index) {
+        return "task#" + index;
+    }
+}
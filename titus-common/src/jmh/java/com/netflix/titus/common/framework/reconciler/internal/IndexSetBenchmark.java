@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.common.framework.reconciler.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.common.framework.reconciler.EntityHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the incremental {@link IndexSet} with the previous implementation, which copied and sorted all items
+ * on each change. Each benchmark iteration updates a few entities (as a single reconciliation loop with model updates
+ * would do), and reads the ordered view.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexSetBenchmark {
+
+    private static final String INDEX_ID = "byCreationTime";
+    private static final int UPDATES_PER_LOOP = 10;
+
+    private static final Comparator<EntityHolder> COMPARATOR = Comparator.comparing(EntityHolder::getEntity);
+
+    @Param({"10000", "50000", "200000"})
+    public int entityCount;
+
+    private final Random random = new Random(123);
+
+    private List<EntityHolder> holders;
+    private IndexSet<EntityHolder> indexSet;
+    private long nextValue;
+
+    @Setup
+    public void setUp() {
+        Map<Object, Comparator<EntityHolder>> comparators = Collections.singletonMap(INDEX_ID, COMPARATOR);
+        holders = new ArrayList<>(entityCount);
+        for (int i = 0; i < entityCount; i++) {
+            holders.add(EntityHolder.newRoot("entity#" + i, (long) random.nextInt(entityCount)));
+        }
+        indexSet = IndexSet.newIndexSet(comparators, EntityHolder::getId).apply(holders, Collections.emptyList());
+        nextValue = entityCount;
+    }
+
+    @Benchmark
+    public List<EntityHolder> fullSort() {
+        List<EntityHolder> changed = updateRandomHolders();
+        List<EntityHolder> copy = new ArrayList<>(holders);
+        copy.sort(COMPARATOR);
+        return changed.isEmpty() ? Collections.emptyList() : copy;
+    }
+
+    @Benchmark
+    public List<EntityHolder> incrementalUpdate() {
+        indexSet = indexSet.apply(updateRandomHolders(), Collections.emptyList());
+        return indexSet.getOrdered(INDEX_ID);
+    }
+
+    private List<EntityHolder> updateRandomHolders() {
+        List<EntityHolder> changed = new ArrayList<>(UPDATES_PER_LOOP);
+        for (int i = 0; i < UPDATES_PER_LOOP; i++) {
+            int position = random.nextInt(entityCount);
+            EntityHolder updated = holders.get(position).setEntity(nextValue++);
+            holders.set(position, updated);
+            changed.add(updated);
+        }
+        return changed;
+    }
+}
@@ -16,7 +16,6 @@
 
 package com.netflix.titus.common.framework.reconciler;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -24,27 +23,39 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
 
+import com.netflix.titus.common.util.collections.PersistentHashMap;
 import com.netflix.titus.common.util.tuple.Pair;
 
 /**
  * Composite entity hierarchy. The parent-child association runs from parent to child only. {@link EntityHolder} instances
  * are immutable, thus each change produces a new version of an entity. Also each child update requires update of a parent
  * entity, when the reference to the child changes (a new version is created).
+ * <p>
+ * Children are kept in a persistent hash map, so a new version of an entity shares all unchanged parts of the child
+ * collection with its predecessor, and a child update costs O(log n) instead of O(n). Each holder also maintains a
+ * flattened index of its nested descendants (children of its children, and so on), so {@link #findChildById(String)}
+ * does not have to traverse the hierarchy. Entity ids are expected to be unique within the whole hierarchy.
  */
 public class EntityHolder {
 
     private final String id;
     private final Object entity;
 
-    private final List<EntityHolder> children;
-    private final Map<String, EntityHolder> childrenById;
+    private final PersistentHashMap<String, EntityHolder> childrenById;
+    private final PersistentHashMap<String, EntityHolder> nestedDescendantsById;
     private final Map<String, Object> attributes;
 
-    private EntityHolder(String id, Object entity, Map<String, EntityHolder> childrenById, Map<String, Object> attributes) {
+    private volatile List<EntityHolder> children;
+
+    private EntityHolder(String id,
+                         Object entity,
+                         PersistentHashMap<String, EntityHolder> childrenById,
+                         PersistentHashMap<String, EntityHolder> nestedDescendantsById,
+                         Map<String, Object> attributes) {
         this.id = id;
         this.entity = entity;
         this.childrenById = childrenById;
-        this.children = new ArrayList<>(childrenById.values());
+        this.nestedDescendantsById = nestedDescendantsById;
         this.attributes = attributes;
     }
 
@@ -56,8 +67,16 @@ public class EntityHolder {
         return (E) entity;
     }
 
+    /**
+     * Returns an immutable list of children. The list is created on the first access, and cached.
+     */
     public List<EntityHolder> getChildren() {
-        return children;
+        List<EntityHolder> result = children;
+        if (result == null) {
+            result = childrenById.isEmpty() ? Collections.emptyList() : childrenById.values();
+            children = result;
+        }
+        return result;
     }
 
     public Map<String, Object> getAttributes() {
@@ -72,43 +91,62 @@ public class EntityHolder {
     }
 
     public Optional<EntityHolder> findChildById(String childId) {
-        if (children.isEmpty()) {
-            return Optional.empty();
-        }
         EntityHolder entityHolder = childrenById.get(childId);
         if (entityHolder != null) {
             return Optional.of(entityHolder);
         }
-        for (EntityHolder child : children) {
-            Optional<EntityHolder> result = child.findChildById(childId);
-            if (result.isPresent()) {
-                return result;
-            }
-        }
-        return Optional.empty();
+        return Optional.ofNullable(nestedDescendantsById.get(childId));
+    }
+
+    /**
+     * Unlike {@link #findChildById(String)}, this method does not search the nested children.
+     */
+    public Optional<EntityHolder> findDirectChildById(String childId) {
+        return Optional.ofNullable(childrenById.get(childId));
+    }
+
+    /**
+     * Reports the direct children added, updated or removed since the given previous version of this entity. Children
+     * are compared by reference, and the unchanged parts of the child collection are not visited.
+     */
+    public void diffChildren(EntityHolder previous, PersistentHashMap.DiffListener<String, EntityHolder> listener) {
+        childrenById.diff(previous.childrenById, listener);
+    }
+
+    /**
+     * Like {@link #diffChildren(EntityHolder, PersistentHashMap.DiffListener)}, but covers the whole hierarchy below
+     * this entity.
+     */
+    public void diffDescendants(EntityHolder previous, PersistentHashMap.DiffListener<String, EntityHolder> listener) {
+        childrenById.diff(previous.childrenById, listener);
+        nestedDescendantsById.diff(previous.nestedDescendantsById, listener);
     }
 
     public EntityHolder addChild(EntityHolder child) {
-        Map<String, EntityHolder> newChildrenById = new HashMap<>(childrenById);
-        newChildrenById.put(child.getId(), child);
-        return new EntityHolder(id, entity, newChildrenById, attributes);
+        EntityHolder previousChild = childrenById.get(child.getId());
+        if (previousChild == child) {
+            return this;
+        }
+        PersistentHashMap<String, EntityHolder> newNested = previousChild == null
+                ? addDescendantsOf(nestedDescendantsById, child)
+                : updateDescendantsOf(nestedDescendantsById, previousChild, child);
+        return new EntityHolder(id, entity, childrenById.put(child.getId(), child), newNested, attributes);
     }
 
     public Pair<EntityHolder, Optional<EntityHolder>> removeChild(String id) {
-        if (!childrenById.containsKey(id)) {
+        EntityHolder removedChild = childrenById.get(id);
+        if (removedChild == null) {
             return Pair.of(this, Optional.empty());
         }
-        Map<String, EntityHolder> newChildrenById = new HashMap<>(childrenById);
-        EntityHolder removedChild = newChildrenById.remove(id);
-
-        EntityHolder newRoot = new EntityHolder(this.id, this.entity, newChildrenById, this.attributes);
+        PersistentHashMap<String, EntityHolder> newNested = removeDescendantsOf(nestedDescendantsById, removedChild);
+        EntityHolder newRoot = new EntityHolder(this.id, this.entity, childrenById.remove(id), newNested, this.attributes);
         return Pair.of(newRoot, Optional.of(removedChild));
     }
 
     public EntityHolder addTag(String tagName, Object tagValue) {
         Map<String, Object> newTags = new HashMap<>(attributes);
         newTags.put(tagName, tagValue);
-        return new EntityHolder(id, entity, childrenById, newTags);
+        return new EntityHolder(id, entity, childrenById, nestedDescendantsById, newTags);
     }
 
     public EntityHolder removeTag(String tagName) {
@@ -117,19 +155,70 @@ public class EntityHolder {
         }
         Map<String, Object> newTags = new HashMap<>(attributes);
         newTags.remove(tagName);
-        return new EntityHolder(id, entity, childrenById, newTags);
+        return new EntityHolder(id, entity, childrenById, nestedDescendantsById, newTags);
     }
 
     public <E> EntityHolder setEntity(E entity) {
-        return new EntityHolder(id, entity, childrenById, attributes);
+        return new EntityHolder(id, entity, childrenById, nestedDescendantsById, attributes);
     }
 
     public void visit(Consumer<EntityHolder> visitor) {
         visitor.accept(this);
-        children.forEach(c -> c.visit(visitor));
+        childrenById.forEach((childId, child) -> child.visit(visitor));
     }
 
     public static <E> EntityHolder newRoot(String id, E entity) {
-        return new EntityHolder(id, entity, Collections.emptyMap(), Collections.emptyMap());
+        return new EntityHolder(id, entity, PersistentHashMap.empty(), PersistentHashMap.empty(), Collections.emptyMap());
+    }
+
+    private static PersistentHashMap<String, EntityHolder> addDescendantsOf(PersistentHashMap<String, EntityHolder> index,
+                                                                            EntityHolder child) {
+        PersistentHashMap<String, EntityHolder>[] result = new PersistentHashMap[]{index};
+        child.childrenById.forEach((descendantId, descendant) -> result[0] = result[0].put(descendantId, descendant));
+        child.nestedDescendantsById.forEach((descendantId, descendant) -> result[0] = result[0].put(descendantId, descendant));
+        return result[0];
+    }
+
+    private static PersistentHashMap<String, EntityHolder> removeDescendantsOf(PersistentHashMap<String, EntityHolder> index,
+                                                                               EntityHolder child) {
+        PersistentHashMap<String, EntityHolder>[] result = new PersistentHashMap[]{index};
+        child.childrenById.forEach((descendantId, descendant) -> result[0] = result[0].remove(descendantId));
+        child.nestedDescendantsById.forEach((descendantId, descendant) -> result[0] = result[0].remove(descendantId));
+        return result[0];
+    }
+
+    private static PersistentHashMap<String, EntityHolder> updateDescendantsOf(PersistentHashMap<String, EntityHolder> index,
+                                                                               EntityHolder previousChild,
+                                                                               EntityHolder child) {
+        IndexUpdater updater = new IndexUpdater(index);
+        child.diffDescendants(previousChild, updater);
+        return updater.index;
+    }
+
+    private static class IndexUpdater implements PersistentHashMap.DiffListener<String, EntityHolder> {
+
+        private PersistentHashMap<String, EntityHolder> index;
+
+        private IndexUpdater(PersistentHashMap<String, EntityHolder> index) {
+            this.index = index;
+        }
+
+        @Override
+        public void added(String key, EntityHolder value) {
+            index = index.put(key, value);
+        }
+
+        @Override
+        public void updated(String key, EntityHolder previousValue, EntityHolder newValue) {
+            index = index.put(key, newValue);
+        }
+
+        @Override
+        public void removed(String key, EntityHolder value) {
+            // The id may have been re-added at a different level of the hierarchy within the same diff.
+            if (index.get(key) == value) {
+                index = index.remove(key);
+            }
+        }
     }
 }
@@ -31,6 +31,7 @@ import com.netflix.titus.common.framework.reconciler.ChangeAction;
 import com.netflix.titus.common.framework.reconciler.EntityHolder;
 import com.netflix.titus.common.framework.reconciler.ReconcileEventFactory;
 import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.util.collections.PersistentHashMap;
 import com.netflix.titus.common.util.rx.ObservableExt;
 import com.netflix.titus.common.util.time.Clock;
 import org.slf4j.Logger;
@@ -56,7 +57,7 @@ public class DefaultReconciliationEngine<EVENT> implements InternalReconciliatio
     private final TitusRuntime titusRuntime;
     private final Clock clock;
 
-    private IndexSet<EntityHolder> indexSet;
+    private volatile IndexSet<EntityHolder> indexSet;
 
     private Transaction pendingTransaction = EmptyTransaction.EMPTY;
 
@@ -65,6 +66,11 @@ public class DefaultReconciliationEngine<EVENT> implements InternalReconciliatio
 
     private boolean firstTrigger;
 
+    private ModelIdChanges pendingModelIdChanges = ModelIdChanges.empty();
+
+    private volatile Runnable readyListener = () -> {
+    };
+
     public DefaultReconciliationEngine(EntityHolder bootstrapModel,
                                        boolean newlyCreated,
                                        DifferenceResolver<EVENT> runningDifferenceResolver,
@@ -75,7 +81,7 @@ public class DefaultReconciliationEngine<EVENT> implements InternalReconciliatio
                                        TitusRuntime titusRuntime) {
         this.runningDifferenceResolver = runningDifferenceResolver;
         this.eventFactory = eventFactory;
-        this.indexSet = IndexSet.newIndexSet(indexComparators);
+        this.indexSet = IndexSet.newIndexSet(indexComparators, EntityHolder::getId);
         this.titusRuntime = titusRuntime;
         this.clock = titusRuntime.getClock();
         this.eventObservable = ObservableExt.protectFromMissingExceptionHandlers(eventSubject, logger);
@@ -89,16 +95,30 @@ public class DefaultReconciliationEngine<EVENT> implements InternalReconciliatio
     public boolean applyModelUpdates() {
         return pendingTransaction.applyModelUpdates(modelHolder)
                 .map(newModelHolder -> {
-                    boolean isReferenceModelChanged = newModelHolder != modelHolder && newModelHolder.getReference() != modelHolder.getReference();
+                    EntityHolder previousReference = modelHolder.getReference();
+                    boolean isReferenceModelChanged = newModelHolder != modelHolder && newModelHolder.getReference() != previousReference;
                     this.modelHolder = newModelHolder;
                     if (isReferenceModelChanged) {
-                        indexEntityHolder(modelHolder.getReference());
+                        reindexEntityHolder(previousReference, modelHolder.getReference());
+                        recordModelIdChanges(previousReference, modelHolder.getReference());
                     }
                     return isReferenceModelChanged;
                 })
                 .orElse(false);
     }
 
+    @Override
+    public ModelIdChanges drainModelIdChanges() {
+        ModelIdChanges result = pendingModelIdChanges;
+        pendingModelIdChanges = ModelIdChanges.empty();
+        return result;
+    }
+
+    @Override
+    public void setReadyListener(Runnable readyListener) {
+        this.readyListener = readyListener;
+    }
+
     @Override
     public boolean hasPendingTransactions() {
         return !pendingTransaction.isClosed() || !referenceChangeActions.isEmpty();
@@ -172,6 +192,7 @@ public class DefaultReconciliationEngine<EVENT> implements InternalReconciliatio
             changeActionEventQueue.add(eventFactory.newBeforeChangeEvent(this, referenceUpdate, transactionId));
             referenceChangeActions.add(new ChangeActionHolder(entityHolderId, referenceUpdate, subscriber, transactionId, clock.wallTime()));
             metrics.updateChangeActionQueueSize(referenceChangeActions.size());
+            signalReady();
         });
     }
 
@@ -222,6 +243,10 @@ public class DefaultReconciliationEngine<EVENT> implements InternalReconciliatio
         return titusRuntime;
     }
 
+    void signalReady() {
+        readyListener.run();
+    }
+
     private boolean startNextReferenceChangeAction() {
         try {
             ChangeActionHolder actionHolder;
@@ -304,8 +329,37 @@ public class DefaultReconciliationEngine<EVENT> implements InternalReconciliatio
         pendingTransaction = transactions.size() == 1 ? transactions.get(0) : new CompositeTransaction(transactions);
     }
 
+    private void recordModelIdChanges(EntityHolder previousReference, EntityHolder newReference) {
+        ModelIdChanges changes = ModelIdChanges.between(previousReference, newReference);
+        pendingModelIdChanges = pendingModelIdChanges.isEmpty() ? changes : pendingModelIdChanges.merge(changes);
+    }
+
     private void indexEntityHolder(EntityHolder entityHolder) {
-        indexSet = indexSet.apply(entityHolder.getChildren());
+        indexSet = indexSet.replaceAll(entityHolder.getChildren());
+    }
+
+    private void reindexEntityHolder(EntityHolder previousReference, EntityHolder newReference) {
+        List<EntityHolder> addedOrUpdated = new ArrayList<>();
+        List<String> removedIds = new ArrayList<>();
+        newReference.diffChildren(previousReference, new PersistentHashMap.DiffListener<String, EntityHolder>() {
+            @Override
+            public void added(String id, EntityHolder child) {
+                addedOrUpdated.add(child);
+            }
+
+            @Override
+            public void updated(String id, EntityHolder previousChild, EntityHolder child) {
+                addedOrUpdated.add(child);
+            }
+
+            @Override
+            public void removed(String id, EntityHolder child) {
+                removedIds.add(id);
+            }
+        });
+        if (!addedOrUpdated.isEmpty() || !removedIds.isEmpty()) {
+            indexSet = indexSet.apply(addedOrUpdated, removedIds);
+        }
     }
 
     void emitEvent(EVENT event) {
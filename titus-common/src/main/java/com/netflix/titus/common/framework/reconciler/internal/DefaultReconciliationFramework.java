@@ -19,25 +19,27 @@ package com.netflix.titus.common.framework.reconciler.internal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import com.google.common.base.Preconditions;
+import com.netflix.spectator.api.Counter;
 import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.Tag;
 import com.netflix.spectator.api.Timer;
 import com.netflix.spectator.api.patterns.PolledMeter;
 import com.netflix.titus.common.framework.reconciler.EntityHolder;
@@ -64,6 +66,12 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
     private static final String LOOP_EXECUTION_TIME_METRIC = ROOT_METRIC_NAME + "executionTime";
     private static final String LAST_EXECUTION_TIME_METRIC = ROOT_METRIC_NAME + "lastExecutionTime";
     private static final String LAST_FULL_CYCLE_EXECUTION_TIME_METRIC = ROOT_METRIC_NAME + "lastFullCycleExecutionTime";
+    private static final String ID_INDEX_UPDATE_TIME_METRIC = ROOT_METRIC_NAME + "idIndexUpdateTime";
+    private static final String ID_INDEX_CHANGES_METRIC = ROOT_METRIC_NAME + "idIndexChanges";
+    private static final String ID_INDEX_SIZE_METRIC = ROOT_METRIC_NAME + "idIndexSize";
+    private static final String ORDERED_INDEX_UPDATE_TIME_METRIC = ROOT_METRIC_NAME + "orderedIndexUpdateTime";
+    private static final String VISITED_ENGINES_METRIC = ROOT_METRIC_NAME + "visitedEngines";
+    private static final String READY_ENGINES_METRIC = ROOT_METRIC_NAME + "readyEngines";
 
     private final Function<EntityHolder, InternalReconciliationEngine<EVENT>> engineFactory;
     private final long idleTimeoutMs;
@@ -74,11 +82,21 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
 
     private final Set<InternalReconciliationEngine<EVENT>> engines = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
+    /**
+     * Engines that signalled pending work (completed change actions, new change action requests). Only these engines
+     * are visited in the reconciliation loop, except the full cycle, which visits all engines.
+     */
+    private final Set<InternalReconciliationEngine<EVENT>> readyEngines = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
     private final BlockingQueue<Pair<InternalReconciliationEngine<EVENT>, Subscriber<ReconciliationEngine>>> enginesAdded = new LinkedBlockingQueue<>();
     private final BlockingQueue<Pair<InternalReconciliationEngine<EVENT>, Subscriber<Void>>> enginesToRemove = new LinkedBlockingQueue<>();
 
-    private final AtomicReference<Map<String, InternalReconciliationEngine<EVENT>>> idToEngineMapRef = new AtomicReference<>(Collections.emptyMap());
-    private IndexSet<EntityHolder> indexSet;
+    /**
+     * Maps ids of all entity holders (roots and their children) to engines owning them. Updated incrementally from
+     * the id changes reported by the engines.
+     */
+    private final ConcurrentMap<String, InternalReconciliationEngine<EVENT>> idToEngineMap = new ConcurrentHashMap<>();
+    private volatile IndexSet<EntityHolder> indexSet;
 
     private final Scheduler.Worker worker;
 
@@ -89,7 +107,13 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
     private final Observable<EVENT> eventsObservable;
     private final Subscription internalEventSubscription;
 
+    private final Registry registry;
     private final Timer loopExecutionTime;
+    private final Timer idIndexUpdateTime;
+    private final Counter idIndexChanges;
+    private final Timer orderedIndexUpdateTime;
+    private final Counter visitedEngines;
+    private final Counter readyEngineCounter;
     private volatile long lastFullCycleExecutionTimeMs; // Probed by a polled meter.
     private volatile long lastExecutionTimeMs; // Probed by a polled meter.
 
@@ -100,11 +124,28 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
                                           Map<Object, Comparator<EntityHolder>> indexComparators,
                                           Registry registry,
                                           Optional<Scheduler> optionalScheduler) {
+        this(bootstrapEngines, engineFactory, idleTimeoutMs, activeTimeoutMs, indexComparators, "TitusReconciliationFramework",
+                Collections.emptyList(), registry, optionalScheduler);
+    }
+
+    /**
+     * @param loopName   name of the thread running the reconciliation loop (if no scheduler is provided)
+     * @param metricTags tags added to all framework metrics, to distinguish multiple framework instances
+     */
+    public DefaultReconciliationFramework(List<InternalReconciliationEngine<EVENT>> bootstrapEngines,
+                                          Function<EntityHolder, InternalReconciliationEngine<EVENT>> engineFactory,
+                                          long idleTimeoutMs,
+                                          long activeTimeoutMs,
+                                          Map<Object, Comparator<EntityHolder>> indexComparators,
+                                          String loopName,
+                                          List<Tag> metricTags,
+                                          Registry registry,
+                                          Optional<Scheduler> optionalScheduler) {
         Preconditions.checkArgument(idleTimeoutMs > 0, "idleTimeout <= 0 (%s)", idleTimeoutMs);
         Preconditions.checkArgument(activeTimeoutMs <= idleTimeoutMs, "activeTimeout(%s) > idleTimeout(%s)", activeTimeoutMs, idleTimeoutMs);
 
         this.engineFactory = engineFactory;
-        this.indexSet = IndexSet.newIndexSet(indexComparators);
+        this.indexSet = IndexSet.newIndexSet(indexComparators, EntityHolder::getId);
 
         this.idleTimeoutMs = idleTimeoutMs;
         this.activeTimeoutMs = activeTimeoutMs;
@@ -114,7 +155,7 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
             this.executor = null;
         } else {
             this.executor = Executors.newSingleThreadExecutor(runnable -> {
-                Thread thread = new Thread(runnable, "TitusReconciliationFramework");
+                Thread thread = new Thread(runnable, loopName);
                 thread.setDaemon(true);
                 return thread;
             });
@@ -127,16 +168,26 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
         // To keep eventsObservable permanently active.
         this.internalEventSubscription = eventsObservable.subscribe(ObservableExt.silentSubscriber());
 
-        this.loopExecutionTime = registry.timer(LOOP_EXECUTION_TIME_METRIC);
+        this.registry = registry;
+        this.loopExecutionTime = registry.timer(registry.createId(LOOP_EXECUTION_TIME_METRIC, metricTags));
+        this.idIndexUpdateTime = registry.timer(registry.createId(ID_INDEX_UPDATE_TIME_METRIC, metricTags));
+        this.idIndexChanges = registry.counter(registry.createId(ID_INDEX_CHANGES_METRIC, metricTags));
+        this.orderedIndexUpdateTime = registry.timer(registry.createId(ORDERED_INDEX_UPDATE_TIME_METRIC, metricTags));
+        this.visitedEngines = registry.counter(registry.createId(VISITED_ENGINES_METRIC, metricTags));
+        this.readyEngineCounter = registry.counter(registry.createId(READY_ENGINES_METRIC, metricTags));
         this.lastFullCycleExecutionTimeMs = scheduler.now() - idleTimeoutMs;
         this.lastExecutionTimeMs = scheduler.now();
-        PolledMeter.using(registry).withName(LAST_EXECUTION_TIME_METRIC).monitorValue(this, self -> scheduler.now() - self.lastExecutionTimeMs);
-        PolledMeter.using(registry).withName(LAST_FULL_CYCLE_EXECUTION_TIME_METRIC).monitorValue(this, self -> scheduler.now() - self.lastFullCycleExecutionTimeMs);
+        PolledMeter.using(registry).withName(LAST_EXECUTION_TIME_METRIC).withTags(metricTags).monitorValue(this, self -> scheduler.now() - self.lastExecutionTimeMs);
+        PolledMeter.using(registry).withName(LAST_FULL_CYCLE_EXECUTION_TIME_METRIC).withTags(metricTags).monitorValue(this, self -> scheduler.now() - self.lastFullCycleExecutionTimeMs);
+        PolledMeter.using(registry).withName(ID_INDEX_SIZE_METRIC).withTags(metricTags).monitorValue(idToEngineMap, Map::size);
 
         engines.addAll(bootstrapEngines);
-        bootstrapEngines.forEach(engine -> eventsMergeSubject.onNext(engine.events()));
+        bootstrapEngines.forEach(engine -> {
+            engine.setReadyListener(() -> readyEngines.add(engine));
+            eventsMergeSubject.onNext(engine.events());
+        });
 
-        updateIndexSet();
+        updateIndexes(bootstrapEngines, Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
     }
 
     @Override
@@ -182,6 +233,8 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
             }
         });
         engines.clear();
+        readyEngines.clear();
+        idToEngineMap.clear();
     }
 
     @Override
@@ -216,7 +269,7 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
 
     @Override
     public Optional<ReconciliationEngine<EVENT>> findEngineByRootId(String id) {
-        InternalReconciliationEngine<EVENT> engine = idToEngineMapRef.get().get(id);
+        InternalReconciliationEngine<EVENT> engine = idToEngineMap.get(id);
         if (engine == null) {
             return Optional.empty();
         }
@@ -225,7 +278,7 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
 
     @Override
     public Optional<Pair<ReconciliationEngine<EVENT>, EntityHolder>> findEngineByChildId(String childId) {
-        InternalReconciliationEngine<EVENT> engine = idToEngineMapRef.get().get(childId);
+        InternalReconciliationEngine<EVENT> engine = idToEngineMap.get(childId);
         if (engine == null) {
             return Optional.empty();
         }
@@ -270,12 +323,23 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
     private void doLoop(boolean fullReconciliationCycle) {
         Set<InternalReconciliationEngine<EVENT>> mustRunEngines = new HashSet<>();
 
+        // Engines to visit in this iteration. Engines signalling readiness while this iteration runs, are
+        // kept in the ready set, and visited in the next one.
+        List<InternalReconciliationEngine<EVENT>> ready = drainReadyEngines();
+        List<InternalReconciliationEngine<EVENT>> loopEngines = fullReconciliationCycle ? new ArrayList<>(engines) : ready;
+
         // Apply pending model updates/send events
-        boolean modelUpdates = false;
-        for (InternalReconciliationEngine engine : engines) {
+        List<InternalReconciliationEngine<EVENT>> updatedEngines = new ArrayList<>();
+        List<Pair<InternalReconciliationEngine<EVENT>, ModelIdChanges>> idChanges = new ArrayList<>();
+        for (InternalReconciliationEngine<EVENT> engine : loopEngines) {
             try {
-                boolean anyChange = engine.applyModelUpdates();
-                modelUpdates = modelUpdates || anyChange;
+                if (engine.applyModelUpdates()) {
+                    updatedEngines.add(engine);
+                    ModelIdChanges engineIdChanges = engine.drainModelIdChanges();
+                    if (!engineIdChanges.isEmpty()) {
+                        idChanges.add(Pair.of(engine, engineIdChanges));
+                    }
+                }
             } catch (Exception e) {
                 logger.warn("Unexpected error from reconciliation engine 'applyModelUpdates' method", e);
             }
@@ -284,10 +348,14 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
         // Add new engines.
         List<Pair<InternalReconciliationEngine<EVENT>, Subscriber<ReconciliationEngine>>> recentlyAdded = new ArrayList<>();
         enginesAdded.drainTo(recentlyAdded);
+        List<InternalReconciliationEngine<EVENT>> newEngines = new ArrayList<>();
         recentlyAdded.forEach(pair -> {
             InternalReconciliationEngine<EVENT> newEngine = pair.getLeft();
             engines.add(newEngine);
             mustRunEngines.add(newEngine);
+            newEngines.add(newEngine);
+            loopEngines.add(newEngine);
+            newEngine.setReadyListener(() -> readyEngines.add(newEngine));
             eventsMergeSubject.onNext(newEngine.events());
         });
 
@@ -295,12 +363,13 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
         List<Pair<InternalReconciliationEngine<EVENT>, Subscriber<Void>>> recentlyRemoved = new ArrayList<>();
         enginesToRemove.drainTo(recentlyRemoved);
         shutdownEnginesToRemove(recentlyRemoved);
-
-        boolean engineSetUpdate = !recentlyAdded.isEmpty() || !recentlyRemoved.isEmpty();
+        if (!recentlyRemoved.isEmpty()) {
+            loopEngines.removeIf(engine -> !engines.contains(engine));
+        }
 
         // Update indexes if there are model changes.
-        if (modelUpdates || engineSetUpdate) {
-            updateIndexSet();
+        if (!updatedEngines.isEmpty() || !newEngines.isEmpty() || !recentlyRemoved.isEmpty()) {
+            updateIndexes(newEngines, updatedEngines, idChanges, recentlyRemoved.stream().map(Pair::getLeft).collect(Collectors.toList()));
         }
 
         // Complete engine add/remove subscribers.
@@ -316,7 +385,7 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
         recentlyRemoved.forEach(pair -> pair.getRight().onCompleted());
 
         // Emit events
-        for (InternalReconciliationEngine engine : engines) {
+        for (InternalReconciliationEngine engine : loopEngines) {
             try {
                 engine.emitEvents();
             } catch (Exception e) {
@@ -325,7 +394,7 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
         }
 
         // Complete ChangeAction subscribers
-        for (InternalReconciliationEngine<EVENT> engine : engines) {
+        for (InternalReconciliationEngine<EVENT> engine : loopEngines) {
             try {
                 if (engine.closeFinishedTransactions()) {
                     mustRunEngines.add(engine);
@@ -336,7 +405,7 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
         }
 
         // Trigger actions on engines.
-        for (InternalReconciliationEngine engine : engines) {
+        for (InternalReconciliationEngine engine : loopEngines) {
             if (fullReconciliationCycle || engine.hasPendingTransactions() || mustRunEngines.contains(engine)) {
                 try {
                     engine.triggerActions();
@@ -345,6 +414,22 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
                 }
             }
         }
+
+        visitedEngines.increment(loopEngines.size());
+        readyEngineCounter.increment(ready.size() + newEngines.size());
+    }
+
+    private List<InternalReconciliationEngine<EVENT>> drainReadyEngines() {
+        List<InternalReconciliationEngine<EVENT>> result = new ArrayList<>();
+        for (Iterator<InternalReconciliationEngine<EVENT>> it = readyEngines.iterator(); it.hasNext(); ) {
+            InternalReconciliationEngine<EVENT> engine = it.next();
+            it.remove();
+            // Removed engines may still signal readiness.
+            if (engines.contains(engine)) {
+                result.add(engine);
+            }
+        }
+        return result;
     }
 
     private void shutdownEnginesToRemove(List<Pair<InternalReconciliationEngine<EVENT>, Subscriber<Void>>> toRemove) {
@@ -357,11 +442,61 @@ public class DefaultReconciliationFramework<EVENT> implements ReconciliationFram
         });
     }
 
-    private void updateIndexSet() {
-        Map<String, InternalReconciliationEngine<EVENT>> idToEngineMap = new HashMap<>();
-        engines.forEach(engine -> engine.getReferenceView().visit(h -> idToEngineMap.put(h.getId(), engine)));
-        this.idToEngineMapRef.set(idToEngineMap);
+    /**
+     * Applies the id changes reported by the engines, and the ids of added/removed engines to the id index, and
+     * re-indexes the root holders of engines with reference model changes. Only the changed entries are processed.
+     */
+    private void updateIndexes(List<InternalReconciliationEngine<EVENT>> newEngines,
+                               List<InternalReconciliationEngine<EVENT>> updatedEngines,
+                               List<Pair<InternalReconciliationEngine<EVENT>, ModelIdChanges>> idChanges,
+                               List<InternalReconciliationEngine<EVENT>> removedEngines) {
+        long startTimeNs = registry.clock().monotonicTime();
+        long changeCount = 0;
+
+        for (Pair<InternalReconciliationEngine<EVENT>, ModelIdChanges> pair : idChanges) {
+            InternalReconciliationEngine<EVENT> engine = pair.getLeft();
+            ModelIdChanges changes = pair.getRight();
+            changes.getRemovedIds().forEach(id -> idToEngineMap.remove(id, engine));
+            changes.getAddedIds().forEach(id -> idToEngineMap.put(id, engine));
+            changeCount += changes.getAddedIds().size() + changes.getRemovedIds().size();
+        }
+        for (InternalReconciliationEngine<EVENT> engine : newEngines) {
+            changeCount += addAllIds(engine);
+        }
+        for (InternalReconciliationEngine<EVENT> engine : removedEngines) {
+            changeCount += removeAllIds(engine);
+        }
 
-        indexSet = indexSet.apply(engines.stream().map(ReconciliationEngine::getReferenceView).collect(Collectors.toList()));
+        long idIndexEndTimeNs = registry.clock().monotonicTime();
+        idIndexUpdateTime.record(idIndexEndTimeNs - startTimeNs, TimeUnit.NANOSECONDS);
+        idIndexChanges.increment(changeCount);
+
+        List<EntityHolder> updatedRoots = new ArrayList<>(newEngines.size() + updatedEngines.size());
+        newEngines.forEach(engine -> updatedRoots.add(engine.getReferenceView()));
+        updatedEngines.forEach(engine -> updatedRoots.add(engine.getReferenceView()));
+        indexSet = indexSet.apply(
+                updatedRoots,
+                removedEngines.stream().map(engine -> engine.getReferenceView().getId()).collect(Collectors.toList())
+        );
+        orderedIndexUpdateTime.record(registry.clock().monotonicTime() - idIndexEndTimeNs, TimeUnit.NANOSECONDS);
+    }
+
+    private long addAllIds(InternalReconciliationEngine<EVENT> engine) {
+        long[] counter = {0};
+        engine.getReferenceView().visit(holder -> {
+            idToEngineMap.put(holder.getId(), engine);
+            counter[0]++;
+        });
+        return counter[0];
+    }
+
+    private long removeAllIds(InternalReconciliationEngine<EVENT> engine) {
+        long[] counter = {0};
+        engine.getReferenceView().visit(holder -> {
+            if (idToEngineMap.remove(holder.getId(), engine)) {
+                counter[0]++;
+            }
+        });
+        return counter[0];
     }
 }
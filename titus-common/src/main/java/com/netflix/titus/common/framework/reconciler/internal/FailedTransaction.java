@@ -36,6 +36,9 @@ class FailedTransaction<EVENT> implements Transaction {
         this.engine = engine;
         this.changeActionHolder = changeActionHolder;
         this.error = error;
+
+        // The error must be reported in the next reconciliation loop iteration.
+        engine.signalReady();
     }
 
     @Override
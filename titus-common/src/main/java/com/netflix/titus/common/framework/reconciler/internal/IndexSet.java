@@ -21,26 +21,94 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.netflix.titus.common.util.collections.PersistentSortedMap;
 
 /**
- * TODO Optimize. This is expensive and inefficient implementation.
+ * A collection of ordered views of the same set of items. Each index is backed by a persistent balanced tree, so
+ * adding, updating or removing an item costs O(log n), and the unchanged parts of an index are shared between its
+ * versions. The list representation of an index is built lazily, the first time a given version is read.
  */
 public class IndexSet<T> {
 
-    private static final IndexSet<?> EMPTY = new IndexSet<>(Collections.emptyMap());
-
+    private final Function<T, String> idExtractor;
+    private final PersistentSortedMap<String, T> itemsById;
     private final Map<Object, Index<T>> indexes;
 
-    private IndexSet(Map<Object, Index<T>> indexes) {
+    private IndexSet(Function<T, String> idExtractor, PersistentSortedMap<String, T> itemsById, Map<Object, Index<T>> indexes) {
+        this.idExtractor = idExtractor;
+        this.itemsById = itemsById;
         this.indexes = indexes;
     }
 
-    public IndexSet<T> apply(Collection<T> added) {
-        Map<Object, Index<T>> copy = new HashMap<>();
-        indexes.forEach((k, v) -> copy.put(k, v.apply(added)));
-        return new IndexSet<>(copy);
+    /**
+     * Adds new or replaces existing items (identified by their ids), and removes items with the given ids.
+     * An item that is both added and removed is removed.
+     */
+    public IndexSet<T> apply(Collection<T> addedOrUpdated, Collection<String> removedIds) {
+        if (addedOrUpdated.isEmpty() && removedIds.isEmpty()) {
+            return this;
+        }
+
+        PersistentSortedMap<String, T> newItemsById = itemsById;
+        Map<Object, PersistentSortedMap<T, T>> newTrees = new HashMap<>();
+        indexes.forEach((indexId, index) -> newTrees.put(indexId, index.tree));
+
+        for (T item : addedOrUpdated) {
+            String id = idExtractor.apply(item);
+            T previous = newItemsById.get(id);
+            if (previous == item) {
+                continue;
+            }
+            newItemsById = newItemsById.put(id, item);
+            newTrees.replaceAll((indexId, tree) -> (previous == null ? tree : tree.remove(previous)).put(item, item));
+        }
+        for (String id : removedIds) {
+            T previous = newItemsById.get(id);
+            if (previous == null) {
+                continue;
+            }
+            newItemsById = newItemsById.remove(id);
+            newTrees.replaceAll((indexId, tree) -> tree.remove(previous));
+        }
+
+        if (newItemsById == itemsById) {
+            return this;
+        }
+
+        Map<Object, Index<T>> newIndexes = new HashMap<>();
+        indexes.forEach((indexId, index) -> newIndexes.put(indexId, index.withTree(newTrees.get(indexId))));
+        return new IndexSet<>(idExtractor, newItemsById, newIndexes);
+    }
+
+    /**
+     * Replaces the current content of this index set with the given items. Only items that are new, changed
+     * (different instance for the same id) or missing are applied to the indexes.
+     */
+    public IndexSet<T> replaceAll(Collection<T> items) {
+        List<T> addedOrUpdated = new ArrayList<>();
+        Set<String> currentIds = new HashSet<>();
+        for (T item : items) {
+            String id = idExtractor.apply(item);
+            currentIds.add(id);
+            if (itemsById.get(id) != item) {
+                addedOrUpdated.add(item);
+            }
+        }
+        List<String> removedIds = new ArrayList<>();
+        if (currentIds.size() - addedOrUpdated.size() < itemsById.size()) {
+            itemsById.forEach((id, item) -> {
+                if (!currentIds.contains(id)) {
+                    removedIds.add(id);
+                }
+            });
+        }
+        return apply(addedOrUpdated, removedIds);
     }
 
     public List<T> getOrdered(Object indexId) {
@@ -51,38 +119,39 @@ public class IndexSet<T> {
         return result.getOrdered();
     }
 
-    public static <T> IndexSet<T> empty() {
-        return (IndexSet<T>) EMPTY;
-    }
-
-    public static <T> IndexSet<T> newIndexSet(Map<Object, Comparator<T>> comparators) {
+    public static <T> IndexSet<T> newIndexSet(Map<Object, Comparator<T>> comparators, Function<T, String> idExtractor) {
         Map<Object, Index<T>> indexes = new HashMap<>();
-        comparators.forEach((k, v) -> indexes.put(k, Index.newIndex(v)));
-        return new IndexSet<>(indexes);
+        comparators.forEach((k, v) -> indexes.put(k, Index.newIndex(v, idExtractor)));
+        return new IndexSet<>(idExtractor, PersistentSortedMap.empty(), indexes);
     }
 
     static class Index<T> {
 
-        private final Comparator<T> comparator;
-        private final List<T> ordered;
+        private final PersistentSortedMap<T, T> tree;
+        private volatile List<T> ordered;
 
-        private Index(Comparator<T> comparator, List<T> ordered) {
-            this.comparator = comparator;
-            this.ordered = ordered;
+        private Index(PersistentSortedMap<T, T> tree) {
+            this.tree = tree;
         }
 
-        Index<T> apply(Collection<T> added) {
-            List<T> copy = new ArrayList<>(added);
-            copy.sort(comparator);
-            return new Index<>(comparator, copy);
+        Index<T> withTree(PersistentSortedMap<T, T> newTree) {
+            return newTree == tree ? this : new Index<>(newTree);
         }
 
         List<T> getOrdered() {
-            return ordered;
+            List<T> result = ordered;
+            if (result == null) {
+                result = tree.isEmpty() ? Collections.emptyList() : tree.keys();
+                ordered = result;
+            }
+            return result;
         }
 
-        static <T> Index<T> newIndex(Comparator<T> comparator) {
-            return new Index<>(comparator, Collections.emptyList());
+        /**
+         * Items with the same comparator value are ordered by their ids, as the tree requires a total order.
+         */
+        static <T> Index<T> newIndex(Comparator<T> comparator, Function<T, String> idExtractor) {
+            return new Index<>(PersistentSortedMap.empty(comparator.thenComparing(idExtractor)));
         }
     }
 }
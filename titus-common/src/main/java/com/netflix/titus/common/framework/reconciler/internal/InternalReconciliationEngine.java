@@ -22,6 +22,12 @@ public interface InternalReconciliationEngine<EVENT>  extends ReconciliationEngi
 
     boolean hasPendingTransactions();
 
+    /**
+     * Sets a callback, which the engine invokes (possibly from a different thread) each time it gets new work to
+     * process in the reconciliation loop, like a new change action request, or a completed change action.
+     */
+    void setReadyListener(Runnable readyListener);
+
     /**
      * Apply pending model updates. The model updates come from recently completed change actions (either requested or reconcile),
      * and must be processed by the event loop before next action(s) are started.
@@ -30,6 +36,12 @@ public interface InternalReconciliationEngine<EVENT>  extends ReconciliationEngi
      */
     boolean applyModelUpdates();
 
+    /**
+     * Returns ids of entity holders added to, or removed from the reference model by the {@link #applyModelUpdates()}
+     * calls made since the last invocation of this method.
+     */
+    ModelIdChanges drainModelIdChanges();
+
     void emitEvents();
 
     boolean closeFinishedTransactions();
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.common.framework.reconciler.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.netflix.titus.common.framework.reconciler.EntityHolder;
+import com.netflix.titus.common.util.collections.PersistentHashMap;
+
+/**
+ * Ids of {@link EntityHolder} instances added to, or removed from the reference model of an engine.
+ */
+public class ModelIdChanges {
+
+    private static final ModelIdChanges EMPTY = new ModelIdChanges(Collections.emptyList(), Collections.emptyList());
+
+    private final List<String> addedIds;
+    private final List<String> removedIds;
+
+    private ModelIdChanges(List<String> addedIds, List<String> removedIds) {
+        this.addedIds = addedIds;
+        this.removedIds = removedIds;
+    }
+
+    public List<String> getAddedIds() {
+        return addedIds;
+    }
+
+    public List<String> getRemovedIds() {
+        return removedIds;
+    }
+
+    public boolean isEmpty() {
+        return addedIds.isEmpty() && removedIds.isEmpty();
+    }
+
+    /**
+     * Combines these changes with the changes that happened after them. An id added and later removed is dropped.
+     */
+    public ModelIdChanges merge(ModelIdChanges next) {
+        if (next.isEmpty()) {
+            return this;
+        }
+        Set<String> mergedAdded = new LinkedHashSet<>(addedIds);
+        Set<String> mergedRemoved = new LinkedHashSet<>(removedIds);
+        for (String id : next.getRemovedIds()) {
+            if (!mergedAdded.remove(id)) {
+                mergedRemoved.add(id);
+            }
+        }
+        for (String id : next.getAddedIds()) {
+            mergedRemoved.remove(id);
+            mergedAdded.add(id);
+        }
+        return new ModelIdChanges(new ArrayList<>(mergedAdded), new ArrayList<>(mergedRemoved));
+    }
+
+    public static ModelIdChanges empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Computes the id changes between two versions of the same entity hierarchy. Parts of the hierarchy shared by
+     * both versions are not visited.
+     */
+    public static ModelIdChanges between(EntityHolder previous, EntityHolder current) {
+        if (previous == current) {
+            return EMPTY;
+        }
+        List<String> addedIds = new ArrayList<>();
+        List<String> removedIds = new ArrayList<>();
+        current.diffDescendants(previous, new PersistentHashMap.DiffListener<String, EntityHolder>() {
+            @Override
+            public void added(String id, EntityHolder holder) {
+                addedIds.add(id);
+            }
+
+            @Override
+            public void updated(String id, EntityHolder previousHolder, EntityHolder holder) {
+            }
+
+            @Override
+            public void removed(String id, EntityHolder holder) {
+                removedIds.add(id);
+            }
+        });
+        return addedIds.isEmpty() && removedIds.isEmpty() ? EMPTY : new ModelIdChanges(addedIds, removedIds);
+    }
+}
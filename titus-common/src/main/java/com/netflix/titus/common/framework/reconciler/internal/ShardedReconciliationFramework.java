@@ -0,0 +1,232 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.common.framework.reconciler.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import com.google.common.base.Preconditions;
+import com.netflix.spectator.api.BasicTag;
+import com.netflix.spectator.api.Registry;
+import com.netflix.titus.common.framework.reconciler.EntityHolder;
+import com.netflix.titus.common.framework.reconciler.ReconciliationEngine;
+import com.netflix.titus.common.framework.reconciler.ReconciliationFramework;
+import com.netflix.titus.common.util.rx.ObservableExt;
+import com.netflix.titus.common.util.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Completable;
+import rx.Observable;
+import rx.Scheduler;
+
+/**
+ * {@link ReconciliationFramework} implementation that partitions engines by their root id across multiple independent
+ * reconciliation loops (shards), each running on its own thread. Engine lookups by root id go directly to the owning
+ * shard, and the ordered views of all shards are merged on read (the merged view is cached until any shard index changes).
+ */
+public class ShardedReconciliationFramework<EVENT> implements ReconciliationFramework<EVENT> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedReconciliationFramework.class);
+
+    private final List<DefaultReconciliationFramework<EVENT>> shards;
+    private final Map<Object, Comparator<EntityHolder>> indexComparators;
+    private final Observable<EVENT> eventsObservable;
+
+    private final ConcurrentMap<Object, MergedView> mergedViews = new ConcurrentHashMap<>();
+
+    public ShardedReconciliationFramework(List<InternalReconciliationEngine<EVENT>> bootstrapEngines,
+                                          Function<EntityHolder, InternalReconciliationEngine<EVENT>> engineFactory,
+                                          long idleTimeoutMs,
+                                          long activeTimeoutMs,
+                                          Map<Object, Comparator<EntityHolder>> indexComparators,
+                                          int shardCount,
+                                          Registry registry,
+                                          Optional<Scheduler> optionalScheduler) {
+        Preconditions.checkArgument(shardCount > 0, "shardCount <= 0 (%s)", shardCount);
+
+        this.indexComparators = indexComparators;
+
+        List<List<InternalReconciliationEngine<EVENT>>> bootstrapEnginesByShard = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            bootstrapEnginesByShard.add(new ArrayList<>());
+        }
+        bootstrapEngines.forEach(engine -> bootstrapEnginesByShard.get(shardOf(engine.getReferenceView().getId(), shardCount)).add(engine));
+
+        List<DefaultReconciliationFramework<EVENT>> shards = new ArrayList<>();
+        List<Observable<EVENT>> shardEvents = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            DefaultReconciliationFramework<EVENT> shard = new DefaultReconciliationFramework<>(
+                    bootstrapEnginesByShard.get(i),
+                    engineFactory,
+                    idleTimeoutMs,
+                    activeTimeoutMs,
+                    indexComparators,
+                    "TitusReconciliationFramework-" + i,
+                    Collections.singletonList(new BasicTag("shard", Integer.toString(i))),
+                    registry,
+                    optionalScheduler
+            );
+            shards.add(shard);
+            shardEvents.add(shard.events());
+        }
+        this.shards = Collections.unmodifiableList(shards);
+        this.eventsObservable = Observable.merge(shardEvents).share();
+    }
+
+    @Override
+    public void start() {
+        shards.forEach(DefaultReconciliationFramework::start);
+    }
+
+    @Override
+    public boolean stop(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        boolean allStopped = true;
+        for (DefaultReconciliationFramework<EVENT> shard : shards) {
+            allStopped = shard.stop(Math.max(0, deadline - System.currentTimeMillis())) && allStopped;
+        }
+        return allStopped;
+    }
+
+    @Override
+    public Observable<EVENT> events() {
+        return ObservableExt.protectFromMissingExceptionHandlers(eventsObservable, logger);
+    }
+
+    @Override
+    public Optional<ReconciliationEngine<EVENT>> findEngineByRootId(String id) {
+        return shardFor(id).findEngineByRootId(id);
+    }
+
+    @Override
+    public Optional<Pair<ReconciliationEngine<EVENT>, EntityHolder>> findEngineByChildId(String childId) {
+        for (DefaultReconciliationFramework<EVENT> shard : shards) {
+            Optional<Pair<ReconciliationEngine<EVENT>, EntityHolder>> result = shard.findEngineByChildId(childId);
+            if (result.isPresent()) {
+                return result;
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public <ORDER_BY> List<EntityHolder> orderedView(ORDER_BY orderingCriteria) {
+        Comparator<EntityHolder> comparator = indexComparators.get(orderingCriteria);
+        if (comparator == null) {
+            throw new IllegalArgumentException("Unknown index id " + orderingCriteria);
+        }
+
+        List<List<EntityHolder>> shardViews = new ArrayList<>(shards.size());
+        shards.forEach(shard -> shardViews.add(shard.orderedView(orderingCriteria)));
+
+        MergedView cached = mergedViews.get(orderingCriteria);
+        if (cached != null && cached.isBuiltFrom(shardViews)) {
+            return cached.getMerged();
+        }
+        MergedView mergedView = new MergedView(shardViews, merge(shardViews, comparator.thenComparing(EntityHolder::getId)));
+        mergedViews.put(orderingCriteria, mergedView);
+        return mergedView.getMerged();
+    }
+
+    @Override
+    public Observable<ReconciliationEngine<EVENT>> newEngine(EntityHolder bootstrapModel) {
+        return shardFor(bootstrapModel.getId()).newEngine(bootstrapModel);
+    }
+
+    @Override
+    public Completable removeEngine(ReconciliationEngine<EVENT> engine) {
+        return shardFor(engine.getReferenceView().getId()).removeEngine(engine);
+    }
+
+    int getShardCount() {
+        return shards.size();
+    }
+
+    private DefaultReconciliationFramework<EVENT> shardFor(String rootId) {
+        return shards.get(shardOf(rootId, shards.size()));
+    }
+
+    static int shardOf(String rootId, int shardCount) {
+        return Math.floorMod(rootId.hashCode(), shardCount);
+    }
+
+    /**
+     * K-way merge of the ordered shard views.
+     */
+    private static List<EntityHolder> merge(List<List<EntityHolder>> shardViews, Comparator<EntityHolder> comparator) {
+        int total = 0;
+        PriorityQueue<Pair<EntityHolder, Integer>> heads = new PriorityQueue<>(
+                Math.max(1, shardViews.size()), (first, second) -> comparator.compare(first.getLeft(), second.getLeft())
+        );
+        int[] positions = new int[shardViews.size()];
+        for (int i = 0; i < shardViews.size(); i++) {
+            List<EntityHolder> shardView = shardViews.get(i);
+            total += shardView.size();
+            if (!shardView.isEmpty()) {
+                heads.add(Pair.of(shardView.get(0), i));
+            }
+        }
+
+        List<EntityHolder> result = new ArrayList<>(total);
+        while (!heads.isEmpty()) {
+            Pair<EntityHolder, Integer> head = heads.poll();
+            result.add(head.getLeft());
+            int shardIdx = head.getRight();
+            int nextPosition = ++positions[shardIdx];
+            List<EntityHolder> shardView = shardViews.get(shardIdx);
+            if (nextPosition < shardView.size()) {
+                heads.add(Pair.of(shardView.get(nextPosition), shardIdx));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static class MergedView {
+
+        private final List<List<EntityHolder>> shardViews;
+        private final List<EntityHolder> merged;
+
+        private MergedView(List<List<EntityHolder>> shardViews, List<EntityHolder> merged) {
+            this.shardViews = shardViews;
+            this.merged = merged;
+        }
+
+        private List<EntityHolder> getMerged() {
+            return merged;
+        }
+
+        /**
+         * Shard views are immutable, and a new list instance is created on each change, so the identity check is sufficient.
+         */
+        private boolean isBuiltFrom(List<List<EntityHolder>> currentShardViews) {
+            for (int i = 0; i < shardViews.size(); i++) {
+                if (shardViews.get(i) != currentShardViews.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
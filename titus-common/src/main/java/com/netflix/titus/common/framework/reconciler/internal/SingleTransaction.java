@@ -99,6 +99,7 @@ class SingleTransaction<EVENT> implements Transaction {
                     }
                     if (transactionStep == TransactionStep.ChangeActionStarted) {
                         this.transactionStep = TransactionStep.ChangeActionUnsubscribed;
+                        engine.signalReady();
                     }
                 })
                 .subscribe(
@@ -113,6 +114,7 @@ class SingleTransaction<EVENT> implements Transaction {
                             this.changeActionExecutionTimeMs = passedMs(startTimeNs);
                             this.transactionStep = TransactionStep.ChangeActionFailed;
                             logger.debug("Action execution error", e);
+                            engine.signalReady();
                         },
                         () -> {
                             if (metricsNotUpdated.getAndSet(false)) {
@@ -124,6 +126,7 @@ class SingleTransaction<EVENT> implements Transaction {
                             }
                             this.changeActionExecutionTimeMs = passedMs(startTimeNs);
                             this.transactionStep = TransactionStep.ChangeActionCompleted;
+                            engine.signalReady();
                         }
                 );
 
@@ -23,12 +23,15 @@ import java.util.concurrent.TimeUnit;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.X509TrustManager;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.netflix.titus.common.network.http.Request;
 import com.netflix.titus.common.network.http.RequestBody;
 import com.netflix.titus.common.network.http.Response;
 import com.netflix.titus.common.network.http.RxHttpClient;
 import okhttp3.Call;
 import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.HttpUrl;
 import okhttp3.Interceptor;
 import rx.Emitter;
@@ -39,6 +42,7 @@ public class RxOkHttpClient implements RxHttpClient {
     private static final int DEFAULT_CONNECT_TIMEOUT = 5_000;
     private static final int DEFAULT_READ_TIMEOUT = 5_000;
     private static final int DEFAULT_WRITE_TIMEOUT = 5_000;
+    private static final long DEFAULT_KEEP_ALIVE_DURATION = 300_000;
 
     private final long connectTimeout;
     private final long readTimeout;
@@ -46,6 +50,10 @@ public class RxOkHttpClient implements RxHttpClient {
     private final SSLContext sslContext;
     private final X509TrustManager trustManager;
     private final List<Interceptor> interceptors;
+    private final int maxRequests;
+    private final int maxRequestsPerHost;
+    private final int maxIdleConnections;
+    private final long keepAliveDuration;
 
     private okhttp3.OkHttpClient client;
 
@@ -56,6 +64,10 @@ public class RxOkHttpClient implements RxHttpClient {
         this.sslContext = builder.sslContext;
         this.trustManager = builder.trustManager;
         this.interceptors = builder.interceptors;
+        this.maxRequests = builder.maxRequests;
+        this.maxRequestsPerHost = builder.maxRequestsPerHost;
+        this.maxIdleConnections = builder.maxIdleConnections;
+        this.keepAliveDuration = builder.keepAliveDuration;
 
         okhttp3.OkHttpClient.Builder clientBuilder = new okhttp3.OkHttpClient.Builder()
                 .connectTimeout(this.connectTimeout, TimeUnit.MILLISECONDS)
@@ -71,6 +83,19 @@ public class RxOkHttpClient implements RxHttpClient {
                 clientBuilder.addInterceptor(interceptor);
             }
         }
+        if (maxRequests > 0 || maxRequestsPerHost > 0) {
+            Dispatcher dispatcher = new Dispatcher();
+            if (maxRequests > 0) {
+                dispatcher.setMaxRequests(maxRequests);
+            }
+            if (maxRequestsPerHost > 0) {
+                dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+            }
+            clientBuilder.dispatcher(dispatcher);
+        }
+        if (maxIdleConnections > 0) {
+            clientBuilder.connectionPool(new ConnectionPool(maxIdleConnections, keepAliveDuration, TimeUnit.MILLISECONDS));
+        }
 
         this.client = clientBuilder.build();
     }
@@ -180,6 +205,11 @@ public class RxOkHttpClient implements RxHttpClient {
         return interceptors;
     }
 
+    @VisibleForTesting
+    ConnectionPool connectionPool() {
+        return client.connectionPool();
+    }
+
     public static Builder newBuilder() {
         return new Builder();
     }
@@ -195,6 +225,10 @@ public class RxOkHttpClient implements RxHttpClient {
         SSLContext sslContext;
         X509TrustManager trustManager;
         List<Interceptor> interceptors = new ArrayList<>();
+        int maxRequests = -1;
+        int maxRequestsPerHost = -1;
+        int maxIdleConnections = -1;
+        long keepAliveDuration = -1;
 
         public Builder() {
         }
@@ -206,6 +240,10 @@ public class RxOkHttpClient implements RxHttpClient {
             this.sslContext = client.sslContext;
             this.trustManager = client.trustManager();
             this.interceptors = client.interceptors;
+            this.maxRequests = client.maxRequests;
+            this.maxRequestsPerHost = client.maxRequestsPerHost;
+            this.maxIdleConnections = client.maxIdleConnections;
+            this.keepAliveDuration = client.keepAliveDuration;
         }
 
         public Builder connectTimeout(long connectTimeout) {
@@ -243,6 +281,26 @@ public class RxOkHttpClient implements RxHttpClient {
             return this;
         }
 
+        /**
+         * Maximum number of requests executed concurrently, in total and per host. Requests above these limits are
+         * queued by the client. A request is counted only until its response is emitted, so reading the response
+         * body is not bounded by these limits.
+         */
+        public Builder maxRequests(int maxRequests, int maxRequestsPerHost) {
+            this.maxRequests = maxRequests;
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        /**
+         * Configures the pool of connections reused across requests.
+         */
+        public Builder connectionPool(int maxIdleConnections, long keepAliveDuration) {
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAliveDuration = keepAliveDuration;
+            return this;
+        }
+
         public RxOkHttpClient build() {
             if (connectTimeout < 0) {
                 connectTimeout = DEFAULT_CONNECT_TIMEOUT;
@@ -253,6 +311,9 @@ public class RxOkHttpClient implements RxHttpClient {
             if (writeTimeout < 0) {
                 writeTimeout = DEFAULT_WRITE_TIMEOUT;
             }
+            if (maxIdleConnections > 0 && keepAliveDuration <= 0) {
+                keepAliveDuration = DEFAULT_KEEP_ALIVE_DURATION;
+            }
             return new RxOkHttpClient(this);
         }
     }
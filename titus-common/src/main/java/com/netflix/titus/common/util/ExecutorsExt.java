@@ -18,6 +18,7 @@ package com.netflix.titus.common.util;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Factory methods and utilities for {@link java.util.concurrent.ExecutorService executors}.
@@ -32,4 +33,15 @@ public final class ExecutorsExt {
         });
     }
 
+    /**
+     * Fixed size thread pool with daemon threads named 'namePrefix-&lt;thread_number&gt;'.
+     */
+    public static ExecutorService namedFixedThreadPool(String namePrefix, int size) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        return Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + '-' + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 }
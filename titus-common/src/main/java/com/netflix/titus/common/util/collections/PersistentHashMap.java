@@ -0,0 +1,436 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.common.util.collections;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Immutable hash map implemented as a hash array mapped trie (HAMT). Each modification returns a new version of the
+ * map, which shares all unchanged trie nodes with its predecessor, so put/remove operations cost O(log32 n) time and
+ * allocations. Because of the structural sharing, two versions of the same map can be compared in time proportional
+ * to the number of differences between them (see {@link #diff(PersistentHashMap, DiffListener)}).
+ * Any version of the map can be read concurrently from multiple threads without synchronization.
+ */
+public final class PersistentHashMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    /**
+     * Receives differences between two versions of a map.
+     */
+    public interface DiffListener<K, V> {
+
+        void added(K key, V value);
+
+        void updated(K key, V previousValue, V newValue);
+
+        void removed(K key, V value);
+    }
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        if (root == null) {
+            return null;
+        }
+        return (V) root.find(hash(key), 0, key);
+    }
+
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    public PersistentHashMap<K, V> put(K key, V value) {
+        Preconditions.checkNotNull(key, "null key");
+        Preconditions.checkNotNull(value, "null value");
+
+        boolean[] added = {false};
+        Node newRoot = (root == null ? BitmapNode.EMPTY : root).put(hash(key), 0, key, value, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    public PersistentHashMap<K, V> remove(K key) {
+        if (root == null) {
+            return this;
+        }
+        Node newRoot = root.remove(hash(key), 0, key);
+        if (newRoot == root) {
+            return this;
+        }
+        return newRoot == null ? empty() : new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<K, V> consumer) {
+        if (root != null) {
+            root.forEach((BiConsumer<Object, Object>) consumer);
+        }
+    }
+
+    public List<V> values() {
+        List<V> result = new ArrayList<>(size);
+        forEach((key, value) -> result.add(value));
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Reports differences between the previous version of this map and this map. Values are compared by identity.
+     * Sub-tries shared by both versions are skipped, so the cost of this operation depends on the number of changes,
+     * not on the map size.
+     */
+    @SuppressWarnings("unchecked")
+    public void diff(PersistentHashMap<K, V> previous, DiffListener<K, V> listener) {
+        diffNodes(previous.root, root, (DiffListener<Object, Object>) listener);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static void diffNodes(Node previous, Node current, DiffListener<Object, Object> listener) {
+        if (previous == current) {
+            return;
+        }
+        if (previous == null) {
+            current.forEach(listener::added);
+            return;
+        }
+        if (current == null) {
+            previous.forEach(listener::removed);
+            return;
+        }
+        if (previous instanceof BitmapNode && current instanceof BitmapNode) {
+            diffBitmapNodes((BitmapNode) previous, (BitmapNode) current, listener);
+            return;
+        }
+        diffByLookup(previous, current, listener);
+    }
+
+    private static void diffBitmapNodes(BitmapNode previous, BitmapNode current, DiffListener<Object, Object> listener) {
+        int allBits = previous.bitmap | current.bitmap;
+        while (allBits != 0) {
+            int bit = Integer.lowestOneBit(allBits);
+            allBits &= ~bit;
+
+            boolean inPrevious = (previous.bitmap & bit) != 0;
+            boolean inCurrent = (current.bitmap & bit) != 0;
+            Object previousKey = inPrevious ? previous.array[2 * previous.index(bit)] : null;
+            Object previousValue = inPrevious ? previous.array[2 * previous.index(bit) + 1] : null;
+            Object currentKey = inCurrent ? current.array[2 * current.index(bit)] : null;
+            Object currentValue = inCurrent ? current.array[2 * current.index(bit) + 1] : null;
+
+            if (!inPrevious) {
+                reportSlot(currentKey, currentValue, listener::added);
+            } else if (!inCurrent) {
+                reportSlot(previousKey, previousValue, listener::removed);
+            } else if (previousKey == null && currentKey == null) {
+                diffNodes((Node) previousValue, (Node) currentValue, listener);
+            } else if (previousKey != null && currentKey != null) {
+                if (previousKey.equals(currentKey)) {
+                    if (previousValue != currentValue) {
+                        listener.updated(currentKey, previousValue, currentValue);
+                    }
+                } else {
+                    listener.removed(previousKey, previousValue);
+                    listener.added(currentKey, currentValue);
+                }
+            } else {
+                // An entry was pushed down into a sub-trie, or a sub-trie collapsed. Rare, so compare by lookup.
+                diffByLookup(toNode(previousKey, previousValue), toNode(currentKey, currentValue), listener);
+            }
+        }
+    }
+
+    private static void reportSlot(Object key, Object valueOrNode, BiConsumer<Object, Object> consumer) {
+        if (key == null) {
+            ((Node) valueOrNode).forEach(consumer);
+        } else {
+            consumer.accept(key, valueOrNode);
+        }
+    }
+
+    private static Node toNode(Object key, Object valueOrNode) {
+        if (key == null) {
+            return (Node) valueOrNode;
+        }
+        return new CollisionNode(hash(key), new Object[]{key, valueOrNode});
+    }
+
+    private static void diffByLookup(Node previous, Node current, DiffListener<Object, Object> listener) {
+        Map<Object, Object> previousEntries = new HashMap<>();
+        previous.forEach(previousEntries::put);
+        current.forEach((key, value) -> {
+            Object previousValue = previousEntries.remove(key);
+            if (previousValue == null) {
+                listener.added(key, value);
+            } else if (previousValue != value) {
+                listener.updated(key, previousValue, value);
+            }
+        });
+        previousEntries.forEach(listener::removed);
+    }
+
+    private static abstract class Node {
+
+        abstract Object find(int hash, int shift, Object key);
+
+        abstract Node put(int hash, int shift, Object key, Object value, boolean[] added);
+
+        /**
+         * @return null if the node is empty after the key removal
+         */
+        abstract Node remove(int hash, int shift, Object key);
+
+        abstract void forEach(BiConsumer<Object, Object> consumer);
+    }
+
+    /**
+     * Trie node with up to 32 slots. Each slot holds either a key/value pair, or a null key and a sub-trie node.
+     */
+    private static final class BitmapNode extends Node {
+
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] array;
+
+        private BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(int hash, int shift, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int idx = index(bit);
+            Object slotKey = array[2 * idx];
+            Object slotValue = array[2 * idx + 1];
+            if (slotKey == null) {
+                return ((Node) slotValue).find(hash, shift + BITS, key);
+            }
+            return key.equals(slotKey) ? slotValue : null;
+        }
+
+        @Override
+        Node put(int hash, int shift, Object key, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int idx = index(bit);
+
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                Object[] newArray = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, 2 * idx);
+                newArray[2 * idx] = key;
+                newArray[2 * idx + 1] = value;
+                System.arraycopy(array, 2 * idx, newArray, 2 * idx + 2, array.length - 2 * idx);
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+
+            Object slotKey = array[2 * idx];
+            Object slotValue = array[2 * idx + 1];
+            if (slotKey == null) {
+                Node subNode = (Node) slotValue;
+                Node newSubNode = subNode.put(hash, shift + BITS, key, value, added);
+                return newSubNode == subNode ? this : withSlot(idx, null, newSubNode);
+            }
+            if (key.equals(slotKey)) {
+                return slotValue == value ? this : withSlot(idx, slotKey, value);
+            }
+            added[0] = true;
+            return withSlot(idx, null, createNode(shift + BITS, slotKey, slotValue, hash, key, value));
+        }
+
+        @Override
+        Node remove(int hash, int shift, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int idx = index(bit);
+            Object slotKey = array[2 * idx];
+            Object slotValue = array[2 * idx + 1];
+            if (slotKey == null) {
+                Node subNode = (Node) slotValue;
+                Node newSubNode = subNode.remove(hash, shift + BITS, key);
+                if (newSubNode == subNode) {
+                    return this;
+                }
+                if (newSubNode != null) {
+                    return withSlot(idx, null, newSubNode);
+                }
+                return withoutSlot(bit, idx);
+            }
+            if (key.equals(slotKey)) {
+                return withoutSlot(bit, idx);
+            }
+            return this;
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> consumer) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(consumer);
+                } else {
+                    consumer.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+
+        private BitmapNode withSlot(int idx, Object key, Object valueOrNode) {
+            Object[] newArray = array.clone();
+            newArray[2 * idx] = key;
+            newArray[2 * idx + 1] = valueOrNode;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        private BitmapNode withoutSlot(int bit, int idx) {
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, 2 * idx);
+            System.arraycopy(array, 2 * idx + 2, newArray, 2 * idx, newArray.length - 2 * idx);
+            return new BitmapNode(bitmap & ~bit, newArray);
+        }
+
+        private static Node createNode(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+            int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+            }
+            boolean[] added = {false};
+            return EMPTY.put(hash1, shift, key1, value1, added).put(hash2, shift, key2, value2, added);
+        }
+    }
+
+    /**
+     * Holds entries with keys having the same hash code.
+     */
+    private static final class CollisionNode extends Node {
+
+        private final int hash;
+        private final Object[] array;
+
+        private CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int hash, int shift, Object key) {
+            int idx = indexOf(key);
+            return idx < 0 ? null : array[idx + 1];
+        }
+
+        @Override
+        Node put(int hash, int shift, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // Push this node one level down, next to the new entry.
+                int bit = 1 << ((this.hash >>> shift) & MASK);
+                return new BitmapNode(bit, new Object[]{null, this}).put(hash, shift, key, value, added);
+            }
+            int idx = indexOf(key);
+            if (idx >= 0) {
+                if (array[idx + 1] == value) {
+                    return this;
+                }
+                Object[] newArray = array.clone();
+                newArray[idx + 1] = value;
+                return new CollisionNode(hash, newArray);
+            }
+            added[0] = true;
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        Node remove(int hash, int shift, Object key) {
+            int idx = indexOf(key);
+            if (idx < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, idx);
+            System.arraycopy(array, idx + 2, newArray, idx, newArray.length - idx);
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> consumer) {
+            for (int i = 0; i < array.length; i += 2) {
+                consumer.accept(array[i], array[i + 1]);
+            }
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
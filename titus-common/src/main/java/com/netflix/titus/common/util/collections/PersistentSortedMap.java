@@ -0,0 +1,293 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.common.util.collections;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Immutable, sorted map backed by a persistent AVL tree. Each modification returns a new version of the map, which
+ * shares all unchanged nodes with its predecessor (path copying). A single put/remove operation costs O(log n) time and
+ * allocations, and any version of the map can be read concurrently from multiple threads without synchronization.
+ *
+ * @param <K> key type. Keys are ordered by the comparator provided at the map creation time.
+ * @param <V> value type
+ */
+public final class PersistentSortedMap<K, V> {
+
+    private final Comparator<? super K> comparator;
+    private final Node<K, V> root;
+
+    private PersistentSortedMap(Comparator<? super K> comparator, Node<K, V> root) {
+        this.comparator = comparator;
+        this.root = root;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public V get(K key) {
+        Node<K, V> current = root;
+        while (current != null) {
+            int result = comparator.compare(key, current.key);
+            if (result == 0) {
+                return current.value;
+            }
+            current = result < 0 ? current.left : current.right;
+        }
+        return null;
+    }
+
+    public boolean containsKey(K key) {
+        Node<K, V> current = root;
+        while (current != null) {
+            int result = comparator.compare(key, current.key);
+            if (result == 0) {
+                return true;
+            }
+            current = result < 0 ? current.left : current.right;
+        }
+        return false;
+    }
+
+    public PersistentSortedMap<K, V> put(K key, V value) {
+        Preconditions.checkNotNull(key, "null key");
+        Node<K, V> newRoot = put(root, key, value, comparator);
+        return newRoot == root ? this : new PersistentSortedMap<>(comparator, newRoot);
+    }
+
+    public PersistentSortedMap<K, V> remove(K key) {
+        Node<K, V> newRoot = remove(root, key, comparator);
+        return newRoot == root ? this : new PersistentSortedMap<>(comparator, newRoot);
+    }
+
+    /**
+     * Returns the number of keys lower than the given key, or lower than or equal to it if <tt>inclusive</tt> is set.
+     * Runs in O(log n) time.
+     */
+    public int headCount(K key, boolean inclusive) {
+        int count = 0;
+        Node<K, V> current = root;
+        while (current != null) {
+            int result = comparator.compare(key, current.key);
+            if (result < 0 || (result == 0 && !inclusive)) {
+                current = current.left;
+            } else {
+                count += size(current.left) + 1;
+                current = current.right;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns an iterator over values with keys greater than the given key, in the key order. Positioning the iterator
+     * costs O(log n) time, and each step O(1) amortized.
+     */
+    public Iterator<V> valuesAfter(K key) {
+        Deque<Node<K, V>> stack = new ArrayDeque<>();
+        Node<K, V> current = root;
+        while (current != null) {
+            if (comparator.compare(key, current.key) < 0) {
+                stack.push(current);
+                current = current.left;
+            } else {
+                current = current.right;
+            }
+        }
+        return new Iterator<V>() {
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public V next() {
+                if (stack.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node<K, V> next = stack.pop();
+                for (Node<K, V> node = next.right; node != null; node = node.left) {
+                    stack.push(node);
+                }
+                return next.value;
+            }
+        };
+    }
+
+    /**
+     * Returns keys in the comparator order.
+     */
+    public List<K> keys() {
+        List<K> result = new ArrayList<>(size());
+        forEach((key, value) -> result.add(key));
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Returns values in the order of their keys.
+     */
+    public List<V> values() {
+        List<V> result = new ArrayList<>(size());
+        forEach((key, value) -> result.add(value));
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Visits all entries in the key order.
+     */
+    public void forEach(BiConsumer<K, V> consumer) {
+        Deque<Node<K, V>> stack = new ArrayDeque<>();
+        Node<K, V> current = root;
+        while (current != null || !stack.isEmpty()) {
+            while (current != null) {
+                stack.push(current);
+                current = current.left;
+            }
+            current = stack.pop();
+            consumer.accept(current.key, current.value);
+            current = current.right;
+        }
+    }
+
+    public static <K, V> PersistentSortedMap<K, V> empty(Comparator<? super K> comparator) {
+        return new PersistentSortedMap<>(comparator, null);
+    }
+
+    public static <K extends Comparable<? super K>, V> PersistentSortedMap<K, V> empty() {
+        return new PersistentSortedMap<>(Comparator.naturalOrder(), null);
+    }
+
+    private static <K, V> Node<K, V> put(Node<K, V> node, K key, V value, Comparator<? super K> comparator) {
+        if (node == null) {
+            return new Node<>(key, value, null, null);
+        }
+        int result = comparator.compare(key, node.key);
+        if (result < 0) {
+            Node<K, V> newLeft = put(node.left, key, value, comparator);
+            return newLeft == node.left ? node : balance(node.key, node.value, newLeft, node.right);
+        }
+        if (result > 0) {
+            Node<K, V> newRight = put(node.right, key, value, comparator);
+            return newRight == node.right ? node : balance(node.key, node.value, node.left, newRight);
+        }
+        if (node.key == key && node.value == value) {
+            return node;
+        }
+        return new Node<>(key, value, node.left, node.right);
+    }
+
+    private static <K, V> Node<K, V> remove(Node<K, V> node, K key, Comparator<? super K> comparator) {
+        if (node == null) {
+            return null;
+        }
+        int result = comparator.compare(key, node.key);
+        if (result < 0) {
+            Node<K, V> newLeft = remove(node.left, key, comparator);
+            return newLeft == node.left ? node : balance(node.key, node.value, newLeft, node.right);
+        }
+        if (result > 0) {
+            Node<K, V> newRight = remove(node.right, key, comparator);
+            return newRight == node.right ? node : balance(node.key, node.value, node.left, newRight);
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node<K, V> successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.key, successor.value, node.left, removeMin(node.right));
+    }
+
+    private static <K, V> Node<K, V> removeMin(Node<K, V> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.key, node.value, removeMin(node.left), node.right);
+    }
+
+    private static <K, V> Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right) {
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        if (leftHeight > rightHeight + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node<>(left.key, left.value, left.left, new Node<>(key, value, left.right, right));
+            }
+            Node<K, V> pivot = left.right;
+            return new Node<>(pivot.key, pivot.value,
+                    new Node<>(left.key, left.value, left.left, pivot.left),
+                    new Node<>(key, value, pivot.right, right)
+            );
+        }
+        if (rightHeight > leftHeight + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node<>(right.key, right.value, new Node<>(key, value, left, right.left), right.right);
+            }
+            Node<K, V> pivot = right.left;
+            return new Node<>(pivot.key, pivot.value,
+                    new Node<>(key, value, left, pivot.left),
+                    new Node<>(right.key, right.value, pivot.right, right.right)
+            );
+        }
+        return new Node<>(key, value, left, right);
+    }
+
+    private static int height(Node<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node<?, ?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node<K, V> {
+
+        private final K key;
+        private final V value;
+        private final Node<K, V> left;
+        private final Node<K, V> right;
+        private final int height;
+        private final int size;
+
+        private Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.common.util.rx;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import rx.Observable;
+import rx.Producer;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.exceptions.MissingBackpressureException;
+import rx.internal.operators.BackpressureUtils;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Shares a single subscription to a hot event stream among many subscribers. Each subscriber receives a snapshot of
+ * the current state, followed by the live events. Compared to subscribing to the source stream with
+ * {@link ObservableExt#head(Supplier)} once per subscriber:
+ * <ul>
+ * <li>the source stream is subscribed to once, so any per event processing (for example model conversion) done by it
+ * happens once, irrespective of the number of subscribers</li>
+ * <li>a snapshot is reused by subscribers connecting within the configured time window after it was created. To make
+ * a reused snapshot consistent, the events emitted since the snapshot creation are appended to it</li>
+ * <li>each subscriber has its own bounded event queue, drained on a dedicated scheduler worker, so a slow subscriber
+ * does not delay the source stream or other subscribers. Events are emitted only as requested by the subscriber, and
+ * an event stays pending until it is delivered. A subscriber with more than the configured number of pending
+ * events is evicted by terminating its stream with {@link MissingBackpressureException}</li>
+ * </ul>
+ * The source stream is subscribed to when the first subscriber arrives, and unsubscribed from when the last one leaves.
+ * If the source stream terminates, all current subscribers are terminated with the same signal.
+ */
+public class SharedSnapshotStream<T> {
+
+    private final Observable<T> source;
+    private final Supplier<List<T>> snapshotSupplier;
+    private final long snapshotReuseMs;
+    private final int maxPendingEvents;
+    private final Scheduler scheduler;
+
+    private final Registry registry;
+    private final String subscribersMetricName;
+    private final Counter evictionsCounter;
+    private final Counter snapshotsCreatedCounter;
+    private final Counter snapshotsReusedCounter;
+
+    private final Object lock = new Object();
+    private final List<SubscriberQueue> subscribers = new CopyOnWriteArrayList<>();
+
+    private Subscription sourceSubscription;
+    private CachedSnapshot cachedSnapshot;
+
+    public SharedSnapshotStream(Observable<T> source,
+                                Supplier<List<T>> snapshotSupplier,
+                                long snapshotReuseMs,
+                                int maxPendingEvents,
+                                String metricNameRoot,
+                                Registry registry,
+                                Scheduler scheduler) {
+        Preconditions.checkArgument(maxPendingEvents > 0, "maxPendingEvents must be > 0");
+        this.source = source;
+        this.snapshotSupplier = snapshotSupplier;
+        this.snapshotReuseMs = snapshotReuseMs;
+        this.maxPendingEvents = maxPendingEvents;
+        this.scheduler = scheduler;
+
+        this.registry = registry;
+        this.subscribersMetricName = metricNameRoot + "subscribers";
+        this.evictionsCounter = registry.counter(metricNameRoot + "evictions");
+        this.snapshotsCreatedCounter = registry.counter(metricNameRoot + "snapshotsCreated");
+        this.snapshotsReusedCounter = registry.counter(metricNameRoot + "snapshotsReused");
+        PolledMeter.using(registry).withName(subscribersMetricName).monitorSize(subscribers);
+    }
+
+    public void shutdown() {
+        synchronized (lock) {
+            for (SubscriberQueue subscriber : subscribers) {
+                subscriber.terminate(null);
+            }
+            subscribers.clear();
+            disconnect();
+        }
+        PolledMeter.remove(registry, registry.createId(subscribersMetricName));
+    }
+
+    /**
+     * Returns an observable emitting the current snapshot followed by the live events.
+     */
+    public Observable<T> observe() {
+        return Observable.unsafeCreate(subscriber -> {
+            SubscriberQueue queue = new SubscriberQueue(subscriber);
+            subscriber.add(Subscriptions.create(() -> unregister(queue)));
+            subscriber.setProducer(queue);
+            register(queue);
+        });
+    }
+
+    private void register(SubscriberQueue subscriber) {
+        CachedSnapshot pendingSnapshot = null;
+        synchronized (lock) {
+            subscribers.add(subscriber);
+            if (sourceSubscription == null) {
+                connect();
+            }
+            long now = scheduler.now();
+            if (cachedSnapshot != null && cachedSnapshot.isReusable(now)) {
+                snapshotsReusedCounter.increment();
+                subscriber.setHead(cachedSnapshot.toHead());
+                return;
+            }
+            // Start recording events before the snapshot is built, so no update is lost if it is reused later.
+            if (cachedSnapshot == null || cachedSnapshot.isExpired(now)) {
+                pendingSnapshot = new CachedSnapshot(now);
+                cachedSnapshot = pendingSnapshot;
+            }
+        }
+
+        List<T> snapshot;
+        try {
+            snapshot = snapshotSupplier.get();
+        } catch (Exception e) {
+            synchronized (lock) {
+                if (cachedSnapshot == pendingSnapshot) {
+                    cachedSnapshot = null;
+                }
+                if (subscribers.remove(subscriber)) {
+                    disconnectIfNoSubscribers();
+                }
+            }
+            subscriber.terminate(e);
+            return;
+        }
+        snapshotsCreatedCounter.increment();
+
+        synchronized (lock) {
+            if (pendingSnapshot != null && cachedSnapshot == pendingSnapshot) {
+                pendingSnapshot.complete(snapshot);
+            }
+        }
+        subscriber.setHead(snapshot);
+    }
+
+    private void unregister(SubscriberQueue subscriber) {
+        synchronized (lock) {
+            if (subscribers.remove(subscriber)) {
+                disconnectIfNoSubscribers();
+            }
+        }
+        subscriber.dispose();
+    }
+
+    private void connect() {
+        sourceSubscription = source.subscribe(this::onSourceEvent, this::onSourceError, this::onSourceCompleted);
+    }
+
+    private void disconnectIfNoSubscribers() {
+        if (subscribers.isEmpty()) {
+            disconnect();
+        }
+    }
+
+    private void disconnect() {
+        ObservableExt.safeUnsubscribe(sourceSubscription);
+        sourceSubscription = null;
+        cachedSnapshot = null;
+    }
+
+    private void onSourceEvent(T event) {
+        synchronized (lock) {
+            if (cachedSnapshot != null) {
+                if (cachedSnapshot.isExpired(scheduler.now()) || !cachedSnapshot.append(event)) {
+                    cachedSnapshot = null;
+                }
+            }
+            for (SubscriberQueue subscriber : subscribers) {
+                if (!subscriber.offer(event)) {
+                    subscribers.remove(subscriber);
+                    evictionsCounter.increment();
+                    subscriber.terminate(new MissingBackpressureException(
+                            "Slow consumer evicted after exceeding the limit of " + maxPendingEvents + " pending events"
+                    ));
+                }
+            }
+            disconnectIfNoSubscribers();
+        }
+    }
+
+    private void onSourceError(Throwable error) {
+        terminateAll(error);
+    }
+
+    private void onSourceCompleted() {
+        terminateAll(null);
+    }
+
+    private void terminateAll(Throwable error) {
+        synchronized (lock) {
+            for (SubscriberQueue subscriber : subscribers) {
+                subscriber.terminate(error);
+            }
+            subscribers.clear();
+            sourceSubscription = null;
+            cachedSnapshot = null;
+        }
+    }
+
+    /**
+     * Snapshot with the events emitted after its creation. The events are recorded from the moment the snapshot
+     * creation starts, so the snapshot combined with the recorded events is never behind the source stream.
+     */
+    private final class CachedSnapshot {
+
+        private final long createTime;
+        private final List<T> tail = new ArrayList<>();
+        private List<T> snapshot;
+
+        private CachedSnapshot(long createTime) {
+            this.createTime = createTime;
+        }
+
+        private void complete(List<T> snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        private boolean isExpired(long now) {
+            return now - createTime > snapshotReuseMs;
+        }
+
+        private boolean isReusable(long now) {
+            return snapshot != null && !isExpired(now);
+        }
+
+        /**
+         * Returns false if too many events were recorded, and the snapshot should no longer be reused.
+         */
+        private boolean append(T event) {
+            if (tail.size() >= maxPendingEvents) {
+                return false;
+            }
+            tail.add(event);
+            return true;
+        }
+
+        private Iterable<T> toHead() {
+            return Iterables.concat(snapshot, new ArrayList<>(tail));
+        }
+    }
+
+    /**
+     * Subscriber state. Events are added by the source stream thread, and delivered to the subscriber by
+     * a scheduler worker, within the amount requested by the subscriber. An event is counted as pending until it is
+     * delivered. The snapshot is delivered first, and it is not counted against the pending events limit.
+     */
+    private final class SubscriberQueue implements Producer {
+
+        private final Subscriber<? super T> subscriber;
+        private final Scheduler.Worker worker;
+
+        private final Queue<T> events = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingEvents = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private volatile Iterable<T> head;
+        private volatile boolean terminated;
+        private volatile Throwable terminalError;
+
+        /**
+         * Accessed from the drain loop only.
+         */
+        private Iterator<T> headIterator;
+        private boolean headDelivered;
+
+        private SubscriberQueue(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+            this.worker = scheduler.createWorker();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n > 0) {
+                BackpressureUtils.getAndAddRequest(requested, n);
+                drain();
+            }
+        }
+
+        private void setHead(Iterable<T> head) {
+            this.head = head;
+            drain();
+        }
+
+        private boolean offer(T event) {
+            if (pendingEvents.incrementAndGet() > maxPendingEvents) {
+                return false;
+            }
+            events.add(event);
+            drain();
+            return true;
+        }
+
+        /**
+         * Completes the subscriber stream once all queued events are delivered, or terminates it immediately with
+         * an error, dropping the queued events.
+         */
+        private void terminate(Throwable error) {
+            this.terminalError = error;
+            this.terminated = true;
+            drain();
+        }
+
+        private void dispose() {
+            events.clear();
+            worker.unsubscribe();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() == 0) {
+                worker.schedule(this::drainLoop);
+            }
+        }
+
+        private void drainLoop() {
+            do {
+                if (subscriber.isUnsubscribed()) {
+                    events.clear();
+                    return;
+                }
+                if (terminalError != null) {
+                    events.clear();
+                    subscriber.onError(terminalError);
+                    worker.unsubscribe();
+                    return;
+                }
+                long limit = requested.get();
+                long emitted = 0;
+                if (!headDelivered) {
+                    if (headIterator == null && head != null) {
+                        headIterator = head.iterator();
+                        head = null;
+                    }
+                    if (headIterator != null) {
+                        while (emitted < limit && headIterator.hasNext()) {
+                            subscriber.onNext(headIterator.next());
+                            emitted++;
+                        }
+                        if (!headIterator.hasNext()) {
+                            headIterator = null;
+                            headDelivered = true;
+                        }
+                    }
+                }
+                if (headDelivered) {
+                    T event;
+                    while (emitted < limit && (event = events.poll()) != null) {
+                        subscriber.onNext(event);
+                        pendingEvents.decrementAndGet();
+                        emitted++;
+                    }
+                    if (terminated && events.isEmpty()) {
+                        subscriber.onCompleted();
+                        worker.unsubscribe();
+                        return;
+                    }
+                }
+                if (emitted > 0) {
+                    BackpressureUtils.produced(requested, emitted);
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+    }
+}
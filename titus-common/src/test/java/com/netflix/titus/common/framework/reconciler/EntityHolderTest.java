@@ -16,8 +16,11 @@
 
 package com.netflix.titus.common.framework.reconciler;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
+import com.netflix.titus.common.util.collections.PersistentHashMap;
 import com.netflix.titus.common.util.tuple.Pair;
 import org.junit.Test;
 
@@ -65,4 +68,51 @@ public class EntityHolderTest {
         assertThat(first(rootV2.getChildren()).getId()).isEqualTo("myChild2");
         assertThat(child1.getId()).isEqualTo("myChild1");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFindNestedChildById() throws Exception {
+        EntityHolder child = newRoot("myChild", "a1").addChild(newRoot("myGrandChild", "g1"));
+        EntityHolder rootV1 = newRoot("myRoot", "as").addChild(child);
+
+        assertThat(rootV1.findChildById("myGrandChild").map(EntityHolder::getEntity)).contains("g1");
+        assertThat(rootV1.findDirectChildById("myGrandChild")).isEmpty();
+
+        // Update the grand child via its parent
+        EntityHolder rootV2 = rootV1.addChild(child.addChild(newRoot("myGrandChild", "g2")));
+        assertThat(rootV2.findChildById("myGrandChild").map(EntityHolder::getEntity)).contains("g2");
+        assertThat(rootV1.findChildById("myGrandChild").map(EntityHolder::getEntity)).contains("g1");
+
+        // Removing the child removes its descendants as well
+        EntityHolder rootV3 = rootV2.removeChild("myChild").getLeft();
+        assertThat(rootV3.findChildById("myGrandChild")).isEmpty();
+    }
+
+    @Test
+    public void testDiffChildren() throws Exception {
+        EntityHolder rootV1 = newRoot("myRoot", "as")
+                .addChild(newRoot("myChild1", "a1"))
+                .addChild(newRoot("myChild2", "a2"));
+        EntityHolder rootV2 = rootV1.removeChild("myChild1").getLeft()
+                .addChild(newRoot("myChild2", "a2_v2"))
+                .addChild(newRoot("myChild3", "a3"));
+
+        List<String> changes = new ArrayList<>();
+        rootV2.diffChildren(rootV1, new PersistentHashMap.DiffListener<String, EntityHolder>() {
+            @Override
+            public void added(String id, EntityHolder child) {
+                changes.add("added:" + id);
+            }
+
+            @Override
+            public void updated(String id, EntityHolder previousChild, EntityHolder child) {
+                changes.add("updated:" + id);
+            }
+
+            @Override
+            public void removed(String id, EntityHolder child) {
+                changes.add("removed:" + id);
+            }
+        });
+        assertThat(changes).containsExactlyInAnyOrder("removed:myChild1", "updated:myChild2", "added:myChild3");
+    }
+}
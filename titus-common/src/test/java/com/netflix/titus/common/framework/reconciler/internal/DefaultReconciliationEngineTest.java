@@ -112,6 +112,23 @@ public class DefaultReconciliationEngineTest {
         assertThat(engine.getReferenceView().getChildren()).isEmpty();
     }
 
+    @Test
+    public void testModelIdChanges() {
+        addChild("child1");
+        addChild("child2");
+        ModelIdChanges added = engine.drainModelIdChanges();
+        assertThat(added.getAddedIds()).containsExactly("child1", "child2");
+        assertThat(added.getRemovedIds()).isEmpty();
+        assertThat(engine.drainModelIdChanges().isEmpty()).isTrue();
+
+        addChild("child3");
+        removeChild("child3");
+        removeChild("child1");
+        ModelIdChanges removed = engine.drainModelIdChanges();
+        assertThat(removed.getAddedIds()).isEmpty();
+        assertThat(removed.getRemovedIds()).containsExactly("child1");
+    }
+
     @Test
     public void testReferenceModelChangeFailure() {
         RuntimeException failure = new RuntimeException("simulated ChangeAction error");
@@ -32,6 +32,7 @@ import com.netflix.titus.testkit.rx.ExtTestSubscriber;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import rx.observers.AssertableSubscriber;
 import rx.schedulers.Schedulers;
 import rx.schedulers.TestScheduler;
@@ -135,9 +136,12 @@ public class DefaultReconciliationFrameworkTest {
         verify(engine, times(1)).closeFinishedTransactions();
         verify(engine, times(1)).triggerActions();
 
-        // Model updates are performed only on the second iteration
+        // The engine did not signal any work, so it is visited again in the next full reconciliation cycle only
         testScheduler.advanceTimeBy(ACTIVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        verify(engine, times(0)).applyModelUpdates();
+        testScheduler.advanceTimeBy(IDLE_TIMEOUT_MS - ACTIVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
         verify(engine, times(1)).applyModelUpdates();
+        verify(engine, times(2)).triggerActions();
 
         // Now remove the engine
         ExtTestSubscriber<Void> removeSubscriber = new ExtTestSubscriber<>();
@@ -150,7 +154,26 @@ public class DefaultReconciliationFrameworkTest {
                 removeSubscriber::onError
         );
         testScheduler.advanceTimeBy(IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-        verify(engine, times(1)).triggerActions();
+        verify(engine, times(2)).triggerActions();
+    }
+
+    @Test
+    public void testOnlyReadyEnginesAreVisitedInNonFullCycle() {
+        framework.newEngine(EntityHolder.newRoot("myRoot1", "myEntity1")).subscribe();
+        framework.newEngine(EntityHolder.newRoot("myRoot2", "myEntity2")).subscribe();
+        testScheduler.triggerActions();
+
+        ArgumentCaptor<Runnable> readyListenerCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(engine1).setReadyListener(readyListenerCaptor.capture());
+
+        // Engine1 signals pending work
+        readyListenerCaptor.getValue().run();
+        testScheduler.advanceTimeBy(ACTIVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        verify(engine1, times(1)).applyModelUpdates();
+        verify(engine1, times(2)).emitEvents();
+        verify(engine2, times(0)).applyModelUpdates();
+        verify(engine2, times(1)).emitEvents();
     }
 
     @Test
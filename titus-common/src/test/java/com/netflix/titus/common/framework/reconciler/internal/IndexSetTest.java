@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.common.framework.reconciler.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.ImmutableMap;
+import com.netflix.titus.common.framework.reconciler.EntityHolder;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexSetTest {
+
+    private final Map<Object, Comparator<EntityHolder>> comparators = ImmutableMap.<Object, Comparator<EntityHolder>>builder()
+            .put("ascending", Comparator.comparing(EntityHolder::getEntity))
+            .put("descending", Comparator.<EntityHolder, String>comparing(EntityHolder::getEntity).reversed())
+            .build();
+
+    @Test
+    public void testAddUpdateRemove() {
+        IndexSet<EntityHolder> indexSet = IndexSet.newIndexSet(comparators, EntityHolder::getId);
+
+        IndexSet<EntityHolder> v1 = indexSet.apply(
+                Arrays.asList(EntityHolder.newRoot("id1", "b"), EntityHolder.newRoot("id2", "a"), EntityHolder.newRoot("id3", "c")),
+                Collections.emptyList()
+        );
+        assertThat(entities(v1, "ascending")).containsExactly("a", "b", "c");
+        assertThat(entities(v1, "descending")).containsExactly("c", "b", "a");
+
+        IndexSet<EntityHolder> v2 = v1.apply(Collections.singletonList(EntityHolder.newRoot("id2", "d")), Collections.singletonList("id1"));
+        assertThat(entities(v2, "ascending")).containsExactly("c", "d");
+
+        // Previous version is not affected
+        assertThat(entities(v1, "ascending")).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    public void testItemsWithEqualOrderAreKept() {
+        IndexSet<EntityHolder> indexSet = IndexSet.<EntityHolder>newIndexSet(comparators, EntityHolder::getId).apply(
+                Arrays.asList(EntityHolder.newRoot("id1", "a"), EntityHolder.newRoot("id2", "a")),
+                Collections.emptyList()
+        );
+        assertThat(indexSet.getOrdered("ascending").stream().map(EntityHolder::getId)).containsExactly("id1", "id2");
+    }
+
+    @Test
+    public void testReplaceAll() {
+        EntityHolder holder1 = EntityHolder.newRoot("id1", "a");
+        EntityHolder holder2 = EntityHolder.newRoot("id2", "b");
+        IndexSet<EntityHolder> v1 = IndexSet.newIndexSet(comparators, EntityHolder::getId).replaceAll(Arrays.asList(holder1, holder2));
+        assertThat(entities(v1, "ascending")).containsExactly("a", "b");
+
+        // Nothing changed
+        assertThat(v1.replaceAll(Arrays.asList(holder2, holder1))).isSameAs(v1);
+
+        IndexSet<EntityHolder> v2 = v1.replaceAll(Arrays.asList(holder2, EntityHolder.newRoot("id3", "0")));
+        assertThat(entities(v2, "ascending")).containsExactly("0", "b");
+    }
+
+    private List<String> entities(IndexSet<EntityHolder> indexSet, String indexId) {
+        return indexSet.getOrdered(indexId).stream().map(h -> (String) h.getEntity()).collect(Collectors.toList());
+    }
+}
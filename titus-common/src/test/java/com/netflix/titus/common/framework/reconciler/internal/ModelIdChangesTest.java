@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.common.framework.reconciler.internal;
+
+import com.netflix.titus.common.framework.reconciler.EntityHolder;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ModelIdChangesTest {
+
+    @Test
+    public void testBetween() {
+        EntityHolder child1 = EntityHolder.newRoot("child1", "a").addChild(EntityHolder.newRoot("grandChild1", "x"));
+        EntityHolder v1 = EntityHolder.newRoot("root", "r")
+                .addChild(child1)
+                .addChild(EntityHolder.newRoot("child2", "b"));
+        EntityHolder v2 = v1.removeChild("child2").getLeft()
+                .addChild(child1.removeChild("grandChild1").getLeft())
+                .addChild(EntityHolder.newRoot("child3", "c").addChild(EntityHolder.newRoot("grandChild3", "y")));
+
+        ModelIdChanges changes = ModelIdChanges.between(v1, v2);
+        assertThat(changes.getAddedIds()).containsExactlyInAnyOrder("child3", "grandChild3");
+        assertThat(changes.getRemovedIds()).containsExactlyInAnyOrder("child2", "grandChild1");
+    }
+
+    @Test
+    public void testBetweenUnchangedChildren() {
+        EntityHolder v1 = EntityHolder.newRoot("root", "r").addChild(EntityHolder.newRoot("child1", "a"));
+        EntityHolder v2 = v1.setEntity("r2");
+
+        assertThat(ModelIdChanges.between(v1, v2).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testMerge() {
+        EntityHolder v1 = EntityHolder.newRoot("root", "r").addChild(EntityHolder.newRoot("child1", "a"));
+        EntityHolder v2 = v1.addChild(EntityHolder.newRoot("child2", "b"));
+        EntityHolder v3 = v2.removeChild("child2").getLeft().removeChild("child1").getLeft();
+
+        ModelIdChanges merged = ModelIdChanges.between(v1, v2).merge(ModelIdChanges.between(v2, v3));
+        assertThat(merged.getAddedIds()).isEmpty();
+        assertThat(merged.getRemovedIds()).containsExactly("child1");
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.common.framework.reconciler.internal;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.ImmutableMap;
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.titus.common.framework.reconciler.EntityHolder;
+import com.netflix.titus.common.framework.reconciler.ReconciliationEngine;
+import com.netflix.titus.common.framework.reconciler.internal.SimpleReconcilerEvent.EventType;
+import com.netflix.titus.testkit.rx.ExtTestSubscriber;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ShardedReconciliationFrameworkTest {
+
+    private static final long IDLE_TIMEOUT_MS = 100;
+    private static final long ACTIVE_TIMEOUT_MS = 20;
+    private static final int STOP_TIMEOUT_MS = 1_000;
+    private static final int SHARD_COUNT = 4;
+    private static final int ENGINE_COUNT = 20;
+
+    private final TestScheduler testScheduler = Schedulers.test();
+
+    private final Map<Object, Comparator<EntityHolder>> indexComparators = ImmutableMap.<Object, Comparator<EntityHolder>>builder()
+            .put("ascending", Comparator.comparing(EntityHolder::getEntity))
+            .put("descending", Comparator.<EntityHolder, String>comparing(EntityHolder::getEntity).reversed())
+            .build();
+
+    private final PublishSubject<SimpleReconcilerEvent> engineEvents = PublishSubject.create();
+
+    private final ShardedReconciliationFramework<SimpleReconcilerEvent> framework = new ShardedReconciliationFramework<>(
+            Collections.emptyList(),
+            this::newEngine,
+            IDLE_TIMEOUT_MS,
+            ACTIVE_TIMEOUT_MS,
+            indexComparators,
+            SHARD_COUNT,
+            new DefaultRegistry(),
+            Optional.of(testScheduler)
+    );
+
+    @Before
+    public void setUp() {
+        framework.start();
+    }
+
+    @After
+    public void tearDown() {
+        framework.stop(STOP_TIMEOUT_MS);
+    }
+
+    @Test
+    public void testEnginesArePartitionedAcrossShards() {
+        for (int i = 0; i < ENGINE_COUNT; i++) {
+            framework.newEngine(EntityHolder.newRoot("myRoot" + i, String.format("myEntity%02d", i))).subscribe();
+        }
+        testScheduler.triggerActions();
+
+        for (int i = 0; i < ENGINE_COUNT; i++) {
+            assertThat(framework.findEngineByRootId("myRoot" + i)).isPresent();
+        }
+        long usedShards = framework.orderedView("ascending").stream()
+                .map(holder -> ShardedReconciliationFramework.shardOf(holder.getId(), SHARD_COUNT))
+                .distinct()
+                .count();
+        assertThat(usedShards).isGreaterThan(1);
+    }
+
+    @Test
+    public void testOrderedViewsAreMerged() {
+        for (int i = 0; i < ENGINE_COUNT; i++) {
+            framework.newEngine(EntityHolder.newRoot("myRoot" + i, String.format("myEntity%02d", i))).subscribe();
+        }
+        testScheduler.triggerActions();
+
+        List<String> ascending = entities(framework.orderedView("ascending"));
+        assertThat(ascending).hasSize(ENGINE_COUNT).isSorted();
+
+        List<String> descending = entities(framework.orderedView("descending"));
+        Collections.reverse(descending);
+        assertThat(descending).isEqualTo(ascending);
+
+        // Cached merged view is returned if nothing changed
+        assertThat(framework.orderedView("ascending")).isSameAs(framework.orderedView("ascending"));
+    }
+
+    @Test
+    public void testEngineRemove() {
+        ExtTestSubscriber<ReconciliationEngine<SimpleReconcilerEvent>> addSubscriber = new ExtTestSubscriber<>();
+        framework.newEngine(EntityHolder.newRoot("myRoot1", "myEntity1")).subscribe(addSubscriber);
+        testScheduler.triggerActions();
+
+        ReconciliationEngine<SimpleReconcilerEvent> engine = addSubscriber.takeNext();
+        framework.removeEngine(engine).subscribe();
+        testScheduler.triggerActions();
+
+        assertThat(framework.findEngineByRootId("myRoot1")).isNotPresent();
+        assertThat(framework.orderedView("ascending")).isEmpty();
+    }
+
+    @Test
+    public void testEventsFromAllShardsArePublished() {
+        for (int i = 0; i < ENGINE_COUNT; i++) {
+            framework.newEngine(EntityHolder.newRoot("myRoot" + i, "myEntity" + i)).subscribe();
+        }
+        testScheduler.triggerActions();
+
+        ExtTestSubscriber<SimpleReconcilerEvent> eventSubscriber = new ExtTestSubscriber<>();
+        framework.events().subscribe(eventSubscriber);
+
+        engineEvents.onNext(new SimpleReconcilerEvent(EventType.Changed, "event1", Optional.empty()));
+        assertThat(eventSubscriber.takeNext(ENGINE_COUNT)).extracting(SimpleReconcilerEvent::getMessage).containsOnly("event1");
+    }
+
+    private InternalReconciliationEngine<SimpleReconcilerEvent> newEngine(EntityHolder bootstrapModel) {
+        InternalReconciliationEngine<SimpleReconcilerEvent> engine = mock(InternalReconciliationEngine.class);
+        when(engine.getReferenceView()).thenReturn(bootstrapModel);
+        when(engine.events()).thenReturn(engineEvents.asObservable());
+        when(engine.triggerActions()).thenReturn(true);
+        when(engine.drainModelIdChanges()).thenReturn(ModelIdChanges.empty());
+        return engine;
+    }
+
+    private List<String> entities(List<EntityHolder> holders) {
+        return holders.stream().map(h -> (String) h.getEntity()).collect(Collectors.toList());
+    }
+}
@@ -19,6 +19,7 @@ package com.netflix.titus.common.network.http.internal.okhttp;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Charsets;
@@ -30,6 +31,7 @@ import com.netflix.titus.common.network.http.Response;
 import com.netflix.titus.common.network.http.RxHttpClient;
 import com.netflix.titus.common.network.http.StatusCode;
 import com.netflix.titus.common.network.http.internal.RoundRobinEndpointResolver;
+import com.netflix.titus.common.util.AwaitExt;
 import okhttp3.Interceptor;
 import okhttp3.internal.tls.SslClient;
 import okhttp3.mockwebserver.MockResponse;
@@ -247,4 +249,59 @@ public class RxOkHttpClientTest {
         Assertions.assertThat(recordedRequest).isNotNull();
         Assertions.assertThat(recordedRequest.getBodySize()).isLessThanOrEqualTo(0);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMaxRequestsQueuesRequestsAboveLimit() throws Exception {
+        server.enqueue(new MockResponse()
+                .setBody(TEST_RESPONSE_BODY)
+                .setResponseCode(StatusCode.OK.getCode())
+                .setHeadersDelay(500, TimeUnit.MILLISECONDS));
+        server.enqueue(new MockResponse()
+                .setBody(TEST_RESPONSE_BODY)
+                .setResponseCode(StatusCode.OK.getCode()));
+
+        RxHttpClient client = RxOkHttpClient.newBuilder()
+                .maxRequests(1, 1)
+                .build();
+
+        String url = server.url("/").toString();
+        CountDownLatch latch = new CountDownLatch(2);
+        client.get(url).subscribe(response -> latch.countDown());
+        client.get(url).subscribe(response -> latch.countDown());
+
+        RecordedRequest firstRequest = server.takeRequest(1, TimeUnit.SECONDS);
+        Assertions.assertThat(firstRequest).isNotNull();
+        Assertions.assertThat(server.takeRequest(200, TimeUnit.MILLISECONDS)).isNull();
+
+        Assertions.assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        Assertions.assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testConnectionPoolEvictsIdleConnections() throws Exception {
+        server.enqueue(new MockResponse()
+                .setBody(TEST_RESPONSE_BODY)
+                .setResponseCode(StatusCode.OK.getCode()));
+        server.enqueue(new MockResponse()
+                .setBody(TEST_RESPONSE_BODY)
+                .setResponseCode(StatusCode.OK.getCode()));
+
+        RxOkHttpClient client = RxOkHttpClient.newBuilder()
+                .connectionPool(1, 100)
+                .build();
+
+        String url = server.url("/").toString();
+        Response firstResponse = client.get(url).toBlocking().first();
+        Assertions.assertThat(firstResponse.getBody().get(String.class)).isEqualTo(TEST_RESPONSE_BODY);
+        Assertions.assertThat(server.takeRequest(1, TimeUnit.SECONDS).getSequenceNumber()).isEqualTo(0);
+
+        boolean evicted = AwaitExt.awaitUntil(() -> client.connectionPool().connectionCount() == 0, 5, TimeUnit.SECONDS);
+        Assertions.assertThat(evicted).describedAs("Idle connection not evicted").isTrue();
+
+        Response secondResponse = client.get(url).toBlocking().first();
+        Assertions.assertThat(secondResponse.getBody().get(String.class)).isEqualTo(TEST_RESPONSE_BODY);
+
+        // The idle connection was evicted after the keep alive duration, so a new connection was opened.
+        Assertions.assertThat(server.takeRequest(1, TimeUnit.SECONDS).getSequenceNumber()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.common.util.collections;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PersistentHashMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty()
+                .put("a", 1)
+                .put("b", 2)
+                .put("c", 3);
+
+        assertThat(map.size()).isEqualTo(3);
+        assertThat(map.get("a")).isEqualTo(1);
+        assertThat(map.containsKey("d")).isFalse();
+        assertThat(map.values()).containsExactlyInAnyOrder(1, 2, 3);
+
+        PersistentHashMap<String, Integer> updated = map.put("b", 20).remove("a");
+        assertThat(updated.size()).isEqualTo(2);
+        assertThat(updated.get("b")).isEqualTo(20);
+        assertThat(updated.get("a")).isNull();
+        assertThat(map.get("a")).isEqualTo(1);
+        assertThat(map.get("b")).isEqualTo(2);
+    }
+
+    @Test
+    public void testNoOpUpdatesReturnSameInstance() {
+        Integer value = 1;
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().put("a", value);
+
+        assertThat(map.put("a", value)).isSameAs(map);
+        assertThat(map.remove("b")).isSameAs(map);
+        assertThat(map.remove("a").isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testHashCollisions() {
+        PersistentHashMap<CollidingKey, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 10; i++) {
+            map = map.put(new CollidingKey(i), i);
+        }
+        assertThat(map.size()).isEqualTo(10);
+        for (int i = 0; i < 10; i++) {
+            assertThat(map.get(new CollidingKey(i))).isEqualTo(i);
+        }
+        for (int i = 0; i < 10; i += 2) {
+            map = map.remove(new CollidingKey(i));
+        }
+        assertThat(map.size()).isEqualTo(5);
+        assertThat(map.values()).containsExactlyInAnyOrder(1, 3, 5, 7, 9);
+    }
+
+    @Test
+    public void testRandomOperationsAgainstHashMap() {
+        Random random = new Random(123);
+        Map<Integer, Integer> expected = new HashMap<>();
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+
+        for (int i = 0; i < 20_000; i++) {
+            int key = random.nextInt(2_000) * 65_537;
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                expected.put(key, i);
+                map = map.put(key, i);
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        Map<Integer, Integer> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    public void testDiff() {
+        PersistentHashMap<Integer, String> previous = PersistentHashMap.empty();
+        for (int i = 0; i < 1_000; i++) {
+            previous = previous.put(i, "v" + i);
+        }
+        PersistentHashMap<Integer, String> current = previous
+                .put(1_000, "new")
+                .put(5, "updated")
+                .remove(7)
+                .put(1_001, "transient")
+                .remove(1_001);
+
+        RecordingDiffListener listener = new RecordingDiffListener();
+        current.diff(previous, listener);
+
+        assertThat(listener.added).containsOnlyKeys(1_000);
+        assertThat(listener.updated).containsOnlyKeys(5).containsValue("updated");
+        assertThat(listener.removed).containsOnlyKeys(7);
+
+        RecordingDiffListener noChanges = new RecordingDiffListener();
+        current.diff(current, noChanges);
+        assertThat(noChanges.added).isEmpty();
+        assertThat(noChanges.updated).isEmpty();
+        assertThat(noChanges.removed).isEmpty();
+    }
+
+    @Test
+    public void testRandomDiffAgainstHashMap() {
+        Random random = new Random(123);
+        PersistentHashMap<Integer, String> previous = PersistentHashMap.empty();
+        for (int i = 0; i < 2_000; i++) {
+            previous = previous.put(random.nextInt(5_000) * 65_537, "v" + i);
+        }
+        PersistentHashMap<Integer, String> current = previous;
+        for (int i = 0; i < 200; i++) {
+            int key = random.nextInt(5_000) * 65_537;
+            current = random.nextBoolean() ? current.remove(key) : current.put(key, "u" + i);
+        }
+
+        Map<Integer, String> expected = new HashMap<>();
+        previous.forEach(expected::put);
+        RecordingDiffListener listener = new RecordingDiffListener();
+        current.diff(previous, listener);
+        listener.removed.keySet().forEach(expected::remove);
+        expected.putAll(listener.added);
+        expected.putAll(listener.updated);
+
+        Map<Integer, String> actual = new HashMap<>();
+        current.forEach(actual::put);
+        assertThat(expected).isEqualTo(actual);
+    }
+
+    private static class RecordingDiffListener implements PersistentHashMap.DiffListener<Integer, String> {
+
+        private final Map<Integer, String> added = new HashMap<>();
+        private final Map<Integer, String> updated = new HashMap<>();
+        private final Map<Integer, String> removed = new HashMap<>();
+
+        @Override
+        public void added(Integer key, String value) {
+            added.put(key, value);
+        }
+
+        @Override
+        public void updated(Integer key, String previousValue, String newValue) {
+            updated.put(key, newValue);
+        }
+
+        @Override
+        public void removed(Integer key, String value) {
+            removed.put(key, value);
+        }
+    }
+
+    private static class CollidingKey {
+
+        private final int value;
+
+        private CollidingKey(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.common.util.collections;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PersistentSortedMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        PersistentSortedMap<String, Integer> map = PersistentSortedMap.<String, Integer>empty()
+                .put("b", 2)
+                .put("a", 1)
+                .put("c", 3);
+
+        assertThat(map.size()).isEqualTo(3);
+        assertThat(map.get("a")).isEqualTo(1);
+        assertThat(map.containsKey("d")).isFalse();
+        assertThat(map.keys()).containsExactly("a", "b", "c");
+        assertThat(map.values()).containsExactly(1, 2, 3);
+
+        PersistentSortedMap<String, Integer> updated = map.put("b", 20).remove("a");
+        assertThat(updated.keys()).containsExactly("b", "c");
+        assertThat(updated.get("b")).isEqualTo(20);
+    }
+
+    @Test
+    public void testPreviousVersionIsNotModified() {
+        PersistentSortedMap<String, Integer> v1 = PersistentSortedMap.<String, Integer>empty().put("a", 1);
+        PersistentSortedMap<String, Integer> v2 = v1.put("b", 2);
+        PersistentSortedMap<String, Integer> v3 = v2.remove("a");
+
+        assertThat(v1.keys()).containsExactly("a");
+        assertThat(v2.keys()).containsExactly("a", "b");
+        assertThat(v3.keys()).containsExactly("b");
+    }
+
+    @Test
+    public void testHeadCountAndValuesAfter() {
+        PersistentSortedMap<Integer, String> map = PersistentSortedMap.empty();
+        for (int i = 0; i < 100; i += 2) {
+            map = map.put(i, "v" + i);
+        }
+
+        assertThat(map.headCount(10, false)).isEqualTo(5);
+        assertThat(map.headCount(10, true)).isEqualTo(6);
+        assertThat(map.headCount(11, true)).isEqualTo(6);
+        assertThat(map.headCount(-1, true)).isEqualTo(0);
+        assertThat(map.headCount(1000, false)).isEqualTo(50);
+
+        assertThat(ImmutableList.copyOf(map.valuesAfter(93))).containsExactly("v94", "v96", "v98");
+        assertThat(ImmutableList.copyOf(map.valuesAfter(94))).containsExactly("v96", "v98");
+        assertThat(ImmutableList.copyOf(map.valuesAfter(-1))).hasSize(50).startsWith("v0", "v2");
+        assertThat(map.valuesAfter(98).hasNext()).isFalse();
+    }
+
+    @Test
+    public void testNoOpUpdatesReturnSameInstance() {
+        Integer value = 1;
+        PersistentSortedMap<String, Integer> map = PersistentSortedMap.<String, Integer>empty().put("a", value);
+
+        assertThat(map.put("a", value)).isSameAs(map);
+        assertThat(map.remove("b")).isSameAs(map);
+    }
+
+    @Test
+    public void testRandomOperationsAgainstTreeMap() {
+        Random random = new Random(123);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        PersistentSortedMap<Integer, Integer> map = PersistentSortedMap.empty();
+
+        for (int i = 0; i < 10_000; i++) {
+            int key = random.nextInt(1_000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                expected.put(key, i);
+                map = map.put(key, i);
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        assertThat(map.keys()).containsExactlyElementsOf(expected.keySet());
+        assertThat(map.values()).containsExactlyElementsOf(expected.values());
+    }
+
+    @Test
+    public void testCustomComparator() {
+        List<Integer> keys = new ArrayList<>();
+        PersistentSortedMap<Integer, Integer> map = PersistentSortedMap.empty(Collections.reverseOrder());
+        for (int i = 0; i < 100; i++) {
+            keys.add(i);
+            map = map.put(i, i);
+        }
+        Collections.reverse(keys);
+        assertThat(map.keys()).containsExactlyElementsOf(keys);
+    }
+}
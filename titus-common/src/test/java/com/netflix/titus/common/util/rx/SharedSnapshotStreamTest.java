@@ -0,0 +1,162 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.common.util.rx;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.titus.testkit.rx.ExtTestSubscriber;
+import org.junit.After;
+import org.junit.Test;
+import rx.exceptions.MissingBackpressureException;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SharedSnapshotStreamTest {
+
+    private static final long SNAPSHOT_REUSE_MS = 1_000;
+    private static final int MAX_PENDING_EVENTS = 2;
+
+    private final TestScheduler testScheduler = new TestScheduler();
+
+    private final PublishSubject<String> source = PublishSubject.create();
+    private final AtomicInteger snapshotCounter = new AtomicInteger();
+
+    private final SharedSnapshotStream<String> stream = new SharedSnapshotStream<>(
+            source,
+            () -> singletonList("S" + snapshotCounter.incrementAndGet()),
+            SNAPSHOT_REUSE_MS,
+            MAX_PENDING_EVENTS,
+            "test.",
+            new DefaultRegistry(),
+            testScheduler
+    );
+
+    @After
+    public void tearDown() {
+        stream.shutdown();
+    }
+
+    @Test
+    public void testSnapshotFollowedByEvents() {
+        ExtTestSubscriber<String> subscriber = new ExtTestSubscriber<>();
+        stream.observe().subscribe(subscriber);
+        testScheduler.triggerActions();
+        assertThat(subscriber.takeNext()).isEqualTo("S1");
+
+        source.onNext("A");
+        source.onNext("B");
+        testScheduler.triggerActions();
+        assertThat(subscriber.takeNext(2)).containsExactly("A", "B");
+    }
+
+    @Test
+    public void testSnapshotIsReusedWithinTimeWindow() {
+        ExtTestSubscriber<String> first = new ExtTestSubscriber<>();
+        stream.observe().subscribe(first);
+        source.onNext("A");
+
+        // The second subscriber gets the cached snapshot, and the events emitted after it was created.
+        ExtTestSubscriber<String> second = new ExtTestSubscriber<>();
+        stream.observe().subscribe(second);
+        source.onNext("B");
+        testScheduler.triggerActions();
+
+        assertThat(first.takeNext(3)).containsExactly("S1", "A", "B");
+        assertThat(second.takeNext(3)).containsExactly("S1", "A", "B");
+
+        testScheduler.advanceTimeBy(SNAPSHOT_REUSE_MS + 1, TimeUnit.MILLISECONDS);
+        ExtTestSubscriber<String> third = new ExtTestSubscriber<>();
+        stream.observe().subscribe(third);
+        testScheduler.triggerActions();
+        assertThat(third.takeNext()).isEqualTo("S2");
+        assertThat(snapshotCounter.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSlowConsumerIsEvicted() {
+        ExtTestSubscriber<String> subscriber = new ExtTestSubscriber<>();
+        stream.observe().subscribe(subscriber);
+        testScheduler.triggerActions();
+        assertThat(subscriber.takeNext()).isEqualTo("S1");
+
+        // Events are not delivered until the scheduler runs, so the pending events limit is exceeded.
+        for (String event : asList("A", "B", "C")) {
+            source.onNext(event);
+        }
+        testScheduler.triggerActions();
+
+        assertThat(subscriber.takeNext()).isNull();
+        subscriber.assertOnError(MissingBackpressureException.class);
+        assertThat(source.hasObservers()).isFalse();
+    }
+
+    @Test
+    public void testEventsAreDeliveredOnRequestAndCountedUntilDelivered() {
+        TestSubscriber<String> subscriber = new TestSubscriber<>(1);
+        stream.observe().subscribe(subscriber);
+        testScheduler.triggerActions();
+        subscriber.assertValues("S1");
+
+        // Not requested events stay pending, even though the scheduler runs.
+        source.onNext("A");
+        source.onNext("B");
+        testScheduler.triggerActions();
+        subscriber.assertValues("S1");
+
+        subscriber.requestMore(1);
+        testScheduler.triggerActions();
+        subscriber.assertValues("S1", "A");
+
+        // One event pending, so two more exceed the limit.
+        source.onNext("C");
+        source.onNext("D");
+        testScheduler.triggerActions();
+        subscriber.assertError(MissingBackpressureException.class);
+        assertThat(source.hasObservers()).isFalse();
+    }
+
+    @Test
+    public void testSourceIsSharedAndReleasedWithLastSubscriber() {
+        ExtTestSubscriber<String> first = new ExtTestSubscriber<>();
+        ExtTestSubscriber<String> second = new ExtTestSubscriber<>();
+        stream.observe().subscribe(first);
+        stream.observe().subscribe(second);
+        assertThat(source.hasObservers()).isTrue();
+
+        first.unsubscribe();
+        assertThat(source.hasObservers()).isTrue();
+        second.unsubscribe();
+        assertThat(source.hasObservers()).isFalse();
+    }
+
+    @Test
+    public void testSourceErrorIsPropagated() {
+        ExtTestSubscriber<String> subscriber = new ExtTestSubscriber<>();
+        stream.observe().subscribe(subscriber);
+        source.onError(new RuntimeException("simulated error"));
+        testScheduler.triggerActions();
+
+        subscriber.assertOnError(RuntimeException.class);
+    }
+}
@@ -65,6 +65,21 @@ public class EmbeddedCassandraStoreFactory {
         public int getConcurrencyLimit() {
             return 10;
         }
+
+        @Override
+        public boolean isJobStoreWriteCoalescingEnabled() {
+            return false;
+        }
+
+        @Override
+        public long getJobStoreWriteCoalescingWindowMs() {
+            return 10;
+        }
+
+        @Override
+        public String getJobStoreRecordFormat() {
+            return "Json";
+        }
     };
 
     private final Session session;
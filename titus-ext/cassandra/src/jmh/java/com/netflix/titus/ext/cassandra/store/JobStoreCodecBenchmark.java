@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.ext.cassandra.store;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableMap;
+import com.netflix.titus.api.jobmanager.model.job.BatchJobTask;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.json.ObjectMappers;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures encode/decode throughput of the job store record formats. The encoded record sizes are logged during
+ * the setup, as they translate directly into the Cassandra row size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JobStoreCodecBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobStoreCodecBenchmark.class);
+
+    private static final int SAMPLE_SIZE = 100;
+
+    @Param({"Json", "CompactBinary"})
+    public String format;
+
+    private JobStoreCodec codec;
+
+    private List<Job<BatchJobExt>> jobs;
+    private Task[] tasks;
+    private String[] jobRecords;
+    private String[] taskRecords;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        codec = new JobStoreCodec(ObjectMappers.storeMapper(), JobStoreCodec.parseFormat(format));
+
+        jobs = JobGenerator.batchJobs(JobDescriptorGenerator.oneTaskBatchJobDescriptor()).toList(SAMPLE_SIZE);
+        tasks = new Task[SAMPLE_SIZE];
+        jobRecords = new String[SAMPLE_SIZE];
+        taskRecords = new String[SAMPLE_SIZE];
+
+        long jobBytes = 0;
+        long taskBytes = 0;
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            tasks[i] = newStartedTask(jobs.get(i));
+            jobRecords[i] = codec.encode(jobs.get(i));
+            taskRecords[i] = codec.encode(tasks[i]);
+            jobBytes += jobRecords[i].length();
+            taskBytes += taskRecords[i].length();
+        }
+        logger.info("Record format {}: average job record size={}, average task record size={}",
+                format, jobBytes / SAMPLE_SIZE, taskBytes / SAMPLE_SIZE
+        );
+    }
+
+    @Benchmark
+    public String encodeJob() {
+        return codec.encode(jobs.get(nextIndex()));
+    }
+
+    @Benchmark
+    public String encodeTask() {
+        return codec.encode(tasks[nextIndex()]);
+    }
+
+    @Benchmark
+    public Job decodeJob() {
+        return codec.decode(jobRecords[nextIndex()], Job.class);
+    }
+
+    @Benchmark
+    public Task decodeTask() {
+        return codec.decode(taskRecords[nextIndex()], Task.class);
+    }
+
+    private int nextIndex() {
+        next = (next + 1) % SAMPLE_SIZE;
+        return next;
+    }
+
+    /**
+     * A task in the started state, with the full status history and the task context populated, as stored
+     * for the majority of the active tasks.
+     */
+    private static Task newStartedTask(Job<BatchJobExt> job) {
+        BatchJobTask task = JobGenerator.batchTasks(job).getValue().toBuilder()
+                .addAllToTaskContext(ImmutableMap.of(
+                        "agent.host", "agent1.titus.net",
+                        "agent.zone", "us-east-1c",
+                        "agent.asg", "titusagent-main-v001"
+                ))
+                .build();
+        Task launched = JobFunctions.changeTaskStatus(task, TaskState.Launched, "launched", "Task launched");
+        Task startInitiated = JobFunctions.changeTaskStatus(launched, TaskState.StartInitiated, "starting", "Creating container");
+        return JobFunctions.changeTaskStatus(startInitiated, TaskState.Started, "started", "Container started");
+    }
+}
@@ -123,7 +123,7 @@ public class CassandraJobStore implements JobStore {
 
     private final TitusRuntime titusRuntime;
     private final Session session;
-    private final ObjectMapper mapper;
+    private final JobStoreCodec codec;
     private final BalancedBucketManager<String> activeJobIdsBucketManager;
     private final CassandraStoreConfiguration configuration;
     private final Optional<FitInjection> fitDriverInjection;
@@ -164,7 +164,7 @@ public class CassandraJobStore implements JobStore {
             this.fitBadDataInjection = Optional.empty();
         }
 
-        this.mapper = mapper;
+        this.codec = new JobStoreCodec(mapper, JobStoreCodec.parseFormat(configuration.getJobStoreRecordFormat()));
         this.activeJobIdsBucketManager = new BalancedBucketManager<>(initialBucketCount, maxBucketSize, METRIC_NAME_ROOT, titusRuntime.getRegistry());
 
         retrieveActiveJobIdBucketsStatement = session.prepare(RETRIEVE_ACTIVE_JOB_ID_BUCKETS_STRING);
@@ -228,14 +228,23 @@ public class CassandraJobStore implements JobStore {
 
     @Override
     public Observable<Pair<List<Job<?>>, Integer>> retrieveJobs() {
-        Observable result = Observable.fromCallable(() -> {
+        return streamJobs().toList().map(everything -> {
+            List<Job<?>> goodJobs = everything.stream().filter(Either::hasValue).map(Either::getValue).collect(Collectors.toList());
+            int errors = everything.size() - goodJobs.size();
+            return Pair.of(goodJobs, errors);
+        });
+    }
+
+    @Override
+    public Observable<Either<Job<?>, Throwable>> streamJobs() {
+        return Observable.fromCallable(() -> {
             List<String> jobIds = activeJobIdsBucketManager.getItems();
             return jobIds.stream().map(retrieveActiveJobStatement::bind).map(this::execute).collect(Collectors.toList());
         }).flatMap(observables -> Observable.merge(observables, getConcurrencyLimit()).flatMapIterable(resultSet -> {
             List<Row> allRows = resultSet.all();
             if (allRows.isEmpty()) {
                 logger.debug("Job id with no record");
-                return Collections.emptyList();
+                return Collections.<Either<Job<?>, Throwable>>emptyList();
             }
             return allRows.stream()
                     .map(row -> row.getString(0))
@@ -249,10 +258,10 @@ public class CassandraJobStore implements JobStore {
 
                         Job<?> job;
                         try {
-                            job = ObjectMappers.readValue(mapper, effectiveValue, Job.class);
+                            job = codec.decode(effectiveValue, Job.class);
                         } catch (Exception e) {
                             logger.error("Cannot map serialized job data to Job class: {}", effectiveValue, e);
-                            return Either.ofError(e);
+                            return Either.<Job<?>, Throwable>ofError(e);
                         }
 
                         // TODO Remove this code when there are no more jobs with missing migration data (caused by a bug in ServiceJobExt builder).
@@ -270,20 +279,14 @@ public class CassandraJobStore implements JobStore {
                         }
 
                         if (!fitBadDataInjection.isPresent()) {
-                            return Either.ofValue(job);
+                            return Either.<Job<?>, Throwable>ofValue(job);
                         }
 
                         Job<?> effectiveJob = fitBadDataInjection.get().afterImmediate(JobStoreFitAction.ErrorKind.CorruptedJobRecords.name(), job);
-                        return Either.ofValue(effectiveJob);
+                        return Either.<Job<?>, Throwable>ofValue(effectiveJob);
                     })
                     .collect(Collectors.toList());
-        })).toList().map(everything -> {
-            List<Job> goodJobs = (List<Job>) everything.stream().filter(Either::hasValue).map(Either::getValue).collect(Collectors.toList());
-            int errors = everything.size() - goodJobs.size();
-            return Pair.of(goodJobs, errors);
-        });
-
-        return result;
+        }));
     }
 
     @Override
@@ -297,7 +300,7 @@ public class CassandraJobStore implements JobStore {
                 throw JobStoreException.jobDoesNotExist(jobId);
             }
             String value = row.getString(0);
-            return (Job<?>) ObjectMappers.readValue(mapper, value, Job.class);
+            return (Job<?>) codec.decode(value, Job.class);
         }));
     }
 
@@ -306,10 +309,10 @@ public class CassandraJobStore implements JobStore {
         return Observable.fromCallable((Callable<Statement>) () -> {
             String jobId = job.getId();
             checkIfJobAlreadyExists(jobId);
-            String jobJsonString = ObjectMappers.writeValueAsString(mapper, job);
+            String jobRecord = codec.encode(job);
             int bucket = activeJobIdsBucketManager.getNextBucket();
             activeJobIdsBucketManager.addItem(bucket, jobId);
-            Statement jobStatement = insertActiveJobStatement.bind(jobId, jobJsonString);
+            Statement jobStatement = insertActiveJobStatement.bind(jobId, jobRecord);
             Statement jobIdStatement = insertActiveJobIdStatement.bind(bucket, jobId);
 
             BatchStatement batchStatement = new BatchStatement();
@@ -325,8 +328,8 @@ public class CassandraJobStore implements JobStore {
         return Observable.fromCallable((Callable<Statement>) () -> {
             String jobId = job.getId();
             checkIfJobIsActive(jobId);
-            String jobJsonString = ObjectMappers.writeValueAsString(mapper, job);
-            return insertActiveJobStatement.bind(jobId, jobJsonString);
+            String jobRecord = codec.encode(job);
+            return insertActiveJobStatement.bind(jobId, jobRecord);
         }).flatMap(this::execute).toCompletable();
     }
 
@@ -396,7 +399,7 @@ public class CassandraJobStore implements JobStore {
 
                     Task task;
                     try {
-                        task = ObjectMappers.readValue(mapper, effectiveValue, Task.class);
+                        task = codec.decode(effectiveValue, Task.class);
 
                         if (!fitBadDataInjection.isPresent()) {
                             tasks.add(Either.ofValue(task));
@@ -427,7 +430,7 @@ public class CassandraJobStore implements JobStore {
                     Row row = resultSet.one();
                     if (row != null) {
                         String value = row.getString(0);
-                        Task task = ObjectMappers.readValue(mapper, value, Task.class);
+                        Task task = codec.decode(value, Task.class);
                         return Observable.just(task);
                     } else {
                         return Observable.error(JobStoreException.taskDoesNotExist(taskId));
@@ -441,8 +444,8 @@ public class CassandraJobStore implements JobStore {
             String jobId = task.getJobId();
             String taskId = task.getId();
             checkIfJobIsActive(jobId);
-            String taskJsonString = ObjectMappers.writeValueAsString(mapper, task);
-            Statement taskStatement = insertActiveTaskStatement.bind(taskId, taskJsonString);
+            String taskRecord = codec.encode(task);
+            Statement taskStatement = insertActiveTaskStatement.bind(taskId, taskRecord);
             Statement taskIdStatement = insertActiveTaskIdStatement.bind(jobId, taskId);
 
             BatchStatement batchStatement = new BatchStatement();
@@ -459,8 +462,8 @@ public class CassandraJobStore implements JobStore {
             String jobId = task.getJobId();
             String taskId = task.getId();
             checkIfJobIsActive(jobId);
-            String taskJsonString = ObjectMappers.writeValueAsString(mapper, task);
-            return insertActiveTaskStatement.bind(taskId, taskJsonString);
+            String taskRecord = codec.encode(task);
+            return insertActiveTaskStatement.bind(taskId, taskRecord);
         }).flatMap(this::execute).toCompletable();
     }
 
@@ -470,11 +473,11 @@ public class CassandraJobStore implements JobStore {
             String jobId = newTask.getJobId();
             checkIfJobIsActive(jobId);
             String taskId = newTask.getId();
-            String taskJsonString = ObjectMappers.writeValueAsString(mapper, newTask);
+            String taskRecord = codec.encode(newTask);
 
             BatchStatement batchStatement = getArchiveTaskBatchStatement(oldTask);
 
-            Statement insertTaskStatement = insertActiveTaskStatement.bind(taskId, taskJsonString);
+            Statement insertTaskStatement = insertActiveTaskStatement.bind(taskId, taskRecord);
             Statement insertTaskIdStatement = insertActiveTaskIdStatement.bind(jobId, taskId);
 
             batchStatement.add(insertTaskStatement);
@@ -502,7 +505,7 @@ public class CassandraJobStore implements JobStore {
                         throw JobStoreException.jobDoesNotExist(jobId);
                     }
                     String value = row.getString(0);
-                    return (Job<?>) ObjectMappers.readValue(mapper, value, Job.class);
+                    return (Job<?>) codec.decode(value, Job.class);
                 }));
     }
 
@@ -514,7 +517,7 @@ public class CassandraJobStore implements JobStore {
                     List<Observable<ResultSet>> observables = taskIds.stream().map(retrieveArchivedTaskStatement::bind).map(this::execute).collect(Collectors.toList());
                     return Observable.merge(observables, getConcurrencyLimit()).flatMapIterable(tasksResultSet -> tasksResultSet.all().stream()
                             .map(row -> row.getString(0))
-                            .map(value -> ObjectMappers.readValue(mapper, value, Task.class))
+                            .map(value -> codec.decode(value, Task.class))
                             .collect(Collectors.toList()));
                 }));
     }
@@ -526,7 +529,7 @@ public class CassandraJobStore implements JobStore {
                     Row row = resultSet.one();
                     if (row != null) {
                         String value = row.getString(0);
-                        Task task = ObjectMappers.readValue(mapper, value, Task.class);
+                        Task task = codec.decode(value, Task.class);
                         return Observable.just(task);
                     } else {
                         return Observable.error(JobStoreException.taskDoesNotExist(taskId));
@@ -541,11 +544,11 @@ public class CassandraJobStore implements JobStore {
     private BatchStatement getArchiveJobBatchStatement(Job job) {
         String jobId = job.getId();
         int bucket = activeJobIdsBucketManager.getItemBucket(jobId);
-        String jobJsonString = ObjectMappers.writeValueAsString(mapper, job);
+        String jobRecord = codec.encode(job);
 
         Statement deleteJobStatement = deleteActiveJobStatement.bind(jobId);
         Statement deleteJobIdStatement = deleteActiveJobIdStatement.bind(bucket, jobId);
-        Statement insertJobStatement = insertArchivedJobStatement.bind(jobId, jobJsonString);
+        Statement insertJobStatement = insertArchivedJobStatement.bind(jobId, jobRecord);
 
         BatchStatement statement = new BatchStatement();
         statement.add(deleteJobStatement);
@@ -558,11 +561,11 @@ public class CassandraJobStore implements JobStore {
     private BatchStatement getArchiveTaskBatchStatement(Task task) {
         String jobId = task.getJobId();
         String taskId = task.getId();
-        String taskJsonString = ObjectMappers.writeValueAsString(mapper, task);
+        String taskRecord = codec.encode(task);
 
         Statement deleteTaskStatement = deleteActiveTaskStatement.bind(taskId);
         Statement deleteTaskIdStatement = deleteActiveTaskIdStatement.bind(jobId, taskId);
-        Statement insertTaskStatement = insertArchivedTaskStatement.bind(taskId, taskJsonString);
+        Statement insertTaskStatement = insertArchivedTaskStatement.bind(taskId, taskRecord);
         Statement insertTaskIdStatement = insertArchivedTaskIdStatement.bind(jobId, taskId);
 
         BatchStatement batchStatement = new BatchStatement();
@@ -41,4 +41,23 @@ public interface CassandraStoreConfiguration {
      */
     @DefaultValue("10")
     int getConcurrencyLimit();
+
+    /**
+     * If enabled, job and task updates are coalesced and group committed by {@link CoalescingJobStore}.
+     */
+    @DefaultValue("false")
+    boolean isJobStoreWriteCoalescingEnabled();
+
+    /**
+     * How long a job or task update is held, waiting for more recent updates of the same entity, before it is written.
+     */
+    @DefaultValue("10")
+    long getJobStoreWriteCoalescingWindowMs();
+
+    /**
+     * Format in which jobs and tasks are written to the store (Json or CompactBinary). Records are read back in any
+     * of the supported formats, irrespective of this setting.
+     */
+    @DefaultValue("Json")
+    String getJobStoreRecordFormat();
 }
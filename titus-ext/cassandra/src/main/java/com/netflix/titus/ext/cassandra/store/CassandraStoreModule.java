@@ -25,13 +25,13 @@ import com.netflix.titus.api.appscale.store.AppScalePolicyStore;
 import com.netflix.titus.api.jobmanager.store.JobStore;
 import com.netflix.titus.api.loadbalancer.store.LoadBalancerStore;
 import com.netflix.titus.api.scheduler.store.SchedulerStore;
+import com.netflix.titus.common.runtime.TitusRuntime;
 
 public class CassandraStoreModule extends AbstractModule {
     @Override
     protected void configure() {
         bind(AgentStore.class).to(CassandraAgentStore.class);
         bind(AppScalePolicyStore.class).to(CassAppScalePolicyStore.class);
-        bind(JobStore.class).to(CassandraJobStore.class);
         bind(LoadBalancerStore.class).to(CassandraLoadBalancerStore.class);
         bind(SchedulerStore.class).to(CassandraSchedulerStore.class);
     }
@@ -41,4 +41,13 @@ public class CassandraStoreModule extends AbstractModule {
     CassandraStoreConfiguration getCassandraStoreConfiguration(ConfigProxyFactory factory) {
         return factory.newProxy(CassandraStoreConfiguration.class);
     }
+
+    @Provides
+    @Singleton
+    JobStore getJobStore(CassandraStoreConfiguration configuration, CassandraJobStore cassandraJobStore, TitusRuntime titusRuntime) {
+        if (configuration.isJobStoreWriteCoalescingEnabled()) {
+            return new CoalescingJobStore(cassandraJobStore, configuration, titusRuntime);
+        }
+        return cassandraJobStore;
+    }
 }
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.ext.cassandra.store;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.DistributionSummary;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.Timer;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.store.JobStore;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.util.time.Clock;
+import com.netflix.titus.common.util.tuple.Either;
+import com.netflix.titus.common.util.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Completable;
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+import rx.subjects.AsyncSubject;
+
+/**
+ * {@link JobStore} decorator that coalesces job and task updates. An update is not written immediately, but is held
+ * for a short period of time (coalescing window). If another update for the same entity arrives within this window,
+ * it replaces the pending one, so only the most recent version of the entity is written. All pending updates
+ * are written together at the end of the window (group commit). The {@link Completable} returned to a caller
+ * completes only after the write containing its update (or a more recent one) succeeds.
+ * <p>
+ * Writes for the same entity are never issued concurrently. An update arriving while a previous write of the same entity
+ * is in progress is held until that write completes. All other operations touching an entity (create, replace, delete and reads)
+ * are executed only after its pending updates are written, so the coalescing is not observable by the store clients.
+ * <p>
+ * As the job and task tables are partitioned by the entity id, a coalesced update of an entity is a single partition write.
+ */
+public class CoalescingJobStore implements JobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoalescingJobStore.class);
+
+    private static final String METRIC_ROOT = "titusMaster.jobManager.cassandra.coalescing.";
+
+    private final JobStore delegate;
+    private final long windowMs;
+    private final int concurrencyLimit;
+    private final Clock clock;
+    private final Scheduler.Worker worker;
+
+    /**
+     * Updates not written yet, in their arrival order.
+     */
+    private final Map<String, PendingWrite> pending = new LinkedHashMap<>();
+
+    /**
+     * Writes in progress.
+     */
+    private final Map<String, PendingWrite> inFlight = new HashMap<>();
+
+    private boolean flushScheduled;
+
+    private final Counter updateRequestsCounter;
+    private final Counter coalescedUpdatesCounter;
+    private final Counter writesCounter;
+    private final Counter writeErrorsCounter;
+    private final DistributionSummary groupCommitSize;
+    private final Timer commitLatency;
+    private final Timer updateLatency;
+    private final AtomicLong updateRequests = new AtomicLong();
+    private final AtomicLong coalescedUpdates = new AtomicLong();
+
+    public CoalescingJobStore(JobStore delegate, CassandraStoreConfiguration configuration, TitusRuntime titusRuntime) {
+        this(delegate, configuration.getJobStoreWriteCoalescingWindowMs(), configuration.getConcurrencyLimit(), titusRuntime, Schedulers.computation());
+    }
+
+    CoalescingJobStore(JobStore delegate, long windowMs, int concurrencyLimit, TitusRuntime titusRuntime, Scheduler scheduler) {
+        this.delegate = delegate;
+        this.windowMs = windowMs;
+        this.concurrencyLimit = Math.max(1, concurrencyLimit);
+        this.clock = titusRuntime.getClock();
+        this.worker = scheduler.createWorker();
+
+        Registry registry = titusRuntime.getRegistry();
+        this.updateRequestsCounter = registry.counter(METRIC_ROOT + "updateRequests");
+        this.coalescedUpdatesCounter = registry.counter(METRIC_ROOT + "coalescedUpdates");
+        this.writesCounter = registry.counter(METRIC_ROOT + "writes");
+        this.writeErrorsCounter = registry.counter(METRIC_ROOT + "writeErrors");
+        this.groupCommitSize = registry.distributionSummary(METRIC_ROOT + "groupCommitSize");
+        this.commitLatency = registry.timer(METRIC_ROOT + "commitLatency");
+        this.updateLatency = registry.timer(METRIC_ROOT + "updateLatency");
+        PolledMeter.using(registry).withName(METRIC_ROOT + "coalescingRatio").monitorValue(this, CoalescingJobStore::getCoalescingRatio);
+        PolledMeter.using(registry).withName(METRIC_ROOT + "pendingUpdates").monitorValue(this, CoalescingJobStore::getPendingCount);
+    }
+
+    /**
+     * Fraction of update requests that were merged into another update, and did not result in a separate write.
+     */
+    double getCoalescingRatio() {
+        long requests = updateRequests.get();
+        return requests == 0 ? 0.0 : (double) coalescedUpdates.get() / requests;
+    }
+
+    private synchronized int getPendingCount() {
+        return pending.size() + inFlight.size();
+    }
+
+    @Override
+    public Completable init() {
+        return delegate.init();
+    }
+
+    @Override
+    public Observable<Pair<List<Job<?>>, Integer>> retrieveJobs() {
+        return awaitAll().andThen(Observable.defer(() -> delegate.retrieveJobs()));
+    }
+
+    @Override
+    public Observable<Either<Job<?>, Throwable>> streamJobs() {
+        return awaitAll().andThen(Observable.defer(() -> delegate.streamJobs()));
+    }
+
+    @Override
+    public Observable<Job<?>> retrieveJob(String jobId) {
+        return awaitEntity(jobId).andThen(Observable.defer(() -> delegate.retrieveJob(jobId)));
+    }
+
+    @Override
+    public Completable storeJob(Job job) {
+        return awaitEntity(job.getId()).andThen(Completable.defer(() -> delegate.storeJob(job)));
+    }
+
+    @Override
+    public Completable updateJob(Job job) {
+        return Completable.defer(() -> enqueue(job.getId(), () -> delegate.updateJob(job)));
+    }
+
+    @Override
+    public Completable deleteJob(Job job) {
+        // Job removal deletes all its tasks, so we must wait for all pending task updates as well.
+        return awaitAll().andThen(Completable.defer(() -> delegate.deleteJob(job)));
+    }
+
+    @Override
+    public Observable<Pair<List<Task>, Integer>> retrieveTasksForJob(String jobId) {
+        return awaitAll().andThen(Observable.defer(() -> delegate.retrieveTasksForJob(jobId)));
+    }
+
+    @Override
+    public Observable<Task> retrieveTask(String taskId) {
+        return awaitEntity(taskId).andThen(Observable.defer(() -> delegate.retrieveTask(taskId)));
+    }
+
+    @Override
+    public Completable storeTask(Task task) {
+        return awaitEntity(task.getId()).andThen(Completable.defer(() -> delegate.storeTask(task)));
+    }
+
+    @Override
+    public Completable updateTask(Task task) {
+        return Completable.defer(() -> enqueue(task.getId(), () -> delegate.updateTask(task)));
+    }
+
+    @Override
+    public Completable replaceTask(Task oldTask, Task newTask) {
+        return awaitEntity(oldTask.getId()).andThen(awaitEntity(newTask.getId())).andThen(Completable.defer(() -> delegate.replaceTask(oldTask, newTask)));
+    }
+
+    @Override
+    public Completable deleteTask(Task task) {
+        return awaitEntity(task.getId()).andThen(Completable.defer(() -> delegate.deleteTask(task)));
+    }
+
+    @Override
+    public Observable<Job<?>> retrieveArchivedJob(String jobId) {
+        return awaitEntity(jobId).andThen(Observable.defer(() -> delegate.retrieveArchivedJob(jobId)));
+    }
+
+    @Override
+    public Observable<Task> retrieveArchivedTasksForJob(String jobId) {
+        return awaitAll().andThen(Observable.defer(() -> delegate.retrieveArchivedTasksForJob(jobId)));
+    }
+
+    @Override
+    public Observable<Task> retrieveArchivedTask(String taskId) {
+        return awaitEntity(taskId).andThen(Observable.defer(() -> delegate.retrieveArchivedTask(taskId)));
+    }
+
+    private synchronized Completable enqueue(String id, WriteAction writeAction) {
+        updateRequests.incrementAndGet();
+        updateRequestsCounter.increment();
+
+        PendingWrite write = pending.get(id);
+        if (write == null) {
+            write = new PendingWrite(id, writeAction, clock.wallTime());
+            pending.put(id, write);
+        } else {
+            write.replace(writeAction);
+            coalescedUpdates.incrementAndGet();
+            coalescedUpdatesCounter.increment();
+        }
+        scheduleFlush(windowMs);
+        return write.getCompletable();
+    }
+
+    /**
+     * Returns {@link Completable} which completes when all pending writes for the given entity are done. Pending
+     * writes are flushed immediately, without waiting for the coalescing window to end.
+     */
+    private Completable awaitEntity(String id) {
+        return Completable.defer(() -> {
+            List<Completable> completables = new ArrayList<>();
+            synchronized (this) {
+                PendingWrite pendingWrite = pending.get(id);
+                if (pendingWrite != null) {
+                    completables.add(pendingWrite.getCompletable());
+                    scheduleFlush(0);
+                }
+                PendingWrite inFlightWrite = inFlight.get(id);
+                if (inFlightWrite != null) {
+                    completables.add(inFlightWrite.getCompletable());
+                }
+            }
+            return Completable.merge(completables).onErrorComplete();
+        });
+    }
+
+    private Completable awaitAll() {
+        return Completable.defer(() -> {
+            List<Completable> completables = new ArrayList<>();
+            synchronized (this) {
+                pending.values().forEach(write -> completables.add(write.getCompletable()));
+                inFlight.values().forEach(write -> completables.add(write.getCompletable()));
+                if (!pending.isEmpty()) {
+                    scheduleFlush(0);
+                }
+            }
+            return Completable.merge(completables).onErrorComplete();
+        });
+    }
+
+    private synchronized void scheduleFlush(long delayMs) {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            worker.schedule(this::flush, delayMs, TimeUnit.MILLISECONDS);
+        } else if (delayMs == 0) {
+            worker.schedule(this::flush);
+        }
+    }
+
+    private void flush() {
+        List<PendingWrite> batch = new ArrayList<>();
+        synchronized (this) {
+            flushScheduled = false;
+            pending.values().removeIf(write -> {
+                if (inFlight.containsKey(write.getId())) {
+                    // Wait until the previous write for this entity completes.
+                    return false;
+                }
+                inFlight.put(write.getId(), write);
+                batch.add(write);
+                return true;
+            });
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        groupCommitSize.record(batch.size());
+        long startTime = clock.wallTime();
+        List<Completable> writes = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            writes.add(write.getWriteAction().write()
+                    .doOnCompleted(() -> onWriteCompleted(write, null))
+                    .doOnError(error -> onWriteCompleted(write, error))
+                    .onErrorComplete()
+            );
+        }
+        Completable.merge(Observable.from(writes), concurrencyLimit).subscribe(
+                () -> commitLatency.record(clock.wallTime() - startTime, TimeUnit.MILLISECONDS),
+                e -> logger.error("Unexpected error in the group commit", e)
+        );
+    }
+
+    private void onWriteCompleted(PendingWrite write, Throwable error) {
+        boolean hasNext;
+        synchronized (this) {
+            inFlight.remove(write.getId());
+            hasNext = pending.containsKey(write.getId());
+        }
+        writesCounter.increment();
+        updateLatency.record(clock.wallTime() - write.getCreateTimestamp(), TimeUnit.MILLISECONDS);
+        if (error == null) {
+            write.complete();
+        } else {
+            writeErrorsCounter.increment();
+            logger.warn("Store write failed for entity {}: {}", write.getId(), error.getMessage());
+            write.fail(error);
+        }
+        if (hasNext) {
+            scheduleFlush(0);
+        }
+    }
+
+    private interface WriteAction {
+        Completable write();
+    }
+
+    private static class PendingWrite {
+
+        private final String id;
+        private final long createTimestamp;
+        private final AsyncSubject<Void> completionSubject = AsyncSubject.create();
+        private final Completable completable = completionSubject.toCompletable();
+
+        private volatile WriteAction writeAction;
+
+        private PendingWrite(String id, WriteAction writeAction, long createTimestamp) {
+            this.id = id;
+            this.writeAction = writeAction;
+            this.createTimestamp = createTimestamp;
+        }
+
+        private String getId() {
+            return id;
+        }
+
+        private long getCreateTimestamp() {
+            return createTimestamp;
+        }
+
+        private WriteAction getWriteAction() {
+            return writeAction;
+        }
+
+        private Completable getCompletable() {
+            return completable;
+        }
+
+        private void replace(WriteAction newWriteAction) {
+            this.writeAction = newWriteAction;
+        }
+
+        private void complete() {
+            completionSubject.onCompleted();
+        }
+
+        private void fail(Throwable error) {
+            completionSubject.onError(error);
+        }
+    }
+}
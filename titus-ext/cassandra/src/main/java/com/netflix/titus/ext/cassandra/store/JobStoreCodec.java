@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.ext.cassandra.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Base64;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.netflix.titus.api.json.ObjectMappers;
+import rx.exceptions.Exceptions;
+
+/**
+ * Encodes and decodes jobs and tasks persisted in Cassandra. Two record formats are supported:
+ * <ul>
+ * <li>{@link Format#Json} - plain JSON document (the original format)</li>
+ * <li>{@link Format#CompactBinary} - Smile (binary JSON) document compressed with deflate. As the value columns
+ * are of the text type, the compressed data is base64 encoded, and prefixed with the format header '{@value #COMPACT_BINARY_V1_HEADER}'</li>
+ * </ul>
+ * The write format is configurable, but records are always decoded according to their header, so data written
+ * in any of the supported formats can be read back. JSON documents never start with the header character.
+ */
+public class JobStoreCodec {
+
+    public enum Format {Json, CompactBinary}
+
+    static final String COMPACT_BINARY_V1_HEADER = "#1";
+
+    private static final char HEADER_START = '#';
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper smileMapper;
+    private final Format writeFormat;
+
+    public JobStoreCodec(ObjectMapper jsonMapper, Format writeFormat) {
+        this.jsonMapper = jsonMapper;
+        this.smileMapper = ObjectMappers.newStoreMapper(new SmileFactory());
+        this.writeFormat = writeFormat;
+    }
+
+    public static Format parseFormat(String formatName) {
+        for (Format format : Format.values()) {
+            if (format.name().equalsIgnoreCase(formatName)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown job store record format: " + formatName);
+    }
+
+    public Format getWriteFormat() {
+        return writeFormat;
+    }
+
+    public String encode(Object entity) {
+        if (writeFormat == Format.Json) {
+            return ObjectMappers.writeValueAsString(jsonMapper, entity);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream output = new DeflaterOutputStream(bytes)) {
+            smileMapper.writeValue(output, entity);
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+        return COMPACT_BINARY_V1_HEADER + Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    public <T> T decode(String value, Class<T> type) {
+        if (!isBinary(value)) {
+            return ObjectMappers.readValue(jsonMapper, value, type);
+        }
+        try (InputStream input = openBinary(value)) {
+            return smileMapper.readValue(input, type);
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /**
+     * Decodes a record into a generic JSON tree, irrespective of its storage format.
+     */
+    public JsonNode decodeTree(String value) {
+        try {
+            if (!isBinary(value)) {
+                return jsonMapper.readTree(value);
+            }
+            try (InputStream input = openBinary(value)) {
+                return smileMapper.readTree(input);
+            }
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    private static boolean isBinary(String value) {
+        return !value.isEmpty() && value.charAt(0) == HEADER_START;
+    }
+
+    private static InputStream openBinary(String value) {
+        if (!value.startsWith(COMPACT_BINARY_V1_HEADER)) {
+            throw new IllegalArgumentException("Unrecognized record format header: " + value.substring(0, Math.min(value.length(), 8)));
+        }
+        byte[] compressed = Base64.getDecoder().decode(value.substring(COMPACT_BINARY_V1_HEADER.length()));
+        return new InflaterInputStream(new ByteArrayInputStream(compressed));
+    }
+}
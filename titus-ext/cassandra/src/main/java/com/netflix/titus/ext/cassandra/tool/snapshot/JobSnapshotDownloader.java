@@ -30,9 +30,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.google.common.base.Preconditions;
 import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.ext.cassandra.store.JobStoreCodec;
 import com.netflix.titus.ext.cassandra.tool.CassandraSchemas;
 import com.netflix.titus.ext.cassandra.tool.CassandraUtils;
-import rx.Observable;
 
 /**
  * Downloads jobs active data from Cassandra database into set of files. A snapshot can be loaded back into
@@ -41,10 +41,12 @@ import rx.Observable;
 public class JobSnapshotDownloader {
 
     private static final ObjectMapper MAPPER;
+    private static final JobStoreCodec CODEC;
 
     static {
         MAPPER = new ObjectMapper();
         MAPPER.enable(SerializationFeature.INDENT_OUTPUT);
+        CODEC = new JobStoreCodec(MAPPER, JobStoreCodec.Format.Json);
     }
 
     private final Session session;
@@ -78,13 +80,7 @@ public class JobSnapshotDownloader {
         File output = new File(outputFolder, table + ".json");
 
         List<JsonNode> allItems = CassandraUtils.readTwoColumnTable(session, table)
-                .flatMap(p -> {
-                    try {
-                        return Observable.just(MAPPER.readTree((String) p.getRight()));
-                    } catch (IOException e) {
-                        return Observable.error(e);
-                    }
-                })
+                .map(p -> CODEC.decodeTree((String) p.getRight()))
                 .toList()
                 .toBlocking().first();
 
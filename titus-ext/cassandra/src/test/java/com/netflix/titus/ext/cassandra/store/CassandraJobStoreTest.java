@@ -92,6 +92,21 @@ public class CassandraJobStoreTest {
         public int getConcurrencyLimit() {
             return 10;
         }
+
+        @Override
+        public boolean isJobStoreWriteCoalescingEnabled() {
+            return false;
+        }
+
+        @Override
+        public long getJobStoreWriteCoalescingWindowMs() {
+            return 10;
+        }
+
+        @Override
+        public String getJobStoreRecordFormat() {
+            return "Json";
+        }
     };
 
     @Test
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.ext.cassandra.store;
+
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.api.jobmanager.model.job.BatchJobTask;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.jobmanager.store.JobStore;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import rx.Completable;
+import rx.observers.AssertableSubscriber;
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CoalescingJobStoreTest {
+
+    private static final long WINDOW_MS = 10;
+
+    private final TestScheduler testScheduler = Schedulers.test();
+    private final TitusRuntime titusRuntime = TitusRuntimes.test(testScheduler);
+
+    private final JobStore delegate = mock(JobStore.class);
+
+    private final CoalescingJobStore store = new CoalescingJobStore(delegate, WINDOW_MS, 10, titusRuntime, testScheduler);
+
+    private final Job<BatchJobExt> job = JobGenerator.batchJobs(JobDescriptorGenerator.oneTaskBatchJobDescriptor()).getValue();
+    private final BatchJobTask task = JobGenerator.batchTasks(job).getValue();
+
+    @Before
+    public void setUp() {
+        when(delegate.updateTask(any())).thenReturn(Completable.complete());
+        when(delegate.updateJob(any())).thenReturn(Completable.complete());
+        when(delegate.deleteTask(any())).thenReturn(Completable.complete());
+    }
+
+    @Test
+    public void testUpdatesWithinWindowAreCoalesced() {
+        Task launched = JobFunctions.changeTaskStatus(task, TaskState.Launched, "test", "launched");
+        Task started = JobFunctions.changeTaskStatus(launched, TaskState.StartInitiated, "test", "startInitiated");
+
+        AssertableSubscriber<Void> first = store.updateTask(launched).test();
+        AssertableSubscriber<Void> second = store.updateTask(started).test();
+        verify(delegate, never()).updateTask(any());
+
+        testScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+
+        verify(delegate, times(1)).updateTask(any());
+        verify(delegate, times(1)).updateTask(started);
+        first.assertCompleted();
+        second.assertCompleted();
+        assertThat(store.getCoalescingRatio()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void testDifferentEntitiesAreGroupCommitted() {
+        AssertableSubscriber<Void> taskUpdate = store.updateTask(task).test();
+        AssertableSubscriber<Void> jobUpdate = store.updateJob(job).test();
+
+        testScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+
+        verify(delegate, times(1)).updateTask(task);
+        verify(delegate, times(1)).updateJob(job);
+        taskUpdate.assertCompleted();
+        jobUpdate.assertCompleted();
+    }
+
+    @Test
+    public void testUpdateIsNotWrittenConcurrentlyWithPreviousWriteOfSameEntity() {
+        PublishSubject<Void> firstWrite = PublishSubject.create();
+        Task launched = JobFunctions.changeTaskStatus(task, TaskState.Launched, "test", "launched");
+        when(delegate.updateTask(task)).thenReturn(firstWrite.toCompletable());
+
+        AssertableSubscriber<Void> first = store.updateTask(task).test();
+        testScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+        verify(delegate, times(1)).updateTask(task);
+
+        AssertableSubscriber<Void> second = store.updateTask(launched).test();
+        testScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+        verify(delegate, never()).updateTask(launched);
+        first.assertNotCompleted();
+
+        firstWrite.onCompleted();
+        testScheduler.triggerActions();
+
+        first.assertCompleted();
+        verify(delegate, times(1)).updateTask(launched);
+        second.assertCompleted();
+    }
+
+    @Test
+    public void testWriteErrorIsPropagatedToAllCoalescedCallers() {
+        when(delegate.updateTask(any())).thenReturn(Completable.error(new RuntimeException("simulated error")));
+
+        AssertableSubscriber<Void> first = store.updateTask(task).test();
+        AssertableSubscriber<Void> second = store.updateTask(task).test();
+        testScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+
+        first.assertError(RuntimeException.class);
+        second.assertError(RuntimeException.class);
+    }
+
+    @Test
+    public void testDeleteFlushesPendingUpdateFirst() {
+        AssertableSubscriber<Void> update = store.updateTask(task).test();
+        AssertableSubscriber<Void> delete = store.deleteTask(task).test();
+        testScheduler.triggerActions();
+
+        InOrder inOrder = inOrder(delegate);
+        inOrder.verify(delegate).updateTask(task);
+        inOrder.verify(delegate).deleteTask(task);
+        update.assertCompleted();
+        delete.assertCompleted();
+    }
+}
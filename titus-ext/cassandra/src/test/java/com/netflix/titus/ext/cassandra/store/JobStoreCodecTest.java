@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.ext.cassandra.store;
+
+import com.google.common.collect.ImmutableMap;
+import com.netflix.titus.api.jobmanager.model.job.BatchJobTask;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.json.ObjectMappers;
+import com.netflix.titus.ext.cassandra.store.JobStoreCodec.Format;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JobStoreCodecTest {
+
+    private final JobStoreCodec jsonCodec = new JobStoreCodec(ObjectMappers.storeMapper(), Format.Json);
+    private final JobStoreCodec binaryCodec = new JobStoreCodec(ObjectMappers.storeMapper(), Format.CompactBinary);
+
+    private final Job<BatchJobExt> job = JobGenerator.batchJobs(JobDescriptorGenerator.oneTaskBatchJobDescriptor()).getValue();
+    private final Task task = newTaskWithHistory(job);
+
+    @Test
+    public void testJsonRoundTrip() {
+        String record = jsonCodec.encode(task);
+        assertThat(record).startsWith("{");
+        assertThat(jsonCodec.decode(record, Task.class)).isEqualTo(task);
+    }
+
+    @Test
+    public void testCompactBinaryRoundTrip() {
+        String jobRecord = binaryCodec.encode(job);
+        String taskRecord = binaryCodec.encode(task);
+
+        assertThat(jobRecord).startsWith(JobStoreCodec.COMPACT_BINARY_V1_HEADER);
+        assertThat(binaryCodec.decode(jobRecord, Job.class)).isEqualTo(job);
+        assertThat(binaryCodec.decode(taskRecord, Task.class)).isEqualTo(task);
+    }
+
+    @Test
+    public void testRecordsAreReadableIrrespectiveOfWriteFormat() {
+        assertThat(binaryCodec.decode(jsonCodec.encode(task), Task.class)).isEqualTo(task);
+        assertThat(jsonCodec.decode(binaryCodec.encode(task), Task.class)).isEqualTo(task);
+    }
+
+    @Test
+    public void testDecodeTreeIsFormatIndependent() {
+        assertThat(jsonCodec.decodeTree(binaryCodec.encode(task))).isEqualTo(jsonCodec.decodeTree(jsonCodec.encode(task)));
+    }
+
+    @Test
+    public void testCompactBinaryIsSmallerThanJson() {
+        assertThat(binaryCodec.encode(job).length()).isLessThan(jsonCodec.encode(job).length());
+        assertThat(binaryCodec.encode(task).length()).isLessThan(jsonCodec.encode(task).length());
+    }
+
+    @Test
+    public void testUnknownFormatHeaderIsRejected() {
+        assertThatThrownBy(() -> binaryCodec.decode("#9abc", Task.class)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testParseFormat() {
+        assertThat(JobStoreCodec.parseFormat("compactBinary")).isEqualTo(Format.CompactBinary);
+        assertThatThrownBy(() -> JobStoreCodec.parseFormat("xml")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Task newTaskWithHistory(Job<BatchJobExt> job) {
+        BatchJobTask task = JobGenerator.batchTasks(job).getValue().toBuilder()
+                .addAllToTaskContext(ImmutableMap.of("agent.host", "agent1.titus.net", "agent.zone", "us-east-1c"))
+                .build();
+        Task launched = JobFunctions.changeTaskStatus(task, TaskState.Launched, "launched", "Task launched");
+        Task startInitiated = JobFunctions.changeTaskStatus(launched, TaskState.StartInitiated, "starting", "Creating container");
+        return JobFunctions.changeTaskStatus(startInitiated, TaskState.Started, "started", "Container started");
+    }
+}
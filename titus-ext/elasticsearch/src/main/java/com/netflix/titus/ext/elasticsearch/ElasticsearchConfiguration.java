@@ -36,4 +36,67 @@ public interface ElasticsearchConfiguration {
 
     @DefaultValue("yyyyMM")
     String getTaskDocumentEsIndexDateSuffixPattern();
+
+    /**
+     * @return maximum number of task documents sent in a single bulk request.
+     */
+    @DefaultValue("1000")
+    int getPublisherBatchSize();
+
+    /**
+     * @return maximum amount of time a task document waits in the queue, before a (partial) batch is sent.
+     */
+    @DefaultValue("10000")
+    long getPublisherFlushIntervalMs();
+
+    /**
+     * @return maximum number of task documents kept in memory. Task documents above this limit are written to
+     * the disk spool.
+     */
+    @DefaultValue("10000")
+    int getPublisherMemoryQueueSize();
+
+    /**
+     * @return directory of the disk spool. If not set, a directory in the JVM temporary directory is used.
+     */
+    @DefaultValue("")
+    String getPublisherSpoolDirectory();
+
+    /**
+     * @return maximum size of the disk spool. When the spool is full, new task documents are dropped.
+     */
+    @DefaultValue("1073741824")
+    long getPublisherSpoolMaxSizeBytes();
+
+    /**
+     * @return size at which the disk spool rolls over to a new segment file.
+     */
+    @DefaultValue("16777216")
+    long getPublisherSpoolSegmentSizeBytes();
+
+    /**
+     * @return maximum number of task documents waiting to be written to the disk spool. When this limit is reached,
+     * new task documents are dropped.
+     */
+    @DefaultValue("10000")
+    int getPublisherSpoolWriterQueueSize();
+
+    /**
+     * @return maximum amount of time to wait for a bulk request to complete.
+     */
+    @DefaultValue("30000")
+    long getPublisherBulkTimeoutMs();
+
+    /**
+     * @return maximum number of attempts to index a task document, before it is moved to the end of the disk spool.
+     * Without a spool, the task document is dropped.
+     */
+    @DefaultValue("10")
+    int getPublisherMaxRetries();
+
+    @DefaultValue("1000")
+    long getPublisherRetryInitialDelayMs();
+
+    @DefaultValue("60000")
+    long getPublisherRetryMaxDelayMs();
 }
@@ -37,6 +37,7 @@ public class ElasticsearchModule extends AbstractModule {
 
     @Override
     protected void configure() {
+        bind(TaskDocumentBulkClient.class).to(ElasticsearchTaskDocumentBulkClient.class);
         bind(ElasticsearchTaskDocumentPublisher.class).asEagerSingleton();
     }
 
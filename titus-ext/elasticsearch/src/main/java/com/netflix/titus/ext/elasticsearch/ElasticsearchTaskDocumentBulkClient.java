@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.ext.elasticsearch;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Emitter;
+import rx.Observable;
+
+@Singleton
+public class ElasticsearchTaskDocumentBulkClient implements TaskDocumentBulkClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(ElasticsearchTaskDocumentBulkClient.class);
+
+    private static final String DEFAULT_DOC_TYPE = "default";
+
+    private final Client client;
+
+    @Inject
+    public ElasticsearchTaskDocumentBulkClient(Client client) {
+        this.client = client;
+    }
+
+    @Override
+    public Observable<Set<String>> bulkIndex(String indexName, Map<String, String> documents) {
+        return Observable.create(emitter -> {
+            BulkRequestBuilder bulkRequestBuilder = client.prepareBulk();
+            documents.forEach((documentId, documentJson) ->
+                    bulkRequestBuilder.add(client.prepareIndex(indexName, DEFAULT_DOC_TYPE, documentId).setSource(documentJson))
+            );
+            bulkRequestBuilder.execute(new ActionListener<BulkResponse>() {
+                @Override
+                public void onResponse(BulkResponse bulkItemResponses) {
+                    Set<String> failedIds = new HashSet<>();
+                    BulkItemResponse[] items = bulkItemResponses.getItems();
+                    if (items != null) {
+                        for (BulkItemResponse bulkItemResponse : items) {
+                            if (bulkItemResponse.isFailed()) {
+                                failedIds.add(bulkItemResponse.getId());
+                            }
+                        }
+                    }
+                    if (bulkItemResponses.hasFailures()) {
+                        logger.warn(bulkItemResponses.buildFailureMessage());
+                    }
+                    emitter.onNext(failedIds);
+                    emitter.onCompleted();
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    emitter.onError(e);
+                }
+            });
+        }, Emitter.BackpressureMode.NONE);
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.ext.elasticsearch;
+
+import java.util.Map;
+import java.util.Set;
+
+import rx.Observable;
+
+/**
+ * Bulk indexing API used by {@link ElasticsearchTaskDocumentPublisher}.
+ */
+public interface TaskDocumentBulkClient {
+
+    /**
+     * Indexes task documents in a single bulk request.
+     *
+     * @param documents task documents in the JSON format, keyed by document id
+     * @return observable emitting ids of the documents that could not be indexed, or an error if the whole request failed
+     */
+    Observable<Set<String>> bulkIndex(String indexName, Map<String, String> documents);
+}
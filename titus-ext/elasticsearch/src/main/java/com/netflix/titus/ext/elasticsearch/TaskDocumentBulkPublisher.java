@@ -0,0 +1,524 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.ext.elasticsearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.Timer;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.ext.elasticsearch.TaskDocumentSpool.Segment;
+import com.netflix.titus.ext.elasticsearch.TaskDocumentSpool.SpooledDocument;
+import com.netflix.titus.master.MetricConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes task documents to Elasticsearch in bulk requests, from a dedicated thread.
+ * <ul>
+ * <li>Pending documents are coalesced by document id, so only the latest version of a task document is sent.</li>
+ * <li>Documents that do not fit into the memory queue are handed off to a spool writer thread, which appends them to
+ * the disk spool. While the spool holds documents, all new documents go to the spool as well, so they are published
+ * in the order they were received. A spool segment is deleted once all its documents are indexed.</li>
+ * <li>Documents that failed to index are retried, with an exponential backoff after each failed bulk request.
+ * After the configured number of attempts, a document is moved to the end of the spool.</li>
+ * <li>On shutdown, pending documents are saved ahead of the spooled ones, and are published by the next process
+ * instance.</li>
+ * </ul>
+ */
+class TaskDocumentBulkPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskDocumentBulkPublisher.class);
+
+    private static final String METRIC_ROOT = MetricConstants.METRIC_ROOT + "elasticsearch.publisher.";
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 5_000;
+    private static final long SPOOL_WRITER_POLL_MS = 100;
+
+    private final ElasticsearchConfiguration configuration;
+    private final TaskDocumentBulkClient bulkClient;
+    private final Supplier<String> indexNameSupplier;
+    private final Optional<TaskDocumentSpool> spool;
+    private final Registry registry;
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<String, PendingDocument> pending = new LinkedHashMap<>();
+    private final LinkedHashMap<String, PendingDocument> inFlight = new LinkedHashMap<>();
+    private final Set<String> supersededIds = new HashSet<>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicLong spoolSizeBytes = new AtomicLong();
+
+    /**
+     * Documents to be written to the spool, so the disk IO is done without holding the lock. The counter includes
+     * the document being written, which is already removed from the queue.
+     */
+    private final BlockingQueue<SpooledDocument> spoolHandOff;
+    private final AtomicInteger spoolHandOffCount = new AtomicInteger();
+
+    /**
+     * Set from the moment a spool segment is about to be loaded, until all its documents are indexed or spooled
+     * again. Guarded by the lock.
+     */
+    private boolean spoolSegmentInProgress;
+    private Segment loadedSegment;
+
+    private final Thread publisherThread;
+    private final Thread spoolWriterThread;
+    private volatile boolean shutdown;
+    private volatile boolean spoolWriterShutdown;
+
+    private final Counter receivedCounter;
+    private final Counter coalescedCounter;
+    private final Counter spooledCounter;
+    private final Counter droppedCounter;
+    private final Counter indexedCounter;
+    private final Counter retriedCounter;
+    private final Counter bulkFailuresCounter;
+    private final Timer bulkLatency;
+    private final Timer publishLag;
+
+    TaskDocumentBulkPublisher(ElasticsearchConfiguration configuration,
+                              TaskDocumentBulkClient bulkClient,
+                              Supplier<String> indexNameSupplier,
+                              Optional<TaskDocumentSpool> spool,
+                              Registry registry) {
+        this.configuration = configuration;
+        this.bulkClient = bulkClient;
+        this.indexNameSupplier = indexNameSupplier;
+        this.spool = spool;
+        this.registry = registry;
+        this.spoolHandOff = new LinkedBlockingQueue<>(Math.max(1, configuration.getPublisherSpoolWriterQueueSize()));
+
+        this.receivedCounter = registry.counter(METRIC_ROOT + "received");
+        this.coalescedCounter = registry.counter(METRIC_ROOT + "coalesced");
+        this.spooledCounter = registry.counter(METRIC_ROOT + "spooled");
+        this.droppedCounter = registry.counter(METRIC_ROOT + "dropped");
+        this.indexedCounter = registry.counter(METRIC_ROOT + "indexed");
+        this.retriedCounter = registry.counter(METRIC_ROOT + "retried");
+        this.bulkFailuresCounter = registry.counter(METRIC_ROOT + "bulkFailures");
+        this.bulkLatency = registry.timer(METRIC_ROOT + "bulkLatency");
+        this.publishLag = registry.timer(METRIC_ROOT + "publishLag");
+        PolledMeter.using(registry).withName(METRIC_ROOT + "queueSize").monitorValue(queueSize);
+        PolledMeter.using(registry).withName(METRIC_ROOT + "spoolSizeBytes").monitorValue(spoolSizeBytes);
+        PolledMeter.using(registry).withName(METRIC_ROOT + "spoolHandOffSize").monitorValue(spoolHandOffCount);
+        spool.ifPresent(s -> spoolSizeBytes.set(s.getSizeBytes()));
+
+        if (spool.isPresent()) {
+            this.spoolWriterThread = new Thread(this::spoolWriterLoop, "es-task-document-spool-writer");
+            spoolWriterThread.setDaemon(true);
+            spoolWriterThread.start();
+        } else {
+            this.spoolWriterThread = null;
+        }
+        this.publisherThread = new Thread(this::publishLoop, "es-task-document-publisher");
+        publisherThread.setDaemon(true);
+        publisherThread.start();
+    }
+
+    void shutdown() {
+        shutdown = true;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        join(publisherThread);
+        if (spoolWriterThread != null) {
+            spoolWriterShutdown = true;
+            join(spoolWriterThread);
+        }
+
+        // Documents of a bulk request still running after the timeout are saved as well, ahead of the pending ones
+        Map<String, SpooledDocument> unpublished = new LinkedHashMap<>();
+        Segment segment;
+        synchronized (lock) {
+            inFlight.forEach((documentId, document) -> unpublished.put(documentId, document.toSpooledDocument(documentId)));
+            pending.forEach((documentId, document) -> unpublished.put(documentId, document.toSpooledDocument(documentId)));
+            pending.clear();
+            queueSize.set(0);
+            segment = loadedSegment;
+            loadedSegment = null;
+        }
+        if (!spool.isPresent()) {
+            if (!unpublished.isEmpty()) {
+                logger.warn("Dropping {} pending task documents on shutdown", unpublished.size());
+                droppedCounter.increment(unpublished.size());
+            }
+            return;
+        }
+
+        // Pending documents are older than the spooled ones, so they go to the head of the spool. They also
+        // include the not yet indexed documents of the loaded segment, which they replace.
+        List<SpooledDocument> documents = new ArrayList<>(unpublished.values());
+        try {
+            if (segment != null) {
+                spool.get().putBack(segment, documents);
+            } else {
+                spool.get().prepend(documents);
+            }
+            if (!documents.isEmpty()) {
+                logger.info("Saved {} pending task documents to the spool", documents.size());
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot save {} pending task documents to the spool", documents.size(), e);
+            droppedCounter.increment(documents.size());
+        }
+        spool.get().close();
+    }
+
+    void offer(String documentId, String documentJson) {
+        receivedCounter.increment();
+        synchronized (lock) {
+            long now = registry.clock().wallTime();
+            if (isSpooling()) {
+                // The spooled version is published after the queued one, which therefore does not have to be sent
+                PendingDocument previous = pending.remove(documentId);
+                if (previous != null) {
+                    coalescedCounter.increment();
+                    queueSize.set(pending.size());
+                }
+                if (inFlight.containsKey(documentId)) {
+                    supersededIds.add(documentId);
+                }
+                handOffToSpool(new SpooledDocument(documentId, previous != null ? previous.getEnqueueTime() : now, documentJson));
+                return;
+            }
+            PendingDocument previous = pending.get(documentId);
+            if (previous != null) {
+                coalescedCounter.increment();
+                pending.put(documentId, new PendingDocument(documentJson, previous.getEnqueueTime(), 0));
+                return;
+            }
+            if (pending.size() < configuration.getPublisherMemoryQueueSize()) {
+                pending.put(documentId, new PendingDocument(documentJson, now, 0));
+                queueSize.set(pending.size());
+                if (pending.size() >= configuration.getPublisherBatchSize()) {
+                    lock.notifyAll();
+                }
+                return;
+            }
+            handOffToSpool(new SpooledDocument(documentId, now, documentJson));
+        }
+    }
+
+    /**
+     * Must be called with the lock held.
+     *
+     * @return true if there are spooled documents not published yet, so new documents must be spooled as well
+     */
+    private boolean isSpooling() {
+        return spool.isPresent() && (spoolSegmentInProgress || spoolHandOffCount.get() > 0 || !spool.get().isEmpty());
+    }
+
+    /**
+     * Must be called with the lock held. The document is written to the spool by the spool writer thread.
+     */
+    private void handOffToSpool(SpooledDocument document) {
+        if (!spool.isPresent()) {
+            droppedCounter.increment();
+            logger.debug("Task document queue full; dropping document {}", document.getId());
+            return;
+        }
+        spoolHandOffCount.incrementAndGet();
+        if (!spoolHandOff.offer(document)) {
+            spoolHandOffCount.decrementAndGet();
+            droppedCounter.increment();
+            logger.debug("Task document spool writer queue full; dropping document {}", document.getId());
+        }
+    }
+
+    private void spoolWriterLoop() {
+        TaskDocumentSpool taskDocumentSpool = spool.get();
+        while (true) {
+            SpooledDocument document;
+            try {
+                document = spoolHandOff.poll(SPOOL_WRITER_POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                logger.info("Task document spool writer thread interrupted; terminating it");
+                return;
+            }
+            if (document == null) {
+                if (spoolWriterShutdown) {
+                    return;
+                }
+                continue;
+            }
+
+            boolean wasEmpty = taskDocumentSpool.isEmpty();
+            try {
+                if (taskDocumentSpool.append(document)) {
+                    spooledCounter.increment();
+                } else {
+                    droppedCounter.increment();
+                    logger.debug("Task document spool full; dropping document {}", document.getId());
+                }
+            } catch (IOException e) {
+                droppedCounter.increment();
+                logger.warn("Cannot write task document {} to the spool", document.getId(), e);
+            }
+            spoolSizeBytes.set(taskDocumentSpool.getSizeBytes());
+            if (spoolHandOffCount.decrementAndGet() == 0 || wasEmpty) {
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void publishLoop() {
+        int consecutiveFailures = 0;
+        while (!shutdown) {
+            try {
+                List<Pair<String, PendingDocument>> batch = takeBatch();
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                if (publish(batch)) {
+                    consecutiveFailures = 0;
+                } else {
+                    consecutiveFailures++;
+                    backoff(consecutiveFailures);
+                }
+            } catch (InterruptedException e) {
+                logger.info("Task document publisher thread interrupted; terminating it");
+                return;
+            } catch (Exception e) {
+                logger.error("Unexpected error in the task document publisher loop", e);
+            }
+        }
+    }
+
+    private List<Pair<String, PendingDocument>> takeBatch() throws InterruptedException {
+        int batchSize = Math.max(1, configuration.getPublisherBatchSize());
+        long deadline = System.currentTimeMillis() + configuration.getPublisherFlushIntervalMs();
+        while (true) {
+            Segment completedSegment = null;
+            boolean loadSegment = false;
+            synchronized (lock) {
+                while (!shutdown && pending.size() < batchSize) {
+                    if (pending.isEmpty() && spoolSegmentInProgress) {
+                        // All documents of the loaded segment are indexed or spooled again
+                        completedSegment = loadedSegment;
+                        loadedSegment = null;
+                        spoolSegmentInProgress = false;
+                        break;
+                    }
+                    if (pending.isEmpty() && spool.isPresent() && !spool.get().isEmpty()) {
+                        spoolSegmentInProgress = true;
+                        loadSegment = true;
+                        break;
+                    }
+                    long waitMs = deadline - System.currentTimeMillis();
+                    if (waitMs <= 0) {
+                        break;
+                    }
+                    lock.wait(waitMs);
+                }
+                if (completedSegment == null && !loadSegment) {
+                    return shutdown ? Collections.emptyList() : takePending(batchSize);
+                }
+            }
+            // The spool is accessed without holding the lock, as offer() must not wait for the disk IO
+            if (completedSegment != null) {
+                spool.get().acknowledge(completedSegment);
+                spoolSizeBytes.set(spool.get().getSizeBytes());
+            } else {
+                loadSpoolSegment();
+            }
+        }
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    private List<Pair<String, PendingDocument>> takePending(int batchSize) {
+        List<Pair<String, PendingDocument>> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        Iterator<Map.Entry<String, PendingDocument>> it = pending.entrySet().iterator();
+        while (it.hasNext() && batch.size() < batchSize) {
+            Map.Entry<String, PendingDocument> entry = it.next();
+            batch.add(Pair.of(entry.getKey(), entry.getValue()));
+            inFlight.put(entry.getKey(), entry.getValue());
+            it.remove();
+        }
+        queueSize.set(pending.size());
+        return batch;
+    }
+
+    /**
+     * Must be called with an empty memory queue, so the spooled documents are the oldest ones.
+     */
+    private void loadSpoolSegment() {
+        TaskDocumentSpool taskDocumentSpool = spool.get();
+        Optional<Segment> segment;
+        try {
+            segment = taskDocumentSpool.takeOldestSegment();
+        } catch (IOException e) {
+            logger.error("Cannot load task documents from the spool; skipping the spool segment", e);
+            segment = Optional.empty();
+        }
+        synchronized (lock) {
+            if (segment.isPresent()) {
+                loadedSegment = segment.get();
+                for (SpooledDocument document : loadedSegment.getDocuments()) {
+                    PendingDocument previous = pending.get(document.getId());
+                    if (previous != null) {
+                        coalescedCounter.increment();
+                    }
+                    long enqueueTime = previous != null ? previous.getEnqueueTime() : document.getEnqueueTime();
+                    pending.put(document.getId(), new PendingDocument(document.getJson(), enqueueTime, 0));
+                }
+            } else {
+                spoolSegmentInProgress = false;
+            }
+            queueSize.set(pending.size());
+        }
+        spoolSizeBytes.set(taskDocumentSpool.getSizeBytes());
+    }
+
+    /**
+     * @return true if all documents were indexed
+     */
+    private boolean publish(List<Pair<String, PendingDocument>> batch) {
+        Map<String, String> documents = new LinkedHashMap<>();
+        batch.forEach(document -> documents.put(document.getLeft(), document.getRight().getJson()));
+
+        long startTime = registry.clock().wallTime();
+        Set<String> failedIds;
+        try {
+            failedIds = bulkClient.bulkIndex(indexNameSupplier.get(), documents)
+                    .timeout(configuration.getPublisherBulkTimeoutMs(), TimeUnit.MILLISECONDS)
+                    .toBlocking()
+                    .first();
+        } catch (Exception e) {
+            logger.warn("Bulk request with {} task documents failed: {}", documents.size(), e.getMessage());
+            bulkFailuresCounter.increment();
+            failedIds = documents.keySet();
+        }
+        long now = registry.clock().wallTime();
+        bulkLatency.record(now - startTime, TimeUnit.MILLISECONDS);
+
+        synchronized (lock) {
+            for (Pair<String, PendingDocument> document : batch) {
+                if (failedIds.contains(document.getLeft())) {
+                    requeue(document.getLeft(), document.getRight());
+                } else {
+                    indexedCounter.increment();
+                    publishLag.record(now - document.getRight().getEnqueueTime(), TimeUnit.MILLISECONDS);
+                }
+            }
+            inFlight.clear();
+            supersededIds.clear();
+            queueSize.set(pending.size());
+        }
+        if (failedIds.isEmpty()) {
+            logger.debug("Indexed {} task documents", documents.size());
+            return true;
+        }
+        logger.info("Indexed {} out of {} task documents", documents.size() - failedIds.size(), documents.size());
+        return false;
+    }
+
+    /**
+     * Must be called with the lock held.
+     */
+    private void requeue(String documentId, PendingDocument document) {
+        // A newer version of the document received in the meantime takes precedence.
+        if (pending.containsKey(documentId) || supersededIds.contains(documentId)) {
+            return;
+        }
+        int attempts = document.getAttempts() + 1;
+        if (attempts < configuration.getPublisherMaxRetries()) {
+            retriedCounter.increment();
+            pending.put(documentId, new PendingDocument(document.getJson(), document.getEnqueueTime(), attempts));
+            return;
+        }
+        if (!spool.isPresent()) {
+            droppedCounter.increment();
+            logger.warn("Dropping task document {} after {} failed attempts", documentId, attempts);
+            return;
+        }
+        // No newer version is queued or spooled, so the document can be published after the spooled ones
+        logger.info("Moving task document {} to the spool after {} failed attempts", documentId, attempts);
+        handOffToSpool(document.toSpooledDocument(documentId));
+    }
+
+    private void backoff(int consecutiveFailures) throws InterruptedException {
+        long delayMs = Math.min(
+                configuration.getPublisherRetryMaxDelayMs(),
+                configuration.getPublisherRetryInitialDelayMs() << Math.min(consecutiveFailures - 1, 20)
+        );
+        synchronized (lock) {
+            long deadline = System.currentTimeMillis() + delayMs;
+            long waitMs;
+            while (!shutdown && (waitMs = deadline - System.currentTimeMillis()) > 0) {
+                lock.wait(waitMs);
+            }
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join(SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class PendingDocument {
+
+        private final String json;
+        private final long enqueueTime;
+        private final int attempts;
+
+        private PendingDocument(String json, long enqueueTime, int attempts) {
+            this.json = json;
+            this.enqueueTime = enqueueTime;
+            this.attempts = attempts;
+        }
+
+        private String getJson() {
+            return json;
+        }
+
+        private long getEnqueueTime() {
+            return enqueueTime;
+        }
+
+        private int getAttempts() {
+            return attempts;
+        }
+
+        private SpooledDocument toSpooledDocument(String documentId) {
+            return new SpooledDocument(documentId, enqueueTime, json);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.ext.elasticsearch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Disk spool for task documents that do not fit into the publisher memory queue. Documents are appended to segment
+ * files, one document per line, in the '&lt;id&gt;\t&lt;enqueueTime&gt;\t&lt;json&gt;' format, and read back a whole
+ * segment at a time, in the order they were written. A segment taken from the spool stays on disk until it is
+ * acknowledged, so its documents are published again by the next process instance if this one terminates before
+ * they are indexed. Segments left by a previous process instance are picked up on startup.
+ * <p>
+ * All methods are thread safe. Disk IO is done while holding the spool monitor, so callers should not hold other
+ * locks when invoking the methods that write or read segments.
+ */
+class TaskDocumentSpool {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskDocumentSpool.class);
+
+    private static final Pattern SEGMENT_NAME_PATTERN = Pattern.compile("spool-(-?\\d{18,19})\\.log");
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxSizeBytes;
+    private final long segmentSizeBytes;
+
+    private final Deque<Long> segmentIds = new ArrayDeque<>();
+    private long nextSegmentId;
+
+    private volatile boolean empty = true;
+    private volatile long sizeBytes;
+
+    private long currentSegmentId = -1;
+    private BufferedWriter currentWriter;
+    private long currentSegmentBytes;
+
+    TaskDocumentSpool(File directory, long maxSizeBytes, long segmentSizeBytes) throws IOException {
+        this.directory = directory;
+        this.maxSizeBytes = maxSizeBytes;
+        this.segmentSizeBytes = segmentSizeBytes;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create spool directory " + directory);
+        }
+        File[] files = directory.listFiles();
+        List<Long> existing = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = SEGMENT_NAME_PATTERN.matcher(file.getName());
+                if (matcher.matches()) {
+                    existing.add(Long.parseLong(matcher.group(1)));
+                } else if (file.getName().endsWith(TMP_SUFFIX) && !file.delete()) {
+                    logger.warn("Cannot delete incomplete spool segment {}", file);
+                }
+            }
+        }
+        existing.sort(Long::compare);
+        long existingSizeBytes = 0;
+        for (long segmentId : existing) {
+            segmentIds.add(segmentId);
+            existingSizeBytes += segmentFile(segmentId).length();
+            nextSegmentId = segmentId + 1;
+        }
+        this.sizeBytes = existingSizeBytes;
+        this.empty = segmentIds.isEmpty();
+        if (!segmentIds.isEmpty()) {
+            logger.info("Found {} spool segments with {} bytes of task documents in {}", segmentIds.size(), sizeBytes, directory);
+        }
+    }
+
+    /**
+     * @return true if there are no segments left to take. Segments that were taken, but not acknowledged yet are
+     * not counted.
+     */
+    boolean isEmpty() {
+        return empty;
+    }
+
+    long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * Appends a document to the spool.
+     *
+     * @return false if the spool is full, and the document was not written
+     */
+    synchronized boolean append(SpooledDocument document) throws IOException {
+        String record = document.toRecord();
+        int recordBytes = record.getBytes(StandardCharsets.UTF_8).length;
+        if (sizeBytes + recordBytes > maxSizeBytes) {
+            return false;
+        }
+        if (currentWriter == null || currentSegmentBytes >= segmentSizeBytes) {
+            rollSegment();
+        }
+        currentWriter.write(record);
+        currentWriter.flush();
+        currentSegmentBytes += recordBytes;
+        sizeBytes += recordBytes;
+        return true;
+    }
+
+    /**
+     * Takes the oldest segment from the spool, and reads its documents in the order they were written. The segment
+     * file is kept until {@link #acknowledge(Segment)} or {@link #putBack(Segment, List)} is called.
+     */
+    synchronized Optional<Segment> takeOldestSegment() throws IOException {
+        Long segmentId = segmentIds.peekFirst();
+        if (segmentId == null) {
+            return Optional.empty();
+        }
+        if (currentWriter != null && segmentId == currentSegmentId) {
+            closeCurrentSegment();
+        }
+        File segmentFile = segmentFile(segmentId);
+        List<SpooledDocument> documents = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(segmentFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                SpooledDocument document = SpooledDocument.fromRecord(line);
+                if (document != null) {
+                    documents.add(document);
+                } else if (!line.isEmpty()) {
+                    logger.warn("Skipping malformed spool record in {}", segmentFile);
+                }
+            }
+        } finally {
+            // A segment that cannot be read is not taken again; it stays on disk until acknowledged.
+            segmentIds.pollFirst();
+            empty = segmentIds.isEmpty();
+        }
+        return Optional.of(new Segment(segmentId, documents));
+    }
+
+    /**
+     * Deletes a segment taken from the spool, once all its documents are published.
+     */
+    synchronized void acknowledge(Segment segment) {
+        File segmentFile = segmentFile(segment.getId());
+        long segmentBytes = segmentFile.length();
+        if (segmentFile.delete()) {
+            sizeBytes = Math.max(0, sizeBytes - segmentBytes);
+        } else {
+            logger.warn("Cannot delete spool segment {}", segmentFile);
+        }
+    }
+
+    /**
+     * Replaces a segment taken from the spool with the given documents, which are not published yet. The segment is
+     * placed back at the head of the spool. If there are no documents left, the segment is acknowledged.
+     */
+    synchronized void putBack(Segment segment, List<SpooledDocument> documents) throws IOException {
+        if (documents.isEmpty()) {
+            acknowledge(segment);
+            return;
+        }
+        long previousBytes = segmentFile(segment.getId()).length();
+        long segmentBytes = writeSegment(segment.getId(), documents);
+        sizeBytes = Math.max(0, sizeBytes - previousBytes) + segmentBytes;
+        segmentIds.addFirst(segment.getId());
+        empty = false;
+    }
+
+    /**
+     * Writes the documents to a new segment, placed ahead of all segments in the spool. The spool size limit
+     * does not apply, as these documents are older than the spooled ones, and were already accepted for publishing.
+     */
+    synchronized void prepend(List<SpooledDocument> documents) throws IOException {
+        if (documents.isEmpty()) {
+            return;
+        }
+        long segmentId = segmentIds.isEmpty() ? nextSegmentId++ : segmentIds.peekFirst() - 1;
+        sizeBytes += writeSegment(segmentId, documents);
+        segmentIds.addFirst(segmentId);
+        empty = false;
+    }
+
+    synchronized void close() {
+        closeCurrentSegment();
+    }
+
+    private long writeSegment(long segmentId, List<SpooledDocument> documents) throws IOException {
+        File segmentFile = segmentFile(segmentId);
+        File tmpFile = new File(directory, segmentFile.getName() + TMP_SUFFIX);
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8))) {
+            for (SpooledDocument document : documents) {
+                writer.write(document.toRecord());
+            }
+        }
+        Files.move(tmpFile.toPath(), segmentFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return segmentFile.length();
+    }
+
+    private void rollSegment() throws IOException {
+        closeCurrentSegment();
+        long segmentId = nextSegmentId++;
+        currentWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(segmentFile(segmentId)), StandardCharsets.UTF_8));
+        currentSegmentId = segmentId;
+        currentSegmentBytes = 0;
+        segmentIds.addLast(segmentId);
+        empty = false;
+    }
+
+    private void closeCurrentSegment() {
+        if (currentWriter != null) {
+            try {
+                currentWriter.close();
+            } catch (IOException e) {
+                logger.warn("Cannot close spool segment {}", segmentFile(currentSegmentId), e);
+            }
+        }
+        currentWriter = null;
+        currentSegmentId = -1;
+        currentSegmentBytes = 0;
+    }
+
+    private File segmentFile(long segmentId) {
+        return new File(directory, String.format("spool-%019d.log", segmentId));
+    }
+
+    /**
+     * A segment taken from the spool, with its documents.
+     */
+    static class Segment {
+
+        private final long id;
+        private final List<SpooledDocument> documents;
+
+        private Segment(long id, List<SpooledDocument> documents) {
+            this.id = id;
+            this.documents = documents;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        List<SpooledDocument> getDocuments() {
+            return documents;
+        }
+    }
+
+    static class SpooledDocument {
+
+        private final String id;
+        private final long enqueueTime;
+        private final String json;
+
+        SpooledDocument(String id, long enqueueTime, String json) {
+            this.id = id;
+            this.enqueueTime = enqueueTime;
+            this.json = json;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        long getEnqueueTime() {
+            return enqueueTime;
+        }
+
+        String getJson() {
+            return json;
+        }
+
+        private String toRecord() {
+            return id + '\t' + enqueueTime + '\t' + json + '\n';
+        }
+
+        private static SpooledDocument fromRecord(String line) {
+            int idEnd = line.indexOf('\t');
+            int timeEnd = idEnd > 0 ? line.indexOf('\t', idEnd + 1) : -1;
+            if (timeEnd < 0) {
+                return null;
+            }
+            try {
+                return new SpooledDocument(line.substring(0, idEnd), Long.parseLong(line.substring(idEnd + 1, timeEnd)), line.substring(timeEnd + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
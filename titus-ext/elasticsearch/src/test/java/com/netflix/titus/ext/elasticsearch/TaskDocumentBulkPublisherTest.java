@@ -0,0 +1,257 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.ext.elasticsearch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.titus.ext.elasticsearch.TaskDocumentSpool.Segment;
+import com.netflix.titus.ext.elasticsearch.TaskDocumentSpool.SpooledDocument;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import rx.Observable;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TaskDocumentBulkPublisherTest {
+
+    private static final String INDEX_NAME = "titustasks_test";
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ElasticsearchConfiguration configuration = mock(ElasticsearchConfiguration.class);
+
+    private final StubBulkClient bulkClient = new StubBulkClient();
+
+    private File spoolDirectory;
+    private TaskDocumentBulkPublisher publisher;
+
+    @Before
+    public void setUp() throws Exception {
+        when(configuration.getPublisherBatchSize()).thenReturn(100);
+        when(configuration.getPublisherFlushIntervalMs()).thenReturn(100L);
+        when(configuration.getPublisherMemoryQueueSize()).thenReturn(100);
+        when(configuration.getPublisherSpoolWriterQueueSize()).thenReturn(100);
+        when(configuration.getPublisherBulkTimeoutMs()).thenReturn(5_000L);
+        when(configuration.getPublisherMaxRetries()).thenReturn(100);
+        when(configuration.getPublisherRetryInitialDelayMs()).thenReturn(10L);
+        when(configuration.getPublisherRetryMaxDelayMs()).thenReturn(50L);
+
+        spoolDirectory = temporaryFolder.newFolder("spool");
+    }
+
+    @After
+    public void tearDown() {
+        if (publisher != null) {
+            publisher.shutdown();
+        }
+    }
+
+    @Test
+    public void testDocumentsOfSameTaskAreCoalesced() throws Exception {
+        publisher = newPublisher();
+
+        publisher.offer("task1", "{\"version\":1}");
+        publisher.offer("task1", "{\"version\":2}");
+        publisher.offer("task2", "{\"version\":1}");
+
+        await().timeout(5, TimeUnit.SECONDS).until(() -> bulkClient.indexed.size() == 2);
+        assertThat(bulkClient.indexed.get("task1")).isEqualTo("{\"version\":2}");
+        assertThat(bulkClient.indexedCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testFailedDocumentsAreRetried() throws Exception {
+        publisher = newPublisher();
+        bulkClient.failingIds.add("task1");
+
+        publisher.offer("task1", "{}");
+        publisher.offer("task2", "{}");
+
+        await().timeout(5, TimeUnit.SECONDS).until(() -> bulkClient.requests.get() >= 2);
+        assertThat(bulkClient.indexed).containsOnlyKeys("task2");
+
+        bulkClient.failingIds.clear();
+        await().timeout(5, TimeUnit.SECONDS).until(() -> bulkClient.indexed.containsKey("task1"));
+    }
+
+    @Test
+    public void testDocumentsAboveMemoryLimitAreSpooled() throws Exception {
+        when(configuration.getPublisherMemoryQueueSize()).thenReturn(1);
+        bulkClient.available = false;
+        publisher = newPublisher();
+
+        publisher.offer("task1", "{}");
+        publisher.offer("task2", "{\"version\":1}");
+        publisher.offer("task2", "{\"version\":2}");
+        publisher.offer("task3", "{}");
+
+        bulkClient.available = true;
+        await().timeout(5, TimeUnit.SECONDS).until(() -> bulkClient.indexed.size() == 3);
+        assertThat(bulkClient.indexed.get("task2")).isEqualTo("{\"version\":2}");
+    }
+
+    @Test
+    public void testPendingDocumentsArePublishedAfterRestart() throws Exception {
+        bulkClient.available = false;
+        publisher = newPublisher();
+        publisher.offer("task1", "{}");
+        publisher.offer("task2", "{}");
+        publisher.shutdown();
+
+        bulkClient.available = true;
+        publisher = newPublisher();
+        await().timeout(5, TimeUnit.SECONDS).until(() -> bulkClient.indexed.size() == 2);
+    }
+
+    @Test
+    public void testPendingDocumentsAreSpooledAheadOfSpooledOnesOnShutdown() throws Exception {
+        when(configuration.getPublisherFlushIntervalMs()).thenReturn(60_000L);
+        when(configuration.getPublisherMemoryQueueSize()).thenReturn(2);
+        publisher = newPublisher();
+        publisher.offer("task1", "{}");
+        publisher.offer("task2", "{}");
+        publisher.offer("task3", "{}");
+        await().timeout(5, TimeUnit.SECONDS).until(() -> spoolDirectory.list().length > 0);
+        publisher.shutdown();
+        publisher = null;
+
+        TaskDocumentSpool spool = new TaskDocumentSpool(spoolDirectory, 1_000_000, 1_000);
+        assertThat(takeAll(spool)).containsExactly("task1={}", "task2={}", "task3={}");
+        assertThat(bulkClient.requests.get()).isZero();
+    }
+
+    @Test
+    public void testFailedDocumentsAreSpooledAfterMaxRetries() throws Exception {
+        when(configuration.getPublisherMaxRetries()).thenReturn(2);
+        bulkClient.failingIds.add("task1");
+        publisher = newPublisher();
+
+        publisher.offer("task1", "{}");
+        await().timeout(5, TimeUnit.SECONDS).until(() -> bulkClient.requests.get() >= 4);
+        assertThat(bulkClient.indexed).isEmpty();
+
+        bulkClient.failingIds.clear();
+        await().timeout(5, TimeUnit.SECONDS).until(() -> bulkClient.indexed.containsKey("task1"));
+    }
+
+    @Test
+    public void testSpoolReturnsDocumentsInWriteOrder() throws Exception {
+        TaskDocumentSpool spool = new TaskDocumentSpool(spoolDirectory, 1_000_000, 20);
+        spool.append(new SpooledDocument("task1", 1, "{\"version\":1}"));
+        spool.append(new SpooledDocument("task2", 2, "{}"));
+        spool.append(new SpooledDocument("task1", 3, "{\"version\":2}"));
+        spool.close();
+
+        TaskDocumentSpool reopened = new TaskDocumentSpool(spoolDirectory, 1_000_000, 20);
+        List<Long> enqueueTimes = new ArrayList<>();
+        List<String> documents = new ArrayList<>();
+        while (!reopened.isEmpty()) {
+            Segment segment = reopened.takeOldestSegment().get();
+            segment.getDocuments().forEach(document -> {
+                enqueueTimes.add(document.getEnqueueTime());
+                documents.add(document.getId() + '=' + document.getJson());
+            });
+            reopened.acknowledge(segment);
+        }
+        assertThat(documents).containsExactly("task1={\"version\":1}", "task2={}", "task1={\"version\":2}");
+        assertThat(enqueueTimes).containsExactly(1L, 2L, 3L);
+        assertThat(reopened.getSizeBytes()).isZero();
+    }
+
+    @Test
+    public void testSpoolSegmentIsKeptUntilAcknowledged() throws Exception {
+        TaskDocumentSpool spool = new TaskDocumentSpool(spoolDirectory, 1_000_000, 1_000);
+        spool.append(new SpooledDocument("task1", 1, "{}"));
+        spool.append(new SpooledDocument("task2", 1, "{}"));
+        spool.takeOldestSegment().get();
+        assertThat(spool.isEmpty()).isTrue();
+        spool.close();
+
+        TaskDocumentSpool reopened = new TaskDocumentSpool(spoolDirectory, 1_000_000, 1_000);
+        Segment segment = reopened.takeOldestSegment().get();
+        assertThat(segment.getDocuments()).hasSize(2);
+
+        reopened.putBack(segment, segment.getDocuments().subList(1, 2));
+        reopened.prepend(Collections.singletonList(new SpooledDocument("task0", 1, "{}")));
+        assertThat(takeAll(reopened)).containsExactly("task0={}", "task2={}");
+        assertThat(spoolDirectory.list()).isEmpty();
+    }
+
+    private static List<String> takeAll(TaskDocumentSpool spool) throws Exception {
+        List<String> documents = new ArrayList<>();
+        while (!spool.isEmpty()) {
+            Segment segment = spool.takeOldestSegment().get();
+            segment.getDocuments().forEach(document -> documents.add(document.getId() + '=' + document.getJson()));
+            spool.acknowledge(segment);
+        }
+        return documents;
+    }
+
+    private TaskDocumentBulkPublisher newPublisher() throws Exception {
+        TaskDocumentSpool spool = new TaskDocumentSpool(spoolDirectory, 1_000_000, 1_000);
+        return new TaskDocumentBulkPublisher(configuration, bulkClient, () -> INDEX_NAME, Optional.of(spool), new DefaultRegistry());
+    }
+
+    /**
+     * Stand-in for the Elasticsearch bulk endpoint.
+     */
+    private static class StubBulkClient implements TaskDocumentBulkClient {
+
+        private final Map<String, String> indexed = new ConcurrentHashMap<>();
+        private final Set<String> failingIds = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger indexedCount = new AtomicInteger();
+        private volatile boolean available = true;
+
+        @Override
+        public Observable<Set<String>> bulkIndex(String indexName, Map<String, String> documents) {
+            return Observable.fromCallable(() -> {
+                requests.incrementAndGet();
+                if (!available) {
+                    throw new IllegalStateException("Elasticsearch not available");
+                }
+                Set<String> failed = ConcurrentHashMap.newKeySet();
+                documents.forEach((documentId, documentJson) -> {
+                    if (failingIds.contains(documentId)) {
+                        failed.add(documentId);
+                    } else {
+                        indexed.put(documentId, documentJson);
+                        indexedCount.incrementAndGet();
+                    }
+                });
+                return failed;
+            });
+        }
+    }
+}
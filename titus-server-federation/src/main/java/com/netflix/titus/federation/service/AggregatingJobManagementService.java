@@ -24,6 +24,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -37,6 +38,7 @@ import com.netflix.titus.common.util.StringExt;
 import com.netflix.titus.common.util.concurrency.CallbackCountDownLatch;
 import com.netflix.titus.common.util.rx.EmitterWithMultipleSubscriptions;
 import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.federation.service.CellLocationCache.CellLocation;
 import com.netflix.titus.federation.startup.GrpcConfiguration;
 import com.netflix.titus.federation.startup.TitusFederationConfiguration;
 import com.netflix.titus.grpc.protogen.Job;
@@ -52,6 +54,7 @@ import com.netflix.titus.grpc.protogen.JobProcessesUpdate;
 import com.netflix.titus.grpc.protogen.JobQuery;
 import com.netflix.titus.grpc.protogen.JobQueryResult;
 import com.netflix.titus.grpc.protogen.JobStatusUpdate;
+import com.netflix.titus.grpc.protogen.Page;
 import com.netflix.titus.grpc.protogen.Pagination;
 import com.netflix.titus.grpc.protogen.Task;
 import com.netflix.titus.grpc.protogen.TaskId;
@@ -72,8 +75,7 @@ import rx.Observable;
 import static com.netflix.titus.api.jobmanager.JobAttributes.JOB_ATTRIBUTES_STACK;
 import static com.netflix.titus.api.jobmanager.TaskAttributes.TASK_ATTRIBUTES_STACK;
 import static com.netflix.titus.federation.service.CellConnectorUtil.callToCell;
-import static com.netflix.titus.federation.service.PageAggregationUtil.combinePagination;
-import static com.netflix.titus.federation.service.PageAggregationUtil.takeCombinedPage;
+import static com.netflix.titus.federation.service.PageAggregationUtil.takeMergedPage;
 import static com.netflix.titus.runtime.endpoint.common.grpc.CommonGrpcModelConverters.emptyGrpcPagination;
 import static com.netflix.titus.runtime.endpoint.common.grpc.GrpcUtil.createRequestObservable;
 import static com.netflix.titus.runtime.endpoint.common.grpc.GrpcUtil.createWrappedStub;
@@ -93,6 +95,7 @@ public class AggregatingJobManagementService implements JobManagementService {
     private AggregatingJobManagementServiceHelper jobManagementServiceHelper;
     private final CellRouter router;
     private final CallMetadataResolver callMetadataResolver;
+    private final CellLocationCache cellLocationCache;
 
     @Inject
     public AggregatingJobManagementService(GrpcConfiguration grpcConfiguration,
@@ -101,7 +104,8 @@ public class AggregatingJobManagementService implements JobManagementService {
                                            CellRouter router,
                                            CallMetadataResolver callMetadataResolver,
                                            AggregatingCellClient aggregatingClient,
-                                           AggregatingJobManagementServiceHelper jobManagementServiceHelper) {
+                                           AggregatingJobManagementServiceHelper jobManagementServiceHelper,
+                                           CellLocationCache cellLocationCache) {
 
         this.grpcConfiguration = grpcConfiguration;
         this.federationConfiguration = federationConfiguration;
@@ -110,6 +114,7 @@ public class AggregatingJobManagementService implements JobManagementService {
         this.callMetadataResolver = callMetadataResolver;
         this.aggregatingClient = aggregatingClient;
         this.jobManagementServiceHelper = jobManagementServiceHelper;
+        this.cellLocationCache = cellLocationCache;
     }
 
     @Override
@@ -132,7 +137,7 @@ public class AggregatingJobManagementService implements JobManagementService {
                     emitter::onCompleted
             );
             client.createJob(jobDescriptor, streamObserver);
-        }, grpcConfiguration.getRequestTimeoutMs());
+        }, grpcConfiguration.getRequestTimeoutMs()).doOnNext(jobId -> cellLocationCache.recordJob(jobId, cell));
     }
 
     @Override
@@ -193,49 +198,34 @@ public class AggregatingJobManagementService implements JobManagementService {
     }
 
     private Observable<JobQueryResult> findJobsWithCursorPagination(JobQuery request, Set<String> fields) {
-        return aggregatingClient.call(JobManagementServiceGrpc::newStub, findJobsInCell(request))
-                .map(CellResponse::getResult)
-                .reduce(this::combineJobResults)
-                .map(combinedResults -> {
-                    Pair<List<Job>, Pagination> combinedPage = takeCombinedPage(
-                            request.getPage(),
-                            combinedResults.getItemsList(),
-                            combinedResults.getPagination(),
-                            JobManagerCursors.jobCursorOrderComparator(),
-                            JobManagerCursors::newCursorFrom
-                    );
-
-                    if (!CollectionsExt.isNullOrEmpty(fields)) {
-                        combinedPage = combinedPage.mapLeft(jobs -> jobs.stream()
-                                .map(job -> ProtobufCopy.copy(job, fields))
-                                .collect(Collectors.toList())
-                        );
-                    }
-
-                    return JobQueryResult.newBuilder()
-                            .addAllItems(combinedPage.getLeft())
-                            .setPagination(combinedPage.getRight())
-                            .build();
-                });
-    }
+        List<Function<Page, Observable<Pair<List<Job>, Pagination>>>> cellFetchers = connector.getChannels().keySet().stream()
+                .map(cell -> (Function<Page, Observable<Pair<List<Job>, Pagination>>>) page ->
+                        singleCellCall(cell, findJobsInCell(request.toBuilder().setPage(page).build()))
+                                .doOnNext(result -> result.getItemsList().forEach(job -> cellLocationCache.recordJob(job, cell)))
+                                .map(result -> Pair.of(result.getItemsList(), result.getPagination()))
+                )
+                .collect(Collectors.toList());
 
-    private ClientCall<JobQueryResult> findJobsInCell(JobQuery request) {
-        return (client, streamObserver) -> wrap(client).findJobs(request, streamObserver);
+        return takeMergedPage(
+                request.getPage(),
+                cellFetchers,
+                getCellPrefetchSize(request.getPage(), cellFetchers.size()),
+                JobManagerCursors.jobCursorOrderComparator(),
+                JobManagerCursors::newCursorFrom
+        ).map(mergedPage -> {
+            List<Job> jobs = mergedPage.getLeft().stream()
+                    .map(this::addStackName)
+                    .map(job -> CollectionsExt.isNullOrEmpty(fields) ? job : ProtobufCopy.copy(job, fields))
+                    .collect(Collectors.toList());
+            return JobQueryResult.newBuilder()
+                    .addAllItems(jobs)
+                    .setPagination(mergedPage.getRight())
+                    .build();
+        });
     }
 
-    private JobQueryResult combineJobResults(JobQueryResult one, JobQueryResult other) {
-        Pagination pagination = combinePagination(one.getPagination(), other.getPagination());
-        List<Job> oneDecoratedList = one.getItemsList().stream()
-                .map(this::addStackName)
-                .collect(Collectors.toList());
-        List<Job> otherDecoratedList = other.getItemsList().stream()
-                .map(this::addStackName)
-                .collect(Collectors.toList());
-        return JobQueryResult.newBuilder()
-                .setPagination(pagination)
-                .addAllItems(oneDecoratedList)
-                .addAllItems(otherDecoratedList)
-                .build();
+    private ClientCall<JobQueryResult> findJobsInCell(JobQuery request) {
+        return (client, streamObserver) -> client.findJobs(request, streamObserver);
     }
 
     @Override
@@ -256,7 +246,9 @@ public class AggregatingJobManagementService implements JobManagementService {
                     () -> emitter.onNext(buildJobSnapshotEndMarker())
             );
             clients.forEach((cell, client) -> {
-                StreamObserver<JobChangeNotification> streamObserver = new FilterOutFirstMarker(emitter, markersEmitted);
+                StreamObserver<JobChangeNotification> streamObserver = new FilterOutFirstMarker(emitter, markersEmitted,
+                        notification -> cellLocationCache.recordNotification(notification, cell)
+                );
                 wrap(client).observeJobs(Empty.getDefaultInstance(), streamObserver);
             });
         });
@@ -278,13 +270,45 @@ public class AggregatingJobManagementService implements JobManagementService {
         return findTaskInAllCells(taskId).map(CellResponse::getResult);
     }
 
+    /**
+     * Finds the cell of a task. If the task location is known from earlier requests, only that cell is queried, and all
+     * cells are queried if it does not confirm the location.
+     */
     private Observable<CellResponse<JobManagementServiceStub, Task>> findTaskInAllCells(String taskId) {
+        CellLocation location = cellLocationCache.findTask(taskId);
+        if (location == null) {
+            return broadcastFindTask(taskId);
+        }
+        if (!location.getCell().isPresent()) {
+            return Observable.error(location.getNotFoundError());
+        }
+        Cell cell = location.getCell().get();
+        Optional<JobManagementServiceStub> client = CellConnectorUtil.toStub(cell, connector, JobManagementServiceGrpc::newStub);
+        if (!client.isPresent()) {
+            cellLocationCache.invalidateTask(taskId);
+            return broadcastFindTask(taskId);
+        }
+        Observable<Task> request = createRequestObservable(emitter ->
+                findTaskInCell(taskId).accept(client.get(), GrpcUtil.createSimpleClientResponseObserver(emitter))
+        );
+        return request
+                .map(task -> new CellResponse<>(cell, client.get(), task))
+                .onErrorResumeNext(error -> {
+                    logger.debug("Task {} not confirmed in its last known cell {}: {}", taskId, cell, error.getMessage());
+                    cellLocationCache.invalidateTask(taskId);
+                    return broadcastFindTask(taskId);
+                });
+    }
+
+    private Observable<CellResponse<JobManagementServiceStub, Task>> broadcastFindTask(String taskId) {
         return aggregatingClient.callExpectingErrors(JobManagementServiceGrpc::newStub, findTaskInCell(taskId))
                 .reduce(ResponseMerger.singleValue())
                 .flatMap(response -> response.getResult()
                         .map(v -> Observable.just(CellResponse.ofValue(response)))
                         .onErrorGet(Observable::error)
-                );
+                )
+                .doOnNext(response -> cellLocationCache.recordTask(response.getResult(), response.getCell()))
+                .doOnError(error -> cellLocationCache.recordTaskError(taskId, error));
     }
 
     private ClientCall<Task> findTaskInCell(String taskId) {
@@ -318,49 +342,34 @@ public class AggregatingJobManagementService implements JobManagementService {
     }
 
     private Observable<TaskQueryResult> findTasksWithCursorPagination(TaskQuery request, Set<String> fields) {
-        return aggregatingClient.call(JobManagementServiceGrpc::newStub, findTasksInCell(request))
-                .map(CellResponse::getResult)
-                .reduce(this::combineTaskResults)
-                .map(combinedResults -> {
-                    Pair<List<Task>, Pagination> combinedPage = takeCombinedPage(
-                            request.getPage(),
-                            combinedResults.getItemsList(),
-                            combinedResults.getPagination(),
-                            JobManagerCursors.taskCursorOrderComparator(),
-                            JobManagerCursors::newCursorFrom
-                    );
-
-                    if (!CollectionsExt.isNullOrEmpty(fields)) {
-                        combinedPage = combinedPage.mapLeft(tasks -> tasks.stream()
-                                .map(task -> ProtobufCopy.copy(task, fields))
-                                .collect(Collectors.toList())
-                        );
-                    }
-
-                    return TaskQueryResult.newBuilder()
-                            .addAllItems(combinedPage.getLeft())
-                            .setPagination(combinedPage.getRight())
-                            .build();
-                });
-    }
+        List<Function<Page, Observable<Pair<List<Task>, Pagination>>>> cellFetchers = connector.getChannels().keySet().stream()
+                .map(cell -> (Function<Page, Observable<Pair<List<Task>, Pagination>>>) page ->
+                        singleCellCall(cell, findTasksInCell(request.toBuilder().setPage(page).build()))
+                                .doOnNext(result -> result.getItemsList().forEach(task -> cellLocationCache.recordTask(task, cell)))
+                                .map(result -> Pair.of(result.getItemsList(), result.getPagination()))
+                )
+                .collect(Collectors.toList());
 
-    private ClientCall<TaskQueryResult> findTasksInCell(TaskQuery request) {
-        return (client, streamObserver) -> wrap(client).findTasks(request, streamObserver);
+        return takeMergedPage(
+                request.getPage(),
+                cellFetchers,
+                getCellPrefetchSize(request.getPage(), cellFetchers.size()),
+                JobManagerCursors.taskCursorOrderComparator(),
+                JobManagerCursors::newCursorFrom
+        ).map(mergedPage -> {
+            List<Task> tasks = mergedPage.getLeft().stream()
+                    .map(this::addStackName)
+                    .map(task -> CollectionsExt.isNullOrEmpty(fields) ? task : ProtobufCopy.copy(task, fields))
+                    .collect(Collectors.toList());
+            return TaskQueryResult.newBuilder()
+                    .addAllItems(tasks)
+                    .setPagination(mergedPage.getRight())
+                    .build();
+        });
     }
 
-    private TaskQueryResult combineTaskResults(TaskQueryResult one, TaskQueryResult other) {
-        Pagination pagination = combinePagination(one.getPagination(), other.getPagination());
-        List<Task> oneDecoratedList = one.getItemsList().stream()
-                .map(this::addStackName)
-                .collect(Collectors.toList());
-        List<Task> otherDecoratedList = other.getItemsList().stream()
-                .map(this::addStackName)
-                .collect(Collectors.toList());
-        return TaskQueryResult.newBuilder()
-                .setPagination(pagination)
-                .addAllItems(oneDecoratedList)
-                .addAllItems(otherDecoratedList)
-                .build();
+    private ClientCall<TaskQueryResult> findTasksInCell(TaskQuery request) {
+        return (client, streamObserver) -> client.findTasks(request, streamObserver);
     }
 
     @Override
@@ -405,6 +414,15 @@ public class AggregatingJobManagementService implements JobManagementService {
         return JobChangeNotification.newBuilder().setSnapshotEnd(marker).build();
     }
 
+    private int getCellPrefetchSize(Page page, int cellCount) {
+        double factor = federationConfiguration.getCellPagePrefetchFactor();
+        if (factor <= 0 || cellCount <= 1) {
+            return page.getPageSize();
+        }
+        int prefetchSize = (int) Math.ceil(page.getPageSize() * factor / cellCount);
+        return Math.min(page.getPageSize(), Math.max(1, prefetchSize));
+    }
+
     private JobManagementServiceStub wrap(JobManagementServiceStub client) {
         return createWrappedStub(client, callMetadataResolver, grpcConfiguration.getRequestTimeoutMs());
     }
@@ -15,10 +15,14 @@
  */
 package com.netflix.titus.federation.service;
 
+import java.util.Optional;
 import java.util.function.BiConsumer;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import com.netflix.titus.api.federation.model.Cell;
+import com.netflix.titus.federation.service.CellLocationCache.CellLocation;
+import com.netflix.titus.runtime.endpoint.common.grpc.GrpcUtil;
 import com.netflix.titus.runtime.endpoint.metadata.CallMetadataResolver;
 import com.netflix.titus.federation.startup.GrpcConfiguration;
 import com.netflix.titus.grpc.protogen.Job;
@@ -38,14 +42,20 @@ import static com.netflix.titus.runtime.endpoint.common.grpc.GrpcUtil.createWrap
 public class AggregatingJobManagementServiceHelper {
     private static final Logger logger = LoggerFactory.getLogger(AggregatingJobManagementServiceHelper.class);
     private AggregatingCellClient aggregatingCellClient;
+    private final CellConnector connector;
+    private final CellLocationCache cellLocationCache;
     private final GrpcConfiguration grpcConfiguration;
     private final CallMetadataResolver callMetadataResolver;
 
     @Inject
     public AggregatingJobManagementServiceHelper(AggregatingCellClient aggregatingCellClient,
+                                                 CellConnector connector,
+                                                 CellLocationCache cellLocationCache,
                                                  GrpcConfiguration grpcConfiguration,
                                                  CallMetadataResolver callMetadataResolver) {
         this.aggregatingCellClient = aggregatingCellClient;
+        this.connector = connector;
+        this.cellLocationCache = cellLocationCache;
         this.grpcConfiguration = grpcConfiguration;
         this.callMetadataResolver = callMetadataResolver;
 
@@ -55,13 +65,45 @@ public class AggregatingJobManagementServiceHelper {
         return createWrappedStub(stub, callMetadataResolver, grpcConfiguration.getRequestTimeoutMs());
     }
 
+    /**
+     * Finds the cell of a job. If the job location is known from earlier requests, only that cell is queried, and all
+     * cells are queried if it does not confirm the location.
+     */
     public Observable<CellResponse<JobManagementServiceStub, Job>> findJobInAllCells(String jobId) {
+        CellLocation location = cellLocationCache.findJob(jobId);
+        if (location == null) {
+            return broadcastFindJob(jobId);
+        }
+        if (!location.getCell().isPresent()) {
+            return Observable.error(location.getNotFoundError());
+        }
+        Cell cell = location.getCell().get();
+        Optional<JobManagementServiceStub> client = CellConnectorUtil.toStub(cell, connector, JobManagementServiceGrpc::newStub);
+        if (!client.isPresent()) {
+            cellLocationCache.invalidateJob(jobId);
+            return broadcastFindJob(jobId);
+        }
+        Observable<Job> request = GrpcUtil.createRequestObservable(emitter ->
+                findJobInCell(jobId).accept(client.get(), GrpcUtil.createSimpleClientResponseObserver(emitter))
+        );
+        return request
+                .map(job -> new CellResponse<>(cell, client.get(), job))
+                .onErrorResumeNext(error -> {
+                    logger.debug("Job {} not confirmed in its last known cell {}: {}", jobId, cell, error.getMessage());
+                    cellLocationCache.invalidateJob(jobId);
+                    return broadcastFindJob(jobId);
+                });
+    }
+
+    private Observable<CellResponse<JobManagementServiceStub, Job>> broadcastFindJob(String jobId) {
         return aggregatingCellClient.callExpectingErrors(JobManagementServiceGrpc::newStub, findJobInCell(jobId))
                 .reduce(ResponseMerger.singleValue())
                 .flatMap(response -> response.getResult()
                         .map(v -> Observable.just(CellResponse.ofValue(response)))
                         .onErrorGet(Observable::error)
-                );
+                )
+                .doOnNext(response -> cellLocationCache.recordJob(jobId, response.getCell()))
+                .doOnError(error -> cellLocationCache.recordJobError(jobId, error));
     }
 
     public ClientCall<Job> findJobInCell(String jobId) {
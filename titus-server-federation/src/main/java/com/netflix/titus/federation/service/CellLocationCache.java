@@ -0,0 +1,196 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.federation.service;
+
+import java.util.Optional;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.netflix.spectator.api.Id;
+import com.netflix.spectator.api.Registry;
+import com.netflix.titus.api.federation.model.Cell;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.util.cache.Cache;
+import com.netflix.titus.common.util.cache.Caches;
+import com.netflix.titus.common.util.time.Clock;
+import com.netflix.titus.federation.startup.TitusFederationConfiguration;
+import com.netflix.titus.grpc.protogen.Job;
+import com.netflix.titus.grpc.protogen.JobChangeNotification;
+import com.netflix.titus.grpc.protogen.Task;
+import io.grpc.Status;
+
+/**
+ * Remembers in which cells jobs and tasks are located, based on the cell responses (create requests, queries and
+ * event streams), so single job/task requests can be sent to one cell. Jobs/tasks not found in any cell are remembered
+ * for a short time as well (negative caching), together with the original error. Entries expire after the configured
+ * TTL, and should be invalidated by the callers if a cell does not confirm the location.
+ */
+@Singleton
+public class CellLocationCache {
+
+    private static final String METRIC_ROOT = "titusFederation.cellLocationCache.";
+
+    private final TitusFederationConfiguration configuration;
+    private final Clock clock;
+    private final Registry registry;
+    private final Cache<String, CellLocation> jobLocations;
+    private final Cache<String, CellLocation> taskLocations;
+    private final Id lookupsId;
+
+    @Inject
+    public CellLocationCache(TitusFederationConfiguration configuration, TitusRuntime titusRuntime) {
+        this.configuration = configuration;
+        this.clock = titusRuntime.getClock();
+        this.registry = titusRuntime.getRegistry();
+        int maxSize = Math.max(0, configuration.getCellLocationCacheSize());
+        this.jobLocations = Caches.instrumentedCacheWithMaxSize(maxSize, METRIC_ROOT + "jobs", registry);
+        this.taskLocations = Caches.instrumentedCacheWithMaxSize(maxSize, METRIC_ROOT + "tasks", registry);
+        this.lookupsId = registry.createId(METRIC_ROOT + "lookups");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobLocations.shutdown();
+        taskLocations.shutdown();
+    }
+
+    /**
+     * Returns the last known location of a job, or null if it is not known, or the cache is disabled.
+     */
+    CellLocation findJob(String jobId) {
+        return find(jobLocations, jobId, "job");
+    }
+
+    /**
+     * Returns the last known location of a task, or null if it is not known, or the cache is disabled.
+     */
+    CellLocation findTask(String taskId) {
+        return find(taskLocations, taskId, "task");
+    }
+
+    void recordJob(String jobId, Cell cell) {
+        record(jobLocations, jobId, cell);
+    }
+
+    void recordJob(Job job, Cell cell) {
+        recordJob(job.getId(), cell);
+    }
+
+    void recordTask(Task task, Cell cell) {
+        record(taskLocations, task.getId(), cell);
+        if (!task.getJobId().isEmpty()) {
+            record(jobLocations, task.getJobId(), cell);
+        }
+    }
+
+    void recordNotification(JobChangeNotification notification, Cell cell) {
+        switch (notification.getNotificationCase()) {
+            case JOBUPDATE:
+                recordJob(notification.getJobUpdate().getJob(), cell);
+                break;
+            case TASKUPDATE:
+                recordTask(notification.getTaskUpdate().getTask(), cell);
+                break;
+            default:
+        }
+    }
+
+    /**
+     * Remembers that a job was not found in any cell, if the given error is {@link Status.Code#NOT_FOUND}.
+     */
+    void recordJobError(String jobId, Throwable error) {
+        recordNotFound(jobLocations, jobId, error);
+    }
+
+    /**
+     * Remembers that a task was not found in any cell, if the given error is {@link Status.Code#NOT_FOUND}.
+     */
+    void recordTaskError(String taskId, Throwable error) {
+        recordNotFound(taskLocations, taskId, error);
+    }
+
+    void invalidateJob(String jobId) {
+        jobLocations.invalidate(jobId);
+    }
+
+    void invalidateTask(String taskId) {
+        taskLocations.invalidate(taskId);
+    }
+
+    private CellLocation find(Cache<String, CellLocation> locations, String id, String type) {
+        if (!configuration.isCellLocationCacheEnabled()) {
+            return null;
+        }
+        CellLocation location = locations.getIfPresent(id);
+        if (location != null && location.getExpiresAt() < clock.wallTime()) {
+            locations.invalidate(id);
+            location = null;
+        }
+        String result = location == null ? "miss" : (location.getCell().isPresent() ? "hit" : "negativeHit");
+        registry.counter(lookupsId.withTag("type", type).withTag("result", result)).increment();
+        return location;
+    }
+
+    private void record(Cache<String, CellLocation> locations, String id, Cell cell) {
+        if (configuration.isCellLocationCacheEnabled()) {
+            locations.put(id, new CellLocation(cell, null, clock.wallTime() + configuration.getCellLocationCacheTtlMs()));
+        }
+    }
+
+    private void recordNotFound(Cache<String, CellLocation> locations, String id, Throwable error) {
+        if (!configuration.isCellLocationCacheEnabled()) {
+            return;
+        }
+        if (Status.fromThrowable(error).getCode() == Status.Code.NOT_FOUND) {
+            locations.put(id, new CellLocation(null, error, clock.wallTime() + configuration.getCellLocationNegativeCacheTtlMs()));
+        } else {
+            locations.invalidate(id);
+        }
+    }
+
+    static class CellLocation {
+
+        private final Optional<Cell> cell;
+        private final Throwable notFoundError;
+        private final long expiresAt;
+
+        private CellLocation(Cell cell, Throwable notFoundError, long expiresAt) {
+            this.cell = Optional.ofNullable(cell);
+            this.notFoundError = notFoundError;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Cell in which a job/task was found, or {@link Optional#empty()} if it was not found in any cell.
+         */
+        Optional<Cell> getCell() {
+            return cell;
+        }
+
+        /**
+         * Error returned when a job/task was not found in any cell.
+         */
+        Throwable getNotFoundError() {
+            return notFoundError;
+        }
+
+        private long getExpiresAt() {
+            return expiresAt;
+        }
+    }
+}
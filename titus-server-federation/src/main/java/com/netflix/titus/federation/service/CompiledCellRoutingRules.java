@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.federation.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.netflix.titus.api.federation.model.Cell;
+
+/**
+ * Cell routing rules compiled into a form that evaluates a route key in a single pass, instead of matching it
+ * sequentially against each cell's regular expression. Rules that are alternatives of literal prefixes or literal values
+ * (like <tt>(app1.*|app2.*)</tt> or <tt>.*</tt>) are stored in a prefix trie. The remaining rules are merged into
+ * a single regular expression, with one named group per rule. Rules that cannot be safely merged (back references,
+ * named groups, inline flags) are evaluated individually. In all cases the result is the same as in the sequential
+ * evaluation: the first cell (in cell order) with a matching rule, or the first cell if there is no match.
+ */
+final class CompiledCellRoutingRules {
+
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    private static final Pattern LITERAL = Pattern.compile("[a-zA-Z0-9_\\-:/@]*");
+    private static final Pattern UNMERGEABLE = Pattern.compile(".*(\\\\[0-9k]|\\(\\?).*");
+
+    private final String routingRulesSpec;
+    private final List<Cell> cells;
+    private final TrieNode prefixTrie = new TrieNode();
+    private final Pattern mergedPattern;
+    private final List<String> mergedGroupNames = new ArrayList<>();
+    private final int firstMergedRule;
+    private final Map<Integer, Pattern> unmergeableRules = new HashMap<>();
+    private final int firstUnmergeableRule;
+
+    /**
+     * @param cellRoutingPatterns routing patterns in the cell order
+     */
+    CompiledCellRoutingRules(String routingRulesSpec, SortedMap<Cell, Pattern> cellRoutingPatterns) {
+        this.routingRulesSpec = routingRulesSpec;
+        this.cells = new ArrayList<>(cellRoutingPatterns.keySet());
+
+        StringBuilder mergedRegex = new StringBuilder();
+        int firstMerged = NO_MATCH;
+        int firstUnmergeable = NO_MATCH;
+        int ruleIndex = 0;
+        for (Pattern pattern : cellRoutingPatterns.values()) {
+            String regex = pattern.pattern();
+            List<String> literals = toLiteralAlternatives(regex);
+            if (literals != null) {
+                for (String literal : literals) {
+                    prefixTrie.add(literal, ruleIndex);
+                }
+            } else if (UNMERGEABLE.matcher(regex).matches()) {
+                unmergeableRules.put(ruleIndex, pattern);
+                firstUnmergeable = Math.min(firstUnmergeable, ruleIndex);
+            } else {
+                String groupName = "rule" + ruleIndex;
+                if (mergedRegex.length() > 0) {
+                    mergedRegex.append('|');
+                }
+                mergedRegex.append("(?<").append(groupName).append(">(?:").append(regex).append("))");
+                mergedGroupNames.add(groupName);
+                firstMerged = Math.min(firstMerged, ruleIndex);
+            }
+            ruleIndex++;
+        }
+        this.mergedPattern = mergedGroupNames.isEmpty() ? null : Pattern.compile(mergedRegex.toString());
+        this.firstMergedRule = firstMerged;
+        this.firstUnmergeableRule = firstUnmergeable;
+    }
+
+    String getRoutingRulesSpec() {
+        return routingRulesSpec;
+    }
+
+    Cell route(String key) {
+        int best = prefixTrie.findFirstRule(key);
+
+        if (firstMergedRule < best) {
+            Matcher matcher = mergedPattern.matcher(key);
+            if (matcher.matches()) {
+                for (String groupName : mergedGroupNames) {
+                    if (matcher.group(groupName) != null) {
+                        best = Math.min(best, Integer.parseInt(groupName.substring("rule".length())));
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (firstUnmergeableRule < best) {
+            for (int ruleIndex = firstUnmergeableRule; ruleIndex < best; ruleIndex++) {
+                Pattern pattern = unmergeableRules.get(ruleIndex);
+                if (pattern != null && pattern.matcher(key).matches()) {
+                    best = ruleIndex;
+                    break;
+                }
+            }
+        }
+
+        return best == NO_MATCH ? cells.get(0) : cells.get(best);
+    }
+
+    /**
+     * Returns the literal values of a rule of the form <tt>literal</tt>, <tt>literal.*</tt> or <tt>(alternative|...)</tt>
+     * where each alternative is one of the former, or null if the rule has any other form. Literal prefixes are returned
+     * with a trailing '*' character, which is not a valid literal character.
+     */
+    private static List<String> toLiteralAlternatives(String regex) {
+        String body = regex;
+        if (body.startsWith("(") && body.endsWith(")")) {
+            body = body.substring(1, body.length() - 1);
+        }
+        if (body.isEmpty() || body.contains("(") || body.contains(")")) {
+            return null;
+        }
+        List<String> literals = new ArrayList<>();
+        for (String alternative : body.split("\\|", -1)) {
+            boolean prefix = alternative.endsWith(".*");
+            String literal = prefix ? alternative.substring(0, alternative.length() - 2) : alternative;
+            if (!LITERAL.matcher(literal).matches() || (!prefix && literal.isEmpty())) {
+                return null;
+            }
+            literals.add(prefix ? literal + '*' : literal);
+        }
+        return literals;
+    }
+
+    private static class TrieNode {
+
+        private final Map<Character, TrieNode> children = new HashMap<>();
+        private int prefixRule = NO_MATCH;
+        private int exactRule = NO_MATCH;
+
+        private void add(String literal, int ruleIndex) {
+            boolean prefix = literal.endsWith("*");
+            int length = prefix ? literal.length() - 1 : literal.length();
+            TrieNode node = this;
+            for (int i = 0; i < length; i++) {
+                node = node.children.computeIfAbsent(literal.charAt(i), c -> new TrieNode());
+            }
+            if (prefix) {
+                node.prefixRule = Math.min(node.prefixRule, ruleIndex);
+            } else {
+                node.exactRule = Math.min(node.exactRule, ruleIndex);
+            }
+        }
+
+        private int findFirstRule(String key) {
+            int best = prefixRule;
+            TrieNode node = this;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.children.get(key.charAt(i));
+                if (node == null) {
+                    return best;
+                }
+                best = Math.min(best, node.prefixRule);
+            }
+            return Math.min(best, node.exactRule);
+        }
+    }
+}
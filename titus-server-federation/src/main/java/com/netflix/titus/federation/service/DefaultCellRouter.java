@@ -20,46 +20,134 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import com.netflix.spectator.api.Id;
+import com.netflix.spectator.api.Registry;
 import com.netflix.titus.api.federation.model.Cell;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.util.cache.Cache;
+import com.netflix.titus.common.util.cache.Caches;
 import com.netflix.titus.federation.startup.TitusFederationConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Routes keys to cells using {@link CompiledCellRoutingRules}. Recent routing decisions are kept in a bounded cache.
+ * The routing rules are re-read from the configuration on each request, and if they change, they are recompiled and
+ * all cached decisions are discarded.
+ */
 @Singleton
 public class DefaultCellRouter implements CellRouter {
     private static Logger logger = LoggerFactory.getLogger(DefaultCellRouter.class);
-    private final SortedMap<Cell, Pattern> cellRoutingPatterns;
+
+    private static final String METRIC_ROOT = "titusFederation.cellRouter.";
+
+    private final List<Cell> cells;
+    private final TitusFederationConfiguration federationConfiguration;
+    private final Registry registry;
+    private final Cache<String, RoutingDecision> routingDecisions;
+
+    private final Id routingLatencyId;
+    private final Id rulesUpdateId;
+
+    private volatile CompiledCellRoutingRules routingRules;
+    private volatile String rejectedRoutingRulesSpec;
 
     @Inject
-    public DefaultCellRouter(CellInfoResolver cellInfoResolver, TitusFederationConfiguration federationConfiguration) {
-        List<Cell> cells = cellInfoResolver.resolve();
-        Map<Cell, String> cellRoutingRules = CellInfoUtil.extractCellRoutingFromCellSpecification(cells, federationConfiguration.getRoutingRules());
-        SortedMap<Cell, Pattern> sortedPatternMap = new TreeMap<>();
-        cellRoutingRules.forEach((cell, routingRule) -> sortedPatternMap.putIfAbsent(cell, Pattern.compile(routingRule)));
-        cellRoutingPatterns = sortedPatternMap;
+    public DefaultCellRouter(CellInfoResolver cellInfoResolver,
+                             TitusFederationConfiguration federationConfiguration,
+                             TitusRuntime titusRuntime) {
+        this.cells = cellInfoResolver.resolve();
+        this.federationConfiguration = federationConfiguration;
+        this.registry = titusRuntime.getRegistry();
+        this.routingRules = compile(federationConfiguration.getRoutingRules());
+        this.routingDecisions = Caches.instrumentedCacheWithMaxSize(
+                Math.max(0, federationConfiguration.getRoutingCacheSize()), METRIC_ROOT + "routingDecisions", registry
+        );
+        this.routingLatencyId = registry.createId(METRIC_ROOT + "routingLatency");
+        this.rulesUpdateId = registry.createId(METRIC_ROOT + "rulesUpdate");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        routingDecisions.shutdown();
     }
 
     /**
-     * routeKey iterates each of the regular expressions in cell order to and returns
-     * the first match it encounters. If no match, default to first cell.
+     * routeKey returns the first cell (in cell order) whose routing rule matches the key.
+     * If no match, default to first cell.
      *
      * @param key
      * @return
      */
     @Override
     public Cell routeKey(String key) {
-        // Iterate the cell patterns in sorted order
-        for (Map.Entry<Cell, Pattern> entry : cellRoutingPatterns.entrySet()) {
-            Cell cell = entry.getKey();
-            Pattern cellPattern = entry.getValue();
-            if (cellPattern.matcher(key).matches()) {
-                return cell;
+        long startTime = System.nanoTime();
+        CompiledCellRoutingRules currentRules = refreshRoutingRules();
+
+        RoutingDecision decision = routingDecisions.getIfPresent(key);
+        boolean cached = decision != null && decision.getRoutingRules() == currentRules;
+        if (!cached) {
+            decision = new RoutingDecision(currentRules, currentRules.route(key));
+            routingDecisions.put(key, decision);
+        }
+
+        registry.timer(routingLatencyId.withTag("cached", Boolean.toString(cached))).record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        return decision.getCell();
+    }
+
+    private CompiledCellRoutingRules refreshRoutingRules() {
+        CompiledCellRoutingRules current = routingRules;
+        String routingRulesSpec = federationConfiguration.getRoutingRules();
+        if (routingRulesSpec == null || routingRulesSpec.equals(current.getRoutingRulesSpec()) || routingRulesSpec.equals(rejectedRoutingRulesSpec)) {
+            return current;
+        }
+        synchronized (this) {
+            if (routingRules != current) {
+                return routingRules;
             }
+            try {
+                routingRules = compile(routingRulesSpec);
+                routingDecisions.invalidateAll();
+                registry.counter(rulesUpdateId.withTag("result", "success")).increment();
+                logger.info("Cell routing rules updated: {}", routingRulesSpec);
+            } catch (RuntimeException e) {
+                rejectedRoutingRulesSpec = routingRulesSpec;
+                registry.counter(rulesUpdateId.withTag("result", "failure")).increment();
+                logger.warn("Invalid cell routing rules {}; keeping the previous ones: {}", routingRulesSpec, e.getMessage());
+            }
+            return routingRules;
+        }
+    }
+
+    private CompiledCellRoutingRules compile(String routingRulesSpec) {
+        Map<Cell, String> cellRoutingRules = CellInfoUtil.extractCellRoutingFromCellSpecification(cells, routingRulesSpec);
+        SortedMap<Cell, Pattern> sortedPatternMap = new TreeMap<>();
+        cellRoutingRules.forEach((cell, routingRule) -> sortedPatternMap.putIfAbsent(cell, Pattern.compile(routingRule)));
+        return new CompiledCellRoutingRules(routingRulesSpec, sortedPatternMap);
+    }
+
+    private static class RoutingDecision {
+
+        private final CompiledCellRoutingRules routingRules;
+        private final Cell cell;
+
+        private RoutingDecision(CompiledCellRoutingRules routingRules, Cell cell) {
+            this.routingRules = routingRules;
+            this.cell = cell;
+        }
+
+        private CompiledCellRoutingRules getRoutingRules() {
+            return routingRules;
+        }
+
+        private Cell getCell() {
+            return cell;
         }
-        return cellRoutingPatterns.firstKey();
     }
 }
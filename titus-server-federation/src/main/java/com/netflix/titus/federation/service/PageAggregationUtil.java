@@ -16,14 +16,19 @@
 
 package com.netflix.titus.federation.service;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import com.netflix.titus.common.util.tuple.Pair;
 import com.netflix.titus.grpc.protogen.Page;
 import com.netflix.titus.grpc.protogen.Pagination;
+import rx.Observable;
 
 final class PageAggregationUtil {
     private PageAggregationUtil() {
@@ -73,4 +78,164 @@ final class PageAggregationUtil {
                 .setCursorPosition(cursorPosition)
                 .build();
     }
+
+    /**
+     * Streaming k-way merge of cursor paginated results from multiple cells. All cells return their items in the same
+     * (cursor) order, so a page is built by repeatedly taking the smallest head item of the per-cell buffers, which costs
+     * O(pageSize * log(cells)). Initially only <tt>prefetchSize</tt> items are requested from each cell. If the buffer
+     * of a cell that has more items gets exhausted before the page is complete, the next chunk is fetched from that
+     * cell, starting from its last returned item, and the merge continues. Chunk sizes double with each fetch, and are
+     * capped by the number of items still missing in the page.
+     * <p>
+     * The cursor of the result is the cursor of the last page item. As the order is the same in all cells, it identifies
+     * the position of the next page in each of them, including cells that did not contribute to the current page.
+     *
+     * @param cellFetchers functions returning a page of items and its pagination data from a cell, one per cell
+     */
+    static <T> Observable<Pair<List<T>, Pagination>> takeMergedPage(Page requested,
+                                                                  List<Function<Page, Observable<Pair<List<T>, Pagination>>>> cellFetchers,
+                                                                  int prefetchSize,
+                                                                  Comparator<T> cursorComparator,
+                                                                  Function<T, String> cursorFactory) {
+        int initialChunk = Math.max(1, Math.min(prefetchSize, requested.getPageSize()));
+        Page prefetchPage = requested.toBuilder().setPageSize(initialChunk).build();
+
+        List<Observable<CellBuffer<T>>> initialFetches = cellFetchers.stream()
+                .map(fetcher -> fetcher.apply(prefetchPage).map(result -> new CellBuffer<>(fetcher, initialChunk, result)))
+                .collect(Collectors.toList());
+
+        return Observable.merge(initialFetches)
+                .toList()
+                .flatMap(cells -> {
+                    MergeState<T> state = new MergeState<>(requested, cells, cursorComparator);
+                    return continueMerge(state, cursorFactory);
+                });
+    }
+
+    private static <T> Observable<Pair<List<T>, Pagination>> continueMerge(MergeState<T> state, Function<T, String> cursorFactory) {
+        CellBuffer<T> exhausted = state.advance();
+        if (exhausted == null) {
+            return Observable.just(state.toPage(cursorFactory));
+        }
+        return exhausted.fetchNext(state.getMissingCount()).flatMap(cell -> {
+            state.addCell(cell);
+            return continueMerge(state, cursorFactory);
+        });
+    }
+
+    /**
+     * Items fetched from a cell, which have not been merged yet, and the position of the cell in its own item order.
+     */
+    private static class CellBuffer<T> {
+
+        private final Function<Page, Observable<Pair<List<T>, Pagination>>> fetcher;
+        private final Deque<T> items;
+        private final int startOffset;
+        private final int totalItems;
+
+        private int chunkSize;
+        private boolean hasMore;
+        private String cursor;
+
+        private CellBuffer(Function<Page, Observable<Pair<List<T>, Pagination>>> fetcher, int chunkSize, Pair<List<T>, Pagination> result) {
+            this.fetcher = fetcher;
+            this.chunkSize = chunkSize;
+            this.items = new ArrayDeque<>(result.getLeft());
+
+            Pagination pagination = result.getRight();
+            this.totalItems = pagination.getTotalItems();
+            // the cursorPosition of a cell points to its last returned item, or is 0 if the cell has no items at all
+            this.startOffset = (totalItems == 0 ? 0 : pagination.getCursorPosition() + 1) - items.size();
+            this.hasMore = pagination.getHasMore();
+            this.cursor = pagination.getCursor();
+        }
+
+        private T peek() {
+            return items.peekFirst();
+        }
+
+        private boolean needsMore() {
+            return items.isEmpty() && hasMore;
+        }
+
+        private Observable<CellBuffer<T>> fetchNext(int missing) {
+            this.chunkSize = Math.min(missing, chunkSize * 2);
+            Page nextPage = Page.newBuilder().setPageSize(chunkSize).setCursor(cursor).build();
+            return fetcher.apply(nextPage).map(result -> {
+                items.addAll(result.getLeft());
+                hasMore = !result.getLeft().isEmpty() && result.getRight().getHasMore();
+                if (!result.getLeft().isEmpty()) {
+                    cursor = result.getRight().getCursor();
+                }
+                return this;
+            });
+        }
+    }
+
+    private static class MergeState<T> {
+
+        private final Page requested;
+        private final List<CellBuffer<T>> cells;
+        private final PriorityQueue<CellBuffer<T>> heads;
+        private final List<T> pageItems;
+
+        private MergeState(Page requested, List<CellBuffer<T>> cells, Comparator<T> cursorComparator) {
+            this.requested = requested;
+            this.cells = cells;
+            this.heads = new PriorityQueue<>(Math.max(1, cells.size()), (first, second) -> cursorComparator.compare(first.peek(), second.peek()));
+            this.pageItems = new ArrayList<>(requested.getPageSize());
+            cells.forEach(this::addCell);
+        }
+
+        private int getMissingCount() {
+            return requested.getPageSize() - pageItems.size();
+        }
+
+        private void addCell(CellBuffer<T> cell) {
+            if (cell.peek() != null) {
+                heads.add(cell);
+            }
+        }
+
+        /**
+         * Merges items until the page is complete, or returns a cell that must provide more items first, as its next
+         * item may precede the current head items of the other cells.
+         */
+        private CellBuffer<T> advance() {
+            while (pageItems.size() < requested.getPageSize()) {
+                CellBuffer<T> next = heads.poll();
+                if (next == null) {
+                    return null;
+                }
+                pageItems.add(next.items.pollFirst());
+                if (!next.needsMore()) {
+                    addCell(next);
+                } else if (pageItems.size() < requested.getPageSize()) {
+                    return next;
+                }
+            }
+            return null;
+        }
+
+        private Pair<List<T>, Pagination> toPage(Function<T, String> cursorFactory) {
+            int totalItems = 0;
+            int firstItemPosition = 0;
+            boolean hasMore = false;
+            for (CellBuffer<T> cell : cells) {
+                totalItems += cell.totalItems;
+                firstItemPosition += cell.startOffset;
+                hasMore = hasMore || cell.hasMore || !cell.items.isEmpty();
+            }
+            int pageSize = requested.getPageSize();
+            Pagination pagination = Pagination.newBuilder()
+                    .setCurrentPage(Page.newBuilder(requested).setPageNumber(firstItemPosition / pageSize))
+                    .setHasMore(hasMore)
+                    .setTotalPages((totalItems + pageSize - 1) / pageSize)
+                    .setTotalItems(totalItems)
+                    .setCursor(pageItems.isEmpty() ? "" : cursorFactory.apply(pageItems.get(pageItems.size() - 1)))
+                    .setCursorPosition(totalItems == 0 ? 0 : firstItemPosition + pageItems.size() - 1)
+                    .build();
+            return Pair.of(pageItems, pagination);
+        }
+    }
 }
@@ -30,4 +30,45 @@ public interface TitusFederationConfiguration {
 
     @DefaultValue("cell1=(app1.*|app2.*);cell2=(.*)")
     String getRoutingRules();
+
+    /**
+     * Maximum number of recent routing decisions (route key to cell) kept in memory. The cache is cleared whenever
+     * the routing rules change.
+     */
+    @DefaultValue("10000")
+    int getRoutingCacheSize();
+
+    /**
+     * If enabled, the cells in which jobs and tasks were seen are remembered, so single job/task requests can be
+     * sent directly to one cell, instead of being broadcast to all of them.
+     */
+    @DefaultValue("true")
+    boolean isCellLocationCacheEnabled();
+
+    /**
+     * Maximum number of job and task locations kept in memory (each).
+     */
+    @DefaultValue("100000")
+    int getCellLocationCacheSize();
+
+    /**
+     * Time after which a known job/task location is verified again with a broadcast request.
+     */
+    @DefaultValue("3600000")
+    long getCellLocationCacheTtlMs();
+
+    /**
+     * Time during which a job/task not found in any cell is reported as not found without querying the cells again.
+     */
+    @DefaultValue("2000")
+    long getCellLocationNegativeCacheTtlMs();
+
+    /**
+     * Number of items requested from each cell when building a page of jobs or tasks, expressed as a multiple of the
+     * fair share (pageSize / number of cells). Cells that run out of prefetched items are queried again, so a lower
+     * value reduces the amount of data transferred per page at the cost of extra round trips for skewed distributions.
+     * A value less than or equal to 0 requests a full page from each cell.
+     */
+    @DefaultValue("2.0")
+    double getCellPagePrefetchFactor();
 }
@@ -20,6 +20,8 @@ import java.util.Map;
 import java.util.Optional;
 
 import com.netflix.titus.api.federation.model.Cell;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.federation.startup.TitusFederationConfiguration;
 import com.netflix.titus.runtime.endpoint.metadata.AnonymousCallMetadataResolver;
 import com.netflix.titus.federation.startup.GrpcConfiguration;
 import io.grpc.ManagedChannel;
@@ -61,9 +63,10 @@ public class AggregatingAutoScalingTestBase {
         when(grpcConfiguration.getRequestTimeoutMs()).thenReturn(1000L);
         final AnonymousCallMetadataResolver anonymousCallMetadataResolver = new AnonymousCallMetadataResolver();
         final AggregatingCellClient aggregatingCellClient = new AggregatingCellClient(connector);
+        final CellLocationCache cellLocationCache = new CellLocationCache(mock(TitusFederationConfiguration.class), TitusRuntimes.internal());
 
         service = new AggregatingAutoScalingService(connector, anonymousCallMetadataResolver, grpcConfiguration,
-                new AggregatingJobManagementServiceHelper(aggregatingCellClient, grpcConfiguration, anonymousCallMetadataResolver),
+                new AggregatingJobManagementServiceHelper(aggregatingCellClient, connector, cellLocationCache, grpcConfiguration, anonymousCallMetadataResolver),
                 aggregatingCellClient);
     }
 
@@ -33,6 +33,8 @@ import com.google.common.collect.Iterables;
 import com.netflix.titus.api.federation.model.Cell;
 import com.netflix.titus.api.model.Page;
 import com.netflix.titus.api.service.TitusServiceException;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.runtime.TitusRuntimes;
 import com.netflix.titus.common.util.CollectionsExt;
 import com.netflix.titus.common.util.time.Clocks;
 import com.netflix.titus.common.util.time.TestClock;
@@ -103,6 +105,7 @@ public class AggregatingJobManagementServiceTest {
     private Map<Cell, GrpcServerRule> cellToServiceMap;
     private TestClock clock;
     private ServiceDataGenerator dataGenerator;
+    private TitusRuntime titusRuntime;
 
     @Before
     public void setUp() {
@@ -115,9 +118,14 @@ public class AggregatingJobManagementServiceTest {
         when(titusFederationConfiguration.getStack()).thenReturn(stackName);
         when(titusFederationConfiguration.getCells()).thenReturn("one=1;two=2");
         when(titusFederationConfiguration.getRoutingRules()).thenReturn("one=(app1.*|app2.*);two=(app3.*)");
+        when(titusFederationConfiguration.getCellPagePrefetchFactor()).thenReturn(1.0);
+        when(titusFederationConfiguration.isCellLocationCacheEnabled()).thenReturn(true);
+        when(titusFederationConfiguration.getCellLocationCacheSize()).thenReturn(1000);
+        when(titusFederationConfiguration.getCellLocationCacheTtlMs()).thenReturn(60_000L);
+        when(titusFederationConfiguration.getCellLocationNegativeCacheTtlMs()).thenReturn(60_000L);
 
         CellInfoResolver cellInfoResolver = new DefaultCellInfoResolver(titusFederationConfiguration);
-        DefaultCellRouter cellRouter = new DefaultCellRouter(cellInfoResolver, titusFederationConfiguration);
+        DefaultCellRouter cellRouter = new DefaultCellRouter(cellInfoResolver, titusFederationConfiguration, TitusRuntimes.internal());
         List<Cell> cells = cellInfoResolver.resolve();
         cellToServiceMap = ImmutableMap.of(
                 cells.get(0), cellOne,
@@ -134,6 +142,8 @@ public class AggregatingJobManagementServiceTest {
         );
 
         final AggregatingCellClient aggregatingCellClient = new AggregatingCellClient(connector);
+        titusRuntime = TitusRuntimes.internal();
+        final CellLocationCache cellLocationCache = new CellLocationCache(titusFederationConfiguration, titusRuntime);
         final AnonymousCallMetadataResolver anonymousCallMetadataResolver = new AnonymousCallMetadataResolver();
         service = new AggregatingJobManagementService(
                 grpcClientConfiguration,
@@ -142,7 +152,8 @@ public class AggregatingJobManagementServiceTest {
                 cellRouter,
                 anonymousCallMetadataResolver,
                 aggregatingCellClient,
-                new AggregatingJobManagementServiceHelper(aggregatingCellClient, grpcClientConfiguration, anonymousCallMetadataResolver)
+                new AggregatingJobManagementServiceHelper(aggregatingCellClient, connector, cellLocationCache, grpcClientConfiguration, anonymousCallMetadataResolver),
+                cellLocationCache
         );
 
         clock = Clocks.test();
@@ -398,6 +409,41 @@ public class AggregatingJobManagementServiceTest {
         assertThat(Status.fromThrowable(testSubscriber.getOnErrorEvents().get(0))).isEqualTo(UNAVAILABLE);
     }
 
+    @Test
+    public void findJobUsesLastKnownCell() {
+        List<Job> cellOneSnapshot = new ArrayList<>(dataGenerator.newServiceJobs(10, V3GrpcModelConverters::toGrpcJob));
+        cellOne.getServiceRegistry().addService(new CellWithFixedJobsService(cellOneSnapshot, cellOneUpdates.serialize()));
+        cellTwo.getServiceRegistry().addService(new CellWithFailingJobManagementService(UNAVAILABLE));
+
+        Job expected = cellOneSnapshot.get(0);
+        for (int i = 0; i < 2; i++) {
+            AssertableSubscriber<Job> testSubscriber = service.findJob(expected.getId()).test();
+            testSubscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
+            testSubscriber.assertNoErrors();
+            testSubscriber.assertValue(expected);
+        }
+        assertThat(cellLocationLookups("job", "miss")).isEqualTo(1);
+        assertThat(cellLocationLookups("job", "hit")).isEqualTo(1);
+    }
+
+    @Test
+    public void findJobNotFoundIsCached() {
+        Job job = dataGenerator.newServiceJobs(1, V3GrpcModelConverters::toGrpcJob).get(0);
+        cellOne.getServiceRegistry().addService(new CellWithFailingJobManagementService(NOT_FOUND));
+        cellTwo.getServiceRegistry().addService(new CellWithFailingJobManagementService(NOT_FOUND));
+
+        AssertableSubscriber<Job> testSubscriber = service.findJob(job.getId()).test();
+        testSubscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        assertThat(Status.fromThrowable(testSubscriber.getOnErrorEvents().get(0))).isEqualTo(NOT_FOUND);
+
+        // cells are not queried again until the negative cache entry expires
+        cellOne.getServiceRegistry().addService(new CellWithFixedJobsService(Collections.singletonList(job), cellOneUpdates.serialize()));
+        testSubscriber = service.findJob(job.getId()).test();
+        testSubscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        assertThat(Status.fromThrowable(testSubscriber.getOnErrorEvents().get(0))).isEqualTo(NOT_FOUND);
+        assertThat(cellLocationLookups("job", "negativeHit")).isEqualTo(1);
+    }
+
     @Test
     public void killJob() {
         Random random = new Random();
@@ -554,6 +600,28 @@ public class AggregatingJobManagementServiceTest {
         testSubscriber.assertValue(expected);
     }
 
+    @Test
+    public void findTaskStaleLocationFallsBackToAllCells() {
+        List<Task> tasks = new ArrayList<>(dataGenerator.newServiceJobWithTasks());
+        cellOne.getServiceRegistry().addService(new CellWithFixedTasksService(tasks));
+        cellTwo.getServiceRegistry().addService(new CellWithFixedTasksService(Collections.emptyList()));
+
+        Task expected = tasks.get(0);
+        AssertableSubscriber<Task> testSubscriber = service.findTask(expected.getId()).test();
+        testSubscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        testSubscriber.assertValue(expected);
+
+        // the task moved to the other cell
+        cellOne.getServiceRegistry().addService(new CellWithFixedTasksService(Collections.emptyList()));
+        cellTwo.getServiceRegistry().addService(new CellWithFixedTasksService(tasks));
+        testSubscriber = service.findTask(expected.getId()).test();
+        testSubscriber.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        testSubscriber.assertNoErrors();
+        testSubscriber.assertValue(expected);
+        assertThat(cellLocationLookups("task", "hit")).isEqualTo(1);
+        assertThat(cellLocationLookups("task", "miss")).isEqualTo(1);
+    }
+
     @Test
     public void findTaskErrors() {
         cellOne.getServiceRegistry().addService(new CellWithFailingJobManagementService(INTERNAL));
@@ -874,5 +942,8 @@ public class AggregatingJobManagementServiceTest {
         cellTwo.getServiceRegistry().addService(new CellWithFixedTasksService(cellTwoSnapshot));
         return Pair.of(cellOneSnapshot, cellTwoSnapshot);
     }
-}
 
+    private long cellLocationLookups(String type, String result) {
+        return titusRuntime.getRegistry().counter("titusFederation.cellLocationCache.lookups", "type", type, "result", result).count();
+    }
+}
@@ -26,6 +26,8 @@ import java.util.stream.Collectors;
 
 import com.netflix.titus.api.federation.model.Cell;
 import com.netflix.titus.api.loadbalancer.model.JobLoadBalancer;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.federation.startup.TitusFederationConfiguration;
 import com.netflix.titus.runtime.endpoint.metadata.AnonymousCallMetadataResolver;
 import com.netflix.titus.federation.startup.GrpcConfiguration;
 import com.netflix.titus.grpc.protogen.AddLoadBalancerRequest;
@@ -82,9 +84,10 @@ public class AggregatingLoadBalancerServiceTest {
         when(grpcConfiguration.getRequestTimeoutMs()).thenReturn(1000L);
         final AnonymousCallMetadataResolver anonymousCallMetadataResolver = new AnonymousCallMetadataResolver();
         final AggregatingCellClient aggregatingCellClient = new AggregatingCellClient(connector);
+        final CellLocationCache cellLocationCache = new CellLocationCache(mock(TitusFederationConfiguration.class), TitusRuntimes.internal());
 
         service = new AggregatingLoadbalancerService(connector, anonymousCallMetadataResolver, grpcConfiguration, aggregatingCellClient,
-                new AggregatingJobManagementServiceHelper(aggregatingCellClient, grpcConfiguration, anonymousCallMetadataResolver));
+                new AggregatingJobManagementServiceHelper(aggregatingCellClient, connector, cellLocationCache, grpcConfiguration, anonymousCallMetadataResolver));
     }
 
     @Test
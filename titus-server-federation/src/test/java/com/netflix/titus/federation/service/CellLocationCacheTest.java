@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.federation.service;
+
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.api.federation.model.Cell;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.federation.startup.TitusFederationConfiguration;
+import com.netflix.titus.grpc.protogen.Task;
+import io.grpc.Status;
+import org.junit.Test;
+import rx.schedulers.TestScheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CellLocationCacheTest {
+
+    private static final Cell CELL = new Cell("cell1", "hostName1:7001");
+
+    private final TestScheduler testScheduler = new TestScheduler();
+    private final TitusFederationConfiguration configuration = mock(TitusFederationConfiguration.class);
+
+    private final CellLocationCache cache;
+
+    public CellLocationCacheTest() {
+        when(configuration.isCellLocationCacheEnabled()).thenReturn(true);
+        when(configuration.getCellLocationCacheSize()).thenReturn(100);
+        when(configuration.getCellLocationCacheTtlMs()).thenReturn(10_000L);
+        when(configuration.getCellLocationNegativeCacheTtlMs()).thenReturn(1_000L);
+        cache = new CellLocationCache(configuration, TitusRuntimes.test(testScheduler));
+    }
+
+    @Test
+    public void testLocationExpires() {
+        cache.recordJob("job1", CELL);
+        assertThat(cache.findJob("job1").getCell()).contains(CELL);
+
+        testScheduler.advanceTimeBy(10_001, TimeUnit.MILLISECONDS);
+        assertThat(cache.findJob("job1")).isNull();
+    }
+
+    @Test
+    public void testTaskLocationIdentifiesJobLocation() {
+        cache.recordTask(Task.newBuilder().setId("task1").setJobId("job1").build(), CELL);
+        assertThat(cache.findTask("task1").getCell()).contains(CELL);
+        assertThat(cache.findJob("job1").getCell()).contains(CELL);
+    }
+
+    @Test
+    public void testOnlyNotFoundErrorsAreCached() {
+        cache.recordJobError("job1", Status.UNAVAILABLE.asRuntimeException());
+        assertThat(cache.findJob("job1")).isNull();
+
+        cache.recordJobError("job1", Status.NOT_FOUND.asRuntimeException());
+        CellLocationCache.CellLocation location = cache.findJob("job1");
+        assertThat(location.getCell()).isEmpty();
+        assertThat(Status.fromThrowable(location.getNotFoundError()).getCode()).isEqualTo(Status.Code.NOT_FOUND);
+
+        testScheduler.advanceTimeBy(1_001, TimeUnit.MILLISECONDS);
+        assertThat(cache.findJob("job1")).isNull();
+    }
+
+    @Test
+    public void testDisabledCache() {
+        when(configuration.isCellLocationCacheEnabled()).thenReturn(false);
+        cache.recordJob("job1", CELL);
+        assertThat(cache.findJob("job1")).isNull();
+    }
+}
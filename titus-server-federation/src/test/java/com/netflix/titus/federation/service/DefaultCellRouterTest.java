@@ -19,6 +19,7 @@ package com.netflix.titus.federation.service;
 import java.util.regex.PatternSyntaxException;
 
 import com.netflix.titus.api.federation.model.Cell;
+import com.netflix.titus.common.runtime.TitusRuntimes;
 import com.netflix.titus.federation.startup.TitusFederationConfiguration;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -42,7 +43,7 @@ public class DefaultCellRouterTest {
         when(titusFederationConfiguration.getRoutingRules()).thenReturn("cell1=(app1.*|app2.*);cell2=(app3.*)");
 
         CellInfoResolver cellInfoResolver = new DefaultCellInfoResolver(titusFederationConfiguration);
-        DefaultCellRouter cellRouter = new DefaultCellRouter(cellInfoResolver, titusFederationConfiguration);
+        DefaultCellRouter cellRouter = new DefaultCellRouter(cellInfoResolver, titusFederationConfiguration, TitusRuntimes.internal());
 
         Cell cell = cellRouter.routeKey("app3foobar");
         assertThat(cell.getName().equals("cell2"));
@@ -65,7 +66,7 @@ public class DefaultCellRouterTest {
 
         CellInfoResolver cellInfoResolver = new DefaultCellInfoResolver(titusFederationConfiguration);
 
-        assertThatThrownBy(() -> new DefaultCellRouter(cellInfoResolver, titusFederationConfiguration))
+        assertThatThrownBy(() -> new DefaultCellRouter(cellInfoResolver, titusFederationConfiguration, TitusRuntimes.internal()))
                 .isInstanceOf(CellFederationException.class);
     }
 
@@ -80,7 +81,57 @@ public class DefaultCellRouterTest {
 
         CellInfoResolver cellInfoResolver = new DefaultCellInfoResolver(titusFederationConfiguration);
 
-        assertThatThrownBy(() -> new DefaultCellRouter(cellInfoResolver, titusFederationConfiguration))
+        assertThatThrownBy(() -> new DefaultCellRouter(cellInfoResolver, titusFederationConfiguration, TitusRuntimes.internal()))
                 .isInstanceOf(PatternSyntaxException.class);
     }
+
+    /**
+     * Tests that compiled rules (prefix trie, merged regular expression and individually evaluated rules) route keys
+     * to the first matching cell in the cell order, like the sequential evaluation.
+     */
+    @Test
+    public void compiledRoutingRulesTest() {
+        TitusFederationConfiguration titusFederationConfiguration = mock(TitusFederationConfiguration.class);
+        when(titusFederationConfiguration.getCells()).thenReturn("cell1=h1:7001;cell2=h2:7002;cell3=h3:7003;cell4=h4:7004;cell5=h5:7005");
+        when(titusFederationConfiguration.getRoutingRules()).thenReturn(
+                "cell1=(app1|app2.*);cell2=(app[0-9]x.*);cell3=(app.*);cell4=(?i)(BIG.*);cell5=(.*)"
+        );
+        when(titusFederationConfiguration.getRoutingCacheSize()).thenReturn(100);
+
+        CellInfoResolver cellInfoResolver = new DefaultCellInfoResolver(titusFederationConfiguration);
+        DefaultCellRouter cellRouter = new DefaultCellRouter(cellInfoResolver, titusFederationConfiguration, TitusRuntimes.internal());
+
+        assertThat(cellRouter.routeKey("app1").getName()).isEqualTo("cell1");
+        assertThat(cellRouter.routeKey("app2foo").getName()).isEqualTo("cell1");
+        assertThat(cellRouter.routeKey("app1foo").getName()).isEqualTo("cell3");
+        assertThat(cellRouter.routeKey("app1xfoo").getName()).isEqualTo("cell2");
+        assertThat(cellRouter.routeKey("bigApp").getName()).isEqualTo("cell4");
+        assertThat(cellRouter.routeKey("other").getName()).isEqualTo("cell5");
+
+        // Cached decisions
+        assertThat(cellRouter.routeKey("app1xfoo").getName()).isEqualTo("cell2");
+        assertThat(cellRouter.routeKey("other").getName()).isEqualTo("cell5");
+    }
+
+    /**
+     * Tests that routing rule changes are picked up, and invalid changes are ignored.
+     */
+    @Test
+    public void routingRulesUpdateTest() {
+        TitusFederationConfiguration titusFederationConfiguration = mock(TitusFederationConfiguration.class);
+        when(titusFederationConfiguration.getCells()).thenReturn("cell1=hostName1:7001;cell2=hostName2:7002");
+        when(titusFederationConfiguration.getRoutingRules()).thenReturn("cell1=(app1.*|app2.*);cell2=(app3.*)");
+        when(titusFederationConfiguration.getRoutingCacheSize()).thenReturn(100);
+
+        CellInfoResolver cellInfoResolver = new DefaultCellInfoResolver(titusFederationConfiguration);
+        DefaultCellRouter cellRouter = new DefaultCellRouter(cellInfoResolver, titusFederationConfiguration, TitusRuntimes.internal());
+        assertThat(cellRouter.routeKey("app3foobar").getName()).isEqualTo("cell2");
+
+        when(titusFederationConfiguration.getRoutingRules()).thenReturn("cell1=(app1.*|app3.*);cell2=(app2.*)");
+        assertThat(cellRouter.routeKey("app3foobar").getName()).isEqualTo("cell1");
+
+        when(titusFederationConfiguration.getRoutingRules()).thenReturn("cell1=(app1.*|app2.*);cell2=#)(");
+        assertThat(cellRouter.routeKey("app3foobar").getName()).isEqualTo("cell1");
+        assertThat(cellRouter.routeKey("app2foobar").getName()).isEqualTo("cell2");
+    }
 }
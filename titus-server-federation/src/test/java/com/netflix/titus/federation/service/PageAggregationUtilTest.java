@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.federation.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.grpc.protogen.Page;
+import com.netflix.titus.grpc.protogen.Pagination;
+import org.junit.Test;
+import rx.Observable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PageAggregationUtilTest {
+
+    private final AtomicInteger fetchCount = new AtomicInteger();
+
+    @Test
+    public void testMergeWithEvenlyDistributedItems() {
+        List<List<String>> cells = Arrays.asList(items("a", 0, 2, 20), items("b", 1, 2, 20));
+        List<String> all = walkAllPages(cells, 5, 3);
+        assertThat(all).isEqualTo(allItems(cells));
+    }
+
+    @Test
+    public void testMergeWithSkewedCellRefetchesExhaustedCell() {
+        List<List<String>> cells = Arrays.asList(items("a", 0, 1, 30), items("b", 100, 1, 2), items("c", 200, 1, 0));
+        Pair<List<String>, Pagination> page = takePage(cells, Page.newBuilder().setPageSize(10).build(), 4);
+
+        assertThat(page.getLeft()).isEqualTo(allItems(cells).subList(0, 10));
+        assertThat(page.getRight().getHasMore()).isTrue();
+        assertThat(page.getRight().getTotalItems()).isEqualTo(32);
+        assertThat(page.getRight().getCursorPosition()).isEqualTo(9);
+        // 3 initial fetches, and 1 refetch from cell 'a' (chunk size 4 -> 6)
+        assertThat(fetchCount.get()).isEqualTo(4);
+
+        List<String> all = walkAllPages(cells, 10, 4);
+        assertThat(all).isEqualTo(allItems(cells));
+    }
+
+    @Test
+    public void testEmptyCells() {
+        List<List<String>> cells = Arrays.asList(new ArrayList<>(), new ArrayList<>());
+        Pair<List<String>, Pagination> page = takePage(cells, Page.newBuilder().setPageSize(10).build(), 5);
+
+        assertThat(page.getLeft()).isEmpty();
+        assertThat(page.getRight().getHasMore()).isFalse();
+        assertThat(page.getRight().getTotalItems()).isEqualTo(0);
+        assertThat(page.getRight().getCursor()).isEmpty();
+    }
+
+    private List<String> walkAllPages(List<List<String>> cells, int pageSize, int prefetchSize) {
+        List<String> result = new ArrayList<>();
+        Page page = Page.newBuilder().setPageSize(pageSize).build();
+        int pageNumber = 0;
+        while (true) {
+            Pair<List<String>, Pagination> next = takePage(cells, page, prefetchSize);
+            result.addAll(next.getLeft());
+            Pagination pagination = next.getRight();
+            assertThat(pagination.getCurrentPage().getPageNumber()).isEqualTo(pageNumber);
+            assertThat(pagination.getCursorPosition()).isEqualTo(result.size() - 1);
+            if (!pagination.getHasMore()) {
+                return result;
+            }
+            assertThat(next.getLeft()).hasSize(pageSize);
+            page = page.toBuilder().setCursor(pagination.getCursor()).build();
+            pageNumber++;
+        }
+    }
+
+    private Pair<List<String>, Pagination> takePage(List<List<String>> cells, Page page, int prefetchSize) {
+        List<Function<Page, Observable<Pair<List<String>, Pagination>>>> fetchers = cells.stream()
+                .map(this::newCellFetcher)
+                .collect(Collectors.toList());
+        return PageAggregationUtil.takeMergedPage(page, fetchers, prefetchSize, Comparator.naturalOrder(), Function.identity())
+                .toBlocking()
+                .single();
+    }
+
+    /**
+     * Emulates cursor pagination of a single cell, with items ordered by their natural order.
+     */
+    private Function<Page, Observable<Pair<List<String>, Pagination>>> newCellFetcher(List<String> cellItems) {
+        List<String> sortedItems = sorted(cellItems);
+        return page -> Observable.fromCallable(() -> {
+            fetchCount.incrementAndGet();
+            int offset = 0;
+            if (!page.getCursor().isEmpty()) {
+                while (offset < sortedItems.size() && sortedItems.get(offset).compareTo(page.getCursor()) <= 0) {
+                    offset++;
+                }
+            }
+            int endOffset = Math.min(sortedItems.size(), offset + page.getPageSize());
+            List<String> pageItems = sortedItems.subList(offset, endOffset);
+            Pagination pagination = Pagination.newBuilder()
+                    .setCurrentPage(page)
+                    .setHasMore(endOffset < sortedItems.size())
+                    .setTotalItems(sortedItems.size())
+                    .setCursor(pageItems.isEmpty() ? "" : pageItems.get(pageItems.size() - 1))
+                    .setCursorPosition(sortedItems.isEmpty() ? 0 : endOffset - 1)
+                    .build();
+            return Pair.of(pageItems, pagination);
+        });
+    }
+
+    private static List<String> items(String prefix, int start, int step, int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> String.format("%04d-%s", start + i * step, prefix))
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> sorted(List<String> items) {
+        List<String> result = new ArrayList<>(items);
+        result.sort(Comparator.naturalOrder());
+        return result;
+    }
+
+    private static List<String> allItems(List<List<String>> cells) {
+        return sorted(cells.stream().flatMap(List::stream).collect(Collectors.toList()));
+    }
+}
@@ -55,10 +55,12 @@ public class TitusMasterConnectorModule extends AbstractModule {
     public static final String MANAGED_CHANNEL_NAME = "ManagedChannel";
     public static final String TITUS_MASTER_CLIENT = "TitusMaster";
     public static final String RX_TITUS_MASTER_CLIENT = "RxTitusMaster";
+    public static final String RX_TITUS_MASTER_PROXY_CLIENT = "RxTitusMasterProxy";
 
     private static final int NUMBER_OF_RETRIES = 3;
     private static final int DEFAULT_CONNECT_TIMEOUT = 10_000;
     private static final int DEFAULT_READ_TIMEOUT = 30_000;
+    private static final long PROXY_KEEP_ALIVE_MS = 300_000;
 
     @Override
     protected void configure() {
@@ -92,6 +94,26 @@ public class TitusMasterConnectorModule extends AbstractModule {
         return builder.build();
     }
 
+    /**
+     * Client used by the asynchronous HTTP proxy. All proxied requests go to the leader, so the per-host concurrency
+     * limit and the connection pool are sized for a single destination. The client limit only covers the calls waiting
+     * for the response headers; streamed exchanges are bounded by the proxy servlet.
+     */
+    @Named(RX_TITUS_MASTER_PROXY_CLIENT)
+    @Provides
+    @Singleton
+    public RxHttpClient rxProxyHttpClient(TitusGatewayConfiguration configuration) {
+        RxOkHttpClient.Builder builder = RxOkHttpClient.newBuilder();
+        Interceptor retryInterceptor = new CompositeRetryInterceptor(Collections.singletonList(new PassthroughInterceptor()), NUMBER_OF_RETRIES);
+        int maxConcurrentRequests = configuration.getProxyMaxConcurrentRequests();
+        builder.interceptor(retryInterceptor)
+                .connectTimeout(DEFAULT_CONNECT_TIMEOUT)
+                .readTimeout(DEFAULT_READ_TIMEOUT)
+                .maxRequests(maxConcurrentRequests, maxConcurrentRequests)
+                .connectionPool(configuration.getProxyMaxIdleConnections(), PROXY_KEEP_ALIVE_MS);
+        return builder.build();
+    }
+
     @Provides
     @Singleton
     @Named(MANAGED_CHANNEL_NAME)
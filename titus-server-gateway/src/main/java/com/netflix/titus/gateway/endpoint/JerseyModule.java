@@ -25,6 +25,7 @@ import com.netflix.archaius.ConfigProxyFactory;
 import com.netflix.governator.guice.jersey.GovernatorServletContainer;
 import com.netflix.governator.providers.Advises;
 import com.netflix.titus.gateway.endpoint.v2.rest.ApiRewriteFilter;
+import com.netflix.titus.gateway.endpoint.v2.rest.AsyncSupportFilter;
 import com.netflix.titus.gateway.endpoint.v2.rest.TitusMasterProxyServlet;
 import com.netflix.titus.gateway.endpoint.v3.rest.AgentManagementResource;
 import com.netflix.titus.gateway.endpoint.v3.rest.SchedulerResource;
@@ -54,6 +55,9 @@ public final class JerseyModule extends JerseyServletModule {
         // Call metadata interceptor (see CallMetadataHeaders).
         filter("/api/v3/*").through(SimpleHttpCallMetadataResolver.CallMetadataInterceptorFilter.class);
 
+        // Enable async support for the master proxy (see TitusGatewayConfiguration#isProxyAsyncEnabled)
+        filter("/api/v2/*").through(AsyncSupportFilter.class);
+
         // Configure servlet that proxies requests to master
         serve("/api/v2/*").with(TitusMasterProxyServlet.class);
 
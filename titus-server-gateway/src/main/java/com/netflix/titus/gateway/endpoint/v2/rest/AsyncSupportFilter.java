@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.gateway.endpoint.v2.rest;
+
+import java.io.IOException;
+import javax.inject.Singleton;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletRequestWrapper;
+import javax.servlet.ServletResponse;
+
+import org.eclipse.jetty.server.Request;
+
+/**
+ * The embedded Jetty server registers {@link com.google.inject.servlet.GuiceFilter} without async support, which
+ * disables it for all requests dispatched to the Guice managed filters and servlets. This filter enables it again
+ * for the requests it intercepts, so {@link TitusMasterProxyServlet} can proxy them asynchronously. It must only be
+ * installed in front of filters and servlets that are async capable. In other containers, it does nothing.
+ */
+@Singleton
+public class AsyncSupportFilter implements Filter {
+
+    @Override
+    public void init(FilterConfig config) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        if (!request.isAsyncSupported()) {
+            ServletRequest baseRequest = request;
+            while (baseRequest instanceof ServletRequestWrapper) {
+                baseRequest = ((ServletRequestWrapper) baseRequest).getRequest();
+            }
+            if (baseRequest instanceof Request) {
+                ((Request) baseRequest).setAsyncSupported(true);
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
@@ -27,11 +27,23 @@ import java.util.Enumeration;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -41,14 +53,17 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Strings;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteStreams;
+import com.netflix.spectator.api.Counter;
 import com.netflix.spectator.api.Id;
 import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.patterns.PolledMeter;
 import com.netflix.titus.common.network.http.Headers;
 import com.netflix.titus.common.network.http.HttpClient;
 import com.netflix.titus.common.network.http.Methods;
 import com.netflix.titus.common.network.http.Request;
 import com.netflix.titus.common.network.http.RequestBody;
 import com.netflix.titus.common.network.http.Response;
+import com.netflix.titus.common.network.http.RxHttpClient;
 import com.netflix.titus.common.util.StringExt;
 import com.netflix.titus.gateway.MetricConstants;
 import com.netflix.titus.gateway.connector.titusmaster.Address;
@@ -71,32 +86,51 @@ public class TitusMasterProxyServlet extends HttpServlet {
             "keep-alive", "proxy-authenticate", "proxy-authorization", "te", "trailers", "transfer-encoding", "upgrade");
 
     private static final int MAX_BYTES_TO_BUFFER = 32_000;
+    private static final int RESPONSE_BUFFER_SIZE = 16_384;
+    private static final int RESPONSE_BUFFERED_CHUNKS = 4;
+    private static final long RESPONSE_BUFFER_WAIT_MS = 100;
     private static final String JOB = "JOB";
     private static final String TASK = "TASK";
 
     private static final String TITUS_HEADER_CALLER_HOST_ADDRESS = "X-Titus-CallerHostAddress";
 
+    private static final Set<String> ROUTES = Sets.newHashSet("jobs", "tasks", "logs");
+    private static final String ROUTE_OTHER = "other";
+
     private final TitusGatewayConfiguration configuration;
     private final Registry registry;
     private final HttpClient httpClient;
+    private final RxHttpClient proxyHttpClient;
     private final LeaderResolver leaderResolver;
     private final LogUrlService logUrlService;
     private final ObjectMapper objectMapper;
     private final Id baseId;
+    private final Id routeLatencyId;
+    private final Id routeInFlightId;
+    private final ConcurrentMap<String, AtomicInteger> routeInFlight = new ConcurrentHashMap<>();
+    private final AtomicBoolean asyncNotSupportedLogged = new AtomicBoolean();
+    private final Semaphore asyncExchangePermits;
+    private final Counter asyncLimitExceeded;
 
     @Inject
     public TitusMasterProxyServlet(TitusGatewayConfiguration configuration,
                                    Registry registry,
                                    @Named(TitusMasterConnectorModule.TITUS_MASTER_CLIENT) HttpClient httpClient,
+                                   @Named(TitusMasterConnectorModule.RX_TITUS_MASTER_PROXY_CLIENT) RxHttpClient proxyHttpClient,
                                    LeaderResolver leaderResolver,
                                    LogUrlService logUrlService) {
         this.configuration = configuration;
         this.registry = registry;
         this.httpClient = httpClient;
+        this.proxyHttpClient = proxyHttpClient;
         this.leaderResolver = leaderResolver;
         this.logUrlService = logUrlService;
         this.objectMapper = new ObjectMapper();
         this.baseId = registry.createId(MetricConstants.METRIC_PROXY + "request");
+        this.routeLatencyId = registry.createId(MetricConstants.METRIC_PROXY + "route.latency");
+        this.routeInFlightId = registry.createId(MetricConstants.METRIC_PROXY + "route.inFlight");
+        this.asyncExchangePermits = new Semaphore(Math.max(0, configuration.getProxyMaxConcurrentRequests()));
+        this.asyncLimitExceeded = registry.counter(MetricConstants.METRIC_PROXY + "asyncLimitExceeded");
     }
 
     @Override
@@ -140,8 +174,32 @@ public class TitusMasterProxyServlet extends HttpServlet {
         }
 
         final long start = registry.clock().wallTime();
+        final String method = request.getMethod();
+        final String route = toRoute(request);
+        final AtomicInteger inFlight = routeInFlight.computeIfAbsent(route, r ->
+                PolledMeter.using(registry).withId(routeInFlightId.withTag("route", r)).monitorValue(new AtomicInteger())
+        );
+        inFlight.incrementAndGet();
+
+        // Invoked once, either when this method returns, or when an asynchronous request completes
+        AtomicBoolean completed = new AtomicBoolean();
+        Runnable onCompleted = () -> {
+            if (completed.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                final long elapsed = registry.clock().wallTime() - start;
+                final int statusCode = response.getStatus();
+                registry.timer(createId(method, statusCode)).record(elapsed, TimeUnit.MILLISECONDS);
+                registry.timer(routeLatencyId
+                        .withTag("route", route)
+                        .withTag("method", method)
+                        .withTag("status", (statusCode / 100) + "xx")
+                ).record(elapsed, TimeUnit.MILLISECONDS);
+            }
+        };
+
+        boolean async = false;
         try {
-            doProxyRequest(request, response);
+            async = doProxyRequest(request, response, onCompleted);
         } catch (URISyntaxException e) {
             logger.error("[PROXY ILLEGAL URI] Bad URI specified with error: ", e);
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
@@ -149,16 +207,20 @@ public class TitusMasterProxyServlet extends HttpServlet {
             logger.error("[PROXY UNKNOWN ERROR] Unable to proxy request with error: ", e);
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         } finally {
-            final long end = registry.clock().wallTime();
-            registry.timer(createId(request.getMethod(), response.getStatus())).record(end - start, TimeUnit.MILLISECONDS);
+            if (!async) {
+                onCompleted.run();
+            }
         }
     }
 
-    private void doProxyRequest(HttpServletRequest request, HttpServletResponse response) throws URISyntaxException, IOException {
+    /**
+     * @return true if the request is completed asynchronously, in which case <tt>onCompleted</tt> is invoked on its completion
+     */
+    private boolean doProxyRequest(HttpServletRequest request, HttpServletResponse response, Runnable onCompleted) throws URISyntaxException, IOException {
         Optional<Address> leaderOptional = leaderResolver.resolve();
         if (!leaderOptional.isPresent()) {
             response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
-            return;
+            return false;
         }
 
         String titusMasterUri = leaderOptional.get().toString();
@@ -171,7 +233,7 @@ public class TitusMasterProxyServlet extends HttpServlet {
 
         if (method.equals(Methods.GET) && requestUriPath.contains("/logs/download/")) {
             handleLogsDownloadRequest(request, response);
-            return;
+            return false;
         }
 
         if (method.equals(Methods.POST)) {
@@ -179,7 +241,7 @@ public class TitusMasterProxyServlet extends HttpServlet {
                 String jobId = extractIdFromRequestUri(request.getRequestURI());
                 if (!Strings.isNullOrEmpty(jobId)) {
                     handleKillRequest(JOB, jobId, titusMasterUri, request, response);
-                    return;
+                    return false;
                 }
             }
 
@@ -187,7 +249,7 @@ public class TitusMasterProxyServlet extends HttpServlet {
                 String taskId = extractIdFromRequestUri(request.getRequestURI());
                 if (!Strings.isNullOrEmpty(taskId)) {
                     handleKillRequest(TASK, taskId, titusMasterUri, request, response);
-                    return;
+                    return false;
                 }
             }
         }
@@ -195,28 +257,38 @@ public class TitusMasterProxyServlet extends HttpServlet {
         URI clientRequestUri = constructProxyUri(requestUri, titusMasterUri);
         Headers clientHeaders = getAllHeaders(request);
 
+        if (configuration.isProxyAsyncEnabled()) {
+            if (!request.isAsyncSupported()) {
+                if (asyncNotSupportedLogged.compareAndSet(false, true)) {
+                    logger.warn("Asynchronous proxy mode enabled, but not supported by the servlet container; proxying requests synchronously");
+                }
+            } else if (asyncExchangePermits.tryAcquire()) {
+                // The permit is released when the exchange finishes, after the response body is fully streamed
+                Request clientRequest;
+                AsyncProxyExchange exchange;
+                try {
+                    clientRequest = buildClientRequest(clientRequestUri, method, clientHeaders, requestInputStream);
+                    exchange = new AsyncProxyExchange(request, response, requestUri, clientRequestUri, clientHeaders, requestInputStream, onCompleted);
+                } catch (RuntimeException e) {
+                    asyncExchangePermits.release();
+                    throw e;
+                }
+                exchange.start(clientRequest);
+                return true;
+            } else {
+                // Too many exchanges in progress; a request thread is held for this one instead
+                asyncLimitExceeded.increment();
+            }
+        }
+
         Response clientResponse = null;
         InputStream responseInputStream = null;
         boolean exceptionOccurred = false;
 
         try {
-            Request.Builder clientRequestBuilder = new Request.Builder()
-                    .url(clientRequestUri.toString())
-                    .method(method)
-                    .headers(clientHeaders);
-
-            if (requestInputStream != null && Methods.isBodyAllowed(method)) {
-                clientRequestBuilder.body(RequestBody.create(requestInputStream));
-            }
-
-            clientResponse = httpClient.execute(clientRequestBuilder.build());
+            clientResponse = httpClient.execute(buildClientRequest(clientRequestUri, method, clientHeaders, requestInputStream));
             response.setStatus(clientResponse.getStatusCode().getCode());
-            Headers clientResponseHeaders = clientResponse.getHeaders();
-            clientResponseHeaders.names().forEach(name -> {
-                if (!IGNORED_RESPONSE_HEADERS.contains(name.toLowerCase())) {
-                    clientResponseHeaders.values(name).forEach(value -> response.addHeader(name, value));
-                }
-            });
+            copyResponseHeaders(clientResponse.getHeaders(), response);
 
             if (clientResponse.hasBody()) {
                 responseInputStream = clientResponse.getBody().get(InputStream.class);
@@ -234,38 +306,11 @@ public class TitusMasterProxyServlet extends HttpServlet {
             String proxyErrorMessage = "";
 
             if (logRequest) {
-                byte[] requestBodyBytes = new byte[0];
-                if (requestInputStream instanceof ByteCopyInputStream) {
-                    requestBodyBytes = ((ByteCopyInputStream) requestInputStream).getCopiedBytes();
-                }
-                int requestContentLength = requestBodyBytes.length;
-                String requestBody = new String(requestBodyBytes);
-
-                proxyErrorMessage = "\n[PROXY ERROR REQUEST] " + remoteIp + " " + method + " " + requestUri
-                        + "\n\tHeaders: " + clientHeaders
-                        + "\n\tContent-Length: " + requestContentLength;
-
-                if (requestContentLength > 0) {
-                    proxyErrorMessage += "\n\tBody: " + requestBody;
-                }
+                proxyErrorMessage = formatRequestError(remoteIp, method, requestUri, clientHeaders, requestInputStream);
             }
 
             if (logResponse) {
-                byte[] responseBodyBytes = new byte[0];
-                if (responseInputStream instanceof ByteCopyInputStream) {
-                    responseBodyBytes = ((ByteCopyInputStream) responseInputStream).getCopiedBytes();
-                }
-                int responseContentLength = responseBodyBytes.length;
-
-                String responseBody = new String(responseBodyBytes);
-
-                proxyErrorMessage += "\n[PROXY ERROR RESPONSE] " + response.getStatus() + " " + method + " " + clientRequestUri
-                        + "\n\tHeaders: " + clientResponse.getHeaders()
-                        + "\n\tContent-Length: " + responseContentLength;
-
-                if (responseContentLength > 0) {
-                    proxyErrorMessage += "\n\tBody: " + responseBody;
-                }
+                proxyErrorMessage += formatResponseError(response.getStatus(), method, clientRequestUri, clientResponse.getHeaders(), responseInputStream);
 
                 if (clientResponse != null && clientResponse.hasBody()) {
                     clientResponse.getBody().close();
@@ -280,6 +325,63 @@ public class TitusMasterProxyServlet extends HttpServlet {
                 logger.info(proxyErrorMessage);
             }
         }
+        return false;
+    }
+
+    private Request buildClientRequest(URI clientRequestUri, String method, Headers clientHeaders, InputStream requestInputStream) {
+        Request.Builder clientRequestBuilder = new Request.Builder()
+                .url(clientRequestUri.toString())
+                .method(method)
+                .headers(clientHeaders);
+
+        if (requestInputStream != null && Methods.isBodyAllowed(method)) {
+            clientRequestBuilder.body(RequestBody.create(requestInputStream));
+        }
+        return clientRequestBuilder.build();
+    }
+
+    private void copyResponseHeaders(Headers clientResponseHeaders, HttpServletResponse response) {
+        clientResponseHeaders.names().forEach(name -> {
+            if (!IGNORED_RESPONSE_HEADERS.contains(name.toLowerCase())) {
+                clientResponseHeaders.values(name).forEach(value -> response.addHeader(name, value));
+            }
+        });
+    }
+
+    private String formatRequestError(String remoteIp, String method, URI requestUri, Headers clientHeaders, InputStream requestInputStream) {
+        byte[] requestBodyBytes = new byte[0];
+        if (requestInputStream instanceof ByteCopyInputStream) {
+            requestBodyBytes = ((ByteCopyInputStream) requestInputStream).getCopiedBytes();
+        }
+        int requestContentLength = requestBodyBytes.length;
+        String requestBody = new String(requestBodyBytes);
+
+        String message = "\n[PROXY ERROR REQUEST] " + remoteIp + " " + method + " " + requestUri
+                + "\n\tHeaders: " + clientHeaders
+                + "\n\tContent-Length: " + requestContentLength;
+
+        if (requestContentLength > 0) {
+            message += "\n\tBody: " + requestBody;
+        }
+        return message;
+    }
+
+    private String formatResponseError(int statusCode, String method, URI clientRequestUri, Headers clientResponseHeaders, InputStream responseInputStream) {
+        byte[] responseBodyBytes = new byte[0];
+        if (responseInputStream instanceof ByteCopyInputStream) {
+            responseBodyBytes = ((ByteCopyInputStream) responseInputStream).getCopiedBytes();
+        }
+        int responseContentLength = responseBodyBytes.length;
+        String responseBody = new String(responseBodyBytes);
+
+        String message = "\n[PROXY ERROR RESPONSE] " + statusCode + " " + method + " " + clientRequestUri
+                + "\n\tHeaders: " + clientResponseHeaders
+                + "\n\tContent-Length: " + responseContentLength;
+
+        if (responseContentLength > 0) {
+            message += "\n\tBody: " + responseBody;
+        }
+        return message;
     }
 
     private Headers getAllHeaders(HttpServletRequest request) {
@@ -406,6 +508,15 @@ public class TitusMasterProxyServlet extends HttpServlet {
         return "";
     }
 
+    private static String toRoute(HttpServletRequest request) {
+        String path = request.getPathInfo();
+        if (path == null) {
+            return ROUTE_OTHER;
+        }
+        String[] parts = path.split("/");
+        return parts.length > 1 && ROUTES.contains(parts[1]) ? parts[1] : ROUTE_OTHER;
+    }
+
     private Id createId(String method, int statusCode) {
         String status = (statusCode / 100) + "xx";
 
@@ -430,6 +541,223 @@ public class TitusMasterProxyServlet extends HttpServlet {
         return false;
     }
 
+    /**
+     * Proxies a single request asynchronously. The TitusMaster call is executed by the {@link RxHttpClient}, and the
+     * response body is read by the HTTP client thread that delivered the response, into a bounded chunk queue. The
+     * chunks are written to the client only when its connection can accept more data, either from the
+     * {@link WriteListener} callback, or by the reader thread after it queued a chunk. Container threads never block
+     * on the TitusMaster connection, and once the queue is full, the TitusMaster response is read at the pace of the
+     * client. Each exchange holds one of the async exchange permits until it finishes.
+     */
+    private class AsyncProxyExchange implements AsyncListener, WriteListener {
+
+        private final AsyncContext asyncContext;
+        private final HttpServletResponse response;
+        private final String remoteIp;
+        private final String method;
+        private final URI requestUri;
+        private final URI clientRequestUri;
+        private final Headers clientHeaders;
+        private final InputStream requestInputStream;
+        private final Runnable onCompleted;
+
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(RESPONSE_BUFFERED_CHUNKS);
+        private final AtomicInteger drainRequests = new AtomicInteger();
+
+        private volatile Response clientResponse;
+        private volatile InputStream responseInputStream;
+        private volatile ServletOutputStream outputStream;
+        private volatile boolean bodyFullyRead;
+
+        private AsyncProxyExchange(HttpServletRequest request,
+                                   HttpServletResponse response,
+                                   URI requestUri,
+                                   URI clientRequestUri,
+                                   Headers clientHeaders,
+                                   InputStream requestInputStream,
+                                   Runnable onCompleted) {
+            this.response = response;
+            this.remoteIp = request.getRemoteAddr();
+            this.method = request.getMethod();
+            this.requestUri = requestUri;
+            this.clientRequestUri = clientRequestUri;
+            this.clientHeaders = clientHeaders;
+            this.requestInputStream = requestInputStream;
+            this.onCompleted = onCompleted;
+
+            this.asyncContext = request.startAsync();
+            asyncContext.setTimeout(configuration.getProxyAsyncTimeoutMs());
+            asyncContext.addListener(this);
+        }
+
+        private void start(Request clientRequest) {
+            proxyHttpClient.execute(clientRequest).subscribe(this::onClientResponse, this::onClientError);
+        }
+
+        private void onClientResponse(Response clientResponse) {
+            this.clientResponse = clientResponse;
+            if (finished.get()) {
+                closeClientResponse();
+                return;
+            }
+            try {
+                response.setStatus(clientResponse.getStatusCode().getCode());
+                copyResponseHeaders(clientResponse.getHeaders(), response);
+                if (!clientResponse.hasBody()) {
+                    finish(false);
+                    return;
+                }
+                InputStream bodyInputStream = clientResponse.getBody().get(InputStream.class);
+                responseInputStream = (configuration.isProxyErrorLoggingEnabled() && !clientResponse.isSuccessful())
+                        ? new ByteCopyInputStream(bodyInputStream, MAX_BYTES_TO_BUFFER) : bodyInputStream;
+                outputStream = response.getOutputStream();
+                outputStream.setWriteListener(this);
+            } catch (Exception e) {
+                onClientError(e);
+                return;
+            }
+            readBody();
+        }
+
+        /**
+         * Runs on the HTTP client thread, and blocks it when the chunk queue is full, until the client catches up.
+         */
+        private void readBody() {
+            byte[] buffer = new byte[RESPONSE_BUFFER_SIZE];
+            try {
+                int count;
+                while (!finished.get() && (count = responseInputStream.read(buffer)) >= 0) {
+                    byte[] chunk = Arrays.copyOf(buffer, count);
+                    while (!chunks.offer(chunk, RESPONSE_BUFFER_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                        if (finished.get()) {
+                            return;
+                        }
+                    }
+                    drain();
+                }
+                bodyFullyRead = true;
+                drain();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                onStreamingError(e);
+            } catch (Exception e) {
+                onStreamingError(e);
+            }
+        }
+
+        /**
+         * Writes the queued chunks while the client connection accepts more data. Invoked both by the container and
+         * by the reader thread, but only one thread at a time writes; a request made while another thread writes
+         * makes that thread run one more pass.
+         */
+        private void drain() {
+            if (drainRequests.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                try {
+                    while (!finished.get() && outputStream.isReady()) {
+                        byte[] chunk = chunks.poll();
+                        if (chunk == null) {
+                            if (bodyFullyRead && chunks.isEmpty()) {
+                                finish(false);
+                            }
+                            break;
+                        }
+                        outputStream.write(chunk);
+                    }
+                } catch (Exception e) {
+                    onStreamingError(e);
+                }
+                missed = drainRequests.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void onClientError(Throwable error) {
+            logger.error("[PROXY UNKNOWN ERROR] Unable to proxy request with error: ", error);
+            if (!response.isCommitted()) {
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+            finish(true);
+        }
+
+        @Override
+        public void onWritePossible() {
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            onStreamingError(error);
+        }
+
+        private void onStreamingError(Throwable error) {
+            if (finished.get()) {
+                // Closing the TitusMaster response after the exchange finished fails the pending read
+                return;
+            }
+            logger.warn("[PROXY STREAMING ERROR] {} {} {}: {}", remoteIp, method, requestUri, error.getMessage());
+            finish(true);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            logger.warn("[PROXY TIMEOUT] {} {} {}", remoteIp, method, requestUri);
+            if (!response.isCommitted()) {
+                response.setStatus(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+            }
+            finish(true);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            finish(true);
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            finish(false);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        private void finish(boolean failed) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            Response currentClientResponse = clientResponse;
+            boolean unsuccessful = currentClientResponse != null && !currentClientResponse.isSuccessful();
+            if (configuration.isProxyErrorLoggingEnabled() && (failed || unsuccessful)) {
+                String proxyErrorMessage = formatRequestError(remoteIp, method, requestUri, clientHeaders, requestInputStream);
+                if (unsuccessful) {
+                    proxyErrorMessage += formatResponseError(response.getStatus(), method, clientRequestUri,
+                            currentClientResponse.getHeaders(), responseInputStream);
+                }
+                logger.info(proxyErrorMessage);
+            }
+            closeClientResponse();
+            asyncExchangePermits.release();
+            onCompleted.run();
+            try {
+                asyncContext.complete();
+            } catch (IllegalStateException e) {
+                // Already completed by the container (for example after a client disconnect)
+                logger.debug("Async context already completed: {}", e.getMessage());
+            }
+        }
+
+        private void closeClientResponse() {
+            Response currentClientResponse = clientResponse;
+            if (currentClientResponse != null && currentClientResponse.hasBody()) {
+                currentClientResponse.getBody().close();
+            }
+        }
+    }
+
     /**
      * Basic implementation of an InputStream wrapper that copies the first N read bytes so that
      * they can be read at a later time.
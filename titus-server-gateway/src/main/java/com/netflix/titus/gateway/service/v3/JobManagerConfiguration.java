@@ -31,4 +31,20 @@ public interface JobManagerConfiguration {
 
     @DefaultValue("_none_")
     String getNoncompliantClientWhiteList();
+
+    /**
+     * Set to true to serve job and task queries from the gateway local replica of the active jobs and tasks. The
+     * replica is created at the gateway startup, but the property can be changed at runtime to route all queries back
+     * to the master.
+     */
+    @DefaultValue("false")
+    boolean isJobReplicaEnabled();
+
+    /**
+     * For how long the replica is still used to serve queries, after it lost its connection to the master. Once this
+     * time passes, all queries are forwarded to the master until the replica is resynchronized. This bounds the
+     * staleness after a disconnect only; while the event stream is open, the replica is assumed to be up to date.
+     */
+    @DefaultValue("5000")
+    long getJobReplicaMaxStalenessMs();
 }
@@ -19,6 +19,7 @@ package com.netflix.titus.gateway.service.v3.internal;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
@@ -96,6 +97,7 @@ public class DefaultJobManagementService implements JobManagementService {
     private final JobManagementServiceStub client;
     private final CallMetadataResolver callMetadataResolver;
     private final JobStore store;
+    private final LocalJobReplica jobReplica;
     private final LogStorageInfo<com.netflix.titus.api.jobmanager.model.job.Task> logStorageInfo;
     private final EntitySanitizer entitySanitizer;
     private final Function<String, Matcher> uncompliantClientMatcher;
@@ -106,6 +108,7 @@ public class DefaultJobManagementService implements JobManagementService {
                                        JobManagementServiceStub client,
                                        CallMetadataResolver callMetadataResolver,
                                        JobStore store,
+                                       LocalJobReplica jobReplica,
                                        LogStorageInfo<com.netflix.titus.api.jobmanager.model.job.Task> logStorageInfo,
                                        @Named(JOB_STRICT_SANITIZER) EntitySanitizer entitySanitizer) {
         this.configuration = configuration;
@@ -113,6 +116,7 @@ public class DefaultJobManagementService implements JobManagementService {
         this.client = client;
         this.callMetadataResolver = callMetadataResolver;
         this.store = store;
+        this.jobReplica = jobReplica;
         this.logStorageInfo = logStorageInfo;
         this.entitySanitizer = entitySanitizer;
         this.uncompliantClientMatcher = RegExpExt.dynamicMatcher(
@@ -184,6 +188,11 @@ public class DefaultJobManagementService implements JobManagementService {
 
     @Override
     public Observable<Job> findJob(String jobId) {
+        Optional<Job> replicatedJob = jobReplica.findJob(jobId);
+        if (replicatedJob.isPresent()) {
+            return Observable.just(replicatedJob.get());
+        }
+
         Observable<Job> observable = createRequestObservable(emitter -> {
             StreamObserver<Job> streamObserver = createSimpleClientResponseObserver(emitter);
             createWrappedStub(client, callMetadataResolver, configuration.getRequestTimeout()).findJob(JobId.newBuilder().setId(jobId).build(), streamObserver);
@@ -201,6 +210,10 @@ public class DefaultJobManagementService implements JobManagementService {
 
     @Override
     public Observable<JobQueryResult> findJobs(JobQuery jobQuery) {
+        Optional<JobQueryResult> replicaResult = jobReplica.findJobs(jobQuery);
+        if (replicaResult.isPresent()) {
+            return Observable.just(replicaResult.get());
+        }
         return createRequestObservable(emitter -> {
             StreamObserver<JobQueryResult> streamObserver = createSimpleClientResponseObserver(emitter);
             createWrappedStub(client, callMetadataResolver, configuration.getRequestTimeout()).findJobs(jobQuery, streamObserver);
@@ -233,6 +246,11 @@ public class DefaultJobManagementService implements JobManagementService {
 
     @Override
     public Observable<Task> findTask(String taskId) {
+        Optional<Task> replicatedTask = jobReplica.findTask(taskId);
+        if (replicatedTask.isPresent()) {
+            return Observable.just(replicatedTask.get());
+        }
+
         Observable<Task> observable = createRequestObservable(emitter -> {
             StreamObserver<Task> streamObserver = createSimpleClientResponseObserver(emitter);
             createWrappedStub(client, callMetadataResolver, configuration.getRequestTimeout()).findTask(TaskId.newBuilder().setId(taskId).build(), streamObserver);
@@ -252,6 +270,12 @@ public class DefaultJobManagementService implements JobManagementService {
 
     @Override
     public Observable<TaskQueryResult> findTasks(TaskQuery taskQuery) {
+        // The replica does not hold finished tasks, so its results never need to be merged with the archived ones.
+        Optional<TaskQueryResult> replicaResult = jobReplica.findTasks(taskQuery);
+        if (replicaResult.isPresent()) {
+            return Observable.just(replicaResult.get());
+        }
+
         Observable<TaskQueryResult> observable = createRequestObservable(emitter -> {
             StreamObserver<TaskQueryResult> streamObserver = createSimpleClientResponseObserver(emitter);
             createWrappedStub(client, callMetadataResolver, configuration.getRequestTimeout()).findTasks(taskQuery, streamObserver);
@@ -0,0 +1,472 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.gateway.service.v3.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.Empty;
+import com.google.protobuf.Message;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.Timer;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import com.netflix.titus.api.model.Pagination;
+import com.netflix.titus.api.model.PaginationUtil;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.util.ExceptionExt;
+import com.netflix.titus.common.util.ProtobufCopy;
+import com.netflix.titus.common.util.rx.RetryHandlerBuilder;
+import com.netflix.titus.common.util.time.Clock;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.gateway.service.v3.JobManagerConfiguration;
+import com.netflix.titus.grpc.protogen.Job;
+import com.netflix.titus.grpc.protogen.JobChangeNotification;
+import com.netflix.titus.grpc.protogen.JobDescriptor.JobSpecCase;
+import com.netflix.titus.grpc.protogen.JobManagementServiceGrpc.JobManagementServiceStub;
+import com.netflix.titus.grpc.protogen.JobQuery;
+import com.netflix.titus.grpc.protogen.JobQueryResult;
+import com.netflix.titus.grpc.protogen.JobStatus;
+import com.netflix.titus.grpc.protogen.Task;
+import com.netflix.titus.grpc.protogen.TaskQuery;
+import com.netflix.titus.grpc.protogen.TaskQueryResult;
+import com.netflix.titus.grpc.protogen.TaskStatus;
+import com.netflix.titus.runtime.endpoint.JobQueryCriteria;
+import com.netflix.titus.runtime.endpoint.metadata.CallMetadataResolver;
+import com.netflix.titus.runtime.endpoint.v3.grpc.V3GrpcModelConverters;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.JobQueryIndex;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.JobQueryPlan;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.JobQueryPlanner;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3JobQueryCriteriaEvaluator;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3TaskQueryCriteriaEvaluator;
+import com.netflix.titus.runtime.jobmanager.JobManagerCursors;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.schedulers.Schedulers;
+
+import static com.netflix.titus.gateway.MetricConstants.METRIC_ROOT;
+import static com.netflix.titus.runtime.endpoint.common.grpc.CommonGrpcModelConverters.toGrpcPagination;
+import static com.netflix.titus.runtime.endpoint.common.grpc.CommonGrpcModelConverters.toJobQueryCriteria;
+import static com.netflix.titus.runtime.endpoint.common.grpc.CommonGrpcModelConverters.toPage;
+import static com.netflix.titus.runtime.endpoint.common.grpc.GrpcUtil.createRequestObservable;
+import static com.netflix.titus.runtime.endpoint.common.grpc.GrpcUtil.createSimpleClientResponseObserver;
+import static com.netflix.titus.runtime.endpoint.common.grpc.GrpcUtil.createWrappedStub;
+import static com.netflix.titus.runtime.service.JobManagementService.JOB_MINIMUM_FIELD_SET;
+import static com.netflix.titus.runtime.service.JobManagementService.TASK_MINIMUM_FIELD_SET;
+
+/**
+ * Gateway local replica of the active jobs and tasks, built from the master's job event stream (a snapshot followed
+ * by the change notifications). Queries are served from the replica when it is in sync with the master, or when it
+ * lost its connection to the master no longer than {@link JobManagerConfiguration#getJobReplicaMaxStalenessMs()} ago.
+ * Otherwise, and for queries that may match entities not held by the replica (finished jobs and tasks), an empty
+ * result is returned, and the caller must forward the query to the master.
+ * <p>
+ * The staleness bound applies from the moment the event stream fails only. The job event stream has no keep alive
+ * messages, so a quiet stream cannot be told apart from a stalled one, and while connected the replica is assumed to
+ * be up to date, however long ago the last notification was received.
+ * <p>
+ * Notifications are applied by the stream subscriber only. After a reconnect a new replica state is built from the
+ * snapshot, and it replaces the current one once the snapshot end marker is received, so queries never observe
+ * a partially loaded replica.
+ */
+@Singleton
+public class LocalJobReplica {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalJobReplica.class);
+
+    private static final String METRIC_JOB_REPLICA = METRIC_ROOT + "jobReplica.";
+
+    private static final long RETRY_DELAY_MS = 1_000;
+
+    private final JobManagerConfiguration configuration;
+    private final Supplier<Observable<JobChangeNotification>> eventStreamFactory;
+    private final TitusRuntime titusRuntime;
+    private final Clock clock;
+    private final Scheduler scheduler;
+
+    private final Registry registry;
+    private final Timer eventLag;
+
+    private volatile ReplicaState active;
+    private volatile ReplicaState pending;
+    private volatile boolean connected;
+    private volatile long disconnectedTimestamp;
+
+    private Subscription subscription;
+
+    @Inject
+    public LocalJobReplica(JobManagerConfiguration configuration,
+                           JobManagementServiceStub client,
+                           CallMetadataResolver callMetadataResolver,
+                           TitusRuntime titusRuntime) {
+        this(configuration,
+                () -> createRequestObservable(emitter -> {
+                    StreamObserver<JobChangeNotification> streamObserver = createSimpleClientResponseObserver(emitter);
+                    createWrappedStub(client, callMetadataResolver).observeJobs(Empty.getDefaultInstance(), streamObserver);
+                }),
+                titusRuntime,
+                Schedulers.computation()
+        );
+    }
+
+    @VisibleForTesting
+    LocalJobReplica(JobManagerConfiguration configuration,
+                    Supplier<Observable<JobChangeNotification>> eventStreamFactory,
+                    TitusRuntime titusRuntime,
+                    Scheduler scheduler) {
+        this.configuration = configuration;
+        this.eventStreamFactory = eventStreamFactory;
+        this.titusRuntime = titusRuntime;
+        this.clock = titusRuntime.getClock();
+        this.scheduler = scheduler;
+        this.registry = titusRuntime.getRegistry();
+        this.eventLag = registry.timer(METRIC_JOB_REPLICA + "eventLag");
+
+        PolledMeter.using(registry).withName(METRIC_JOB_REPLICA + "connected").monitorValue(this, self -> self.connected ? 1 : 0);
+        PolledMeter.using(registry).withName(METRIC_JOB_REPLICA + "stalenessMs").monitorValue(this, LocalJobReplica::getStalenessMs);
+        PolledMeter.using(registry).withName(METRIC_JOB_REPLICA + "jobs").monitorValue(this, self -> self.active == null ? 0 : self.active.jobs.size());
+        PolledMeter.using(registry).withName(METRIC_JOB_REPLICA + "tasks").monitorValue(this, self -> self.active == null ? 0 : self.active.tasks.size());
+        PolledMeter.using(registry).withName(METRIC_JOB_REPLICA + "unconvertible").monitorValue(this, self -> self.active == null ? 0 : self.active.unconvertible.size());
+    }
+
+    @PostConstruct
+    public void activate() {
+        if (!configuration.isJobReplicaEnabled()) {
+            logger.info("Job replica disabled; all job queries are forwarded to the master");
+            return;
+        }
+        this.subscription = Observable.defer(() -> {
+            pending = new ReplicaState();
+            return eventStreamFactory.get();
+        })
+                .concatWith(Observable.error(new IllegalStateException("Job event stream completed by the master")))
+                .doOnError(this::onDisconnected)
+                .retryWhen(RetryHandlerBuilder.retryHandler()
+                        .withUnlimitedRetries()
+                        .withDelay(RETRY_DELAY_MS, RETRY_DELAY_MS, TimeUnit.MILLISECONDS)
+                        .withTitle("job replica event stream")
+                        .withScheduler(scheduler)
+                        .buildExponentialBackoff()
+                ).subscribe(
+                        this::onNotification,
+                        e -> logger.error("Job replica event stream terminated with an error", e)
+                );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (subscription != null) {
+            subscription.unsubscribe();
+        }
+        PolledMeter.remove(registry, registry.createId(METRIC_JOB_REPLICA + "connected"));
+        PolledMeter.remove(registry, registry.createId(METRIC_JOB_REPLICA + "stalenessMs"));
+        PolledMeter.remove(registry, registry.createId(METRIC_JOB_REPLICA + "jobs"));
+        PolledMeter.remove(registry, registry.createId(METRIC_JOB_REPLICA + "tasks"));
+        PolledMeter.remove(registry, registry.createId(METRIC_JOB_REPLICA + "unconvertible"));
+    }
+
+    /**
+     * Returns true if the replica received a full snapshot from the master, and is still connected to it.
+     */
+    public boolean isInSync() {
+        return active != null && connected;
+    }
+
+    /**
+     * Returns the amount of time since the replica lost its connection to the master, 0 when it is connected (no matter
+     * when the last notification was received), and -1 if it was never synchronized.
+     */
+    public long getStalenessMs() {
+        if (active == null) {
+            return -1;
+        }
+        return connected ? 0 : Math.max(0, clock.wallTime() - disconnectedTimestamp);
+    }
+
+    public Optional<Job> findJob(String jobId) {
+        return serve("findJob", state -> Optional.ofNullable(state.jobs.get(jobId)).map(Pair::getLeft));
+    }
+
+    public Optional<Task> findTask(String taskId) {
+        return serve("findTask", state -> Optional.ofNullable(state.tasks.get(taskId)).map(Pair::getLeft));
+    }
+
+    public Optional<JobQueryResult> findJobs(JobQuery jobQuery) {
+        return serve("findJobs", state -> {
+            Optional<JobQueryCriteria<TaskStatus.TaskState, JobSpecCase>> criteriaOpt = toReplicaCriteria(
+                    state, jobQuery.getPage(), () -> toJobQueryCriteria(jobQuery)
+            );
+            return criteriaOpt.filter(LocalJobReplica::canEvaluateJobQuery).map(criteria -> state.findJobs(jobQuery, criteria));
+        });
+    }
+
+    public Optional<TaskQueryResult> findTasks(TaskQuery taskQuery) {
+        return serve("findTasks", state -> {
+            Optional<JobQueryCriteria<TaskStatus.TaskState, JobSpecCase>> criteriaOpt = toReplicaCriteria(
+                    state, taskQuery.getPage(), () -> toJobQueryCriteria(taskQuery)
+            );
+            return criteriaOpt.filter(LocalJobReplica::canEvaluateTaskQuery).map(criteria -> state.findTasks(taskQuery, criteria));
+        });
+    }
+
+    private <T> Optional<T> serve(String query, Function<ReplicaState, Optional<T>> handler) {
+        ReplicaState state = active;
+        String outcome;
+        Optional<T> result = Optional.empty();
+        if (!configuration.isJobReplicaEnabled()) {
+            outcome = "disabled";
+        } else if (state == null || (!connected && getStalenessMs() > configuration.getJobReplicaMaxStalenessMs())) {
+            outcome = "notInSync";
+        } else {
+            result = handler.apply(state);
+            outcome = result.isPresent() ? "replica" : "forwarded";
+        }
+        registry.counter(METRIC_JOB_REPLICA + "queries", "query", query, "outcome", outcome).increment();
+        return result;
+    }
+
+    /**
+     * Invalid queries, and queries that cannot be evaluated when some entities failed the model conversion, are
+     * forwarded to the master.
+     */
+    private Optional<JobQueryCriteria<TaskStatus.TaskState, JobSpecCase>> toReplicaCriteria(ReplicaState state,
+                                                                                           com.netflix.titus.grpc.protogen.Page page,
+                                                                                           Supplier<JobQueryCriteria<TaskStatus.TaskState, JobSpecCase>> criteriaSupplier) {
+        if (!state.unconvertible.isEmpty() || page.getPageSize() <= 0 || page.getPageNumber() < 0) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(criteriaSupplier.get());
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * The replica holds active entities only, so queries that may match finished jobs or tasks must go to the master.
+     * Migration details are not part of the API model, so the migration criteria are not evaluated locally either.
+     */
+    private static boolean canEvaluateJobQuery(JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria) {
+        return !criteria.isNeedsMigration()
+                && !criteria.getTaskStates().contains(TaskStatus.TaskState.Finished)
+                && !criteria.getJobState().filter(state -> state == JobStatus.JobState.Finished).isPresent();
+    }
+
+    /**
+     * Finished tasks are kept by the master until their job is finished, so a task query must explicitly exclude them.
+     */
+    private static boolean canEvaluateTaskQuery(JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria) {
+        return canEvaluateJobQuery(criteria) && !criteria.getTaskStates().isEmpty();
+    }
+
+    private void onNotification(JobChangeNotification notification) {
+        ReplicaState loading = pending;
+        ReplicaState state = loading != null ? loading : active;
+        if (state == null) {
+            return;
+        }
+        switch (notification.getNotificationCase()) {
+            case JOBUPDATE:
+                state.updateJob(notification.getJobUpdate().getJob());
+                break;
+            case TASKUPDATE:
+                Task task = notification.getTaskUpdate().getTask();
+                state.updateTask(task);
+                if (loading == null) {
+                    eventLag.record(Math.max(0, clock.wallTime() - task.getStatus().getTimestamp()), TimeUnit.MILLISECONDS);
+                }
+                break;
+            case SNAPSHOTEND:
+                if (loading != null) {
+                    this.active = loading;
+                    this.pending = null;
+                    this.connected = true;
+                    logger.info("Job replica synchronized with the master: jobs={}, tasks={}, unconvertible={}",
+                            loading.jobs.size(), loading.tasks.size(), loading.unconvertible.size());
+                }
+                break;
+            default:
+        }
+    }
+
+    private void onDisconnected(Throwable error) {
+        if (connected) {
+            this.disconnectedTimestamp = clock.wallTime();
+            this.connected = false;
+        }
+        this.pending = null;
+        logger.warn("Job replica lost its connection to the master: {}", ExceptionExt.toMessageChain(error));
+    }
+
+    private static <T extends Message> List<T> project(List<T> items, List<String> fields, Set<String> minimumFields) {
+        if (fields.isEmpty()) {
+            return items;
+        }
+        Set<String> allFields = new HashSet<>(fields);
+        allFields.addAll(minimumFields);
+        return items.stream().map(item -> ProtobufCopy.copy(item, allFields)).collect(Collectors.toList());
+    }
+
+    /**
+     * Entities are kept both in the API form, which is returned to the callers, and in the core form, which is used
+     * for the query evaluation. Entities that cannot be converted to the core model are not stored.
+     */
+    private class ReplicaState {
+
+        private final ConcurrentMap<String, Pair<Job, com.netflix.titus.api.jobmanager.model.job.Job<?>>> jobs = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, Pair<Task, com.netflix.titus.api.jobmanager.model.job.Task>> tasks = new ConcurrentHashMap<>();
+        private final Set<String> unconvertible = ConcurrentHashMap.newKeySet();
+        private final JobQueryIndex index = new JobQueryIndex();
+
+        private void updateJob(Job job) {
+            if (job.getStatus().getState() == JobStatus.JobState.Finished) {
+                removeJob(job.getId());
+                return;
+            }
+            com.netflix.titus.api.jobmanager.model.job.Job<?> coreJob;
+            try {
+                coreJob = V3GrpcModelConverters.toCoreJob(job);
+            } catch (Exception e) {
+                logger.warn("Cannot convert job {} to the core model: {}", job.getId(), ExceptionExt.toMessageChain(e));
+                removeJob(job.getId());
+                unconvertible.add(job.getId());
+                return;
+            }
+            jobs.put(job.getId(), Pair.of(job, coreJob));
+            index.updateJob(coreJob);
+            unconvertible.remove(job.getId());
+        }
+
+        private void removeJob(String jobId) {
+            jobs.remove(jobId);
+            index.getTaskIdsOfJob(jobId).forEach(tasks::remove);
+            index.removeJob(jobId);
+            unconvertible.remove(jobId);
+        }
+
+        private void updateTask(Task task) {
+            if (task.getStatus().getState() == TaskStatus.TaskState.Finished) {
+                removeTask(task.getId());
+                return;
+            }
+            com.netflix.titus.api.jobmanager.model.job.Task coreTask;
+            try {
+                coreTask = V3GrpcModelConverters.toCoreTask(task);
+            } catch (Exception e) {
+                logger.warn("Cannot convert task {} to the core model: {}", task.getId(), ExceptionExt.toMessageChain(e));
+                removeTask(task.getId());
+                unconvertible.add(task.getId());
+                return;
+            }
+            tasks.put(task.getId(), Pair.of(task, coreTask));
+            index.updateTask(coreTask);
+            unconvertible.remove(task.getId());
+        }
+
+        private void removeTask(String taskId) {
+            tasks.remove(taskId);
+            index.removeTask(taskId);
+            unconvertible.remove(taskId);
+        }
+
+        private JobQueryResult findJobs(JobQuery jobQuery, JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria) {
+            JobQueryPlan plan = JobQueryPlanner.planJobQuery(criteria, index);
+            V3JobQueryCriteriaEvaluator queryPredicate = new V3JobQueryCriteriaEvaluator(criteria, titusRuntime);
+            boolean withTasks = !criteria.getTaskIds().isEmpty() || !criteria.getTaskStates().isEmpty();
+
+            List<Job> matchingJobs = new ArrayList<>();
+            for (String jobId : plan.getCandidateIds()) {
+                Pair<Job, com.netflix.titus.api.jobmanager.model.job.Job<?>> jobPair = jobs.get(jobId);
+                if (jobPair != null) {
+                    List<com.netflix.titus.api.jobmanager.model.job.Task> jobTasks = withTasks ? getCoreTasksOfJob(jobId) : Collections.emptyList();
+                    if (queryPredicate.test(Pair.of(jobPair.getRight(), jobTasks))) {
+                        matchingJobs.add(jobPair.getLeft());
+                    }
+                }
+            }
+
+            Pair<List<Job>, Pagination> pageResult = PaginationUtil.takePageWithCursor(
+                    toPage(jobQuery.getPage()),
+                    matchingJobs,
+                    JobManagerCursors.jobCursorOrderComparator(),
+                    JobManagerCursors::jobIndexOf,
+                    JobManagerCursors::newCursorFrom
+            );
+            return JobQueryResult.newBuilder()
+                    .addAllItems(project(pageResult.getLeft(), jobQuery.getFieldsList(), JOB_MINIMUM_FIELD_SET))
+                    .setPagination(toGrpcPagination(pageResult.getRight()))
+                    .build();
+        }
+
+        private TaskQueryResult findTasks(TaskQuery taskQuery, JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> criteria) {
+            JobQueryPlan plan = JobQueryPlanner.planTaskQuery(criteria, index);
+            V3TaskQueryCriteriaEvaluator queryPredicate = new V3TaskQueryCriteriaEvaluator(criteria, titusRuntime);
+
+            List<Task> matchingTasks = new ArrayList<>();
+            for (String taskId : plan.getCandidateIds()) {
+                Pair<Task, com.netflix.titus.api.jobmanager.model.job.Task> taskPair = tasks.get(taskId);
+                if (taskPair != null) {
+                    Pair<Job, com.netflix.titus.api.jobmanager.model.job.Job<?>> jobPair = jobs.get(taskPair.getRight().getJobId());
+                    if (jobPair != null && queryPredicate.test(Pair.of(jobPair.getRight(), taskPair.getRight()))) {
+                        matchingTasks.add(taskPair.getLeft());
+                    }
+                }
+            }
+
+            Pair<List<Task>, Pagination> pageResult = PaginationUtil.takePageWithCursor(
+                    toPage(taskQuery.getPage()),
+                    matchingTasks,
+                    JobManagerCursors.taskCursorOrderComparator(),
+                    JobManagerCursors::taskIndexOf,
+                    JobManagerCursors::newCursorFrom
+            );
+            return TaskQueryResult.newBuilder()
+                    .addAllItems(project(pageResult.getLeft(), taskQuery.getFieldsList(), TASK_MINIMUM_FIELD_SET))
+                    .setPagination(toGrpcPagination(pageResult.getRight()))
+                    .build();
+        }
+
+        private List<com.netflix.titus.api.jobmanager.model.job.Task> getCoreTasksOfJob(String jobId) {
+            List<com.netflix.titus.api.jobmanager.model.job.Task> result = new ArrayList<>();
+            for (String taskId : index.getTaskIdsOfJob(jobId)) {
+                Pair<Task, com.netflix.titus.api.jobmanager.model.job.Task> taskPair = tasks.get(taskId);
+                if (taskPair != null) {
+                    result.add(taskPair.getRight());
+                }
+            }
+            return result;
+        }
+    }
+}
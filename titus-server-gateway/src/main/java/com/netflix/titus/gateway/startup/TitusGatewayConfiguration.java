@@ -38,4 +38,25 @@ public interface TitusGatewayConfiguration {
 
     @DefaultValue("false")
     boolean isV2Enabled();
+
+    /**
+     * If enabled, requests proxied to TitusMaster are handled asynchronously (servlet {@link javax.servlet.AsyncContext}),
+     * with the response body streamed to the client as the client connection becomes writable. The TitusMaster response
+     * is read by the HTTP client threads into a small bounded buffer, so no container thread waits on TitusMaster.
+     */
+    @DefaultValue("false")
+    boolean isProxyAsyncEnabled();
+
+    @DefaultValue("120000")
+    long getProxyAsyncTimeoutMs();
+
+    /**
+     * Maximum number of requests proxied asynchronously at the same time. A request is counted until its response
+     * body is fully streamed to the client. Requests above this limit are proxied synchronously.
+     */
+    @DefaultValue("64")
+    int getProxyMaxConcurrentRequests();
+
+    @DefaultValue("16")
+    int getProxyMaxIdleConnections();
 }
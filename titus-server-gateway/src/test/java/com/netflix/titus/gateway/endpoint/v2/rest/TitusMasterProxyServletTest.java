@@ -0,0 +1,205 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.gateway.endpoint.v2.rest;
+
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.DispatcherType;
+
+import com.google.common.base.Strings;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.servlet.GuiceFilter;
+import com.google.inject.servlet.ServletModule;
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.titus.common.network.http.HttpClient;
+import com.netflix.titus.common.network.http.RxHttpClient;
+import com.netflix.titus.common.network.http.internal.okhttp.OkHttpClient;
+import com.netflix.titus.common.network.http.internal.okhttp.RxOkHttpClient;
+import com.netflix.titus.gateway.connector.titusmaster.Address;
+import com.netflix.titus.gateway.connector.titusmaster.LeaderResolver;
+import com.netflix.titus.gateway.service.v2.LogUrlService;
+import com.netflix.titus.gateway.startup.TitusGatewayConfiguration;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.DefaultServlet;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TitusMasterProxyServletTest {
+
+    private static final String JOBS_PATH = "/api/v2/jobs";
+
+    private final TitusGatewayConfiguration configuration = mock(TitusGatewayConfiguration.class);
+    private final LeaderResolver leaderResolver = mock(LeaderResolver.class);
+    private final LogUrlService logUrlService = mock(LogUrlService.class);
+
+    private final HttpClient httpClient = spy(OkHttpClient.newBuilder().build());
+    private final RxHttpClient proxyHttpClient = spy(RxOkHttpClient.newBuilder().build());
+
+    private final okhttp3.OkHttpClient gatewayClient = new okhttp3.OkHttpClient.Builder()
+            .readTimeout(30, TimeUnit.SECONDS)
+            .build();
+
+    private final MockWebServer master = new MockWebServer();
+
+    private Server gateway;
+
+    @Before
+    public void setUp() throws Exception {
+        master.start();
+
+        when(configuration.isV2Enabled()).thenReturn(true);
+        when(configuration.isProxyAsyncEnabled()).thenReturn(true);
+        when(configuration.getProxyAsyncTimeoutMs()).thenReturn(30_000L);
+        when(configuration.getProxyMaxConcurrentRequests()).thenReturn(16);
+        when(leaderResolver.resolve()).thenReturn(Optional.of(new Address("http", master.getHostName(), master.getPort())));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (gateway != null) {
+            gateway.stop();
+        }
+        master.shutdown();
+    }
+
+    @Test
+    public void testRequestIsProxiedAsynchronously() throws Exception {
+        master.enqueue(new MockResponse().setResponseCode(200).setBody("{\"jobs\":[]}"));
+        startGateway();
+
+        try (Response response = execute(JOBS_PATH)) {
+            assertThat(response.code()).isEqualTo(200);
+            assertThat(response.body().string()).isEqualTo("{\"jobs\":[]}");
+        }
+
+        RecordedRequest recordedRequest = master.takeRequest(1, TimeUnit.SECONDS);
+        assertThat(recordedRequest).isNotNull();
+        assertThat(recordedRequest.getPath()).isEqualTo(JOBS_PATH);
+
+        verify(proxyHttpClient).execute(any());
+        verify(httpClient, never()).execute(any());
+    }
+
+    @Test
+    public void testLargeResponseBodyIsStreamedAsynchronously() throws Exception {
+        String body = Strings.repeat("0123456789", 200_000);
+        master.enqueue(new MockResponse().setResponseCode(200).setBody(body));
+        startGateway();
+
+        try (Response response = execute(JOBS_PATH)) {
+            assertThat(response.code()).isEqualTo(200);
+            assertThat(response.body().string()).isEqualTo(body);
+        }
+
+        verify(proxyHttpClient).execute(any());
+        verify(httpClient, never()).execute(any());
+    }
+
+    @Test
+    public void testSlowUpstreamBodyIsStreamedAsynchronously() throws Exception {
+        // The body arrives in small parts, so the chunk queue runs empty, and is refilled, many times
+        String body = Strings.repeat("0123456789", 20_000);
+        master.enqueue(new MockResponse().setResponseCode(200).setBody(body).throttleBody(8_192, 20, TimeUnit.MILLISECONDS));
+        startGateway();
+
+        try (Response response = execute(JOBS_PATH)) {
+            assertThat(response.code()).isEqualTo(200);
+            assertThat(response.body().string()).isEqualTo(body);
+        }
+
+        verify(proxyHttpClient).execute(any());
+        verify(httpClient, never()).execute(any());
+    }
+
+    @Test
+    public void testUpstreamErrorStatusIsProxiedAsynchronously() throws Exception {
+        master.enqueue(new MockResponse().setResponseCode(404).setBody("not found"));
+        startGateway();
+
+        try (Response response = execute(JOBS_PATH + "/missing")) {
+            assertThat(response.code()).isEqualTo(404);
+            assertThat(response.body().string()).isEqualTo("not found");
+        }
+
+        verify(httpClient, never()).execute(any());
+    }
+
+    @Test
+    public void testRequestAboveConcurrencyLimitIsProxiedSynchronously() throws Exception {
+        when(configuration.getProxyMaxConcurrentRequests()).thenReturn(0);
+        master.enqueue(new MockResponse().setResponseCode(200).setBody("{\"jobs\":[]}"));
+        startGateway();
+
+        try (Response response = execute(JOBS_PATH)) {
+            assertThat(response.code()).isEqualTo(200);
+            assertThat(response.body().string()).isEqualTo("{\"jobs\":[]}");
+        }
+
+        verify(httpClient).execute(any());
+        verify(proxyHttpClient, never()).execute(any());
+    }
+
+    /**
+     * Mirrors the embedded Jetty setup, where {@link GuiceFilter} is registered without async support.
+     */
+    private void startGateway() throws Exception {
+        TitusMasterProxyServlet servlet = new TitusMasterProxyServlet(
+                configuration, new DefaultRegistry(), httpClient, proxyHttpClient, leaderResolver, logUrlService
+        );
+        Injector injector = Guice.createInjector(new ServletModule() {
+            @Override
+            protected void configureServlets() {
+                filter("/api/v2/*").through(new AsyncSupportFilter());
+                serve("/api/v2/*").with(servlet);
+            }
+        });
+
+        gateway = new Server(0);
+        ServletContextHandler context = new ServletContextHandler(gateway, "/");
+        context.addFilter(new FilterHolder(injector.getInstance(GuiceFilter.class)), "/*", EnumSet.allOf(DispatcherType.class));
+        context.addServlet(DefaultServlet.class, "/");
+        gateway.start();
+    }
+
+    private Response execute(String path) throws Exception {
+        int port = ((ServerConnector) gateway.getConnectors()[0]).getLocalPort();
+        Request request = new Request.Builder()
+                .url("http://localhost:" + port + path)
+                .get()
+                .build();
+        return gatewayClient.newCall(request).execute();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.gateway.service.v3.internal;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.api.jobmanager.model.job.BatchJobTask;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.JobState;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.gateway.service.v3.JobManagerConfiguration;
+import com.netflix.titus.grpc.protogen.JobChangeNotification;
+import com.netflix.titus.grpc.protogen.JobQuery;
+import com.netflix.titus.grpc.protogen.Page;
+import com.netflix.titus.grpc.protogen.TaskQuery;
+import com.netflix.titus.runtime.endpoint.common.EmptyLogStorageInfo;
+import com.netflix.titus.runtime.endpoint.v3.grpc.V3GrpcModelConverters;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LocalJobReplicaTest {
+
+    private static final Page PAGE = Page.newBuilder().setPageSize(100).build();
+
+    private final TestScheduler testScheduler = new TestScheduler();
+
+    private final JobManagerConfiguration configuration = mock(JobManagerConfiguration.class);
+
+    private final Job<BatchJobExt> job = JobGenerator.batchJobs(
+            JobFunctions.changeBatchJobSize(JobDescriptorGenerator.oneTaskBatchJobDescriptor(), 2)
+    ).getValue();
+
+    private final List<BatchJobTask> tasks = JobGenerator.batchTasks(job).toList(2);
+
+    private PublishSubject<JobChangeNotification> eventSubject;
+
+    private LocalJobReplica replica;
+
+    @Before
+    public void setUp() {
+        when(configuration.isJobReplicaEnabled()).thenReturn(true);
+        when(configuration.getJobReplicaMaxStalenessMs()).thenReturn(5_000L);
+
+        replica = new LocalJobReplica(
+                configuration,
+                () -> eventSubject = PublishSubject.create(),
+                TitusRuntimes.test(testScheduler),
+                testScheduler
+        );
+        replica.activate();
+    }
+
+    @After
+    public void tearDown() {
+        replica.shutdown();
+    }
+
+    @Test
+    public void testQueriesAreForwardedUntilSnapshotIsLoaded() {
+        emitJob(job);
+        emitTask(tasks.get(0));
+        assertThat(replica.isInSync()).isFalse();
+        assertThat(replica.findJob(job.getId())).isEmpty();
+
+        emitSnapshotEnd();
+        assertThat(replica.isInSync()).isTrue();
+        assertThat(replica.findJob(job.getId())).isPresent();
+        assertThat(replica.findTask(tasks.get(0).getId())).isPresent();
+        assertThat(replica.findTask(tasks.get(1).getId())).isEmpty();
+    }
+
+    @Test
+    public void testQueriesAreEvaluatedLocally() {
+        loadSnapshot();
+
+        JobQuery jobQuery = JobQuery.newBuilder().putFilteringCriteria("jobIds", job.getId()).setPage(PAGE).build();
+        assertThat(replica.findJobs(jobQuery).get().getItemsList()).hasSize(1);
+
+        TaskQuery taskQuery = TaskQuery.newBuilder()
+                .putFilteringCriteria("jobIds", job.getId())
+                .putFilteringCriteria("taskStates", "Accepted")
+                .addFields("status")
+                .setPage(PAGE)
+                .build();
+        assertThat(replica.findTasks(taskQuery).get().getItemsList()).hasSize(2);
+        assertThat(replica.findTasks(taskQuery).get().getItems(0).getJobId()).isEmpty();
+    }
+
+    @Test
+    public void testQueriesMatchingFinishedEntitiesAreForwarded() {
+        loadSnapshot();
+
+        assertThat(replica.findTasks(TaskQuery.newBuilder().setPage(PAGE).build())).isEmpty();
+        assertThat(replica.findTasks(TaskQuery.newBuilder().putFilteringCriteria("taskStates", "Accepted,Finished").setPage(PAGE).build())).isEmpty();
+        assertThat(replica.findJobs(JobQuery.newBuilder().putFilteringCriteria("jobState", "Finished").setPage(PAGE).build())).isEmpty();
+    }
+
+    @Test
+    public void testFinishedEntitiesAreRemoved() {
+        loadSnapshot();
+
+        emitTask(JobFunctions.changeTaskStatus(tasks.get(0), TaskState.Finished, "test", "test"));
+        assertThat(replica.findTask(tasks.get(0).getId())).isEmpty();
+        assertThat(replica.findTask(tasks.get(1).getId())).isPresent();
+
+        emitJob(JobFunctions.changeJobStatus(job, JobState.Finished, "test"));
+        assertThat(replica.findJob(job.getId())).isEmpty();
+        assertThat(replica.findTask(tasks.get(1).getId())).isEmpty();
+    }
+
+    @Test
+    public void testReplicaIsUsedWithinStalenessBoundAfterDisconnect() {
+        loadSnapshot();
+
+        eventSubject.onError(new RuntimeException("simulated error"));
+        assertThat(replica.isInSync()).isFalse();
+        assertThat(replica.findJob(job.getId())).isPresent();
+
+        testScheduler.advanceTimeBy(6_000, TimeUnit.MILLISECONDS);
+        assertThat(replica.getStalenessMs()).isEqualTo(6_000);
+        assertThat(replica.findJob(job.getId())).isEmpty();
+
+        // The resubscribed stream delivers a new snapshot, which replaces the stale state.
+        emitJob(job);
+        emitSnapshotEnd();
+        assertThat(replica.isInSync()).isTrue();
+        assertThat(replica.findJob(job.getId())).isPresent();
+        assertThat(replica.findTask(tasks.get(0).getId())).isEmpty();
+    }
+
+    @Test
+    public void testDisabledReplicaForwardsAllQueries() {
+        loadSnapshot();
+
+        when(configuration.isJobReplicaEnabled()).thenReturn(false);
+        assertThat(replica.findJob(job.getId())).isEmpty();
+    }
+
+    private void loadSnapshot() {
+        emitJob(job);
+        tasks.forEach(this::emitTask);
+        emitSnapshotEnd();
+    }
+
+    private void emitJob(Job<?> coreJob) {
+        eventSubject.onNext(JobChangeNotification.newBuilder()
+                .setJobUpdate(JobChangeNotification.JobUpdate.newBuilder().setJob(V3GrpcModelConverters.toGrpcJob(coreJob)))
+                .build()
+        );
+    }
+
+    @SuppressWarnings("unchecked")
+    private void emitTask(Task coreTask) {
+        eventSubject.onNext(JobChangeNotification.newBuilder()
+                .setTaskUpdate(JobChangeNotification.TaskUpdate.newBuilder().setTask(V3GrpcModelConverters.toGrpcTask(coreTask, EmptyLogStorageInfo.INSTANCE)))
+                .build()
+        );
+    }
+
+    private void emitSnapshotEnd() {
+        eventSubject.onNext(JobChangeNotification.newBuilder()
+                .setSnapshotEnd(JobChangeNotification.SnapshotEnd.newBuilder())
+                .build()
+        );
+    }
+}
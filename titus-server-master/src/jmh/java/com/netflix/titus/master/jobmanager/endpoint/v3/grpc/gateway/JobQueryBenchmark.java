@@ -0,0 +1,225 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.jobmanager.endpoint.v3.grpc.gateway;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.api.jobmanager.model.job.BatchJobTask;
+import com.netflix.titus.api.jobmanager.model.job.Container;
+import com.netflix.titus.api.jobmanager.model.job.Image;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobDescriptor;
+import com.netflix.titus.api.jobmanager.model.job.JobModel;
+import com.netflix.titus.api.jobmanager.model.job.JobState;
+import com.netflix.titus.api.jobmanager.model.job.JobStatus;
+import com.netflix.titus.api.jobmanager.model.job.Owner;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.TaskStatus;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.grpc.protogen.JobDescriptor.JobSpecCase;
+import com.netflix.titus.runtime.endpoint.JobQueryCriteria;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.JobQueryIndex;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.JobQueryPlan;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.JobQueryPlanner;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3JobQueryCriteriaEvaluator;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3TaskQueryCriteriaEvaluator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares evaluation of job and task queries by a full scan over all jobs and tasks (the way the job manager
+ * evaluated them before the query index was introduced) with the {@link JobQueryPlanner} based evaluation, in a
+ * system with 50k jobs and 500k tasks. Both variants collect all matching entities, which is what the pagination
+ * layer needs to compute the totals.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JobQueryBenchmark {
+
+    private static final int JOB_COUNT = 50_000;
+    private static final int TASKS_PER_JOB = 10;
+    private static final int APPLICATION_COUNT = 1_000;
+    private static final int STACK_COUNT = 100;
+
+    @Param({"application", "label", "jobState", "taskState"})
+    public String query;
+
+    private final TitusRuntime titusRuntime = TitusRuntimes.internal();
+    private final JobQueryIndex index = new JobQueryIndex();
+    private final Map<String, Job<?>> jobsById = new HashMap<>();
+    private final Map<String, List<Task>> tasksByJobId = new HashMap<>();
+    private final Map<String, Pair<Job<?>, Task>> tasksById = new HashMap<>();
+    private final List<Pair<Job<?>, List<Task>>> jobsAndTasks = new ArrayList<>();
+
+    private JobQueryCriteria<com.netflix.titus.grpc.protogen.TaskStatus.TaskState, JobSpecCase> criteria;
+    private V3JobQueryCriteriaEvaluator jobPredicate;
+    private V3TaskQueryCriteriaEvaluator taskPredicate;
+
+    @Setup
+    public void setUp() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < JOB_COUNT; i++) {
+            Job<BatchJobExt> job = newJob(i, now);
+            List<Task> tasks = new ArrayList<>();
+            for (int t = 0; t < TASKS_PER_JOB; t++) {
+                tasks.add(newTask(job, t, i * TASKS_PER_JOB + t, now));
+            }
+            index.updateJob(job);
+            tasks.forEach(index::updateTask);
+
+            jobsById.put(job.getId(), job);
+            tasksByJobId.put(job.getId(), tasks);
+            tasks.forEach(task -> tasksById.put(task.getId(), Pair.of(job, task)));
+            jobsAndTasks.add(Pair.of(job, tasks));
+        }
+
+        criteria = newCriteria(query);
+        jobPredicate = new V3JobQueryCriteriaEvaluator(criteria, titusRuntime);
+        taskPredicate = new V3TaskQueryCriteriaEvaluator(criteria, titusRuntime);
+    }
+
+    @Benchmark
+    public int fullScanJobs() {
+        List<Job<?>> result = new ArrayList<>();
+        for (Pair<Job<?>, List<Task>> jobAndTasks : jobsAndTasks) {
+            if (jobPredicate.test(jobAndTasks)) {
+                result.add(jobAndTasks.getLeft());
+            }
+        }
+        return result.size();
+    }
+
+    @Benchmark
+    public int indexedJobs() {
+        JobQueryPlan plan = JobQueryPlanner.planJobQuery(criteria, index);
+        List<Job<?>> result = new ArrayList<>();
+        for (String jobId : plan.getCandidateIds()) {
+            Job<?> job = jobsById.get(jobId);
+            if (job != null && jobPredicate.test(Pair.of(job, tasksByJobId.get(jobId)))) {
+                result.add(job);
+            }
+        }
+        return result.size();
+    }
+
+    @Benchmark
+    public int fullScanTasks() {
+        List<Task> result = new ArrayList<>();
+        for (Pair<Job<?>, List<Task>> jobAndTasks : jobsAndTasks) {
+            for (Task task : jobAndTasks.getRight()) {
+                if (taskPredicate.test(Pair.of(jobAndTasks.getLeft(), task))) {
+                    result.add(task);
+                }
+            }
+        }
+        return result.size();
+    }
+
+    @Benchmark
+    public int indexedTasks() {
+        JobQueryPlan plan = JobQueryPlanner.planTaskQuery(criteria, index);
+        List<Task> result = new ArrayList<>();
+        for (String taskId : plan.getCandidateIds()) {
+            Pair<Job<?>, Task> jobAndTask = tasksById.get(taskId);
+            if (jobAndTask != null && taskPredicate.test(jobAndTask)) {
+                result.add(jobAndTask.getRight());
+            }
+        }
+        return result.size();
+    }
+
+    private static JobQueryCriteria<com.netflix.titus.grpc.protogen.TaskStatus.TaskState, JobSpecCase> newCriteria(String query) {
+        JobQueryCriteria.Builder<com.netflix.titus.grpc.protogen.TaskStatus.TaskState, JobSpecCase> builder = JobQueryCriteria.newBuilder();
+        switch (query) {
+            case "application":
+                return builder.withAppName("app17").build();
+            case "label":
+                return builder.withLabels(Collections.singletonMap("stack", Collections.singleton("stack7"))).withLabelsAndOp(true).build();
+            case "jobState":
+                return builder.withJobState(com.netflix.titus.grpc.protogen.JobStatus.JobState.KillInitiated).build();
+            case "taskState":
+                return builder.withTaskStates(Collections.singleton(com.netflix.titus.grpc.protogen.TaskStatus.TaskState.Started)).build();
+        }
+        throw new IllegalArgumentException("Unknown query type: " + query);
+    }
+
+    /**
+     * One in a hundred jobs is being killed.
+     */
+    private static Job<BatchJobExt> newJob(int jobIndex, long now) {
+        JobDescriptor<BatchJobExt> jobDescriptor = JobDescriptor.<BatchJobExt>newBuilder()
+                .withOwner(Owner.newBuilder().withTeamEmail("team" + (jobIndex % APPLICATION_COUNT) + "@netflix.com").build())
+                .withApplicationName("app" + (jobIndex % APPLICATION_COUNT))
+                .withCapacityGroup("app" + (jobIndex % APPLICATION_COUNT))
+                .withAttributes(Collections.singletonMap("stack", "stack" + (jobIndex % STACK_COUNT)))
+                .withContainer(Container.newBuilder()
+                        .withImage(Image.newBuilder().withName("image" + (jobIndex % APPLICATION_COUNT)).withTag("latest").build())
+                        .build()
+                )
+                .withExtensions(BatchJobExt.newBuilder().withSize(TASKS_PER_JOB).build())
+                .build();
+        return JobModel.<BatchJobExt>newJob()
+                .withId("job#" + jobIndex)
+                .withStatus(JobStatus.newBuilder()
+                        .withState(jobIndex % 100 == 0 ? JobState.KillInitiated : JobState.Accepted)
+                        .withTimestamp(now)
+                        .build()
+                )
+                .withJobDescriptor(jobDescriptor)
+                .build();
+    }
+
+    /**
+     * One in twenty tasks is running, and the remaining ones are finished.
+     */
+    private static Task newTask(Job<BatchJobExt> job, int taskIndex, int globalIndex, long now) {
+        String taskId = job.getId() + "-task#" + taskIndex;
+        return BatchJobTask.newBuilder()
+                .withId(taskId)
+                .withOriginalId(taskId)
+                .withJobId(job.getId())
+                .withIndex(taskIndex)
+                .withStatus(TaskStatus.newBuilder()
+                        .withState(globalIndex % 20 == 0 ? TaskState.Started : TaskState.Finished)
+                        .withTimestamp(now)
+                        .build()
+                )
+                .build();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.jobmanager.service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.api.jobmanager.model.job.BatchJobTask;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobDescriptor;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.jobmanager.model.job.sanitizer.JobConfiguration;
+import com.netflix.titus.api.jobmanager.model.job.sanitizer.JobSanitizerBuilder;
+import com.netflix.titus.api.jobmanager.store.JobStore;
+import com.netflix.titus.common.framework.reconciler.ReconciliationEngine.DifferenceResolver;
+import com.netflix.titus.common.framework.reconciler.ReconciliationFramework;
+import com.netflix.titus.common.model.sanitizer.EntitySanitizer;
+import com.netflix.titus.common.model.sanitizer.VerifierMode;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.ext.cassandra.testkit.store.EmbeddedCassandraStoreFactory;
+import com.netflix.titus.master.jobmanager.service.event.JobManagerReconcilerEvent;
+import com.netflix.titus.master.scheduler.SchedulingService;
+import com.netflix.titus.master.scheduler.constraint.SystemHardConstraint;
+import com.netflix.titus.master.scheduler.constraint.SystemSoftConstraint;
+import com.netflix.titus.master.service.management.ApplicationSlaManagementService;
+import com.netflix.titus.testkit.data.core.ApplicationSlaSample;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rx.Completable;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures the job manager bootstrap time (loading all jobs and tasks from the store, validating them, and building
+ * the reconciliation engines) against the embedded Cassandra store, for different bootstrap worker pool sizes.
+ * Each invocation uses a fresh {@link JobStore} instance, so the store state is re-read from Cassandra, as it happens
+ * during a leader failover.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JobBootstrapBenchmark {
+
+    private static final int JOB_COUNT = 2_000;
+    private static final int TASKS_PER_JOB = 10;
+
+    @Param({"1", "4", "16"})
+    public int workerThreadCount;
+
+    @Param({"10", "100"})
+    public int taskLoadConcurrency;
+
+    private final TitusRuntime titusRuntime = TitusRuntimes.internal();
+
+    private EmbeddedCassandraStoreFactory storeFactory;
+    private JobManagerConfiguration configuration;
+    private SchedulingService schedulingService;
+    private ApplicationSlaManagementService capacityGroupService;
+    private EntitySanitizer permissiveSanitizer;
+    private EntitySanitizer strictSanitizer;
+
+    @Setup
+    public void setUp() {
+        this.storeFactory = EmbeddedCassandraStoreFactory.newBuilder().withTitusRuntime(titusRuntime).build();
+
+        JobStore store = storeFactory.getJobStore();
+        store.init().await();
+        JobDescriptor<BatchJobExt> jobDescriptor = JobDescriptorGenerator.oneTaskBatchJobDescriptor().but(jd ->
+                jd.toBuilder().withExtensions(jd.getExtensions().toBuilder().withSize(TASKS_PER_JOB).build())
+        );
+        List<Job<BatchJobExt>> jobs = JobGenerator.batchJobs(jobDescriptor).toList(JOB_COUNT);
+        Observable.from(jobs)
+                .flatMap(job -> {
+                    List<BatchJobTask> tasks = JobGenerator.batchTasks(job).toList(TASKS_PER_JOB);
+                    Completable storeAll = store.storeJob(job).andThen(
+                            Completable.merge(Observable.from(tasks).map(store::storeTask))
+                    );
+                    return storeAll.toObservable();
+                }, 16)
+                .toCompletable()
+                .await();
+
+        this.configuration = mock(JobManagerConfiguration.class);
+        when(configuration.getReconcilerIdleTimeoutMs()).thenReturn(100L);
+        when(configuration.getReconcilerActiveTimeoutMs()).thenReturn(1L);
+        when(configuration.getReconcilerShardCount()).thenReturn(1);
+        when(configuration.getBootstrapWorkerThreadCount()).thenReturn(workerThreadCount);
+        when(configuration.getBootstrapTaskLoadConcurrency()).thenReturn(taskLoadConcurrency);
+
+        this.schedulingService = mock(SchedulingService.class);
+        this.capacityGroupService = mock(ApplicationSlaManagementService.class);
+        when(capacityGroupService.getApplicationSLA(anyString())).thenReturn(ApplicationSlaSample.DefaultFlex.build());
+
+        JobConfiguration jobConfiguration = mock(JobConfiguration.class);
+        this.permissiveSanitizer = newJobSanitizer(jobConfiguration, VerifierMode.Permissive);
+        this.strictSanitizer = newJobSanitizer(jobConfiguration, VerifierMode.Strict);
+    }
+
+    @TearDown
+    public void tearDown() {
+        storeFactory.shutdown();
+    }
+
+    @Benchmark
+    public ReconciliationFramework<JobManagerReconcilerEvent> bootstrap() {
+        DifferenceResolver<JobManagerReconcilerEvent> noopResolver = engine -> Collections.emptyList();
+        JobReconciliationFrameworkFactory factory = new JobReconciliationFrameworkFactory(
+                configuration,
+                noopResolver,
+                noopResolver,
+                storeFactory.getJobStore(),
+                schedulingService,
+                capacityGroupService,
+                mock(SystemSoftConstraint.class),
+                mock(SystemHardConstraint.class),
+                null,
+                permissiveSanitizer,
+                strictSanitizer,
+                titusRuntime,
+                Optional.of(Schedulers.computation())
+        );
+        return factory.newInstance();
+    }
+
+    private static EntitySanitizer newJobSanitizer(JobConfiguration jobConfiguration, VerifierMode verifierMode) {
+        return new JobSanitizerBuilder()
+                .withVerifierMode(verifierMode)
+                .withJobConstrainstConfiguration(jobConfiguration)
+                .withMaxContainerSizeResolver(instanceType -> null)
+                .build();
+    }
+}
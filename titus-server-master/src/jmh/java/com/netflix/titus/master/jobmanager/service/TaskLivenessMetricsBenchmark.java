@@ -0,0 +1,155 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.jobmanager.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.common.util.histogram.Histogram;
+import com.netflix.titus.common.util.histogram.HistogramDescriptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the cost of a task liveness metrics refresh computed by a full pass over 500k tasks (the way
+ * {@link TaskLivenessMetrics} computed the histograms before they were maintained incrementally), with a
+ * {@link TaskLivenessHistograms} snapshot. The full pass variant only aggregates pre-loaded task records, so it
+ * excludes the cost of traversing the job managers, and is a lower bound of the original cost.
+ * <p>
+ * Each snapshot is preceded by a batch of task state transitions, and the clock moves by one refresh interval, to
+ * keep a steady flow of tasks crossing the bucket bounds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TaskLivenessMetricsBenchmark {
+
+    private static final int TASK_COUNT = 500_000;
+    private static final int CAPACITY_GROUP_COUNT = 200;
+    private static final int TRANSITIONS_PER_REFRESH = 500;
+    private static final long REFRESH_INTERVAL_MS = 30_000;
+    private static final long MAX_STATE_AGE_MS = TimeUnit.DAYS.toMillis(6);
+
+    private static final String[] STATES = {
+            TaskState.Accepted.name(),
+            TaskState.Launched.name(),
+            TaskState.StartInitiated.name(),
+            TaskState.Started.name(),
+            TaskState.KillInitiated.name()
+    };
+
+    private static final HistogramDescriptor HISTOGRAM_DESCRIPTOR = HistogramDescriptor.histogramOf(
+            TimeUnit.MINUTES.toMillis(1),
+            TimeUnit.MINUTES.toMillis(15),
+            TimeUnit.MINUTES.toMillis(30),
+            TimeUnit.HOURS.toMillis(1),
+            TimeUnit.HOURS.toMillis(6),
+            TimeUnit.HOURS.toMillis(12),
+            TimeUnit.HOURS.toMillis(24),
+            TimeUnit.DAYS.toMillis(2),
+            TimeUnit.DAYS.toMillis(3),
+            TimeUnit.DAYS.toMillis(4),
+            TimeUnit.DAYS.toMillis(5)
+    );
+
+    private final Random random = new Random(123);
+
+    private String[] taskIds;
+    private String[] capacityGroups;
+    private String[] states;
+    private long[] enteredAt;
+
+    private TaskLivenessHistograms histograms;
+    private long now;
+
+    /**
+     * Rebuilt for each iteration, so the simulated clock does not move far enough to push all tasks into the last bucket.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        now = System.currentTimeMillis();
+        taskIds = new String[TASK_COUNT];
+        capacityGroups = new String[TASK_COUNT];
+        states = new String[TASK_COUNT];
+        enteredAt = new long[TASK_COUNT];
+        histograms = new TaskLivenessHistograms(HISTOGRAM_DESCRIPTOR);
+        for (int i = 0; i < TASK_COUNT; i++) {
+            taskIds[i] = "task#" + i;
+            capacityGroups[i] = "capacityGroup#" + random.nextInt(CAPACITY_GROUP_COUNT);
+            states[i] = STATES[random.nextInt(STATES.length)];
+            enteredAt[i] = now - (long) (random.nextDouble() * MAX_STATE_AGE_MS);
+            histograms.update(taskIds[i], capacityGroups[i], states[i], enteredAt[i], now);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Map<String, Histogram.Builder>> fullRecompute() {
+        now += REFRESH_INTERVAL_MS;
+        applyTransitions(false);
+        Map<String, Map<String, Histogram.Builder>> result = new HashMap<>();
+        for (int i = 0; i < TASK_COUNT; i++) {
+            result.computeIfAbsent(capacityGroups[i], g -> new HashMap<>())
+                    .computeIfAbsent(states[i], s -> Histogram.newBuilder(HISTOGRAM_DESCRIPTOR))
+                    .increment(now - enteredAt[i]);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Map<String, Map<String, List<Long>>> incrementalSnapshot() {
+        now += REFRESH_INTERVAL_MS;
+        applyTransitions(true);
+        return histograms.snapshot(now);
+    }
+
+    /**
+     * Cost of delivering the state transitions of one refresh interval to {@link TaskLivenessHistograms}, which is
+     * included in {@link #incrementalSnapshot()}.
+     */
+    @Benchmark
+    public void incrementalTransitionsOnly() {
+        now += REFRESH_INTERVAL_MS;
+        applyTransitions(true);
+    }
+
+    private void applyTransitions(boolean incremental) {
+        for (int i = 0; i < TRANSITIONS_PER_REFRESH; i++) {
+            int index = random.nextInt(TASK_COUNT);
+            states[index] = STATES[random.nextInt(STATES.length)];
+            enteredAt[index] = now;
+            if (incremental) {
+                histograms.update(taskIds[index], capacityGroups[index], states[index], now, now);
+            }
+        }
+    }
+}
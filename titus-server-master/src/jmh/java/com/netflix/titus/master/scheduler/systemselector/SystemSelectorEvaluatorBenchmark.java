@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.scheduler.systemselector;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.master.scheduler.SchedulerConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares evaluation of a system selector expression by the Nashorn script engine and by the built-in expression
+ * compiler. A single evaluation corresponds to one (task, VM) pair checked during a scheduling iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SystemSelectorEvaluatorBenchmark {
+
+    @Param({
+            "job.appName == 'myApp'",
+            "job.attributes.tier == 'critical' && instance.attributes['region'] == 'us-east-1' && job.cpu >= 4"
+    })
+    public String expression;
+
+    private SystemSelectorEvaluator scriptEngineEvaluator;
+    private SystemSelectorEvaluator compilingEvaluator;
+    private Map<String, Object> context;
+
+    @Setup
+    public void setUp() {
+        scriptEngineEvaluator = new SystemSelectorEvaluator(newConfiguration(false), TitusRuntimes.internal());
+        compilingEvaluator = new SystemSelectorEvaluator(newConfiguration(true), TitusRuntimes.internal());
+
+        context = new HashMap<>();
+        context.put("job", new BenchmarkJob());
+        context.put("instance", new BenchmarkInstance());
+    }
+
+    @Benchmark
+    public boolean scriptEngine() {
+        return scriptEngineEvaluator.evaluate(expression, context);
+    }
+
+    @Benchmark
+    public boolean compiled() {
+        return compilingEvaluator.evaluate(expression, context);
+    }
+
+    private static SchedulerConfiguration newConfiguration(boolean compilerEnabled) {
+        return (SchedulerConfiguration) Proxy.newProxyInstance(
+                SchedulerConfiguration.class.getClassLoader(),
+                new Class<?>[]{SchedulerConfiguration.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getSchedulerMaxConcurrent":
+                            return 8;
+                        case "isSystemSelectorExpressionCompilerEnabled":
+                            return compilerEnabled;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+        );
+    }
+
+    public static class BenchmarkJob {
+
+        private final Map<String, String> attributes = Collections.singletonMap("tier", "critical");
+
+        public String getAppName() {
+            return "myApp";
+        }
+
+        public int getCpu() {
+            return 4;
+        }
+
+        public Map<String, String> getAttributes() {
+            return attributes;
+        }
+    }
+
+    public static class BenchmarkInstance {
+
+        private final Map<String, String> attributes = Collections.singletonMap("region", "us-east-1");
+
+        public Map<String, String> getAttributes() {
+            return attributes;
+        }
+    }
+}
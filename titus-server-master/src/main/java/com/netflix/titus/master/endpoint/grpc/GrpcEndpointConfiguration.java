@@ -57,6 +57,19 @@ public interface GrpcEndpointConfiguration {
     @DefaultValue("30000")
     long getShutdownTimeoutMs();
 
+    /**
+     * Time window during which a jobs snapshot created for an observeJobs subscriber is reused by other subscribers.
+     */
+    @DefaultValue("1000")
+    long getObserveJobsSnapshotReuseMs();
+
+    /**
+     * Maximum number of events not yet delivered to an observeJobs subscriber. A subscriber exceeding this limit
+     * is disconnected.
+     */
+    @DefaultValue("10000")
+    int getObserveJobsMaxPendingEvents();
+
     /**
      * TODO Feature flag. Remove once stable.
      */
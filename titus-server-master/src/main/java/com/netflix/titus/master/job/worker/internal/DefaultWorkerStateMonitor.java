@@ -16,7 +16,9 @@
 
 package com.netflix.titus.master.job.worker.internal;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -48,8 +50,10 @@ import com.netflix.titus.master.job.worker.WorkerStateMonitor;
 import com.netflix.titus.master.jobmanager.service.JobManagerUtil;
 import com.netflix.titus.master.mesos.ContainerEvent;
 import com.netflix.titus.master.mesos.V3ContainerEvent;
+import com.netflix.titus.master.mesos.V3ContainerEventBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import rx.Completable;
 import rx.Observable;
 import rx.Observer;
 import rx.schedulers.Schedulers;
@@ -83,8 +87,10 @@ public class DefaultWorkerStateMonitor implements WorkerStateMonitor {
 
     private final VirtualMachineMasterService vmService;
     private final V2JobOperations jobOps;
+    private final V3JobOperations v3JobOperations;
     private final Observable<V2JobMgrIntf> jobCreationObservable;
     private final JobManagerConfiguration jobManagerConfiguration;
+    private final TitusRuntime titusRuntime;
     private final PublishSubject<StateToMonitor> workerStatesSubject;
     private final PublishSubject<Status> allStatusSubject;
     private AtomicBoolean shutdownFlag = new AtomicBoolean();
@@ -97,8 +103,10 @@ public class DefaultWorkerStateMonitor implements WorkerStateMonitor {
                                      TitusRuntime titusRuntime) {
         this.vmService = vmService;
         this.jobOps = jOps;
+        this.v3JobOperations = v3JobOperations;
         this.jobCreationObservable = jOps.getJobCreationPublishSubject();
         this.jobManagerConfiguration = jobManagerConfiguration;
+        this.titusRuntime = titusRuntime;
         workerStatesSubject = PublishSubject.create();
         workerStatesSubject
                 .groupBy(stateToMonitor ->
@@ -143,6 +151,16 @@ public class DefaultWorkerStateMonitor implements WorkerStateMonitor {
                     return;
                 }
 
+                // V3 batch
+                if (containerEvent instanceof V3ContainerEventBatch) {
+                    try {
+                        handleV3ContainerEventBatch((V3ContainerEventBatch) containerEvent);
+                    } catch (Exception e) {
+                        logger.warn("Exception during handling task status update batch notification", e);
+                    }
+                    return;
+                }
+
                 // V3
                 try {
                     V3ContainerEvent args = (V3ContainerEvent) containerEvent;
@@ -150,30 +168,14 @@ public class DefaultWorkerStateMonitor implements WorkerStateMonitor {
                         Optional<Pair<Job<?>, Task>> jobAndTaskOpt = v3JobOperations.findTaskById(args.getTaskId());
                         if (jobAndTaskOpt.isPresent()) {
                             Task task = jobAndTaskOpt.get().getRight();
-                            TaskState newState = args.getTaskState();
-                            if (task.getStatus().getState() != newState) {
-
-                                String reasonCode = args.getReasonCode();
-
-                                // We send kill operation even if task is in Accepted state, but if the latter is the case
-                                // we do not want to report Mesos 'lost' state in task status.
-                                if (isKillConfirmationForTaskInAcceptedState(task, newState, reasonCode)) {
-                                    reasonCode = TaskStatus.REASON_TASK_KILLED;
-                                }
-                                TaskStatus taskStatus = JobModel.newTaskStatus()
-                                        .withState(newState)
-                                        .withReasonCode(reasonCode)
-                                        .withReasonMessage("Mesos task state change event: " + args.getReasonMessage())
-                                        .withTimestamp(args.getTimestamp())
-                                        .build();
-
+                            newTaskStatusUpdater(task, args).ifPresent(updaterAndStatus -> {
+                                TaskStatus taskStatus = updaterAndStatus.getRight();
                                 // Failures are logged only, as the reconciler will take care of it if needed.
-                                final Function<Task, Optional<Task>> updater = JobManagerUtil.newMesosTaskStateUpdater(taskStatus, args.getTitusExecutorDetails(), titusRuntime);
-                                v3JobOperations.updateTask(task.getId(), updater, Trigger.Mesos, "Mesos -> " + taskStatus).subscribe(
+                                v3JobOperations.updateTask(task.getId(), updaterAndStatus.getLeft(), Trigger.Mesos, "Mesos -> " + taskStatus).subscribe(
                                         () -> logger.info("Changed task {} status state to {}", task.getId(), taskStatus),
                                         e -> logger.warn("Could not update task state of {} to {} ({})", args.getTaskId(), taskStatus, e.toString())
                                 );
-                            }
+                            });
                             return;
                         }
                     }
@@ -186,6 +188,85 @@ public class DefaultWorkerStateMonitor implements WorkerStateMonitor {
         allStatusSubject = PublishSubject.create();
     }
 
+    /**
+     * Applies a batch of status updates, with one change action per job. A failure of one event, or of one job
+     * change action, does not affect the remaining updates. If a job change action fails, its task updates are
+     * retried one by one.
+     */
+    private void handleV3ContainerEventBatch(V3ContainerEventBatch batch) {
+        Map<String, Map<String, Function<Task, Optional<Task>>>> updatersByJobId = new HashMap<>();
+        for (V3ContainerEvent event : batch.getEvents()) {
+            try {
+                Optional<Pair<Job<?>, Task>> jobAndTaskOpt = event.getTaskId() == null ? Optional.empty() : v3JobOperations.findTaskById(event.getTaskId());
+                if (!jobAndTaskOpt.isPresent()) {
+                    killOrphanedTask(event);
+                    continue;
+                }
+                Task task = jobAndTaskOpt.get().getRight();
+                newTaskStatusUpdater(task, event).ifPresent(updaterAndStatus ->
+                        updatersByJobId.computeIfAbsent(task.getJobId(), jobId -> new HashMap<>()).put(task.getId(), updaterAndStatus.getLeft())
+                );
+            } catch (Exception e) {
+                logger.warn("Exception during handling task status update notification {} from a batch", event, e);
+            }
+        }
+
+        updatersByJobId.forEach((jobId, updaters) -> {
+            Completable batchUpdate;
+            try {
+                batchUpdate = v3JobOperations.updateTasks(jobId, updaters, Trigger.Mesos, "Mesos -> batch of " + updaters.size() + " task state change events");
+            } catch (Exception e) {
+                batchUpdate = Completable.error(e);
+            }
+            batchUpdate.subscribe(
+                    () -> logger.info("Changed status of {} tasks of job {}: {}", updaters.size(), jobId, updaters.keySet()),
+                    e -> {
+                        logger.warn("Could not update task states of job {} in one batch, updating them one by one: {} ({})", jobId, updaters.keySet(), e.toString());
+                        updaters.forEach(this::updateTaskAfterBatchFailure);
+                    }
+            );
+        });
+    }
+
+    private void updateTaskAfterBatchFailure(String taskId, Function<Task, Optional<Task>> updater) {
+        try {
+            // Failures are logged only, as the reconciler will take care of it if needed.
+            v3JobOperations.updateTask(taskId, updater, Trigger.Mesos, "Mesos -> task state change event retried after batch failure").subscribe(
+                    () -> logger.info("Changed task {} status state", taskId),
+                    e -> logger.warn("Could not update task state of {} ({})", taskId, e.toString())
+            );
+        } catch (Exception e) {
+            logger.warn("Could not update task state of {} ({})", taskId, e.toString());
+        }
+    }
+
+    /**
+     * Returns a task updater, and the new task status, if the container event changes the task state.
+     */
+    private Optional<Pair<Function<Task, Optional<Task>>, TaskStatus>> newTaskStatusUpdater(Task task, V3ContainerEvent args) {
+        TaskState newState = args.getTaskState();
+        if (task.getStatus().getState() == newState) {
+            return Optional.empty();
+        }
+
+        String reasonCode = args.getReasonCode();
+
+        // We send kill operation even if task is in Accepted state, but if the latter is the case
+        // we do not want to report Mesos 'lost' state in task status.
+        if (isKillConfirmationForTaskInAcceptedState(task, newState, reasonCode)) {
+            reasonCode = TaskStatus.REASON_TASK_KILLED;
+        }
+        TaskStatus taskStatus = JobModel.newTaskStatus()
+                .withState(newState)
+                .withReasonCode(reasonCode)
+                .withReasonMessage("Mesos task state change event: " + args.getReasonMessage())
+                .withTimestamp(args.getTimestamp())
+                .build();
+
+        Function<Task, Optional<Task>> updater = JobManagerUtil.newMesosTaskStateUpdater(taskStatus, args.getTitusExecutorDetails(), titusRuntime);
+        return Optional.of(Pair.of(updater, taskStatus));
+    }
+
     /**
      * Check if task moved directly from Accepted to KillInitiated.
      */
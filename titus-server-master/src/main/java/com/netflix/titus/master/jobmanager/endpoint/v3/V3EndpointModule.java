@@ -50,6 +50,7 @@ import com.netflix.titus.master.service.management.ApplicationSlaManagementServi
 import com.netflix.titus.runtime.endpoint.common.LogStorageInfo;
 import com.netflix.titus.runtime.endpoint.metadata.CallMetadataResolver;
 import com.netflix.titus.runtime.endpoint.metadata.SimpleGrpcCallMetadataResolver;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.JobQueryIndex;
 
 import static com.netflix.titus.api.jobmanager.model.job.sanitizer.JobSanitizerBuilder.JOB_STRICT_SANITIZER;
 
@@ -73,8 +74,10 @@ public class V3EndpointModule extends AbstractModule {
                                                        JobSubmitLimiter jobSubmitLimiter,
                                                        LogStorageInfo<Task> v3LogStorage,
                                                        @Named(JOB_STRICT_SANITIZER) EntitySanitizer entitySanitizer,
+                                                       GrpcEndpointConfiguration configuration,
+                                                       JobQueryIndex queryIndex,
                                                        TitusRuntime titusRuntime) {
-        return new V3GrpcTitusServiceGateway(jobOperations, jobSubmitLimiter, v3LogStorage, entitySanitizer, titusRuntime);
+        return new V3GrpcTitusServiceGateway(jobOperations, jobSubmitLimiter, v3LogStorage, entitySanitizer, configuration, queryIndex, titusRuntime);
     }
 
     @Provides
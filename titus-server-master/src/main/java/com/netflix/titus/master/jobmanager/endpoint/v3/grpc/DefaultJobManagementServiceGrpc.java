@@ -68,6 +68,7 @@ import static com.netflix.titus.runtime.endpoint.common.grpc.CommonGrpcModelConv
 import static com.netflix.titus.runtime.endpoint.common.grpc.CommonGrpcModelConverters.toJobQueryCriteria;
 import static com.netflix.titus.runtime.endpoint.common.grpc.CommonGrpcModelConverters.toPage;
 import static com.netflix.titus.runtime.endpoint.common.grpc.GrpcUtil.safeOnError;
+import static com.netflix.titus.runtime.endpoint.common.grpc.GrpcUtil.subscribeWithFlowControl;
 import static com.netflix.titus.runtime.endpoint.v3.grpc.TitusPaginationUtils.checkPageIsValid;
 import static com.netflix.titus.runtime.service.JobManagementService.JOB_MINIMUM_FIELD_SET;
 import static com.netflix.titus.runtime.service.JobManagementService.TASK_MINIMUM_FIELD_SET;
@@ -255,19 +256,14 @@ public class DefaultJobManagementServiceGrpc extends JobManagementServiceGrpc.Jo
 
     @Override
     public void observeJobs(Empty request, StreamObserver<JobChangeNotification> responseObserver) {
-        Observable<JobChangeNotification> eventStream = serviceGateway.observeJobs();
-        Subscription subscription = eventStream.subscribe(
-                responseObserver::onNext,
-                e -> responseObserver.onError(
-                        new StatusRuntimeException(Status.INTERNAL
-                                .withDescription("All jobs monitoring stream terminated with an error")
-                                .withCause(e))
-                ),
-                responseObserver::onCompleted
+        // Flow controlled, so the events of a slow client stay in the (bounded) gateway queue, instead of the GRPC buffer
+        subscribeWithFlowControl(
+                serviceGateway.observeJobs(),
+                responseObserver,
+                e -> new StatusRuntimeException(Status.INTERNAL
+                        .withDescription("All jobs monitoring stream terminated with an error")
+                        .withCause(e))
         );
-
-        ServerCallStreamObserver<JobChangeNotification> serverObserver = (ServerCallStreamObserver<JobChangeNotification>) responseObserver;
-        serverObserver.setOnCancelHandler(subscription::unsubscribe);
     }
 
     @Override
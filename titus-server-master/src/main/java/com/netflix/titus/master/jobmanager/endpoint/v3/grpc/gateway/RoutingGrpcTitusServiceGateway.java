@@ -37,7 +37,6 @@ import com.netflix.titus.api.model.ResourceDimension;
 import com.netflix.titus.api.model.Tier;
 import com.netflix.titus.api.service.TitusServiceException;
 import com.netflix.titus.api.service.TitusServiceException.ErrorCode;
-import com.netflix.titus.common.util.CollectionsExt;
 import com.netflix.titus.common.util.RegExpExt;
 import com.netflix.titus.common.util.StringExt;
 import com.netflix.titus.common.util.tuple.Pair;
@@ -187,13 +186,15 @@ public class RoutingGrpcTitusServiceGateway implements GrpcTitusServiceGateway {
                 TitusServiceException.newBuilder(ErrorCode.INVALID_ARGUMENT, "Page not provided").build()
         );
 
-        // Get all matching entities, as we need totals anyway.
+        // V2 engine returns all matching entities, while V3 engine only the window of entities covering the requested page.
         Pair<List<Job>, Pagination> v2Result = v2EngineGateway.findJobsByCriteria(queryCriteria, Optional.of(Page.unlimited()));
-        Pair<List<Job>, Pagination> v3Result = v3EngineGateway.findJobsByCriteria(queryCriteria, Optional.of(Page.unlimited()));
+        Pair<List<Job>, Pagination> v3Result = v3EngineGateway.findJobsByCriteria(queryCriteria, Optional.of(PaginationUtil.windowOf(page)));
 
-        return PaginationUtil.takePageWithCursor(
+        return PaginationUtil.takePageWithCursorAndWindow(
                 page,
-                CollectionsExt.merge(v2Result.getLeft(), v3Result.getLeft()),
+                v2Result.getLeft(),
+                v3Result.getLeft(),
+                v3Result.getRight(),
                 JobManagerCursors.jobCursorOrderComparator(),
                 JobManagerCursors::jobIndexOf,
                 JobManagerCursors::newCursorFrom
@@ -206,13 +207,15 @@ public class RoutingGrpcTitusServiceGateway implements GrpcTitusServiceGateway {
                 TitusServiceException.newBuilder(ErrorCode.INVALID_ARGUMENT, "Page not provided").build()
         );
 
-        // Get all matching entities, as we need totals anyway.
+        // V2 engine returns all matching entities, while V3 engine only the window of entities covering the requested page.
         Pair<List<Task>, Pagination> v2Result = v2EngineGateway.findTasksByCriteria(queryCriteria, Optional.of(Page.unlimited()));
-        Pair<List<Task>, Pagination> v3Result = v3EngineGateway.findTasksByCriteria(queryCriteria, Optional.of(Page.unlimited()));
+        Pair<List<Task>, Pagination> v3Result = v3EngineGateway.findTasksByCriteria(queryCriteria, Optional.of(PaginationUtil.windowOf(page)));
 
-        return PaginationUtil.takePageWithCursor(
+        return PaginationUtil.takePageWithCursorAndWindow(
                 page,
-                CollectionsExt.merge(v2Result.getLeft(), v3Result.getLeft()),
+                v2Result.getLeft(),
+                v3Result.getLeft(),
+                v3Result.getRight(),
                 JobManagerCursors.taskCursorOrderComparator(),
                 JobManagerCursors::taskIndexOf,
                 JobManagerCursors::newCursorFrom
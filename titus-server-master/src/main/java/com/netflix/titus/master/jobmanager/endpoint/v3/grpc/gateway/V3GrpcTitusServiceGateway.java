@@ -17,10 +17,12 @@
 package com.netflix.titus.master.jobmanager.endpoint.v3.grpc.gateway;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -37,22 +39,32 @@ import com.netflix.titus.api.model.Pagination;
 import com.netflix.titus.api.service.TitusServiceException;
 import com.netflix.titus.common.model.sanitizer.EntitySanitizer;
 import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.util.StringExt;
 import com.netflix.titus.common.util.rx.ObservableExt;
+import com.netflix.titus.common.util.rx.SharedSnapshotStream;
 import com.netflix.titus.common.util.tuple.Pair;
 import com.netflix.titus.grpc.protogen.Job;
 import com.netflix.titus.grpc.protogen.JobChangeNotification;
 import com.netflix.titus.grpc.protogen.JobDescriptor;
 import com.netflix.titus.grpc.protogen.TaskStatus;
+import com.netflix.titus.master.MetricConstants;
 import com.netflix.titus.master.endpoint.common.TaskSummary;
+import com.netflix.titus.master.endpoint.grpc.GrpcEndpointConfiguration;
 import com.netflix.titus.master.jobmanager.service.limiter.JobSubmitLimiter;
 import com.netflix.titus.runtime.endpoint.JobQueryCriteria;
 import com.netflix.titus.runtime.endpoint.common.LogStorageInfo;
 import com.netflix.titus.runtime.endpoint.v3.grpc.V3GrpcModelConverters;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.CursorPagination;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.JobQueryIndex;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.JobQueryPlan;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.JobQueryPlanner;
 import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3JobQueryCriteriaEvaluator;
 import com.netflix.titus.runtime.endpoint.v3.grpc.query.V3TaskQueryCriteriaEvaluator;
+import com.netflix.titus.runtime.jobmanager.JobManagerCursors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.Observable;
+import rx.schedulers.Schedulers;
 
 import static com.netflix.titus.api.jobmanager.model.job.sanitizer.JobSanitizerBuilder.JOB_STRICT_SANITIZER;
 
@@ -63,6 +75,9 @@ public class V3GrpcTitusServiceGateway implements GrpcTitusServiceGateway {
 
     private static final Logger logger = LoggerFactory.getLogger(V3GrpcTitusServiceGateway.class);
 
+    private static final String METRIC_ROOT = MetricConstants.METRIC_ROOT + "jobManager.grpc.observeJobs.";
+    private static final String METRIC_QUERY_ROOT = MetricConstants.METRIC_ROOT + "jobManager.grpc.query.";
+
     static final JobChangeNotification SNAPSHOT_END_MARKER = JobChangeNotification.newBuilder().setSnapshotEnd(
             JobChangeNotification.SnapshotEnd.newBuilder()
     ).build();
@@ -71,19 +86,46 @@ public class V3GrpcTitusServiceGateway implements GrpcTitusServiceGateway {
     private final JobSubmitLimiter jobSubmitLimiter;
     private final LogStorageInfo<Task> logStorageInfo;
     private final EntitySanitizer entitySanitizer;
+    private final JobQueryIndex queryIndex;
     private final TitusRuntime titusRuntime;
 
+    /**
+     * All jobs event stream converted to the GRPC model once, and shared by all observeJobs subscribers.
+     */
+    private final SharedSnapshotStream<JobChangeNotification> jobsEventStream;
+
     @Inject
     public V3GrpcTitusServiceGateway(V3JobOperations jobOperations,
                                      JobSubmitLimiter jobSubmitLimiter,
                                      LogStorageInfo<Task> logStorageInfo,
                                      @Named(JOB_STRICT_SANITIZER) EntitySanitizer entitySanitizer,
+                                     GrpcEndpointConfiguration configuration,
+                                     JobQueryIndex queryIndex,
                                      TitusRuntime titusRuntime) {
         this.jobOperations = jobOperations;
         this.jobSubmitLimiter = jobSubmitLimiter;
         this.logStorageInfo = logStorageInfo;
         this.entitySanitizer = entitySanitizer;
+        this.queryIndex = queryIndex;
         this.titusRuntime = titusRuntime;
+        this.jobsEventStream = new SharedSnapshotStream<>(
+                Observable.defer(() -> jobOperations.observeJobs().map(event -> V3GrpcModelConverters.toGrpcJobChangeNotification(event, logStorageInfo))),
+                () -> {
+                    List<JobChangeNotification> snapshot = createJobsSnapshot();
+                    snapshot.add(SNAPSHOT_END_MARKER);
+                    return snapshot;
+                },
+                configuration.getObserveJobsSnapshotReuseMs(),
+                configuration.getObserveJobsMaxPendingEvents(),
+                METRIC_ROOT,
+                titusRuntime.getRegistry(),
+                Schedulers.computation()
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobsEventStream.shutdown();
     }
 
     @Override
@@ -132,44 +174,73 @@ public class V3GrpcTitusServiceGateway implements GrpcTitusServiceGateway {
     @Override
     public Pair<List<Job>, Pagination> findJobsByCriteria(JobQueryCriteria<TaskStatus.TaskState, JobDescriptor.JobSpecCase> queryCriteria, Optional<Page> pageOpt) {
         Page page = pageOpt.get();
-        int offset = page.getPageSize() * page.getPageNumber();
 
-        List<com.netflix.titus.api.jobmanager.model.job.Job<?>> queryResult = jobOperations.findJobs(
-                new V3JobQueryCriteriaEvaluator(queryCriteria, titusRuntime),
-                offset,
-                page.getPageSize() + 1
-        );
-
-        // We took extra item to know if there are more data to return
-        boolean hasMore = queryResult.size() > page.getPageSize();
-        List<com.netflix.titus.api.jobmanager.model.job.Job<?>> pageResult = hasMore ? queryResult.subList(0, page.getPageSize()) : queryResult;
+        JobQueryPlan plan = JobQueryPlanner.planJobQuery(queryCriteria, queryIndex);
+        recordQueryPlan("findJobs", plan);
+
+        V3JobQueryCriteriaEvaluator queryPredicate = new V3JobQueryCriteriaEvaluator(queryCriteria, titusRuntime);
+        boolean withTasks = hasTaskCriteria(queryCriteria);
+
+        Pair<List<com.netflix.titus.api.jobmanager.model.job.Job<?>>, Pagination> pageResult;
+        if (StringExt.isEmpty(page.getCursor())) {
+            pageResult = CursorPagination.takePageByNumber(
+                    page,
+                    plan,
+                    queryIndex.getJobsInCursorOrder(),
+                    queryIndex::findJobCursorKey,
+                    jobId -> findMatchingJob(jobId, queryPredicate, withTasks),
+                    JobManagerCursors::newCoreJobCursorFrom
+            );
+        } else {
+            pageResult = CursorPagination.takePageAfterCursor(
+                    page,
+                    plan,
+                    queryIndex.getJobsInCursorOrder(),
+                    queryIndex::findJobCursorKey,
+                    jobId -> findMatchingJob(jobId, queryPredicate, withTasks),
+                    JobManagerCursors::newCoreJobCursorFrom
+            );
+        }
 
-        List<Job> jobs = pageResult.stream().map(V3GrpcModelConverters::toGrpcJob).collect(Collectors.toList());
-        //TODO the pagination model here is not semantically correct since the total is not even known
-        return Pair.of(jobs, new Pagination(page, false, 1, jobs.size(), "", 0));
+        List<Job> jobs = pageResult.getLeft().stream().map(V3GrpcModelConverters::toGrpcJob).collect(Collectors.toList());
+        return Pair.of(jobs, pageResult.getRight());
     }
 
     @SuppressWarnings("ConstantConditions")
     @Override
     public Pair<List<com.netflix.titus.grpc.protogen.Task>, Pagination> findTasksByCriteria(JobQueryCriteria<TaskStatus.TaskState, JobDescriptor.JobSpecCase> queryCriteria, Optional<Page> pageOpt) {
         Page page = pageOpt.get();
-        int offset = page.getPageSize() * page.getPageNumber();
-
-        List<Pair<com.netflix.titus.api.jobmanager.model.job.Job<?>, Task>> queryResult = jobOperations.findTasks(
-                new V3TaskQueryCriteriaEvaluator(queryCriteria, titusRuntime),
-                offset,
-                page.getPageSize() + 1
-        );
 
-        // We took an extra item to know if there is more data to return
-        boolean hasMore = queryResult.size() > page.getPageSize();
-        List<Pair<com.netflix.titus.api.jobmanager.model.job.Job<?>, Task>> pageResult = hasMore ? queryResult.subList(0, page.getPageSize()) : queryResult;
+        JobQueryPlan plan = JobQueryPlanner.planTaskQuery(queryCriteria, queryIndex);
+        recordQueryPlan("findTasks", plan);
+
+        V3TaskQueryCriteriaEvaluator queryPredicate = new V3TaskQueryCriteriaEvaluator(queryCriteria, titusRuntime);
+
+        Pair<List<Task>, Pagination> pageResult;
+        if (StringExt.isEmpty(page.getCursor())) {
+            pageResult = CursorPagination.takePageByNumber(
+                    page,
+                    plan,
+                    queryIndex.getTasksInCursorOrder(),
+                    queryIndex::findTaskCursorKey,
+                    taskId -> findMatchingTask(taskId, queryPredicate),
+                    JobManagerCursors::newCoreTaskCursorFrom
+            );
+        } else {
+            pageResult = CursorPagination.takePageAfterCursor(
+                    page,
+                    plan,
+                    queryIndex.getTasksInCursorOrder(),
+                    queryIndex::findTaskCursorKey,
+                    taskId -> findMatchingTask(taskId, queryPredicate),
+                    JobManagerCursors::newCoreTaskCursorFrom
+            );
+        }
 
-        List<com.netflix.titus.grpc.protogen.Task> tasks = pageResult.stream().map(jobTaskPair ->
-                V3GrpcModelConverters.toGrpcTask(jobTaskPair.getRight(), logStorageInfo)
-        ).collect(Collectors.toList());
-        //TODO the pagination model here is not semantically correct since the total is not even known
-        return Pair.of(tasks, new Pagination(page, false, 1, tasks.size(), "", 0));
+        List<com.netflix.titus.grpc.protogen.Task> tasks = pageResult.getLeft().stream()
+                .map(task -> V3GrpcModelConverters.toGrpcTask(task, logStorageInfo))
+                .collect(Collectors.toList());
+        return Pair.of(tasks, pageResult.getRight());
     }
 
     @Override
@@ -216,12 +287,7 @@ public class V3GrpcTitusServiceGateway implements GrpcTitusServiceGateway {
 
     @Override
     public Observable<JobChangeNotification> observeJobs() {
-        return jobOperations.observeJobs().map(event -> V3GrpcModelConverters.toGrpcJobChangeNotification(event, logStorageInfo))
-                .compose(ObservableExt.head(() -> {
-                    List<JobChangeNotification> snapshot = createJobsSnapshot();
-                    snapshot.add(SNAPSHOT_END_MARKER);
-                    return snapshot;
-                }))
+        return jobsEventStream.observe()
                 .doOnError(e -> logger.error("Unexpected error in jobs event stream", e));
     }
 
@@ -242,6 +308,40 @@ public class V3GrpcTitusServiceGateway implements GrpcTitusServiceGateway {
                 });
     }
 
+    private Optional<com.netflix.titus.api.jobmanager.model.job.Job<?>> findMatchingJob(String jobId,
+                                                                                      V3JobQueryCriteriaEvaluator queryPredicate,
+                                                                                      boolean withTasks) {
+        return jobOperations.getJob(jobId).filter(job -> {
+            Optional<List<Task>> tasksOpt = withTasks ? findTasksOfJob(jobId) : Optional.of(Collections.emptyList());
+            return tasksOpt.isPresent() && queryPredicate.test(Pair.of(job, tasksOpt.get()));
+        });
+    }
+
+    private Optional<Task> findMatchingTask(String taskId, V3TaskQueryCriteriaEvaluator queryPredicate) {
+        return jobOperations.findTaskById(taskId).filter(queryPredicate::test).map(Pair::getRight);
+    }
+
+    private void recordQueryPlan(String query, JobQueryPlan plan) {
+        titusRuntime.getRegistry().counter(METRIC_QUERY_ROOT + "plans", "query", query, "index", plan.getIndexName()).increment();
+        titusRuntime.getRegistry().distributionSummary(METRIC_QUERY_ROOT + "candidates", "query", query).record(plan.getCandidateIds().size());
+    }
+
+    /**
+     * Task level criteria of a job query are evaluated against the job's task list, which is otherwise not needed.
+     */
+    private boolean hasTaskCriteria(JobQueryCriteria<TaskStatus.TaskState, JobDescriptor.JobSpecCase> queryCriteria) {
+        return !queryCriteria.getTaskIds().isEmpty() || !queryCriteria.getTaskStates().isEmpty() || queryCriteria.isNeedsMigration();
+    }
+
+    private Optional<List<Task>> findTasksOfJob(String jobId) {
+        try {
+            return Optional.of(jobOperations.getTasks(jobId));
+        } catch (JobManagerException e) {
+            // Job removed after it was resolved.
+            return Optional.empty();
+        }
+    }
+
     private List<JobChangeNotification> createJobsSnapshot() {
         List<JobChangeNotification> snapshot = new ArrayList<>();
 
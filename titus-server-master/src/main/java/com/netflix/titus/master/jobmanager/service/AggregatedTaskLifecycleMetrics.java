@@ -0,0 +1,177 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.jobmanager.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.netflix.spectator.api.Id;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.histogram.PercentileTimer;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.netflix.titus.master.MetricConstants.METRIC_SCHEDULING_JOB;
+
+/**
+ * Task lifecycle metrics aggregated by capacity group and application. For each group it reports the number of tasks
+ * in each state, the state transition counts, and the time spent in each state. The time spent in each state is
+ * also reported as percentiles, aggregated by capacity group only, as each percentile timer registers a large number
+ * of meters. Per task state is kept only for the active tasks. State transitions of a sampled subset of tasks are
+ * written to the task lifecycle trace log.
+ */
+class AggregatedTaskLifecycleMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(AggregatedTaskLifecycleMetrics.class);
+
+    private static final Logger traceLogger = LoggerFactory.getLogger("TaskLifecycleTrace");
+
+    private static final String METRIC_ROOT = METRIC_SCHEDULING_JOB + "lifecycle.";
+
+    private static final String NO_STATE = "None";
+
+    private static final int SAMPLING_RESOLUTION = 10_000;
+
+    private final Registry registry;
+    private final int sampleThreshold;
+
+    private final ConcurrentMap<String, JobLifecycles> jobs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Id, AtomicInteger> stateCounters = new ConcurrentHashMap<>();
+
+    AggregatedTaskLifecycleMetrics(double traceSampleRatio, Registry registry) {
+        this.registry = registry;
+        this.sampleThreshold = (int) (Math.max(0.0, Math.min(1.0, traceSampleRatio)) * SAMPLING_RESOLUTION);
+    }
+
+    void updateTaskMetrics(Job<?> job, Task task) {
+        jobs.computeIfAbsent(task.getJobId(), jobId -> new JobLifecycles(job)).update(task);
+    }
+
+    void removeJob(String jobId) {
+        JobLifecycles toRemove = jobs.remove(jobId);
+        if (toRemove != null) {
+            toRemove.finish();
+        }
+    }
+
+    private boolean isSampled(String taskId) {
+        return sampleThreshold > 0 && Math.floorMod(taskId.hashCode(), SAMPLING_RESOLUTION) < sampleThreshold;
+    }
+
+    private AtomicInteger stateCounter(Id groupId, TaskStateReport state) {
+        return stateCounters.computeIfAbsent(
+                registry.createId(METRIC_ROOT + "currentState", groupId.tags()).withTag("state", state.name()),
+                id -> PolledMeter.using(registry).withId(id).monitorValue(new AtomicInteger())
+        );
+    }
+
+    private class JobLifecycles {
+
+        private final String jobId;
+        private final Id groupId;
+        private final Id capacityGroupId;
+        private final Map<String, TaskLifecycle> tasks = new HashMap<>();
+
+        private JobLifecycles(Job<?> job) {
+            this.jobId = job.getId();
+            this.groupId = registry.createId(METRIC_ROOT, "t.engine", "V3")
+                    .withTag("t.capacityGroup", job.getJobDescriptor().getCapacityGroup())
+                    .withTag("t.application", job.getJobDescriptor().getApplicationName());
+            this.capacityGroupId = registry.createId(METRIC_ROOT, "t.engine", "V3")
+                    .withTag("t.capacityGroup", job.getJobDescriptor().getCapacityGroup());
+        }
+
+        private synchronized void update(Task task) {
+            TaskStatus status = task.getStatus();
+            TaskStateReport nextState = TaskStateReport.of(status);
+            long timestamp = status.getTimestamp() > 0 ? status.getTimestamp() : registry.clock().wallTime();
+
+            TaskLifecycle lifecycle = tasks.get(task.getId());
+            if (lifecycle == null) {
+                // Do not track tasks which are already terminated
+                if (TaskStateReport.isTerminalState(nextState)) {
+                    return;
+                }
+                lifecycle = new TaskLifecycle(task.getId(), nextState, timestamp, isSampled(task.getId()));
+                tasks.put(task.getId(), lifecycle);
+                recordTransition(lifecycle, NO_STATE, nextState, 0, status.getReasonCode());
+                stateCounter(groupId, nextState).incrementAndGet();
+                return;
+            }
+            if (lifecycle.state == nextState) {
+                return;
+            }
+
+            TaskStateReport previousState = lifecycle.state;
+            long dwellTimeMs = Math.max(0, timestamp - lifecycle.enteredAt);
+            registry.timer(registry.createId(METRIC_ROOT + "dwellTime", groupId.tags()).withTag("state", previousState.name()))
+                    .record(dwellTimeMs, TimeUnit.MILLISECONDS);
+            PercentileTimer.get(registry, registry.createId(METRIC_ROOT + "dwellTimePercentiles", capacityGroupId.tags()).withTag("state", previousState.name()))
+                    .record(dwellTimeMs, TimeUnit.MILLISECONDS);
+            recordTransition(lifecycle, previousState.name(), nextState, dwellTimeMs, status.getReasonCode());
+
+            stateCounter(groupId, previousState).decrementAndGet();
+            if (TaskStateReport.isTerminalState(nextState)) {
+                tasks.remove(task.getId());
+            } else {
+                stateCounter(groupId, nextState).incrementAndGet();
+                lifecycle.state = nextState;
+                lifecycle.enteredAt = timestamp;
+            }
+        }
+
+        private synchronized void finish() {
+            tasks.values().forEach(lifecycle -> stateCounter(groupId, lifecycle.state).decrementAndGet());
+            tasks.clear();
+        }
+
+        private void recordTransition(TaskLifecycle lifecycle, String fromState, TaskStateReport toState, long dwellTimeMs, String reasonCode) {
+            registry.counter(registry.createId(METRIC_ROOT + "transitions", groupId.tags())
+                    .withTag("from", fromState)
+                    .withTag("to", toState.name())
+            ).increment();
+            if (lifecycle.sampled) {
+                traceLogger.info("jobId={}, taskId={}, from={}, to={}, dwellTimeMs={}, reasonCode={}",
+                        jobId, lifecycle.taskId, fromState, toState, dwellTimeMs, reasonCode);
+            }
+            logger.debug("State transition change for task {}: {} -> {}", lifecycle.taskId, fromState, toState);
+        }
+    }
+
+    private static class TaskLifecycle {
+
+        private final String taskId;
+        private final boolean sampled;
+        private TaskStateReport state;
+        private long enteredAt;
+
+        private TaskLifecycle(String taskId, TaskStateReport state, long enteredAt, boolean sampled) {
+            this.taskId = taskId;
+            this.state = state;
+            this.enteredAt = enteredAt;
+            this.sampled = sampled;
+        }
+    }
+}
@@ -17,7 +17,9 @@
 package com.netflix.titus.master.jobmanager.service;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -65,6 +67,7 @@ import com.netflix.titus.master.jobmanager.service.common.action.task.KillInitia
 import com.netflix.titus.master.jobmanager.service.event.JobManagerReconcilerEvent;
 import com.netflix.titus.master.jobmanager.service.event.JobModelReconcilerEvent;
 import com.netflix.titus.master.jobmanager.service.service.action.BasicServiceJobActions;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.JobQueryIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.Completable;
@@ -85,6 +88,7 @@ public class DefaultV3JobOperations implements V3JobOperations {
     private final VirtualMachineMasterService vmService;
     private final JobManagerConfiguration jobManagerConfiguration;
     private final JobReconciliationFrameworkFactory jobReconciliationFrameworkFactory;
+    private final JobQueryIndex queryIndex;
     private final TitusRuntime titusRuntime;
 
     private ReconciliationFramework<JobManagerReconcilerEvent> reconciliationFramework;
@@ -97,12 +101,14 @@ public class DefaultV3JobOperations implements V3JobOperations {
                                   JobStore store,
                                   VirtualMachineMasterService vmService,
                                   JobReconciliationFrameworkFactory jobReconciliationFrameworkFactory,
+                                  JobQueryIndex queryIndex,
                                   TitusRuntime titusRuntime) {
         this.store = store;
         this.vmService = vmService;
         this.jobManagerConfiguration = jobManagerConfiguration;
         this.jobReconciliationFrameworkFactory = jobReconciliationFrameworkFactory;
-        this.jobMetricsCollector = new V3JobMetricsCollector(titusRuntime.getRegistry());
+        this.queryIndex = queryIndex;
+        this.jobMetricsCollector = new V3JobMetricsCollector(jobManagerConfiguration, titusRuntime.getRegistry());
         this.titusRuntime = titusRuntime;
     }
 
@@ -111,21 +117,30 @@ public class DefaultV3JobOperations implements V3JobOperations {
         this.reconciliationFramework = jobReconciliationFrameworkFactory.newInstance();
         this.transactionLoggerSubscription = JobTransactionLogger.logEvents(reconciliationFramework);
 
+        queryIndex.clear();
         reconciliationFramework.orderedView(IndexKind.StatusCreationTime).forEach(jobHolder -> {
             Job<?> job = jobHolder.getEntity();
-            jobHolder.getChildren().forEach(taskHolder -> jobMetricsCollector.updateTaskMetrics(job, taskHolder.getEntity()));
+            queryIndex.updateJob(job);
+            jobHolder.getChildren().forEach(taskHolder -> {
+                jobMetricsCollector.updateTaskMetrics(job, taskHolder.getEntity());
+                queryIndex.updateTask(taskHolder.getEntity());
+            });
         });
 
         // Remove finished jobs from the reconciliation framework.
         reconciliationFramework.events().subscribe(
                 event -> {
-                    if (event instanceof JobModelReconcilerEvent.JobModelUpdateReconcilerEvent) {
+                    if (event instanceof JobModelReconcilerEvent.JobNewModelReconcilerEvent) {
+                        queryIndex.updateJob(((JobModelReconcilerEvent.JobNewModelReconcilerEvent) event).getNewRoot().getEntity());
+                    } else if (event instanceof JobModelReconcilerEvent.JobModelUpdateReconcilerEvent) {
                         JobModelReconcilerEvent.JobModelUpdateReconcilerEvent jobUpdateEvent = (JobModelReconcilerEvent.JobModelUpdateReconcilerEvent) event;
                         EntityHolder changedEntityHolder = jobUpdateEvent.getChangedEntityHolder();
                         if (handleJobCompletedEvent(changedEntityHolder)) {
                             jobMetricsCollector.removeJob(changedEntityHolder.getId());
+                            queryIndex.removeJob(changedEntityHolder.getId());
                         } else {
                             jobMetricsCollector.updateTaskMetrics(jobUpdateEvent);
+                            updateQueryIndex(jobUpdateEvent);
                         }
                     }
                 },
@@ -156,6 +171,24 @@ public class DefaultV3JobOperations implements V3JobOperations {
         return false;
     }
 
+    /**
+     * Keeps the query index in sync with the reference model. A task removal is not reported as a separate event,
+     * but as an update of its job holder, so on each job update the indexed tasks are checked against its children.
+     */
+    private void updateQueryIndex(JobModelReconcilerEvent.JobModelUpdateReconcilerEvent event) {
+        if (event.getModelActionHolder().getModel() != Model.Reference) {
+            return;
+        }
+        EntityHolder changedEntityHolder = event.getChangedEntityHolder();
+        if (changedEntityHolder.getEntity() instanceof Job) {
+            queryIndex.updateJob(changedEntityHolder.getEntity());
+            Set<String> taskIds = changedEntityHolder.getChildren().stream().map(EntityHolder::getId).collect(Collectors.toSet());
+            queryIndex.retainTasks(changedEntityHolder.getId(), taskIds);
+        } else {
+            queryIndex.updateTask(changedEntityHolder.getEntity());
+        }
+    }
+
     @PreDestroy
     public void shutdown() {
         ObservableExt.safeUnsubscribe(transactionLoggerSubscription);
@@ -262,6 +295,17 @@ public class DefaultV3JobOperations implements V3JobOperations {
         return engine.changeReferenceModel(changeAction, taskId).toCompletable();
     }
 
+    @Override
+    public Completable updateTasks(String jobId, Map<String, Function<Task, Optional<Task>>> changeFunctions, Trigger trigger, String reason) {
+        Optional<ReconciliationEngine<JobManagerReconcilerEvent>> engineOpt = reconciliationFramework.findEngineByRootId(jobId);
+        if (!engineOpt.isPresent()) {
+            return Completable.error(JobManagerException.jobNotFound(jobId));
+        }
+        ReconciliationEngine<JobManagerReconcilerEvent> engine = engineOpt.get();
+        TitusChangeAction changeAction = BasicTaskActions.updateTasksInRunningModel(jobId, changeFunctions, trigger, jobManagerConfiguration, engine, reason, titusRuntime);
+        return engine.changeReferenceModel(changeAction).toCompletable();
+    }
+
     @Override
     public Completable recordTaskPlacement(String taskId, Function<Task, Task> changeFunction) {
         Optional<ReconciliationEngine<JobManagerReconcilerEvent>> engineOpt = reconciliationFramework.findEngineByChildId(taskId).map(Pair::getLeft);
@@ -30,6 +30,26 @@ public interface JobManagerConfiguration {
     @DefaultValue("1")
     long getReconcilerActiveTimeoutMs();
 
+    /**
+     * Number of reconciliation loops (threads) the job reconciliation engines are partitioned into, by their job id.
+     * With the default value of 1, all engines are driven by a single loop.
+     */
+    @DefaultValue("1")
+    int getReconcilerShardCount();
+
+    /**
+     * Number of worker threads validating the jobs and tasks loaded from the store, and building their reconciliation
+     * engines during the job manager bootstrap.
+     */
+    @DefaultValue("8")
+    int getBootstrapWorkerThreadCount();
+
+    /**
+     * Maximum number of jobs for which tasks are loaded from the store concurrently during the job manager bootstrap.
+     */
+    @DefaultValue("100")
+    int getBootstrapTaskLoadConcurrency();
+
     /**
      * How many active tasks in the transient state (in other words not Started and not Finished) are allowed in a job.
      * If the number of active tasks in the transient state goes above this limit, no new tasks are created.
@@ -88,4 +108,19 @@ public interface JobManagerConfiguration {
      */
     @DefaultValue("false")
     boolean isFailOnDataValidation();
+
+    /**
+     * Task lifecycle metrics mode. 'PerTask' reports the state of each task, tagged with its job and task ids.
+     * 'Aggregated' reports state dwell time histograms and transition counts per capacity group and application,
+     * which keeps the number of meters bounded.
+     */
+    @DefaultValue("PerTask")
+    String getTaskLifecycleMetricsMode();
+
+    /**
+     * Fraction of tasks (0.0 - 1.0), for which state transitions are written to the task lifecycle trace log in the
+     * 'Aggregated' metrics mode.
+     */
+    @DefaultValue("0.0")
+    double getTaskLifecycleTraceSampleRatio();
 }
@@ -20,12 +20,17 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -57,9 +62,11 @@ import com.netflix.titus.common.framework.reconciler.ReconciliationFramework;
 import com.netflix.titus.common.framework.reconciler.internal.DefaultReconciliationEngine;
 import com.netflix.titus.common.framework.reconciler.internal.DefaultReconciliationFramework;
 import com.netflix.titus.common.framework.reconciler.internal.InternalReconciliationEngine;
+import com.netflix.titus.common.framework.reconciler.internal.ShardedReconciliationFramework;
 import com.netflix.titus.common.model.sanitizer.EntitySanitizer;
 import com.netflix.titus.common.model.sanitizer.EntitySanitizerUtil;
 import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.util.ExecutorsExt;
 import com.netflix.titus.common.util.time.Clock;
 import com.netflix.titus.common.util.tuple.Pair;
 import com.netflix.titus.master.MetricConstants;
@@ -78,6 +85,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.Observable;
 import rx.Scheduler;
+import rx.schedulers.Schedulers;
 
 import static com.netflix.titus.api.jobmanager.model.job.sanitizer.JobSanitizerBuilder.JOB_PERMISSIVE_SANITIZER;
 import static com.netflix.titus.api.jobmanager.model.job.sanitizer.JobSanitizerBuilder.JOB_STRICT_SANITIZER;
@@ -94,11 +102,11 @@ public class JobReconciliationFrameworkFactory {
 
     private enum TaskFenzoCheck {AddedToFenzo, EffectivelyFinished, FenzoAddError, Inconsistent}
 
+    private enum BootstrapStage {JobValidation, TaskLoad, TaskValidation, EngineCreation, FenzoInitialization}
+
     static final String BATCH_RESOLVER = "batchResolver";
     static final String SERVICE_RESOLVER = "serviceResolver";
 
-    private static final int MAX_RETRIEVE_TASK_CONCURRENCY = 100;
-
     private static final JobEventFactory JOB_EVENT_FACTORY = new JobEventFactory();
 
     private static final Map<Object, Comparator<EntityHolder>> INDEX_COMPARATORS = Collections.singletonMap(
@@ -124,6 +132,8 @@ public class JobReconciliationFrameworkFactory {
     private final Gauge loadedJobs;
     private final Gauge loadedTasks;
     private final Gauge storeLoadTimeMs;
+    private final Map<BootstrapStage, Gauge> stageTimeMs = new EnumMap<>(BootstrapStage.class);
+    private final Map<BootstrapStage, AtomicLong> stageTimeNs = new EnumMap<>(BootstrapStage.class);
 
     @Inject
     public JobReconciliationFrameworkFactory(JobManagerConfiguration jobManagerConfiguration,
@@ -174,6 +184,10 @@ public class JobReconciliationFrameworkFactory {
         this.loadedJobs = registry.gauge(ROOT_METRIC_NAME + "loadedJobs");
         this.loadedTasks = registry.gauge(ROOT_METRIC_NAME + "loadedTasks");
         this.storeLoadTimeMs = registry.gauge(ROOT_METRIC_NAME + "storeLoadTimeMs");
+        for (BootstrapStage stage : BootstrapStage.values()) {
+            stageTimeMs.put(stage, registry.gauge(ROOT_METRIC_NAME + "stageTimeMs", "stage", stage.name()));
+            stageTimeNs.put(stage, new AtomicLong());
+        }
 
         this.dispatchingResolver = DifferenceResolvers.dispatcher(rootModel -> {
             Job<?> job = rootModel.getEntity();
@@ -189,32 +203,44 @@ public class JobReconciliationFrameworkFactory {
     }
 
     ReconciliationFramework<JobManagerReconcilerEvent> newInstance() {
-        List<Pair<Job, List<Task>>> jobsAndTasks = checkGlobalConsistency(loadJobsAndTasksFromStore(errorCollector));
+        List<RestoredJob> restoredJobs = loadJobsAndTasksFromStore(errorCollector);
 
-        // initialize fenzo with running tasks
+        // initialize fenzo with running tasks. The scheduling service is not thread safe, so this is done in a single thread.
         List<InternalReconciliationEngine<JobManagerReconcilerEvent>> engines = new ArrayList<>();
-        for (Pair<Job, List<Task>> pair : jobsAndTasks) {
-            Job job = pair.getLeft();
-            List<Task> tasks = pair.getRight();
-            InternalReconciliationEngine<JobManagerReconcilerEvent> engine = newRestoredEngine(job, tasks);
-            engines.add(engine);
-            for (Task task : tasks) {
-                Optional<Task> validatedTask = validateTask(task);
-                if (validatedTask.isPresent()) {
+        measure(BootstrapStage.FenzoInitialization, () -> {
+            for (RestoredJob restoredJob : restoredJobs) {
+                Job job = restoredJob.getJob();
+                InternalReconciliationEngine<JobManagerReconcilerEvent> engine = restoredJob.getEngine();
+                engines.add(engine);
+                for (Task task : restoredJob.getValidTasks()) {
                     TaskFenzoCheck check = addTaskToFenzo(engine, job, task);
                     if (check == TaskFenzoCheck.FenzoAddError) {
                         errorCollector.taskAddToFenzoError(task.getId());
                     } else if (check == TaskFenzoCheck.Inconsistent) {
                         errorCollector.inconsistentTask(task.getId());
                     }
-                } else {
-                    errorCollector.invalidTaskRecord(task.getId());
                 }
             }
-        }
+            return null;
+        });
+        reportStageTimes();
 
         errorCollector.failIfTooManyBadRecords();
 
+        int shardCount = jobManagerConfiguration.getReconcilerShardCount();
+        if (shardCount > 1) {
+            logger.info("Starting sharded job reconciliation framework with {} shards", shardCount);
+            return new ShardedReconciliationFramework<>(
+                    engines,
+                    bootstrapModel -> newEngine(bootstrapModel, true),
+                    jobManagerConfiguration.getReconcilerIdleTimeoutMs(),
+                    jobManagerConfiguration.getReconcilerActiveTimeoutMs(),
+                    INDEX_COMPARATORS,
+                    shardCount,
+                    registry,
+                    optionalScheduler
+            );
+        }
         return new DefaultReconciliationFramework<>(
                 engines,
                 bootstrapModel -> newEngine(bootstrapModel, true),
@@ -341,52 +367,155 @@ public class JobReconciliationFrameworkFactory {
         return true;
     }
 
-    private List<Pair<Job, List<Task>>> loadJobsAndTasksFromStore(InitializationErrorCollector errorCollector) {
+    /**
+     * Loads jobs and tasks from the store, and builds their reconciliation engines. The work is organized as a streaming
+     * pipeline, so jobs are validated and their tasks loaded while the store is still reading the remaining jobs. Task
+     * validation is done on a pool of bootstrap worker threads, concurrently with the store reads. ENI assignment
+     * overlaps are resolved once all tasks are loaded, so the result does not depend on the load order. Engines are
+     * built after that, on the same worker pool.
+     */
+    private List<RestoredJob> loadJobsAndTasksFromStore(InitializationErrorCollector errorCollector) {
         long startTime = clock.wallTime();
 
-        // load all job/task pairs
-        List<Pair<Job, Pair<List<Task>, Integer>>> jobTasksPairs;
-        try {
-            jobTasksPairs = store.init().andThen(store.retrieveJobs().flatMap(retrievedJobsAndErrors -> {
-                errorCollector.corruptedJobRecords(retrievedJobsAndErrors.getRight());
-
-                List<Job<?>> retrievedJobs = retrievedJobsAndErrors.getLeft();
-                List<Observable<Pair<Job, Pair<List<Task>, Integer>>>> retrieveTasksObservables = new ArrayList<>();
-                for (Job job : retrievedJobs) {
+        ExecutorService executor = ExecutorsExt.namedFixedThreadPool("job-bootstrap", Math.max(1, jobManagerConfiguration.getBootstrapWorkerThreadCount()));
+        Scheduler workerScheduler = Schedulers.from(executor);
+        Map<String, Map<String, Set<String>>> eniAssignmentMap = new ConcurrentHashMap<>();
 
-                    // TODO Finished jobs that were not archived immediately should be moved by background archive process
-                    if (job.getStatus().getState() == JobState.Finished) {
-                        logger.info("Not loading finished job: {}", job.getId());
-                        continue;
-                    }
+        List<RestoredJob> restoredJobs;
+        try {
+            List<LoadedJob> loadedJobList = store.init().andThen(store.streamJobs().flatMap(jobOrError -> {
+                if (jobOrError.hasError()) {
+                    errorCollector.corruptedJobRecords(1);
+                    return Observable.empty();
+                }
+                Job<?> job = jobOrError.getValue();
 
-                    Optional<Job> validatedJob = validateJob(job);
-                    if (validatedJob.isPresent()) {
-                        Observable<Pair<Job, Pair<List<Task>, Integer>>> retrieveTasksObservable = store.retrieveTasksForJob(job.getId())
-                                .map(taskList -> new Pair<>(validatedJob.get(), taskList));
-                        retrieveTasksObservables.add(retrieveTasksObservable);
-                    } else {
-                        errorCollector.invalidJob(job.getId());
-                    }
+                // TODO Finished jobs that were not archived immediately should be moved by background archive process
+                if (job.getStatus().getState() == JobState.Finished) {
+                    logger.info("Not loading finished job: {}", job.getId());
+                    return Observable.empty();
                 }
-                return Observable.merge(retrieveTasksObservables, MAX_RETRIEVE_TASK_CONCURRENCY);
-            })).toList().toBlocking().singleOrDefault(Collections.emptyList());
+                return restoreJob(job, eniAssignmentMap, workerScheduler);
+            }, Math.max(1, jobManagerConfiguration.getBootstrapTaskLoadConcurrency()))).toList().toBlocking().singleOrDefault(Collections.emptyList());
+
+            Set<String> overlappingEniTaskIds = resolveEniOverlaps(eniAssignmentMap, errorCollector);
 
-            int corruptedTaskRecords = jobTasksPairs.stream().mapToInt(p -> p.getRight().getRight()).sum();
-            errorCollector.corruptedTaskRecords(corruptedTaskRecords);
+            restoredJobs = Observable.from(loadedJobList)
+                    .flatMap(loadedJob -> Observable.fromCallable(() -> newRestoredJob(loadedJob, overlappingEniTaskIds)).subscribeOn(workerScheduler))
+                    .toList()
+                    .toBlocking()
+                    .singleOrDefault(Collections.emptyList());
 
-            int taskCount = jobTasksPairs.stream().map(p -> p.getRight().getLeft().size()).reduce(0, (a, v) -> a + v);
-            loadedJobs.set(jobTasksPairs.size());
+            int taskCount = restoredJobs.stream().mapToInt(RestoredJob::getLoadedTaskCount).sum();
+            loadedJobs.set(restoredJobs.size());
             loadedTasks.set(taskCount);
-            logger.info("{} jobs and {} tasks loaded from store in {}ms", jobTasksPairs.size(), taskCount, clock.wallTime() - startTime);
+            logger.info("{} jobs and {} tasks loaded from store in {}ms", restoredJobs.size(), taskCount, clock.wallTime() - startTime);
         } catch (Exception e) {
             logger.error("Failed to load jobs from the store during initialization:", e);
             throw new IllegalStateException("Failed to load jobs from the store during initialization", e);
         } finally {
             storeLoadTimeMs.set(clock.wallTime() - startTime);
+            executor.shutdownNow();
+        }
+
+        return restoredJobs;
+    }
+
+    private Observable<LoadedJob> restoreJob(Job<?> job, Map<String, Map<String, Set<String>>> eniAssignmentMap, Scheduler workerScheduler) {
+        return Observable.fromCallable(() -> measure(BootstrapStage.JobValidation, () -> validateJob(job)))
+                .subscribeOn(workerScheduler)
+                .flatMap(validatedJob -> {
+                    if (!validatedJob.isPresent()) {
+                        errorCollector.invalidJob(job.getId());
+                        return Observable.empty();
+                    }
+                    long taskLoadStartTime = System.nanoTime();
+                    return store.retrieveTasksForJob(job.getId())
+                            .observeOn(workerScheduler)
+                            .map(tasksAndErrors -> {
+                                stageTimeNs.get(BootstrapStage.TaskLoad).addAndGet(System.nanoTime() - taskLoadStartTime);
+                                return loadJobWithTasks(validatedJob.get(), tasksAndErrors, eniAssignmentMap);
+                            });
+                });
+    }
+
+    private LoadedJob loadJobWithTasks(Job job, Pair<List<Task>, Integer> tasksAndErrors, Map<String, Map<String, Set<String>>> eniAssignmentMap) {
+        errorCollector.corruptedTaskRecords(tasksAndErrors.getRight());
+
+        List<Task> consistentTasks = new ArrayList<>();
+        List<Task> validTasks = new ArrayList<>();
+        measure(BootstrapStage.TaskValidation, () -> {
+            for (Task task : tasksAndErrors.getLeft()) {
+                if (checkTaskEniAssignment(task, eniAssignmentMap).isPresent()) {
+                    consistentTasks.add(task);
+                    if (validateTask(task).isPresent()) {
+                        validTasks.add(task);
+                    } else {
+                        errorCollector.invalidTaskRecord(task.getId());
+                    }
+                }
+            }
+            return null;
+        });
+
+        return new LoadedJob(job, consistentTasks, validTasks, tasksAndErrors.getLeft().size());
+    }
+
+    /**
+     * An ENI can be assigned to one security group set only. If more than one is found, the assignment with the lowest
+     * task id wins, and the tasks with the other assignments are returned, so they can be excluded.
+     */
+    private Set<String> resolveEniOverlaps(Map<String, Map<String, Set<String>>> eniAssignmentMap, InitializationErrorCollector errorCollector) {
+        Set<String> overlappingTaskIds = new HashSet<>();
+        eniAssignmentMap.forEach((eniSignature, assignments) -> {
+            if (assignments.size() <= 1) {
+                return;
+            }
+            errorCollector.eniOverlaps(eniSignature, assignments);
+            String winner = assignments.entrySet().stream()
+                    .min(Comparator.comparing((Map.Entry<String, Set<String>> entry) -> Collections.min(entry.getValue())))
+                    .map(Map.Entry::getKey)
+                    .orElse(null);
+            assignments.forEach((securityGroups, taskIds) -> {
+                if (!securityGroups.equals(winner)) {
+                    overlappingTaskIds.addAll(taskIds);
+                }
+            });
+        });
+        return overlappingTaskIds;
+    }
+
+    private RestoredJob newRestoredJob(LoadedJob loadedJob, Set<String> overlappingEniTaskIds) {
+        List<Task> consistentTasks = loadedJob.consistentTasks;
+        List<Task> validTasks = loadedJob.validTasks;
+        if (!overlappingEniTaskIds.isEmpty()) {
+            consistentTasks = consistentTasks.stream().filter(t -> !overlappingEniTaskIds.contains(t.getId())).collect(Collectors.toList());
+            validTasks = validTasks.stream().filter(t -> !overlappingEniTaskIds.contains(t.getId())).collect(Collectors.toList());
         }
+        List<Task> engineTasks = consistentTasks;
+        InternalReconciliationEngine<JobManagerReconcilerEvent> engine = measure(
+                BootstrapStage.EngineCreation, () -> newRestoredEngine(loadedJob.job, engineTasks)
+        );
+        return new RestoredJob(loadedJob.job, engine, validTasks, loadedJob.loadedTaskCount);
+    }
 
-        return jobTasksPairs.stream().map(p -> Pair.of(p.getLeft(), p.getRight().getLeft())).collect(Collectors.toList());
+    private <T> T measure(BootstrapStage stage, Supplier<T> action) {
+        long startTime = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            stageTimeNs.get(stage).addAndGet(System.nanoTime() - startTime);
+        }
+    }
+
+    private void reportStageTimes() {
+        StringBuilder sb = new StringBuilder();
+        for (BootstrapStage stage : BootstrapStage.values()) {
+            long timeMs = TimeUnit.NANOSECONDS.toMillis(stageTimeNs.get(stage).get());
+            stageTimeMs.get(stage).set(timeMs);
+            sb.append(sb.length() == 0 ? "" : ", ").append(stage).append('=').append(timeMs).append("ms");
+        }
+        logger.info("Job manager bootstrap stage times (summed over all bootstrap workers): {}", sb);
     }
 
     private Optional<Job> validateJob(Job job) {
@@ -431,30 +560,10 @@ public class JobReconciliationFrameworkFactory {
         return Optional.of(task);
     }
 
-    private List<Pair<Job, List<Task>>> checkGlobalConsistency(List<Pair<Job, List<Task>>> jobsAndTasks) {
-        Map<String, Map<String, Set<String>>> eniAssignmentMap = new HashMap<>();
-
-        List<Pair<Job, List<Task>>> filtered = jobsAndTasks.stream()
-                .map(jobAndTasks -> {
-                            List<Task> filteredTasks = jobAndTasks.getRight().stream()
-                                    .map(task -> checkTaskEniAssignment(task, eniAssignmentMap))
-                                    .filter(Optional::isPresent)
-                                    .map(Optional::get)
-                                    .collect(Collectors.toList());
-                            return Pair.of(jobAndTasks.getLeft(), filteredTasks);
-                        }
-                ).collect(Collectors.toList());
-
-        // Report overlaps
-        eniAssignmentMap.forEach((eniSignature, assignments) -> {
-            if (assignments.size() > 1) {
-                errorCollector.eniOverlaps(eniSignature, assignments);
-            }
-        });
-
-        return filtered;
-    }
-
+    /**
+     * Records the task ENI assignment, which is checked for overlaps once all tasks are loaded. Returns empty if the task
+     * has no agent assigned, and should be excluded.
+     */
     private Optional<Task> checkTaskEniAssignment(Task task, Map<String, Map<String, Set<String>>> eniAssignmentMap) {
         // Filter out tasks that will not be put back into Fenzo queue.
         TaskState taskState = task.getStatus().getState();
@@ -480,10 +589,10 @@ public class JobReconciliationFrameworkFactory {
 
         // Record
         String eniSignature = "ENI@" + agent + '#' + eniAssignment.getIndex();
-        Map<String, Set<String>> eniSGs = eniAssignmentMap.computeIfAbsent(eniSignature, e -> new HashMap<>());
-        eniSGs.computeIfAbsent(eniAssignment.getValue(), sg -> new HashSet<>()).add(task.getId());
+        Map<String, Set<String>> eniSGs = eniAssignmentMap.computeIfAbsent(eniSignature, e -> new ConcurrentHashMap<>());
+        eniSGs.computeIfAbsent(eniAssignment.getValue(), sg -> ConcurrentHashMap.newKeySet()).add(task.getId());
 
-        return eniSGs.size() == 1 ? Optional.of(task) : Optional.empty();
+        return Optional.of(task);
     }
 
     private static int compareByStatusCreationTime(EntityHolder holder1, EntityHolder holder2) {
@@ -496,4 +605,56 @@ public class JobReconciliationFrameworkFactory {
         Task task2 = holder2.getEntity();
         return Long.compare(task1.getStatus().getTimestamp(), task2.getStatus().getTimestamp());
     }
+
+    /**
+     * Job with its tasks loaded from the store, before the ENI assignment overlaps are resolved.
+     */
+    private static class LoadedJob {
+
+        private final Job job;
+        private final List<Task> consistentTasks;
+        private final List<Task> validTasks;
+        private final int loadedTaskCount;
+
+        private LoadedJob(Job job, List<Task> consistentTasks, List<Task> validTasks, int loadedTaskCount) {
+            this.job = job;
+            this.consistentTasks = consistentTasks;
+            this.validTasks = validTasks;
+            this.loadedTaskCount = loadedTaskCount;
+        }
+    }
+
+    private static class RestoredJob {
+
+        private final Job job;
+        private final InternalReconciliationEngine<JobManagerReconcilerEvent> engine;
+        private final List<Task> validTasks;
+        private final int loadedTaskCount;
+
+        private RestoredJob(Job job, InternalReconciliationEngine<JobManagerReconcilerEvent> engine, List<Task> validTasks, int loadedTaskCount) {
+            this.job = job;
+            this.engine = engine;
+            this.validTasks = validTasks;
+            this.loadedTaskCount = loadedTaskCount;
+        }
+
+        private Job getJob() {
+            return job;
+        }
+
+        private InternalReconciliationEngine<JobManagerReconcilerEvent> getEngine() {
+            return engine;
+        }
+
+        /**
+         * Tasks that passed the validation, and should be considered for adding to Fenzo.
+         */
+        private List<Task> getValidTasks() {
+            return validTasks;
+        }
+
+        private int getLoadedTaskCount() {
+            return loadedTaskCount;
+        }
+    }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.jobmanager.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.google.common.primitives.Longs;
+import com.netflix.titus.common.util.histogram.HistogramDescriptor;
+
+/**
+ * Histograms of the time tasks have spent in their current state, grouped by capacity group and state, and maintained
+ * incrementally from task state changes. A task is counted in the bucket matching its current state duration. As
+ * the duration grows, the task must move to the next bucket when it crosses a bucket bound. These moves are kept
+ * in a queue ordered by time, so a snapshot processes only the tasks that crossed a bound since the previous
+ * snapshot, instead of all tasks.
+ * <p>
+ * Updates with a state entry time older than the one already recorded for a task are ignored, so replaying
+ * out of date state is safe.
+ * <p>
+ * Capacity groups are recorded as resolved from the job descriptors. Mapping of capacity groups without an SLA to
+ * the default one is done by the caller on a snapshot, as the set of SLAs changes over time.
+ */
+class TaskLivenessHistograms {
+
+    private static final Comparator<TrackedTask> MIGRATION_ORDER = Comparator
+            .comparingLong((TrackedTask task) -> task.nextMigrationTime)
+            .thenComparingLong(task -> task.sequence);
+
+    private final long[] bounds;
+
+    private final Map<String, TrackedTask> tasks = new HashMap<>();
+    private final Map<String, Map<String, long[]>> counters = new HashMap<>();
+    private final TreeSet<TrackedTask> migrations = new TreeSet<>(MIGRATION_ORDER);
+
+    private long nextSequence;
+
+    TaskLivenessHistograms(HistogramDescriptor histogramDescriptor) {
+        this.bounds = Longs.toArray(histogramDescriptor.getValueBounds());
+    }
+
+    synchronized void update(String taskId, String capacityGroup, String state, long enteredAt, long now) {
+        TrackedTask existing = tasks.get(taskId);
+        if (existing != null) {
+            if (enteredAt < existing.enteredAt) {
+                return;
+            }
+            // Repeated notifications about the same state must not restart the state duration.
+            if (existing.state.equals(state) && existing.capacityGroup.equals(capacityGroup)) {
+                return;
+            }
+            removeTracked(existing);
+        }
+        if (enteredAt <= 0) {
+            return;
+        }
+
+        TrackedTask task = new TrackedTask(taskId, capacityGroup, state, enteredAt, nextSequence++);
+        task.bucket = bucketOf(now - enteredAt);
+        countersOf(capacityGroup, state)[task.bucket]++;
+        tasks.put(taskId, task);
+        scheduleMigration(task);
+    }
+
+    synchronized void remove(String taskId) {
+        TrackedTask existing = tasks.get(taskId);
+        if (existing != null) {
+            removeTracked(existing);
+        }
+    }
+
+    /**
+     * Drops all tasks not in the given set, so a re-seed does not keep counting tasks that finished while no
+     * events were received.
+     */
+    synchronized void retainAll(Set<String> taskIds) {
+        new ArrayList<>(tasks.values()).forEach(task -> {
+            if (!taskIds.contains(task.taskId)) {
+                removeTracked(task);
+            }
+        });
+    }
+
+    synchronized int size() {
+        return tasks.size();
+    }
+
+    /**
+     * Moves tasks that crossed a bucket bound to their new buckets, and returns a copy of all non-empty histograms.
+     *
+     * @return mapOf(capacityGroup -> mapOf(state -> bucket counters))
+     */
+    synchronized Map<String, Map<String, List<Long>>> snapshot(long now) {
+        while (!migrations.isEmpty() && migrations.first().nextMigrationTime < now) {
+            TrackedTask task = migrations.pollFirst();
+            long[] taskCounters = countersOf(task.capacityGroup, task.state);
+            taskCounters[task.bucket]--;
+            task.bucket = bucketOf(now - task.enteredAt);
+            taskCounters[task.bucket]++;
+            scheduleMigration(task);
+        }
+
+        Map<String, Map<String, List<Long>>> result = new HashMap<>();
+        for (Iterator<Map.Entry<String, Map<String, long[]>>> groupIt = counters.entrySet().iterator(); groupIt.hasNext(); ) {
+            Map.Entry<String, Map<String, long[]>> groupEntry = groupIt.next();
+            for (Iterator<Map.Entry<String, long[]>> stateIt = groupEntry.getValue().entrySet().iterator(); stateIt.hasNext(); ) {
+                Map.Entry<String, long[]> stateEntry = stateIt.next();
+                if (isEmpty(stateEntry.getValue())) {
+                    stateIt.remove();
+                } else {
+                    result.computeIfAbsent(groupEntry.getKey(), g -> new HashMap<>()).put(stateEntry.getKey(), Longs.asList(stateEntry.getValue().clone()));
+                }
+            }
+            if (groupEntry.getValue().isEmpty()) {
+                groupIt.remove();
+            }
+        }
+        return result;
+    }
+
+    private void removeTracked(TrackedTask task) {
+        tasks.remove(task.taskId);
+        migrations.remove(task);
+        countersOf(task.capacityGroup, task.state)[task.bucket]--;
+    }
+
+    private void scheduleMigration(TrackedTask task) {
+        if (task.bucket < bounds.length) {
+            task.nextMigrationTime = task.enteredAt + bounds[task.bucket];
+            migrations.add(task);
+        }
+    }
+
+    private long[] countersOf(String capacityGroup, String state) {
+        return counters.computeIfAbsent(capacityGroup, g -> new HashMap<>()).computeIfAbsent(state, s -> new long[bounds.length + 1]);
+    }
+
+    /**
+     * Same bucket assignment as {@link HistogramDescriptor}: a value equal to a bound belongs to that bound's bucket.
+     */
+    private int bucketOf(long durationMs) {
+        int position = Arrays.binarySearch(bounds, durationMs);
+        return position >= 0 ? position : -(position + 1);
+    }
+
+    private static boolean isEmpty(long[] values) {
+        for (long value : values) {
+            if (value != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class TrackedTask {
+
+        private final String taskId;
+        private final String capacityGroup;
+        private final String state;
+        private final long enteredAt;
+        private final long sequence;
+
+        private int bucket;
+        private long nextMigrationTime;
+
+        private TrackedTask(String taskId, String capacityGroup, String state, long enteredAt, long sequence) {
+            this.taskId = taskId;
+            this.capacityGroup = capacityGroup;
+            this.state = state;
+            this.enteredAt = enteredAt;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -20,26 +20,32 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.netflix.spectator.api.Gauge;
 import com.netflix.spectator.api.Id;
 import com.netflix.spectator.api.Registry;
 import com.netflix.titus.api.jobmanager.model.job.Job;
 import com.netflix.titus.api.jobmanager.model.job.Task;
 import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.event.JobManagerEvent;
+import com.netflix.titus.api.jobmanager.model.job.event.TaskUpdateEvent;
 import com.netflix.titus.api.jobmanager.service.V3JobOperations;
 import com.netflix.titus.api.model.ApplicationSLA;
 import com.netflix.titus.api.model.Tier;
 import com.netflix.titus.api.model.v2.V2JobState;
+import com.netflix.titus.api.model.v2.WorkerNaming;
 import com.netflix.titus.api.model.v2.parameter.Parameters;
 import com.netflix.titus.api.store.v2.V2JobMetadata;
 import com.netflix.titus.api.store.v2.V2WorkerMetadata;
@@ -47,23 +53,31 @@ import com.netflix.titus.common.util.CollectionsExt;
 import com.netflix.titus.common.util.DateTimeExt;
 import com.netflix.titus.common.util.StringExt;
 import com.netflix.titus.common.util.guice.annotation.Activator;
-import com.netflix.titus.common.util.histogram.Histogram;
 import com.netflix.titus.common.util.histogram.HistogramDescriptor;
 import com.netflix.titus.common.util.rx.ObservableExt;
 import com.netflix.titus.master.MetricConstants;
+import com.netflix.titus.master.Status;
 import com.netflix.titus.master.job.V2JobMgrIntf;
 import com.netflix.titus.master.job.V2JobOperations;
+import com.netflix.titus.master.job.worker.WorkerStateMonitor;
 import com.netflix.titus.master.service.management.ApplicationSlaManagementService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.Completable;
+import rx.Scheduler;
 import rx.Subscription;
 import rx.schedulers.Schedulers;
+import rx.subscriptions.SerialSubscription;
 
 /**
- * Supplementary metrics based on both job/task state, and elapsed time. These metrics cannot be computed only
- * in response to system state change events. Instead, they are recomputed at regular interval.
+ * Supplementary metrics based on both job/task state, and elapsed time. The histograms of time spent by tasks in
+ * their current state are maintained incrementally from the job manager events (see {@link TaskLivenessHistograms}),
+ * and published at regular interval from a snapshot, which costs proportionally to the number of histogram buckets
+ * and the number of tasks that moved to the next bucket since the last refresh, not the total number of tasks.
  * <p>
+ * The histograms are seeded from a single scan of all jobs and tasks during activation. Events received while
+ * the scan is in progress are buffered, and applied after it. If an event stream terminates with an error, events
+ * may have been missed, so the stream is re-subscribed and the histograms are re-seeded the same way.
  */
 @Singleton
 public class TaskLivenessMetrics {
@@ -98,28 +112,54 @@ public class TaskLivenessMetrics {
     private final ApplicationSlaManagementService applicationSlaManagementService;
     private final V2JobOperations v2JobOperations;
     private final V3JobOperations v3JobOperations;
+    private final WorkerStateMonitor workerStateMonitor;
     private final JobManagerConfiguration configuration;
     private final Registry registry;
 
+    private final TaskLivenessHistograms histograms = new TaskLivenessHistograms(HISTOGRAM_DESCRIPTOR);
     private final Map<String, Map<String, List<Gauge>>> capacityGroupsMetrics = new HashMap<>();
 
+    private final Object seedLock = new Object();
+    private List<Consumer<TaskLivenessHistograms>> pendingUpdates = new ArrayList<>(); // Set to null once seeded
+
+    private final SerialSubscription v3EventSubscription = new SerialSubscription();
+    private final SerialSubscription v2StatusSubscription = new SerialSubscription();
+    private final Scheduler.Worker reseedWorker;
     private Subscription subscription;
 
     @Inject
     public TaskLivenessMetrics(ApplicationSlaManagementService applicationSlaManagementService,
                                V2JobOperations v2JobOperations,
                                V3JobOperations v3JobOperations,
+                               WorkerStateMonitor workerStateMonitor,
                                JobManagerConfiguration configuration,
                                Registry registry) {
+        this(applicationSlaManagementService, v2JobOperations, v3JobOperations, workerStateMonitor, configuration, registry, Schedulers.computation());
+    }
+
+    @VisibleForTesting
+    TaskLivenessMetrics(ApplicationSlaManagementService applicationSlaManagementService,
+                        V2JobOperations v2JobOperations,
+                        V3JobOperations v3JobOperations,
+                        WorkerStateMonitor workerStateMonitor,
+                        JobManagerConfiguration configuration,
+                        Registry registry,
+                        Scheduler scheduler) {
         this.applicationSlaManagementService = applicationSlaManagementService;
         this.v2JobOperations = v2JobOperations;
         this.v3JobOperations = v3JobOperations;
+        this.workerStateMonitor = workerStateMonitor;
         this.configuration = configuration;
         this.registry = registry;
+        this.reseedWorker = scheduler.createWorker();
     }
 
     @Activator
     public void enterActiveMode() {
+        subscribeToV3Events();
+        subscribeToV2Statuses();
+        seed();
+
         long intervalMs = Math.max(1_000, configuration.getTaskLivenessPollerIntervalMs());
         this.subscription = ObservableExt.schedule(
                 ROOT_METRIC_NAME + "scheduler", registry, "TaskLivenessRefreshAction",
@@ -132,11 +172,53 @@ public class TaskLivenessMetrics {
     @PreDestroy
     public void shutdown() {
         ObservableExt.safeUnsubscribe(subscription);
+        reseedWorker.unsubscribe();
+        v3EventSubscription.unsubscribe();
+        v2StatusSubscription.unsubscribe();
+    }
+
+    private void subscribeToV3Events() {
+        v3EventSubscription.set(v3JobOperations.observeJobs().subscribe(
+                this::onV3Event,
+                e -> reseedAfterError("V3 job event stream", e, this::subscribeToV3Events)
+        ));
+    }
+
+    private void subscribeToV2Statuses() {
+        v2StatusSubscription.set(workerStateMonitor.getAllStatusObservable().subscribe(
+                this::onV2Status,
+                e -> reseedAfterError("V2 worker status stream", e, this::subscribeToV2Statuses)
+        ));
+    }
+
+    /**
+     * Events emitted while a stream was down are lost, so re-subscribing alone would leave the histograms skewed
+     * until the affected tasks change state again. Instead, buffering is resumed, the stream is re-subscribed, and the
+     * histograms are re-seeded from a new scan. Re-seeds run on a single worker, so they never overlap.
+     */
+    private void reseedAfterError(String streamName, Throwable error, Runnable resubscribe) {
+        logger.warn("{} terminated with an error; re-subscribing and re-seeding the task liveness histograms", streamName, error);
+        reseedWorker.schedule(() -> {
+            synchronized (seedLock) {
+                if (pendingUpdates == null) {
+                    pendingUpdates = new ArrayList<>();
+                }
+            }
+            resubscribe.run();
+            seed();
+        });
+    }
+
+    @VisibleForTesting
+    int getTrackedTaskCount() {
+        return histograms.size();
     }
 
     private void refresh() {
         Map<String, Tier> tierMap = buildTierMap();
-        Map<String, Map<String, Histogram.Builder>> capacityGroupsHistograms = buildCapacityGroupsHistograms(tierMap.keySet());
+        Map<String, Map<String, List<Long>>> capacityGroupsHistograms = groupByKnownCapacityGroups(
+                histograms.snapshot(System.currentTimeMillis()), tierMap.keySet()
+        );
         resetDroppedCapacityGroups(capacityGroupsHistograms.keySet());
         updateCapacityGroupCounters(capacityGroupsHistograms, tierMap);
     }
@@ -148,7 +230,7 @@ public class TaskLivenessMetrics {
         });
     }
 
-    private void updateCapacityGroupCounters(Map<String, Map<String, Histogram.Builder>> capacityGroupsHistograms, Map<String, Tier> tierMap) {
+    private void updateCapacityGroupCounters(Map<String, Map<String, List<Long>>> capacityGroupsHistograms, Map<String, Tier> tierMap) {
         capacityGroupsHistograms.forEach((capacityGroup, histograms) -> {
             Id baseId = registry.createId(
                     TASK_METRIC_NAME,
@@ -159,7 +241,7 @@ public class TaskLivenessMetrics {
             for (String state : TRACKED_STATES) {
                 List<Gauge> updatedGauges = updateStateCounters(baseId, state, histograms.get(state), capacityMetricsByState.get(state));
                 if (updatedGauges.isEmpty()) {
-                    capacityMetricsByState.remove(capacityGroup);
+                    capacityMetricsByState.remove(state);
                 } else {
                     capacityMetricsByState.put(state, updatedGauges);
                 }
@@ -167,8 +249,8 @@ public class TaskLivenessMetrics {
         });
     }
 
-    private List<Gauge> updateStateCounters(Id baseId, String state, Histogram.Builder histogramBuilder, List<Gauge> gauges) {
-        if (histogramBuilder == null) {
+    private List<Gauge> updateStateCounters(Id baseId, String state, List<Long> counters, List<Gauge> gauges) {
+        if (counters == null) {
             // Nothing running for this state, reset gauges
             if (gauges != null) {
                 gauges.forEach(g -> g.set(0));
@@ -176,8 +258,6 @@ public class TaskLivenessMetrics {
             return Collections.emptyList();
         }
 
-        List<Long> counters = histogramBuilder.build().getCounters();
-
         // First time we have data for this capacity group.
         if (gauges == null) {
             Id id = baseId.withTag("state", state);
@@ -206,61 +286,108 @@ public class TaskLivenessMetrics {
     }
 
     /**
-     * Traverse all active tasks and collect their state and the time they stayed in this state (the latter in form of histogram).
+     * Tasks of capacity groups without an SLA are reported under the default capacity group.
      *
-     * @return mapOf(capacityGroupName - > mapOf ( taskState, histogram))
+     * @return mapOf(capacityGroupName - > mapOf ( taskState, histogram counters))
      */
-    private Map<String, Map<String, Histogram.Builder>> buildCapacityGroupsHistograms(Set<String> capacityGroups) {
-        Map<String, Map<String, Histogram.Builder>> capacityGroupsHistograms = newCapacityHistograms(capacityGroups);
-        v2JobOperations.getAllJobMgrs()
-                .forEach(jmgr -> resolveCapacityGroup(jmgr, capacityGroupsHistograms).ifPresent(capacityGroup ->
-                        buildCapacityGroupHistogram(jmgr, capacityGroup, capacityGroupsHistograms)
-                ));
-        v3JobOperations.getJobs()
-                .forEach(job -> resolveCapacityGroup(job, capacityGroupsHistograms).ifPresent(capacityGroup ->
-                        buildCapacityGroupHistogram(job, capacityGroup, capacityGroupsHistograms)
-                ));
+    private Map<String, Map<String, List<Long>>> groupByKnownCapacityGroups(Map<String, Map<String, List<Long>>> snapshot,
+                                                                          Set<String> capacityGroups) {
+        Map<String, Map<String, List<Long>>> capacityGroupsHistograms = newCapacityHistograms(capacityGroups);
+        snapshot.forEach((capacityGroup, stateHistograms) -> {
+            String target = capacityGroups.contains(capacityGroup) ? capacityGroup : ApplicationSlaManagementService.DEFAULT_APPLICATION;
+            Map<String, List<Long>> targetHistograms = capacityGroupsHistograms.computeIfAbsent(target, k -> new HashMap<>());
+            stateHistograms.forEach((state, counters) -> targetHistograms.merge(state, counters, TaskLivenessMetrics::sumCounters));
+        });
         return capacityGroupsHistograms;
     }
 
-    private void buildCapacityGroupHistogram(V2JobMgrIntf jmgr, String capacityGroup, Map<String, Map<String, Histogram.Builder>> capacityGroupsHistograms) {
-        // 'capacityGroupsHistograms' is pre-initialized, but to avoid race condition we make extra check here.
-        Map<String, Histogram.Builder> capacityGroupHistograms = capacityGroupsHistograms.computeIfAbsent(capacityGroup, k -> new HashMap<>());
-        jmgr.getWorkers().forEach(worker -> {
-            long timestamp = getTimestamp(worker);
-            if (timestamp > 0) {
-                long durationMs = System.currentTimeMillis() - timestamp;
-                capacityGroupHistograms.computeIfAbsent(
-                        V2JobState.toV3TaskState(worker.getState()).name(),
-                        name -> Histogram.newBuilder(HISTOGRAM_DESCRIPTOR)
-                ).increment(durationMs);
+    private void seed() {
+        List<Consumer<TaskLivenessHistograms>> seedUpdates = new ArrayList<>();
+        Set<String> seededTaskIds = new HashSet<>();
+        v2JobOperations.getAllJobMgrs().forEach(jobMgr -> resolveCapacityGroup(jobMgr).ifPresent(capacityGroup ->
+                jobMgr.getWorkers().forEach(worker -> {
+                    String state = V2JobState.toV3TaskState(worker.getState()).name();
+                    long timestamp = getTimestamp(worker);
+                    if (TRACKED_STATES.contains(state) && timestamp > 0) {
+                        String taskId = WorkerNaming.getTaskId(worker);
+                        seededTaskIds.add(taskId);
+                        seedUpdates.add(h -> h.update(taskId, capacityGroup, state, timestamp, System.currentTimeMillis()));
+                    }
+                })
+        ));
+        v3JobOperations.getJobs().forEach(job -> {
+            String capacityGroup = resolveCapacityGroup(job);
+            List<Task> tasks;
+            try {
+                tasks = v3JobOperations.getTasks(job.getId());
+            } catch (Exception e) {
+                // We work on live data, which may be removed at any point in time.
+                return;
             }
+            tasks.forEach(task -> {
+                seededTaskIds.add(task.getId());
+                seedUpdates.add(toUpdate(capacityGroup, task));
+            });
         });
+
+        synchronized (seedLock) {
+            // Only matters on a re-seed: tasks not found by the scan have finished since they were recorded.
+            histograms.retainAll(seededTaskIds);
+            List<Consumer<TaskLivenessHistograms>> bufferedUpdates = pendingUpdates == null ? Collections.emptyList() : pendingUpdates;
+            seedUpdates.forEach(update -> update.accept(histograms));
+            bufferedUpdates.forEach(update -> update.accept(histograms));
+            logger.info("Task liveness histograms seeded: tasks={}, bufferedEvents={}", histograms.size(), bufferedUpdates.size());
+            pendingUpdates = null;
+        }
     }
 
-    private void buildCapacityGroupHistogram(Job<?> job, String capacityGroup, Map<String, Map<String, Histogram.Builder>> capacityGroupsHistograms) {
-        // 'capacityGroupsHistograms' is pre-initialized, but to avoid race condition we make extra check here.
-        Map<String, Histogram.Builder> capacityGroupHistograms = capacityGroupsHistograms.computeIfAbsent(capacityGroup, k -> new HashMap<>());
-        List<Task> tasks;
-        try {
-            tasks = v3JobOperations.getTasks(job.getId());
-        } catch (Exception e) {
-            // We work on live data, which may be removed at any point in time.
+    private void apply(Consumer<TaskLivenessHistograms> update) {
+        synchronized (seedLock) {
+            if (pendingUpdates != null) {
+                pendingUpdates.add(update);
+                return;
+            }
+        }
+        update.accept(histograms);
+    }
+
+    private void onV3Event(JobManagerEvent<?> event) {
+        if (event instanceof TaskUpdateEvent) {
+            TaskUpdateEvent taskUpdateEvent = (TaskUpdateEvent) event;
+            apply(toUpdate(resolveCapacityGroup(taskUpdateEvent.getCurrentJob()), taskUpdateEvent.getCurrentTask()));
+        }
+    }
+
+    private void onV2Status(Status status) {
+        if (status.getWorkerIndex() < 0 || status.getState() == null) {
+            return; // Job level status
+        }
+        String taskId = WorkerNaming.getWorkerName(status.getJobId(), status.getWorkerIndex(), status.getWorkerNumber());
+        String state = V2JobState.toV3TaskState(status.getState()).name();
+        if (!TRACKED_STATES.contains(state)) {
+            apply(h -> h.remove(taskId));
             return;
         }
-        tasks.forEach(task -> {
-            long timestamp = task.getStatus().getTimestamp();
-            if (timestamp > 0) {
-                long durationMs = System.currentTimeMillis() - timestamp;
-                capacityGroupHistograms.computeIfAbsent(
-                        task.getStatus().getState().name(),
-                        name -> Histogram.newBuilder(HISTOGRAM_DESCRIPTOR)
-                ).increment(durationMs);
-            }
-        });
+        V2JobMgrIntf jobMgr = v2JobOperations.getJobMgr(status.getJobId());
+        if (jobMgr != null) {
+            long timestamp = status.getTimestamp();
+            resolveCapacityGroup(jobMgr).ifPresent(capacityGroup ->
+                    apply(h -> h.update(taskId, capacityGroup, state, timestamp, System.currentTimeMillis()))
+            );
+        }
+    }
+
+    private Consumer<TaskLivenessHistograms> toUpdate(String capacityGroup, Task task) {
+        String taskId = task.getId();
+        String state = task.getStatus().getState().name();
+        if (!TRACKED_STATES.contains(state)) {
+            return h -> h.remove(taskId);
+        }
+        long timestamp = task.getStatus().getTimestamp();
+        return h -> h.update(taskId, capacityGroup, state, timestamp, System.currentTimeMillis());
     }
 
-    private Optional<String> resolveCapacityGroup(V2JobMgrIntf jmgr, Map<String, Map<String, Histogram.Builder>> capacityHistograms) {
+    private Optional<String> resolveCapacityGroup(V2JobMgrIntf jmgr) {
         V2JobMetadata jobMetadata = jmgr.getJobMetadata();
         if (jobMetadata == null) {
             return Optional.empty();
@@ -269,21 +396,15 @@ public class TaskLivenessMetrics {
         if (capacityGroup == null) {
             capacityGroup = Parameters.getAppName(jobMetadata.getParameters());
         }
-        if (capacityGroup == null) {
-            return Optional.of(ApplicationSlaManagementService.DEFAULT_APPLICATION);
-        }
-        return Optional.of(capacityHistograms.containsKey(capacityGroup) ? capacityGroup : ApplicationSlaManagementService.DEFAULT_APPLICATION);
+        return Optional.of(capacityGroup == null ? ApplicationSlaManagementService.DEFAULT_APPLICATION : capacityGroup);
     }
 
-    private Optional<String> resolveCapacityGroup(Job<?> job, Map<String, Map<String, Histogram.Builder>> capacityHistograms) {
+    private String resolveCapacityGroup(Job<?> job) {
         String capacityGroup = job.getJobDescriptor().getCapacityGroup();
         if (StringExt.isEmpty(capacityGroup)) {
             capacityGroup = job.getJobDescriptor().getApplicationName();
         }
-        if (StringExt.isEmpty(capacityGroup)) {
-            return Optional.of(ApplicationSlaManagementService.DEFAULT_APPLICATION);
-        }
-        return Optional.of(capacityHistograms.containsKey(capacityGroup) ? capacityGroup : ApplicationSlaManagementService.DEFAULT_APPLICATION);
+        return StringExt.isEmpty(capacityGroup) ? ApplicationSlaManagementService.DEFAULT_APPLICATION : capacityGroup;
     }
 
     private Map<String, Tier> buildTierMap() {
@@ -291,10 +412,18 @@ public class TaskLivenessMetrics {
                 .collect(Collectors.toMap(ApplicationSLA::getAppName, ApplicationSLA::getTier));
     }
 
-    private Map<String, Map<String, Histogram.Builder>> newCapacityHistograms(Set<String> capacityGroups) {
+    private Map<String, Map<String, List<Long>>> newCapacityHistograms(Set<String> capacityGroups) {
         return capacityGroups.stream().collect(Collectors.toMap(name -> name, name -> new HashMap<>()));
     }
 
+    private static List<Long> sumCounters(List<Long> first, List<Long> second) {
+        List<Long> result = new ArrayList<>(first.size());
+        for (int i = 0; i < first.size(); i++) {
+            result.add(first.get(i) + second.get(i));
+        }
+        return result;
+    }
+
     private long getTimestamp(V2WorkerMetadata worker) {
         V2JobState state = worker.getState();
         long timestamp;
@@ -16,6 +16,7 @@
 
 package com.netflix.titus.master.jobmanager.service;
 
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -33,20 +34,42 @@ import org.slf4j.LoggerFactory;
 
 import static com.netflix.titus.master.MetricConstants.METRIC_SCHEDULING_JOB;
 
+/**
+ * Reports task lifecycle metrics, either per task, or aggregated by capacity group and application
+ * (see {@link JobManagerConfiguration#getTaskLifecycleMetricsMode()}).
+ */
 class V3JobMetricsCollector {
 
     private static final Logger logger = LoggerFactory.getLogger(V3JobMetricsCollector.class);
 
+    static final String MODE_PER_TASK = "PerTask";
+    static final String MODE_AGGREGATED = "Aggregated";
+
     private final Registry registry;
 
     private final ConcurrentMap<String, JobMetrics> jobMetricsMap = new ConcurrentHashMap<>();
+    private final Optional<AggregatedTaskLifecycleMetrics> aggregatedMetrics;
 
-    V3JobMetricsCollector(Registry registry) {
+    V3JobMetricsCollector(JobManagerConfiguration configuration, Registry registry) {
         this.registry = registry;
+
+        String mode = configuration.getTaskLifecycleMetricsMode();
+        if (MODE_AGGREGATED.equalsIgnoreCase(mode)) {
+            this.aggregatedMetrics = Optional.of(new AggregatedTaskLifecycleMetrics(configuration.getTaskLifecycleTraceSampleRatio(), registry));
+        } else {
+            if (!MODE_PER_TASK.equalsIgnoreCase(mode)) {
+                logger.warn("Unknown task lifecycle metrics mode {}; using {}", mode, MODE_PER_TASK);
+            }
+            this.aggregatedMetrics = Optional.empty();
+        }
     }
 
     void updateTaskMetrics(Job<?> job, Task task) {
-        jobMetricsMap.computeIfAbsent(task.getJobId(), jobId -> new JobMetrics(job)).updateTaskMetrics(task);
+        if (aggregatedMetrics.isPresent()) {
+            aggregatedMetrics.get().updateTaskMetrics(job, task);
+        } else {
+            jobMetricsMap.computeIfAbsent(task.getJobId(), jobId -> new JobMetrics(job)).updateTaskMetrics(task);
+        }
     }
 
     void updateTaskMetrics(JobModelReconcilerEvent.JobModelUpdateReconcilerEvent jobUpdateEvent) {
@@ -57,6 +80,7 @@ class V3JobMetricsCollector {
     }
 
     void removeJob(String jobId) {
+        aggregatedMetrics.ifPresent(metrics -> metrics.removeJob(jobId));
         JobMetrics toRemove = jobMetricsMap.remove(jobId);
         if (toRemove != null) {
             toRemove.finish();
@@ -37,6 +37,7 @@ import com.netflix.titus.api.model.Tier;
 import com.netflix.titus.common.util.CollectionsExt;
 import com.netflix.titus.common.util.tuple.Pair;
 import com.netflix.titus.master.model.job.TitusQueuableTask;
+import com.netflix.titus.master.scheduler.SchedulingAttributes;
 import com.netflix.titus.master.scheduler.constraint.ConstraintEvaluatorTransformer;
 import com.netflix.titus.master.scheduler.constraint.SystemHardConstraint;
 import com.netflix.titus.master.scheduler.constraint.SystemSoftConstraint;
@@ -60,6 +61,7 @@ public class V3QueueableTask implements TitusQueuableTask<Job, Task> {
     private final Map<String, Double> scalarResources;
 
     private final V3QAttributes qAttributes;
+    private final SchedulingAttributes schedulingAttributes;
 
     private List<ConstraintEvaluator> hardConstraints;
     private List<VMTaskFitnessCalculator> softConstraints;
@@ -86,6 +88,7 @@ public class V3QueueableTask implements TitusQueuableTask<Job, Task> {
         this.scalarResources = buildScalarResources(job);
 
         this.qAttributes = new V3QAttributes(tier.ordinal(), capacityGroup);
+        this.schedulingAttributes = SchedulingAttributes.newV3Attributes(job, tier.ordinal());
 
         List<TwoLevelResource> twoLevelResources = task.getTwoLevelResources();
         if (!isNullOrEmpty(twoLevelResources)) {
@@ -117,6 +120,11 @@ public class V3QueueableTask implements TitusQueuableTask<Job, Task> {
         return task;
     }
 
+    @Override
+    public SchedulingAttributes getSchedulingAttributes() {
+        return schedulingAttributes;
+    }
+
     @Override
     public String getId() {
         return task.getId();
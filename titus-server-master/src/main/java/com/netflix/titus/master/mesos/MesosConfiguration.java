@@ -92,4 +92,44 @@ public interface MesosConfiguration {
      */
     @DefaultValue("./run")
     String getExecutorUriOverrideCommand();
+
+    /**
+     * @return whether or not V3 task status updates should be processed asynchronously, in batches, instead of on
+     * the Mesos driver callback thread.
+     */
+    @DefaultValue("false")
+    boolean isStatusUpdateBatchingEnabled();
+
+    /**
+     * @return maximum number of tasks with pending status updates. Updates of the same task are coalesced, and take
+     * a single slot.
+     */
+    @DefaultValue("50000")
+    int getStatusUpdateQueueCapacity();
+
+    /**
+     * @return maximum number of status updates processed in a single batch.
+     */
+    @DefaultValue("500")
+    int getStatusUpdateBatchSize();
+
+    /**
+     * @return what to do with a new status update when the queue is full: 'CallerRuns' processes it on the Mesos
+     * callback thread (after the batch in progress is done), 'Drop' discards it, leaving it to the task reconciliation.
+     */
+    @DefaultValue("CallerRuns")
+    String getStatusUpdateQueueOverflowPolicy();
+
+    /**
+     * @return maximum number of tasks included in a single task reconciliation request sent to Mesos.
+     */
+    @DefaultValue("1000")
+    int getReconcilerPageSize();
+
+    /**
+     * @return interval at which the task registry used by the reconciler is rebuilt from the job managers' state,
+     * to repair any drift from the incremental updates.
+     */
+    @DefaultValue("1800000")
+    long getTaskRegistryResyncIntervalMs();
 }
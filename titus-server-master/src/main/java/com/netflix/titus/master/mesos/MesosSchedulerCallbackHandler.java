@@ -37,15 +37,11 @@ import com.netflix.fenzo.functions.Action1;
 import com.netflix.fenzo.plugins.VMLeaseObject;
 import com.netflix.spectator.api.Counter;
 import com.netflix.spectator.api.Registry;
-import com.netflix.titus.api.jobmanager.TaskAttributes;
 import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
-import com.netflix.titus.api.jobmanager.model.job.Task;
 import com.netflix.titus.api.jobmanager.service.V3JobOperations;
 import com.netflix.titus.api.model.v2.JobCompletedReason;
 import com.netflix.titus.api.model.v2.V2JobState;
 import com.netflix.titus.api.model.v2.WorkerNaming;
-import com.netflix.titus.api.store.v2.V2JobMetadata;
-import com.netflix.titus.api.store.v2.V2WorkerMetadata;
 import com.netflix.titus.common.framework.fit.FitInjection;
 import com.netflix.titus.common.runtime.TitusRuntime;
 import com.netflix.titus.common.util.CollectionsExt;
@@ -54,7 +50,6 @@ import com.netflix.titus.common.util.StringExt;
 import com.netflix.titus.master.MetricConstants;
 import com.netflix.titus.master.Status;
 import com.netflix.titus.master.config.MasterConfiguration;
-import com.netflix.titus.master.job.V2JobMgrIntf;
 import com.netflix.titus.master.job.V2JobOperations;
 import com.netflix.titus.master.jobmanager.service.JobManagerUtil;
 import org.apache.mesos.Protos;
@@ -73,6 +68,7 @@ import org.slf4j.LoggerFactory;
 import rx.Observable;
 import rx.Observer;
 import rx.Subscription;
+import rx.observers.SerializedObserver;
 
 import static com.netflix.titus.master.mesos.MesosTracer.logMesosCallbackDebug;
 import static com.netflix.titus.master.mesos.MesosTracer.logMesosCallbackError;
@@ -99,6 +95,8 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
     private final Registry registry;
     private final Optional<FitInjection> taskStatusUpdateFitInjection;
     private final MesosStateTracker mesosStateTracker;
+    private final Optional<TaskStatusUpdateQueue> statusUpdateQueue;
+    private final MesosTaskRegistry taskRegistry;
 
     private AtomicLong lastOfferReceivedAt = new AtomicLong(System.currentTimeMillis());
     private AtomicLong lastValidOfferReceivedAt = new AtomicLong(System.currentTimeMillis());
@@ -144,7 +142,8 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
             TitusRuntime titusRuntime) {
         this.leaseHandler = leaseHandler;
         this.vmLeaseRescindedObserver = vmLeaseRescindedObserver;
-        this.vmTaskStatusObserver = vmTaskStatusObserver;
+        // Status updates may be emitted from the Mesos callback thread and the status update queue drain thread
+        this.vmTaskStatusObserver = new SerializedObserver<>(vmTaskStatusObserver);
         this.v2JobOperations = v2JobOperations;
         this.v3JobOperations = v3JobOperations;
         this.taskStatusUpdateFitInjection = taskStatusUpdateFitInjection;
@@ -152,6 +151,8 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
         this.mesosConfiguration = mesosConfiguration;
         this.registry = titusRuntime.getRegistry();
         this.mesosStateTracker = new MesosStateTracker(config, titusRuntime);
+        this.taskRegistry = new MesosTaskRegistry(v2JobOperations, v3JobOperations, mesosConfiguration, registry);
+        taskRegistry.activate();
 
         numMesosRegistered = registry.counter(MetricConstants.METRIC_MESOS + "numMesosRegistered");
         numMesosDisconnects = registry.counter(MetricConstants.METRIC_MESOS + "numMesosDisconnects");
@@ -168,6 +169,18 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
         this.localSystemErrorMessageMatcherFactory = RegExpExt.dynamicMatcher(mesosConfiguration::getLocalSystemErrorMessagePattern, "localSystemErrorMessagePattern", Pattern.DOTALL, logger);
         this.unknownSystemErrorMessageMatcherFactory = RegExpExt.dynamicMatcher(mesosConfiguration::getUnknownSystemErrorMessagePattern, "unknownSystemErrorMessagePattern", Pattern.DOTALL, logger);
 
+        if (mesosConfiguration.isStatusUpdateBatchingEnabled()) {
+            this.statusUpdateQueue = Optional.of(new TaskStatusUpdateQueue(
+                    mesosConfiguration.getStatusUpdateQueueCapacity(),
+                    mesosConfiguration.getStatusUpdateBatchSize(),
+                    TaskStatusUpdateQueue.OverflowPolicy.parse(mesosConfiguration.getStatusUpdateQueueOverflowPolicy()),
+                    this::v3StatusUpdateBatch,
+                    registry
+            ));
+        } else {
+            this.statusUpdateQueue = Optional.empty();
+        }
+
         this.subscription = Observable
                 .interval(10, 10, TimeUnit.SECONDS)
                 .doOnNext(tick -> {
@@ -182,6 +195,8 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
             if (executor != null) {
                 executor.shutdown();
             }
+            statusUpdateQueue.ifPresent(TaskStatusUpdateQueue::shutdown);
+            taskRegistry.shutdown();
             subscription.unsubscribe();
         } finally {
             connected = false;
@@ -311,65 +326,21 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
     }
 
     private void reconcileTasksKnownToUs(SchedulerDriver driver) {
-        final List<TaskStatus> tasksToInitialize = new ArrayList<>();
-
-        List<V2WorkerMetadata> runningWorkers = new ArrayList<>();
-        v2JobOperations.getAllJobMgrs().forEach(m -> {
-                    List<V2WorkerMetadata> tasks = m.getWorkers().stream()
-                            .filter(t -> t.getState() == V2JobState.Started)
-                            .collect(Collectors.toList());
-                    runningWorkers.addAll(tasks);
-                }
-        );
-        for (V2WorkerMetadata mwmd : runningWorkers) {
-            tasksToInitialize.add(TaskStatus.newBuilder()
-                    .setTaskId(
-                            Protos.TaskID.newBuilder()
-                                    .setValue(
-                                            WorkerNaming.getWorkerName(
-                                                    mwmd.getJobId(),
-                                                    mwmd.getWorkerIndex(),
-                                                    mwmd.getWorkerNumber()))
-                                    .build())
-                    .setState(TaskState.TASK_RUNNING)
-                    .setSlaveId(SlaveID.newBuilder().setValue(mwmd.getSlaveID()).build())
-                    .build()
-            );
-        }
-        for (Task task : v3JobOperations.getTasks()) {
-            com.netflix.titus.api.jobmanager.model.job.TaskState taskState = task.getStatus().getState();
-            TaskState mesosState;
-            switch (taskState) {
-                case Started:
-                    mesosState = TaskState.TASK_RUNNING;
-                    break;
-                case KillInitiated:
-                    mesosState = TaskState.TASK_KILLING;
-                    break;
-                default:
-                    mesosState = null;
-            }
-            if (mesosState != null) {
-                String taskHost = task.getTaskContext().get(TaskAttributes.TASK_ATTRIBUTES_AGENT_HOST);
-                if (taskHost != null) {
-                    tasksToInitialize.add(TaskStatus.newBuilder()
-                            .setTaskId(Protos.TaskID.newBuilder().setValue(task.getId()).build())
-                            .setState(mesosState)
-                            .setSlaveId(SlaveID.newBuilder().setValue(taskHost).build())
-                            .build()
-                    );
-                }
-            }
+        List<TaskStatus> tasksToInitialize = taskRegistry.getTasksToReconcile();
+        if (tasksToInitialize.isEmpty()) {
+            return;
         }
-        if (!tasksToInitialize.isEmpty()) {
+
+        // Large reconciliation requests are split into pages, to spread the resulting status update load.
+        int pageSize = Math.max(1, mesosConfiguration.getReconcilerPageSize());
+        for (int from = 0; from < tasksToInitialize.size(); from += pageSize) {
+            List<TaskStatus> page = tasksToInitialize.subList(from, Math.min(from + pageSize, tasksToInitialize.size()));
             Protos.Status status = traceMesosRequest(
-                    "Reconciling active tasks: count=" + tasksToInitialize.size(),
-                    () -> driver.reconcileTasks(tasksToInitialize)
+                    "Reconciling active tasks: count=" + page.size() + ", offset=" + from + ", total=" + tasksToInitialize.size(),
+                    () -> driver.reconcileTasks(page)
             );
             numReconcileTasks.increment();
-            logger.info("Sent request to reconcile " + tasksToInitialize.size() + " tasks, status=" + status);
-            logger.info("Last offer received " + (System.currentTimeMillis() - lastOfferReceivedAt.get()) / 1000 + " secs ago");
-            logger.info("Last valid offer received " + (System.currentTimeMillis() - lastValidOfferReceivedAt.get()) / 1000 + " secs ago");
+            logger.info("Sent request to reconcile " + page.size() + " tasks (offset " + from + " of " + tasksToInitialize.size() + "), status=" + status);
             switch (status) {
                 case DRIVER_ABORTED:
                 case DRIVER_STOPPED:
@@ -377,6 +348,8 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
                     System.exit(2);
             }
         }
+        logger.info("Last offer received " + (System.currentTimeMillis() - lastOfferReceivedAt.get()) / 1000 + " secs ago");
+        logger.info("Last valid offer received " + (System.currentTimeMillis() - lastValidOfferReceivedAt.get()) / 1000 + " secs ago");
     }
 
     private void reconcileAllMesosTasks(SchedulerDriver driver) {
@@ -404,26 +377,55 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
     @Override
     public void statusUpdate(final SchedulerDriver arg0, TaskStatus taskStatus) {
         String taskId = taskStatus.getTaskId().getValue();
-        TaskState taskState = taskStatus.getState();
 
         TaskStatus effectiveTaskStatus = taskStatusUpdateFitInjection.map(i -> i.afterImmediate("update", taskStatus)).orElse(taskStatus);
 
+        if (statusUpdateQueue.isPresent() && !JobFunctions.isV2Task(taskId)) {
+            statusUpdateQueue.get().offer(effectiveTaskStatus);
+            return;
+        }
+
+        if (!acceptStatusUpdate(taskStatus, effectiveTaskStatus)) {
+            return;
+        }
+        if (JobFunctions.isV2Task(taskId)) {
+            v2StatusUpdate(effectiveTaskStatus);
+        } else {
+            v3StatusUpdate(effectiveTaskStatus);
+        }
+    }
+
+    private boolean acceptStatusUpdate(TaskStatus taskStatus, TaskStatus effectiveTaskStatus) {
+        String taskId = taskStatus.getTaskId().getValue();
+
         if (isReconcilerUpdateForUnknownTask(effectiveTaskStatus)) {
             mesosStateTracker.unknownTaskStatusUpdate(taskStatus);
             if (!mesosConfiguration.isAllowReconcilerUpdatesForUnknownTasks()) {
                 logger.info("Ignoring reconciler triggered task status update: {}", taskId);
-                return;
+                return false;
             }
         } else {
             mesosStateTracker.knownTaskStatusUpdate(taskStatus);
         }
 
-        logMesosCallbackInfo("Task status update: taskId=%s, taskState=%s, message=%s", taskId, taskState, effectiveTaskStatus.getMessage());
+        logMesosCallbackInfo("Task status update: taskId=%s, taskState=%s, message=%s", taskId, taskStatus.getState(), effectiveTaskStatus.getMessage());
+        return true;
+    }
 
-        if (JobFunctions.isV2Task(taskId)) {
-            v2StatusUpdate(effectiveTaskStatus);
-        } else {
-            v3StatusUpdate(effectiveTaskStatus);
+    /**
+     * Processes a batch of V3 task status updates drained from {@link TaskStatusUpdateQueue}. The resulting events
+     * are emitted together, so updates of tasks belonging to the same job can be applied in one change action.
+     */
+    private void v3StatusUpdateBatch(List<TaskStatus> taskStatuses) {
+        List<V3ContainerEvent> events = new ArrayList<>(taskStatuses.size());
+        for (TaskStatus taskStatus : taskStatuses) {
+            if (acceptStatusUpdate(taskStatus, taskStatus)) {
+                toV3ContainerEvent(taskStatus).ifPresent(events::add);
+            }
+        }
+        if (!events.isEmpty()) {
+            logger.debug("Publishing batch of {} task status updates", events.size());
+            vmTaskStatusObserver.onNext(new V3ContainerEventBatch(events));
         }
     }
 
@@ -435,37 +437,23 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
         String taskId = taskStatus.getTaskId().getValue();
         boolean known = isKnown(taskId);
 
+        // Task id is not included as a tag, as it would create a new meter for each task.
         registry.counter(
                 MetricConstants.METRIC_MESOS + "reconcilerUpdates",
-                "taskId", taskId,
                 "known", Boolean.toString(known)
         ).increment();
+        logger.debug("Reconciler triggered task status update: taskId={}, known={}", taskId, known);
 
         return !known;
     }
 
     private boolean isKnown(String taskId) {
-        // V3 engine
-        if (!JobFunctions.isV2Task(taskId)) {
-            return v3JobOperations.findTaskById(taskId).isPresent();
+        if (taskRegistry.isKnown(taskId)) {
+            return true;
         }
-
-        // V2 engine
-        for (V2JobMgrIntf jmgr : v2JobOperations.getAllJobMgrs()) {
-            V2JobMetadata jobMetadata = jmgr.getJobMetadata();
-            if (jobMetadata != null) {
-                try {
-                    for (V2WorkerMetadata worker : jmgr.getWorkers()) {
-                        if (taskId.equals(WorkerNaming.getTaskId(worker))) {
-                            return true;
-                        }
-                    }
-                } catch (Exception ignore) {
-                    logger.debug("Error during searching through V2 tasks of job: {}", jobMetadata.getJobId());
-                }
-            }
-        }
-        return false;
+        // The registry holds active tasks only. Finished V3 tasks are kept by the job manager until archived, and
+        // can be checked with an index lookup.
+        return !JobFunctions.isV2Task(taskId) && v3JobOperations.findTaskById(taskId).isPresent();
     }
 
     private void v2StatusUpdate(TaskStatus taskStatus) {
@@ -522,6 +510,13 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
     }
 
     private void v3StatusUpdate(TaskStatus taskStatus) {
+        toV3ContainerEvent(taskStatus).ifPresent(event -> {
+            logger.debug("Publishing task status: {}", event);
+            vmTaskStatusObserver.onNext(event);
+        });
+    }
+
+    private Optional<V3ContainerEvent> toV3ContainerEvent(TaskStatus taskStatus) {
         String taskId = taskStatus.getTaskId().getValue();
         TaskState taskState = taskStatus.getState();
 
@@ -571,7 +566,7 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
                 break;
             case TASK_KILLING:
                 // Ignore today. In the future we can split Titus KillInitiated state into two steps: KillRequested and Killing.
-                return;
+                return Optional.empty();
             case TASK_FINISHED: // The task finished successfully on its own without external interference.
                 v3TaskState = com.netflix.titus.api.jobmanager.model.job.TaskState.Finished;
                 reasonCode = com.netflix.titus.api.jobmanager.model.job.TaskStatus.REASON_NORMAL;
@@ -582,7 +577,7 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
                 break;
             case TASK_UNREACHABLE: // The task was running on an agent that has lost contact with the master
                 // Ignore. We will handle this state once we add 'Disconnected' state support in Titus.
-                return;
+                return Optional.empty();
             case TASK_GONE: // The task is no longer running. This can occur if the agent has been terminated along with all of its tasks
                 v3TaskState = com.netflix.titus.api.jobmanager.model.job.TaskState.Finished;
                 reasonCode = com.netflix.titus.api.jobmanager.model.job.TaskStatus.REASON_TASK_LOST;
@@ -593,7 +588,7 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
                 break;
             default:
                 logger.warn("Unexpected Mesos task state " + effectiveState);
-                return;
+                return Optional.empty();
         }
 
         if (v3TaskState == com.netflix.titus.api.jobmanager.model.job.TaskState.Finished && !StringExt.isEmpty(taskStatus.getMessage())) {
@@ -620,17 +615,14 @@ public class MesosSchedulerCallbackHandler implements Scheduler {
             details = Optional.empty();
         }
 
-        V3ContainerEvent event = new V3ContainerEvent(
+        return Optional.of(new V3ContainerEvent(
                 taskId,
                 v3TaskState,
                 reasonCode,
                 taskStatus.getMessage(),
                 System.currentTimeMillis(),
                 details
-        );
-
-        logger.debug("Publishing task status: {}", event);
-        vmTaskStatusObserver.onNext(event);
+        ));
     }
 
     private TaskState getEffectiveState(String taskId, TaskState taskState, TaskState previous) {
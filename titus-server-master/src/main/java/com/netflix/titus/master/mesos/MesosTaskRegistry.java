@@ -0,0 +1,298 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.mesos;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import com.netflix.titus.api.jobmanager.TaskAttributes;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.event.JobManagerEvent;
+import com.netflix.titus.api.jobmanager.model.job.event.TaskUpdateEvent;
+import com.netflix.titus.api.jobmanager.service.V3JobOperations;
+import com.netflix.titus.api.model.v2.V2JobState;
+import com.netflix.titus.api.model.v2.WorkerNaming;
+import com.netflix.titus.api.store.v2.V2JobMetadata;
+import com.netflix.titus.api.store.v2.V2WorkerMetadata;
+import com.netflix.titus.master.MetricConstants;
+import com.netflix.titus.master.Status;
+import com.netflix.titus.master.job.V2JobMgrIntf;
+import com.netflix.titus.master.job.V2JobOperations;
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.SlaveID;
+import org.apache.mesos.Protos.TaskState;
+import org.apache.mesos.Protos.TaskStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Subscription;
+import rx.subscriptions.CompositeSubscription;
+
+/**
+ * Index of all active V2 and V3 tasks, used by the Mesos callback handler to resolve task ids in constant time, and to
+ * build task reconciliation requests without scanning the job managers. The index is maintained incrementally from
+ * the V2 job manager status streams, and the V3 job manager event stream. As these streams are not synchronized with
+ * the initial state load, the index is periodically rebuilt from the job managers to repair any drift.
+ */
+class MesosTaskRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(MesosTaskRegistry.class);
+
+    private static final String METRIC_ROOT = MetricConstants.METRIC_MESOS + "taskRegistry.";
+
+    enum Engine {V2, V3}
+
+    private final V2JobOperations v2JobOperations;
+    private final V3JobOperations v3JobOperations;
+    private final MesosConfiguration mesosConfiguration;
+    private final Registry registry;
+
+    private final ConcurrentMap<String, TaskEntry> tasks = new ConcurrentHashMap<>();
+    private final Set<String> subscribedV2Jobs = ConcurrentHashMap.newKeySet();
+    private final CompositeSubscription subscriptions = new CompositeSubscription();
+
+    private final Counter resyncCounter;
+    private final Counter driftCounter;
+
+    private volatile long lastResyncTimestamp;
+    private volatile boolean shutdown;
+
+    MesosTaskRegistry(V2JobOperations v2JobOperations,
+                      V3JobOperations v3JobOperations,
+                      MesosConfiguration mesosConfiguration,
+                      Registry registry) {
+        this.v2JobOperations = v2JobOperations;
+        this.v3JobOperations = v3JobOperations;
+        this.mesosConfiguration = mesosConfiguration;
+        this.registry = registry;
+
+        this.resyncCounter = registry.counter(METRIC_ROOT + "resyncs");
+        this.driftCounter = registry.counter(METRIC_ROOT + "drift");
+        PolledMeter.using(registry).withName(METRIC_ROOT + "tasks").monitorValue(tasks, Map::size);
+    }
+
+    void activate() {
+        subscriptions.add(v3JobOperations.observeJobs()
+                .doOnError(e -> logger.warn("V3 job event stream terminated with an error; re-subscribing", e))
+                .retry()
+                .subscribe(this::onV3Event)
+        );
+        subscriptions.add(v2JobOperations.getJobCreationPublishSubject().subscribe(
+                this::subscribeToV2Job,
+                e -> logger.warn("V2 job creation stream terminated with an error", e)
+        ));
+        v2JobOperations.getAllJobMgrs().forEach(this::subscribeToV2Job);
+        resync();
+    }
+
+    void shutdown() {
+        shutdown = true;
+        subscriptions.unsubscribe();
+    }
+
+    boolean isKnown(String taskId) {
+        return tasks.containsKey(taskId);
+    }
+
+    /**
+     * Returns the status of all tasks which Mesos should confirm, which are running tasks with a known agent. The
+     * registry is rebuilt first, if the resync interval has elapsed.
+     */
+    List<TaskStatus> getTasksToReconcile() {
+        if (registry.clock().wallTime() - lastResyncTimestamp >= mesosConfiguration.getTaskRegistryResyncIntervalMs()) {
+            resync();
+        }
+        List<TaskStatus> result = new ArrayList<>();
+        tasks.forEach((taskId, entry) -> {
+            if (entry.getReconciliationState() != null && entry.getAgentId() != null) {
+                result.add(TaskStatus.newBuilder()
+                        .setTaskId(Protos.TaskID.newBuilder().setValue(taskId).build())
+                        .setState(entry.getReconciliationState())
+                        .setSlaveId(SlaveID.newBuilder().setValue(entry.getAgentId()).build())
+                        .build()
+                );
+            }
+        });
+        return result;
+    }
+
+    int size() {
+        return tasks.size();
+    }
+
+    private void resync() {
+        Map<String, TaskEntry> current = new HashMap<>();
+        v2JobOperations.getAllJobMgrs().forEach(jobMgr -> {
+            try {
+                for (V2WorkerMetadata worker : jobMgr.getWorkers()) {
+                    if (!V2JobState.isTerminalState(worker.getState())) {
+                        current.put(WorkerNaming.getTaskId(worker), newV2Entry(worker.getState(), worker.getSlaveID()));
+                    }
+                }
+            } catch (Exception e) {
+                logger.debug("Error during loading V2 tasks of job: {}", jobMgr.getJobId(), e);
+            }
+        });
+        for (Task task : v3JobOperations.getTasks()) {
+            if (task.getStatus().getState() != com.netflix.titus.api.jobmanager.model.job.TaskState.Finished) {
+                current.put(task.getId(), newV3Entry(task));
+            }
+        }
+
+        int removed = 0;
+        for (String taskId : tasks.keySet()) {
+            if (!current.containsKey(taskId) && tasks.remove(taskId) != null) {
+                removed++;
+            }
+        }
+        int added = 0;
+        for (Map.Entry<String, TaskEntry> entry : current.entrySet()) {
+            if (tasks.put(entry.getKey(), entry.getValue()) == null) {
+                added++;
+            }
+        }
+
+        lastResyncTimestamp = registry.clock().wallTime();
+        resyncCounter.increment();
+        if (added + removed > 0) {
+            driftCounter.increment(added + removed);
+            logger.info("Task registry resynchronized: tasks={}, added={}, removed={}", tasks.size(), added, removed);
+        }
+    }
+
+    private void onV3Event(JobManagerEvent<?> event) {
+        if (shutdown || !(event instanceof TaskUpdateEvent)) {
+            return;
+        }
+        Task task = ((TaskUpdateEvent) event).getCurrentTask();
+        if (task.getStatus().getState() == com.netflix.titus.api.jobmanager.model.job.TaskState.Finished) {
+            tasks.remove(task.getId());
+        } else {
+            tasks.put(task.getId(), newV3Entry(task));
+        }
+    }
+
+    private void subscribeToV2Job(V2JobMgrIntf jobMgr) {
+        if (shutdown || jobMgr.getStatusSubject() == null || !subscribedV2Jobs.add(jobMgr.getJobId())) {
+            return;
+        }
+        String jobId = jobMgr.getJobId();
+
+        // The subscription is tracked, so shutdown releases it. It is removed once the job status stream terminates.
+        AtomicReference<Subscription> subscriptionRef = new AtomicReference<>();
+        Runnable onTerminated = () -> {
+            subscribedV2Jobs.remove(jobId);
+            Subscription current = subscriptionRef.get();
+            if (current != null) {
+                subscriptions.remove(current);
+            }
+        };
+        Subscription subscription = jobMgr.getStatusSubject().subscribe(
+                status -> onV2Status(jobMgr, status),
+                e -> {
+                    logger.warn("V2 job {} status stream terminated with an error", jobId, e);
+                    onTerminated.run();
+                },
+                onTerminated::run
+        );
+        subscriptionRef.set(subscription);
+        subscriptions.add(subscription);
+        if (subscription.isUnsubscribed()) {
+            // Terminated before the reference was set
+            subscriptions.remove(subscription);
+        }
+    }
+
+    private void onV2Status(V2JobMgrIntf jobMgr, Status status) {
+        if (shutdown || status.getWorkerIndex() < 0) {
+            return; // Status of the job itself
+        }
+        String taskId = WorkerNaming.getWorkerName(jobMgr.getJobId(), status.getWorkerIndex(), status.getWorkerNumber());
+        V2JobState state = status.getState();
+        if (V2JobState.isTerminalState(state)) {
+            tasks.remove(taskId);
+            return;
+        }
+        String agentId = null;
+        if (state == V2JobState.Started) {
+            try {
+                V2JobMetadata jobMetadata = jobMgr.getJobMetadata();
+                V2WorkerMetadata worker = jobMetadata == null ? null : jobMetadata.getWorkerByNumber(status.getWorkerNumber());
+                agentId = worker == null ? null : worker.getSlaveID();
+            } catch (Exception e) {
+                logger.debug("Cannot resolve agent of V2 task {}", taskId, e);
+            }
+        }
+        tasks.put(taskId, newV2Entry(state, agentId));
+    }
+
+    private static TaskEntry newV2Entry(V2JobState state, String agentId) {
+        TaskState reconciliationState = state == V2JobState.Started ? TaskState.TASK_RUNNING : null;
+        return new TaskEntry(Engine.V2, reconciliationState, agentId);
+    }
+
+    private static TaskEntry newV3Entry(Task task) {
+        TaskState reconciliationState;
+        switch (task.getStatus().getState()) {
+            case Started:
+                reconciliationState = TaskState.TASK_RUNNING;
+                break;
+            case KillInitiated:
+                reconciliationState = TaskState.TASK_KILLING;
+                break;
+            default:
+                reconciliationState = null;
+        }
+        return new TaskEntry(Engine.V3, reconciliationState, task.getTaskContext().get(TaskAttributes.TASK_ATTRIBUTES_AGENT_HOST));
+    }
+
+    static class TaskEntry {
+
+        private final Engine engine;
+        private final TaskState reconciliationState;
+        private final String agentId;
+
+        TaskEntry(Engine engine, TaskState reconciliationState, String agentId) {
+            this.engine = engine;
+            this.reconciliationState = reconciliationState;
+            this.agentId = agentId;
+        }
+
+        Engine getEngine() {
+            return engine;
+        }
+
+        /**
+         * Mesos task state expected by Titus, or null if the task should not be included in the reconciliation.
+         */
+        TaskState getReconciliationState() {
+            return reconciliationState;
+        }
+
+        String getAgentId() {
+            return agentId;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.mesos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.DistributionSummary;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.Timer;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import com.netflix.titus.master.MetricConstants;
+import org.apache.mesos.Protos.TaskState;
+import org.apache.mesos.Protos.TaskStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded queue decoupling the Mesos driver callback thread from the task status update processing. Pending updates
+ * of the same task are coalesced, so only the most recent one is processed, except that a terminal update is never
+ * replaced by a later one. The updates are drained by a dedicated thread, and handed over to the processor in batches.
+ * When the queue is full, the update of a task not already in the queue is handled according to {@link OverflowPolicy}.
+ */
+class TaskStatusUpdateQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskStatusUpdateQueue.class);
+
+    private static final String METRIC_ROOT = MetricConstants.METRIC_MESOS + "statusUpdateQueue.";
+
+    enum OverflowPolicy {
+        /**
+         * Process the update on the caller thread, after the batch in progress is completed.
+         */
+        CallerRuns,
+
+        /**
+         * Discard the update. The task state is eventually fixed by the Mesos task reconciliation.
+         */
+        Drop;
+
+        static OverflowPolicy parse(String value) {
+            for (OverflowPolicy policy : values()) {
+                if (policy.name().equalsIgnoreCase(value)) {
+                    return policy;
+                }
+            }
+            logger.warn("Unknown status update queue overflow policy {}; using {}", value, CallerRuns);
+            return CallerRuns;
+        }
+    }
+
+    private final int capacity;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final Consumer<List<TaskStatus>> batchProcessor;
+    private final Registry registry;
+
+    private final Object lock = new Object();
+    private final Map<String, PendingUpdate> pending = new LinkedHashMap<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    /**
+     * Held while a batch is processed, so updates handled by the {@link OverflowPolicy#CallerRuns} policy do not
+     * overtake earlier updates of the same task.
+     */
+    private final Object processingLock = new Object();
+
+    private final Thread drainThread;
+    private volatile boolean shutdown;
+
+    private final Counter updatesCounter;
+    private final Counter coalescedCounter;
+    private final Counter overflowCounter;
+    private final Timer queueLatency;
+    private final DistributionSummary batchSizeSummary;
+
+    TaskStatusUpdateQueue(int capacity,
+                          int batchSize,
+                          OverflowPolicy overflowPolicy,
+                          Consumer<List<TaskStatus>> batchProcessor,
+                          Registry registry) {
+        this.capacity = Math.max(1, capacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.overflowPolicy = overflowPolicy;
+        this.batchProcessor = batchProcessor;
+        this.registry = registry;
+
+        this.updatesCounter = registry.counter(METRIC_ROOT + "updates");
+        this.coalescedCounter = registry.counter(METRIC_ROOT + "coalesced");
+        this.overflowCounter = registry.counter(METRIC_ROOT + "overflow", "policy", overflowPolicy.name());
+        this.queueLatency = registry.timer(METRIC_ROOT + "queueLatency");
+        this.batchSizeSummary = registry.distributionSummary(METRIC_ROOT + "batchSize");
+        PolledMeter.using(registry).withName(METRIC_ROOT + "queueDepth").monitorValue(queueDepth);
+
+        this.drainThread = new Thread(this::drainLoop, "mesos-status-update-drainer");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    void shutdown() {
+        shutdown = true;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Enqueues the status update, or handles it according to the overflow policy if the queue is full.
+     */
+    void offer(TaskStatus taskStatus) {
+        updatesCounter.increment();
+        String taskId = taskStatus.getTaskId().getValue();
+
+        synchronized (lock) {
+            PendingUpdate previous = pending.get(taskId);
+            if (previous != null) {
+                coalescedCounter.increment();
+                if (shouldReplace(previous.taskStatus.getState(), taskStatus.getState())) {
+                    previous.taskStatus = taskStatus;
+                }
+                return;
+            }
+            if (pending.size() < capacity) {
+                pending.put(taskId, new PendingUpdate(taskStatus, registry.clock().monotonicTime()));
+                queueDepth.set(pending.size());
+                lock.notifyAll();
+                return;
+            }
+        }
+
+        overflowCounter.increment();
+        if (overflowPolicy == OverflowPolicy.Drop) {
+            logger.warn("Status update queue full; dropping update of task {} to state {}", taskId, taskStatus.getState());
+            return;
+        }
+        process(Collections.singletonList(taskStatus));
+    }
+
+    @VisibleForTesting
+    int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    private void drainLoop() {
+        while (!shutdown) {
+            List<TaskStatus> batch;
+            try {
+                batch = takeBatch();
+            } catch (InterruptedException e) {
+                logger.info("Status update drain thread interrupted; terminating it");
+                return;
+            }
+            if (!batch.isEmpty()) {
+                process(batch);
+            }
+        }
+    }
+
+    private List<TaskStatus> takeBatch() throws InterruptedException {
+        long now;
+        List<PendingUpdate> updates = new ArrayList<>();
+        synchronized (lock) {
+            while (pending.isEmpty() && !shutdown) {
+                lock.wait();
+            }
+            Iterator<PendingUpdate> it = pending.values().iterator();
+            while (it.hasNext() && updates.size() < batchSize) {
+                updates.add(it.next());
+                it.remove();
+            }
+            queueDepth.set(pending.size());
+            now = registry.clock().monotonicTime();
+        }
+
+        List<TaskStatus> batch = new ArrayList<>(updates.size());
+        for (PendingUpdate update : updates) {
+            queueLatency.record(now - update.enqueueTime, TimeUnit.NANOSECONDS);
+            batch.add(update.taskStatus);
+        }
+        return batch;
+    }
+
+    private void process(List<TaskStatus> batch) {
+        batchSizeSummary.record(batch.size());
+        synchronized (processingLock) {
+            try {
+                batchProcessor.accept(batch);
+            } catch (Exception e) {
+                logger.warn("Unexpected error during processing of {} task status updates", batch.size(), e);
+            }
+        }
+    }
+
+    /**
+     * A terminal state is never replaced. Transient states, which do not change the Titus task state (killing,
+     * unreachable), do not replace the state they follow.
+     */
+    private static boolean shouldReplace(TaskState pendingState, TaskState newState) {
+        switch (pendingState) {
+            case TASK_STAGING:
+            case TASK_STARTING:
+            case TASK_RUNNING:
+            case TASK_KILLING:
+            case TASK_UNREACHABLE:
+                return newState != TaskState.TASK_KILLING && newState != TaskState.TASK_UNREACHABLE;
+        }
+        return false;
+    }
+
+    private static class PendingUpdate {
+
+        private TaskStatus taskStatus;
+        private final long enqueueTime;
+
+        private PendingUpdate(TaskStatus taskStatus, long enqueueTime) {
+            this.taskStatus = taskStatus;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+}
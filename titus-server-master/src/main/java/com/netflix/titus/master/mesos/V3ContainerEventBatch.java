@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.mesos;
+
+import java.util.List;
+
+/**
+ * A batch of V3 container events, emitted when Mesos status updates are processed in batches. Events for tasks
+ * of the same job are expected to be applied together.
+ */
+public class V3ContainerEventBatch implements ContainerEvent {
+
+    private final List<V3ContainerEvent> events;
+
+    public V3ContainerEventBatch(List<V3ContainerEvent> events) {
+        this.events = events;
+    }
+
+    public List<V3ContainerEvent> getEvents() {
+        return events;
+    }
+
+    @Override
+    public String toString() {
+        return "V3ContainerEventBatch{" +
+                "events=" + events +
+                '}';
+    }
+}
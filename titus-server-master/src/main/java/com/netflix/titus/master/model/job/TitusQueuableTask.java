@@ -17,6 +17,7 @@
 package com.netflix.titus.master.model.job;
 
 import com.netflix.fenzo.queues.QueuableTask;
+import com.netflix.titus.master.scheduler.SchedulingAttributes;
 
 /**
  * Titus extension of Fenzo's {@link QueuableTask} API.
@@ -32,4 +33,9 @@ public interface TitusQueuableTask<JOB, TASK> extends QueuableTask {
      * Titus task instance associated with the given Fenzo task.
      */
     TASK getTask();
+
+    /**
+     * Job level attributes used by the fitness calculators, computed once when the task is created.
+     */
+    SchedulingAttributes getSchedulingAttributes();
 }
@@ -171,6 +171,7 @@ public class DefaultSchedulingService implements SchedulingService {
     private final Scheduler threadScheduler;
     private final TitusRuntime titusRuntime;
     private final AgentResourceCache agentResourceCache;
+    private final TaskStateSnapshotManager taskStateSnapshotManager;
     private final AgentResourceCacheUpdater agentResourceCacheUpdater;
     private final BlockingQueue<Map<String, com.netflix.fenzo.functions.Action1<List<TaskAssignmentResult>>>>
             taskFailuresActions = new LinkedBlockingQueue<>(5);
@@ -203,6 +204,7 @@ public class DefaultSchedulingService implements SchedulingService {
                                     TitusRuntime titusRuntime,
                                     RxEventBus rxEventBus,
                                     AgentResourceCache agentResourceCache,
+                                    TaskStateSnapshotManager taskStateSnapshotManager,
                                     Config config) {
         this(v2JobOperations, v3JobOperations, agentManagementService, autoScaleController, v3TaskInfoFactory, vmOps,
                 virtualMachineService, masterConfiguration, schedulerConfiguration,
@@ -210,7 +212,7 @@ public class DefaultSchedulingService implements SchedulingService {
                 Schedulers.computation(),
                 tierSlaUpdater, registry, scaleDownOrderEvaluator, weightedScaleDownConstraintEvaluators,
                 preferentialNamedConsumableResourceEvaluator,
-                taskMigrator, titusRuntime, rxEventBus, agentResourceCache, config
+                taskMigrator, titusRuntime, rxEventBus, agentResourceCache, taskStateSnapshotManager, config
         );
     }
 
@@ -236,6 +238,7 @@ public class DefaultSchedulingService implements SchedulingService {
                                     TitusRuntime titusRuntime,
                                     RxEventBus rxEventBus,
                                     AgentResourceCache agentResourceCache,
+                                    TaskStateSnapshotManager taskStateSnapshotManager,
                                     Config config) {
         this.v2JobOperations = v2JobOperations;
         this.agentManagementService = agentManagementService;
@@ -251,6 +254,7 @@ public class DefaultSchedulingService implements SchedulingService {
         this.taskMigrator = taskMigrator;
         this.titusRuntime = titusRuntime;
         this.agentResourceCache = agentResourceCache;
+        this.taskStateSnapshotManager = taskStateSnapshotManager;
         this.systemSoftConstraint = systemSoftConstraint;
         this.systemHardConstraint = systemHardConstraint;
         agentResourceCacheUpdater = new AgentResourceCacheUpdater(titusRuntime, agentResourceCache, v3JobOperations, rxEventBus);
@@ -269,7 +273,7 @@ public class DefaultSchedulingService implements SchedulingService {
         TaskScheduler.Builder schedulerBuilder = new TaskScheduler.Builder()
                 .withLeaseRejectAction(virtualMachineService::rejectLease)
                 .withLeaseOfferExpirySecs(masterConfiguration.getMesosLeaseOfferExpirySecs())
-                .withFitnessCalculator(new TitusFitnessCalculator(schedulerConfiguration, agentResourceCache))
+                .withFitnessCalculator(new TitusFitnessCalculator(schedulerConfiguration, agentResourceCache, taskStateSnapshotManager))
                 .withFitnessGoodEnoughFunction(TitusFitnessCalculator.fitnessGoodEnoughFunction)
                 .withAutoScaleByAttributeName(masterConfiguration.getAutoscaleByAttributeName())
                 .withScaleDownOrderEvaluator(scaleDownOrderEvaluator)
@@ -521,6 +525,7 @@ public class DefaultSchedulingService implements SchedulingService {
     }
 
     private void preSchedulingHook() {
+        taskStateSnapshotManager.refresh();
         systemHardConstraint.prepare();
         setupTierAutoscalerConfig();
     }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.scheduler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.netflix.fenzo.TaskRequest;
+import com.netflix.titus.master.scheduler.resourcecache.AgentResourceCacheImage;
+
+/**
+ * Aggregated {@link SchedulingAttributes} of the tasks running on an agent. The running tasks do not change during
+ * a scheduling iteration, so the counters are computed once per agent, and fitness calculators only need to
+ * examine the tasks assigned to the agent in the current iteration.
+ */
+public final class RunningTaskSummary {
+
+    private final int totalTasks;
+    private final int serviceJobTasks;
+    private final Map<AgentResourceCacheImage, Integer> imageCounts;
+    private final Map<String, Integer> securityGroupCounts;
+
+    private RunningTaskSummary(int totalTasks,
+                               int serviceJobTasks,
+                               Map<AgentResourceCacheImage, Integer> imageCounts,
+                               Map<String, Integer> securityGroupCounts) {
+        this.totalTasks = totalTasks;
+        this.serviceJobTasks = serviceJobTasks;
+        this.imageCounts = imageCounts;
+        this.securityGroupCounts = securityGroupCounts;
+    }
+
+    public int getTotalTasks() {
+        return totalTasks;
+    }
+
+    public int getServiceJobTasks() {
+        return serviceJobTasks;
+    }
+
+    /**
+     * Returns the number of tasks that are not service job tasks. Tasks with an unknown job type are counted as
+     * batch tasks.
+     */
+    public int getBatchJobTasks() {
+        return totalTasks - serviceJobTasks;
+    }
+
+    public int getImageCount(AgentResourceCacheImage image) {
+        return imageCounts.getOrDefault(image, 0);
+    }
+
+    public int getSecurityGroupCount(String joinedSecurityGroupIds) {
+        return securityGroupCounts.getOrDefault(joinedSecurityGroupIds, 0);
+    }
+
+    public static RunningTaskSummary newSummary(Iterable<TaskRequest> runningTasks) {
+        int totalTasks = 0;
+        int serviceJobTasks = 0;
+        Map<AgentResourceCacheImage, Integer> imageCounts = new HashMap<>();
+        Map<String, Integer> securityGroupCounts = new HashMap<>();
+        for (TaskRequest request : runningTasks) {
+            SchedulingAttributes attributes = SchedulingAttributes.of(request);
+            totalTasks++;
+            if (attributes.isServiceJob()) {
+                serviceJobTasks++;
+            }
+            imageCounts.merge(attributes.getImage(), 1, Integer::sum);
+            securityGroupCounts.merge(attributes.getJoinedSecurityGroupIds(), 1, Integer::sum);
+        }
+        return new RunningTaskSummary(totalTasks, serviceJobTasks, imageCounts, securityGroupCounts);
+    }
+}
@@ -69,6 +69,7 @@ public class ScheduledRequest implements TitusQueuableTask<V2JobMetadata, V2Work
     private final Map<String, NamedResourceSetRequest> namedResources = new HashMap<>();
     private AssignedResources assignedResources = null;
     private final QAttributes qAttributes;
+    private final SchedulingAttributes schedulingAttributes;
 
     private static String getConcatenatedString(List<String> strings) {
         return String.join(":", strings);
@@ -138,6 +139,7 @@ public class ScheduledRequest implements TitusQueuableTask<V2JobMetadata, V2Work
 
         this.job = jobMgr.getJobMetadata();
         this.task = task;
+        this.schedulingAttributes = SchedulingAttributes.newV2Attributes(job, qAttributes.getTierNumber());
     }
 
     private void setupCustomNamedResources(WorkerRequest request) {
@@ -301,4 +303,9 @@ public class ScheduledRequest implements TitusQueuableTask<V2JobMetadata, V2Work
     public V2WorkerMetadata getTask() {
         return task;
     }
+
+    @Override
+    public SchedulingAttributes getSchedulingAttributes() {
+        return schedulingAttributes;
+    }
 }
@@ -74,6 +74,13 @@ public interface SchedulerConfiguration {
     @DefaultValue("false")
     boolean isSystemSelectorsEnabled();
 
+    /**
+     * @return whether or not to evaluate system selector expressions with the built-in expression compiler. Expressions
+     * not supported by the compiler are always evaluated by the script engine.
+     */
+    @DefaultValue("true")
+    boolean isSystemSelectorExpressionCompilerEnabled();
+
     @DefaultValue("true")
     boolean isExitUponFenzoSchedulingErrorEnabled();
 
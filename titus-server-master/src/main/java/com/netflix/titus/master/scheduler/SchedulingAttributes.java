@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.scheduler;
+
+import java.util.List;
+
+import com.netflix.fenzo.TaskRequest;
+import com.netflix.fenzo.queues.QueuableTask;
+import com.netflix.titus.api.jobmanager.model.job.Container;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobDescriptor;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.jobmanager.model.job.ext.ServiceJobExt;
+import com.netflix.titus.api.model.v2.parameter.Parameter;
+import com.netflix.titus.api.model.v2.parameter.Parameters;
+import com.netflix.titus.api.store.v2.V2JobMetadata;
+import com.netflix.titus.common.util.StringExt;
+import com.netflix.titus.master.jobmanager.service.common.V3QueueableTask;
+import com.netflix.titus.master.model.job.TitusQueuableTask;
+import com.netflix.titus.master.scheduler.resourcecache.AgentResourceCacheFunctions;
+import com.netflix.titus.master.scheduler.resourcecache.AgentResourceCacheImage;
+
+/**
+ * Job level attributes used by the fitness calculators. They do not change during the lifetime of a task, so they
+ * are computed once when a task is added to the scheduling queue, instead of for each task/agent pair evaluated
+ * by Fenzo.
+ */
+public final class SchedulingAttributes {
+
+    public enum JobType {Batch, Service, Unknown}
+
+    private static final int UNKNOWN_TIER = -1;
+
+    private static final SchedulingAttributes UNKNOWN = new SchedulingAttributes(
+            JobType.Unknown, UNKNOWN_TIER, AgentResourceCacheFunctions.EMPTY_JOINED_SECURITY_GROUP_IDS, AgentResourceCacheImage.newBuilder().build()
+    );
+
+    private final JobType jobType;
+    private final int tierNumber;
+    private final String joinedSecurityGroupIds;
+    private final AgentResourceCacheImage image;
+
+    private SchedulingAttributes(JobType jobType, int tierNumber, String joinedSecurityGroupIds, AgentResourceCacheImage image) {
+        this.jobType = jobType;
+        this.tierNumber = tierNumber;
+        this.joinedSecurityGroupIds = joinedSecurityGroupIds;
+        this.image = image;
+    }
+
+    public JobType getJobType() {
+        return jobType;
+    }
+
+    public boolean isBatchJob() {
+        return jobType == JobType.Batch;
+    }
+
+    public boolean isServiceJob() {
+        return jobType == JobType.Service;
+    }
+
+    public int getTierNumber() {
+        return tierNumber;
+    }
+
+    public String getJoinedSecurityGroupIds() {
+        return joinedSecurityGroupIds;
+    }
+
+    public AgentResourceCacheImage getImage() {
+        return image;
+    }
+
+    @Override
+    public String toString() {
+        return "SchedulingAttributes{" +
+                "jobType=" + jobType +
+                ", tierNumber=" + tierNumber +
+                ", joinedSecurityGroupIds='" + joinedSecurityGroupIds + '\'' +
+                ", image=" + image +
+                '}';
+    }
+
+    public static SchedulingAttributes newV3Attributes(Job<?> job, int tierNumber) {
+        JobDescriptor.JobDescriptorExt extensions = job.getJobDescriptor().getExtensions();
+        JobType jobType;
+        if (extensions instanceof BatchJobExt) {
+            jobType = JobType.Batch;
+        } else if (extensions instanceof ServiceJobExt) {
+            jobType = JobType.Service;
+        } else {
+            jobType = JobType.Unknown;
+        }
+        Container container = job.getJobDescriptor().getContainer();
+        String joinedSecurityGroupIds = StringExt.concatenate(
+                container.getSecurityProfile().getSecurityGroups(), AgentResourceCacheFunctions.SECURITY_GROUP_ID_DELIMITER
+        );
+        return new SchedulingAttributes(jobType, tierNumber, joinedSecurityGroupIds, AgentResourceCacheFunctions.createImage(job));
+    }
+
+    public static SchedulingAttributes newV2Attributes(V2JobMetadata job, int tierNumber) {
+        if (job == null) {
+            return new SchedulingAttributes(JobType.Unknown, tierNumber, UNKNOWN.joinedSecurityGroupIds, UNKNOWN.image);
+        }
+        List<Parameter> parameters = job.getParameters();
+        Parameters.JobType v2JobType = Parameters.getJobType(parameters);
+        JobType jobType;
+        if (v2JobType == Parameters.JobType.Batch) {
+            jobType = JobType.Batch;
+        } else if (v2JobType == Parameters.JobType.Service) {
+            jobType = JobType.Service;
+        } else {
+            jobType = JobType.Unknown;
+        }
+        String joinedSecurityGroupIds = StringExt.concatenate(
+                Parameters.getSecurityGroups(parameters), AgentResourceCacheFunctions.SECURITY_GROUP_ID_DELIMITER
+        );
+        return new SchedulingAttributes(jobType, tierNumber, joinedSecurityGroupIds, AgentResourceCacheFunctions.createImage(job));
+    }
+
+    /**
+     * Returns the attributes precomputed by a Titus task, or computes them for other {@link TaskRequest} types.
+     */
+    public static SchedulingAttributes of(TaskRequest taskRequest) {
+        if (taskRequest instanceof TitusQueuableTask) {
+            SchedulingAttributes attributes = ((TitusQueuableTask<?, ?>) taskRequest).getSchedulingAttributes();
+            if (attributes != null) {
+                return attributes;
+            }
+        }
+        if (taskRequest instanceof ScheduledRequest) {
+            ScheduledRequest scheduledRequest = (ScheduledRequest) taskRequest;
+            return newV2Attributes(scheduledRequest.getJob(), scheduledRequest.getQAttributes().getTierNumber());
+        } else if (taskRequest instanceof V3QueueableTask) {
+            V3QueueableTask v3QueueableTask = (V3QueueableTask) taskRequest;
+            return newV3Attributes(v3QueueableTask.getJob(), v3QueueableTask.getQAttributes().getTierNumber());
+        } else if (taskRequest instanceof QueuableTask) {
+            int tierNumber = ((QueuableTask) taskRequest).getQAttributes().getTierNumber();
+            return new SchedulingAttributes(JobType.Unknown, tierNumber, UNKNOWN.joinedSecurityGroupIds, UNKNOWN.image);
+        }
+        return UNKNOWN;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.scheduler;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.netflix.fenzo.TaskRequest;
+import com.netflix.fenzo.VirtualMachineCurrentState;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.model.v2.V2JobState;
+import com.netflix.titus.api.store.v2.V2WorkerMetadata;
+import com.netflix.titus.master.jobmanager.service.common.V3QueueableTask;
+
+/**
+ * Task states captured at the beginning of a scheduling iteration. Constraint evaluators and fitness calculators are
+ * invoked for each task/agent pair, so instead of querying the job management layer, they should read the current
+ * task state from this snapshot in O(1).
+ */
+public class TaskStateSnapshot {
+
+    private final Map<String, TaskState> v3TaskStates;
+
+    /**
+     * The running tasks of an agent do not change during a scheduling iteration, so the count is computed once
+     * per host.
+     */
+    private final ConcurrentMap<String, Integer> launchingTaskCountByHost = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, RunningTaskSummary> runningTaskSummaryByHost = new ConcurrentHashMap<>();
+
+    private TaskStateSnapshot(Map<String, TaskState> v3TaskStates) {
+        this.v3TaskStates = v3TaskStates;
+    }
+
+    public int size() {
+        return v3TaskStates.size();
+    }
+
+    public Optional<TaskState> findV3TaskState(String taskId) {
+        return Optional.ofNullable(v3TaskStates.get(taskId));
+    }
+
+    /**
+     * Returns true if a task is in the Accepted, Launched or StartInitiated state. V3 tasks not present in the snapshot
+     * (for example already removed from the job manager) are not launching.
+     */
+    public boolean isTaskLaunching(TaskRequest request) {
+        if (request instanceof ScheduledRequest) {
+            V2WorkerMetadata task = ((ScheduledRequest) request).getTask();
+            V2JobState state = task.getState();
+            return state == V2JobState.Accepted || state == V2JobState.Launched || state == V2JobState.StartInitiated;
+        } else if (request instanceof V3QueueableTask) {
+            TaskState state = v3TaskStates.get(((V3QueueableTask) request).getTask().getId());
+            return state == TaskState.Accepted || state == TaskState.Launched || state == TaskState.StartInitiated;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of launching tasks among the tasks running on the given agent. Tasks assigned to the agent
+     * in the current scheduling iteration are not included.
+     */
+    public int getLaunchingTaskCount(VirtualMachineCurrentState targetVM) {
+        return launchingTaskCountByHost.computeIfAbsent(targetVM.getHostname(), hostname -> {
+            int count = 0;
+            for (TaskRequest request : targetVM.getRunningTasks()) {
+                if (isTaskLaunching(request)) {
+                    count++;
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Returns the aggregated scheduling attributes of the tasks running on the given agent. Tasks assigned to
+     * the agent in the current scheduling iteration are not included.
+     */
+    public RunningTaskSummary getRunningTaskSummary(VirtualMachineCurrentState targetVM) {
+        return runningTaskSummaryByHost.computeIfAbsent(
+                targetVM.getHostname(), hostname -> RunningTaskSummary.newSummary(targetVM.getRunningTasks())
+        );
+    }
+
+    /**
+     * Returns a snapshot with the same task states, but without the agent data computed during the previous
+     * scheduling iteration.
+     */
+    public TaskStateSnapshot copy() {
+        return new TaskStateSnapshot(v3TaskStates);
+    }
+
+    public static TaskStateSnapshot empty() {
+        return new TaskStateSnapshot(Collections.emptyMap());
+    }
+
+    public static TaskStateSnapshot newSnapshot(Collection<Task> v3Tasks) {
+        Map<String, TaskState> v3TaskStates = new HashMap<>(v3Tasks.size() * 2);
+        for (Task task : v3Tasks) {
+            v3TaskStates.put(task.getId(), task.getStatus().getState());
+        }
+        return new TaskStateSnapshot(v3TaskStates);
+    }
+}
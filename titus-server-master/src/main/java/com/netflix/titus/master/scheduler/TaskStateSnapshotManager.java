@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.scheduler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.Timer;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import com.netflix.titus.api.jobmanager.service.V3JobOperations;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.util.time.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.netflix.titus.master.MetricConstants.METRIC_SCHEDULING_SERVICE;
+
+/**
+ * Builds a new {@link TaskStateSnapshot} at the beginning of each scheduling iteration, and makes it available to
+ * the constraint evaluators and fitness calculators.
+ */
+@Singleton
+public class TaskStateSnapshotManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskStateSnapshotManager.class);
+
+    private static final String METRIC_ROOT = METRIC_SCHEDULING_SERVICE + "taskStateSnapshot.";
+
+    private final V3JobOperations v3JobOperations;
+    private final Clock clock;
+
+    private final Timer buildTimer;
+    private final Counter buildErrors;
+    private final AtomicLong snapshotSize = new AtomicLong();
+
+    private volatile TaskStateSnapshot snapshot = TaskStateSnapshot.empty();
+
+    @Inject
+    public TaskStateSnapshotManager(V3JobOperations v3JobOperations, TitusRuntime titusRuntime) {
+        this.v3JobOperations = v3JobOperations;
+        this.clock = titusRuntime.getClock();
+
+        Registry registry = titusRuntime.getRegistry();
+        this.buildTimer = registry.timer(METRIC_ROOT + "buildTime");
+        this.buildErrors = registry.counter(METRIC_ROOT + "buildErrors");
+        PolledMeter.using(registry).withName(METRIC_ROOT + "size").monitorValue(snapshotSize);
+    }
+
+    public TaskStateSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Called from the scheduling loop before each iteration. If the snapshot cannot be built, the tasks states from
+     * the previous snapshot are reused.
+     */
+    public void refresh() {
+        long startTime = clock.wallTime();
+        try {
+            TaskStateSnapshot newSnapshot = TaskStateSnapshot.newSnapshot(v3JobOperations.getTasks());
+            snapshot = newSnapshot;
+            snapshotSize.set(newSnapshot.size());
+        } catch (Exception e) {
+            logger.warn("Cannot build task state snapshot. Reusing the previous one", e);
+            buildErrors.increment();
+            snapshot = snapshot.copy();
+        } finally {
+            buildTimer.record(clock.wallTime() - startTime, TimeUnit.MILLISECONDS);
+        }
+    }
+}
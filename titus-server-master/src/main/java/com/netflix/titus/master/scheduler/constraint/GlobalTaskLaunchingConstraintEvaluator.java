@@ -22,29 +22,24 @@ import javax.inject.Singleton;
 import com.netflix.fenzo.TaskRequest;
 import com.netflix.fenzo.TaskTrackerState;
 import com.netflix.fenzo.VirtualMachineCurrentState;
-import com.netflix.titus.api.jobmanager.model.job.Task;
-import com.netflix.titus.api.jobmanager.model.job.TaskState;
-import com.netflix.titus.api.jobmanager.service.V3JobOperations;
-import com.netflix.titus.api.model.v2.V2JobState;
-import com.netflix.titus.api.store.v2.V2WorkerMetadata;
-import com.netflix.titus.master.jobmanager.service.common.V3QueueableTask;
-import com.netflix.titus.master.scheduler.ScheduledRequest;
 import com.netflix.titus.master.scheduler.SchedulerConfiguration;
+import com.netflix.titus.master.scheduler.TaskStateSnapshotManager;
 
 /**
  * A global constraint evaluator that prevents launching a task on a node that already has a task launching.
+ * Task states are read from the scheduling iteration snapshot (see {@link TaskStateSnapshotManager}).
  */
 @Singleton
 public class GlobalTaskLaunchingConstraintEvaluator implements GlobalConstraintEvaluator {
 
     private final SchedulerConfiguration schedulerConfiguration;
-    private final V3JobOperations v3JobOperations;
+    private final TaskStateSnapshotManager taskStateSnapshotManager;
 
     @Inject
     public GlobalTaskLaunchingConstraintEvaluator(SchedulerConfiguration schedulerConfiguration,
-                                                  V3JobOperations v3JobOperations) {
+                                                  TaskStateSnapshotManager taskStateSnapshotManager) {
         this.schedulerConfiguration = schedulerConfiguration;
-        this.v3JobOperations = v3JobOperations;
+        this.taskStateSnapshotManager = taskStateSnapshotManager;
     }
 
     @Override
@@ -55,7 +50,7 @@ public class GlobalTaskLaunchingConstraintEvaluator implements GlobalConstraintE
     @Override
     public Result evaluate(TaskRequest taskRequest, VirtualMachineCurrentState targetVM, TaskTrackerState taskTrackerState) {
         if (schedulerConfiguration.isGlobalTaskLaunchingConstraintEvaluatorEnabled()) {
-            int totalLaunchingTasks = (int) targetVM.getRunningTasks().stream().filter(this::isTaskLaunching).count();
+            int totalLaunchingTasks = taskStateSnapshotManager.getSnapshot().getLaunchingTaskCount(targetVM);
             int totalAssignedTasks = targetVM.getTasksCurrentlyAssigned().size();
             totalLaunchingTasks += totalAssignedTasks;
 
@@ -65,20 +60,4 @@ public class GlobalTaskLaunchingConstraintEvaluator implements GlobalConstraintE
         }
         return new Result(true, "");
     }
-
-    private boolean isTaskLaunching(TaskRequest request) {
-        if (request instanceof ScheduledRequest) {
-            V2WorkerMetadata task = ((ScheduledRequest) request).getTask();
-            V2JobState state = task.getState();
-            return state == V2JobState.Accepted || state == V2JobState.Launched || state == V2JobState.StartInitiated;
-        } else if (request instanceof V3QueueableTask) {
-            Task task = ((V3QueueableTask) request).getTask();
-            return v3JobOperations.findTaskById(task.getId())
-                    .map(current -> {
-                        TaskState state = current.getRight().getStatus().getState();
-                        return state == TaskState.Accepted || state == TaskState.Launched || state == TaskState.StartInitiated;
-                    }).orElse(false);
-        }
-        return false;
-    }
 }
@@ -16,59 +16,21 @@
 
 package com.netflix.titus.master.scheduler.fitness;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.function.Predicate;
-
 import com.google.common.base.Strings;
-import com.netflix.fenzo.TaskAssignmentResult;
 import com.netflix.fenzo.TaskRequest;
 import com.netflix.fenzo.VirtualMachineCurrentState;
 import com.netflix.fenzo.queues.QueuableTask;
-import com.netflix.titus.api.jobmanager.model.job.Container;
-import com.netflix.titus.api.jobmanager.model.job.Job;
-import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
-import com.netflix.titus.api.jobmanager.model.job.Task;
-import com.netflix.titus.api.jobmanager.model.job.TaskState;
-import com.netflix.titus.api.model.v2.V2JobState;
-import com.netflix.titus.api.model.v2.parameter.Parameter;
-import com.netflix.titus.api.model.v2.parameter.Parameters;
-import com.netflix.titus.api.store.v2.V2JobMetadata;
-import com.netflix.titus.api.store.v2.V2WorkerMetadata;
-import com.netflix.titus.common.util.StringExt;
-import com.netflix.titus.master.jobmanager.service.common.V3QueueableTask;
-import com.netflix.titus.master.scheduler.ScheduledRequest;
-import com.netflix.titus.master.scheduler.resourcecache.AgentResourceCacheFunctions;
+import com.netflix.titus.master.scheduler.SchedulingAttributes;
 import org.apache.mesos.Protos;
 
 public class FitnessCalculatorFunctions {
 
     public static boolean isBatchJob(TaskRequest taskRequest) {
-        if (taskRequest instanceof ScheduledRequest) {
-            ScheduledRequest scheduledRequest = (ScheduledRequest) taskRequest;
-            V2JobMetadata job = scheduledRequest.getJob();
-            return Parameters.getJobType(job.getParameters()) == Parameters.JobType.Batch;
-
-        } else if (taskRequest instanceof V3QueueableTask) {
-            V3QueueableTask v3QueueableTask = (V3QueueableTask) taskRequest;
-            Job job = v3QueueableTask.getJob();
-            return JobFunctions.isBatchJob(job);
-        }
-        return false;
+        return SchedulingAttributes.of(taskRequest).isBatchJob();
     }
 
     public static boolean isServiceJob(TaskRequest taskRequest) {
-        if (taskRequest instanceof ScheduledRequest) {
-            ScheduledRequest scheduledRequest = (ScheduledRequest) taskRequest;
-            V2JobMetadata job = scheduledRequest.getJob();
-            return Parameters.getJobType(job.getParameters()) == Parameters.JobType.Service;
-
-        } else if (taskRequest instanceof V3QueueableTask) {
-            V3QueueableTask v3QueueableTask = (V3QueueableTask) taskRequest;
-            Job job = v3QueueableTask.getJob();
-            return JobFunctions.isServiceJob(job);
-        }
-        return false;
+        return SchedulingAttributes.of(taskRequest).isServiceJob();
     }
 
     public static boolean isFlexTier(TaskRequest taskRequest) {
@@ -81,50 +43,8 @@ public class FitnessCalculatorFunctions {
                 && ((QueuableTask) taskRequest).getQAttributes().getTierNumber() == 0;
     }
 
-    public static boolean isTaskLaunching(TaskRequest request) {
-        if (request instanceof ScheduledRequest) {
-            V2WorkerMetadata task = ((ScheduledRequest) request).getTask();
-            V2JobState state = task.getState();
-            return state == V2JobState.Accepted || state == V2JobState.Launched || state == V2JobState.StartInitiated;
-        } else if (request instanceof V3QueueableTask) {
-            Task task = ((V3QueueableTask) request).getTask();
-            TaskState state = task.getStatus().getState();
-            return state == TaskState.Accepted || state == TaskState.Launched || state == TaskState.StartInitiated;
-        }
-        return false;
-    }
-
     public static String getJoinedSecurityGroupIds(TaskRequest taskRequest) {
-        if (taskRequest instanceof ScheduledRequest) {
-            ScheduledRequest scheduledRequest = (ScheduledRequest) taskRequest;
-            V2JobMetadata job = scheduledRequest.getJob();
-            List<Parameter> parameters = job.getParameters();
-            return StringExt.concatenate(Parameters.getSecurityGroups(parameters), AgentResourceCacheFunctions.SECURITY_GROUP_ID_DELIMITER);
-        } else if (taskRequest instanceof V3QueueableTask) {
-            V3QueueableTask v3QueueableTask = (V3QueueableTask) taskRequest;
-            Job job = v3QueueableTask.getJob();
-            Container container = job.getJobDescriptor().getContainer();
-            return StringExt.concatenate(container.getSecurityProfile().getSecurityGroups(), AgentResourceCacheFunctions.SECURITY_GROUP_ID_DELIMITER);
-        }
-        return AgentResourceCacheFunctions.EMPTY_JOINED_SECURITY_GROUP_IDS;
-    }
-
-    public static List<TaskRequest> getAllTasksOnAgent(VirtualMachineCurrentState targetVm) {
-        List<TaskRequest> tasksOnAgent = new ArrayList<>(targetVm.getRunningTasks());
-        for (TaskAssignmentResult taskAssignmentResult : targetVm.getTasksCurrentlyAssigned()) {
-            tasksOnAgent.add(taskAssignmentResult.getRequest());
-        }
-        return tasksOnAgent;
-    }
-
-    public static long countMatchingTasks(List<TaskRequest> tasksOnAgent, Predicate<TaskRequest> predicate) {
-        int count = 0;
-        for (TaskRequest taskRequest : tasksOnAgent) {
-            if (predicate.test(taskRequest)) {
-                count++;
-            }
-        }
-        return count;
+        return SchedulingAttributes.of(taskRequest).getJoinedSecurityGroupIds();
     }
 
     public static String getAgentAttributeValue(VirtualMachineCurrentState targetVM, String attributeName) {
@@ -16,13 +16,13 @@
 
 package com.netflix.titus.master.scheduler.fitness;
 
-import java.util.List;
-
+import com.netflix.fenzo.TaskAssignmentResult;
 import com.netflix.fenzo.TaskRequest;
 import com.netflix.fenzo.TaskTrackerState;
 import com.netflix.fenzo.VMTaskFitnessCalculator;
 import com.netflix.fenzo.VirtualMachineCurrentState;
-import com.netflix.titus.master.scheduler.resourcecache.AgentResourceCacheFunctions;
+import com.netflix.titus.master.scheduler.SchedulingAttributes;
+import com.netflix.titus.master.scheduler.TaskStateSnapshotManager;
 import com.netflix.titus.master.scheduler.resourcecache.AgentResourceCacheImage;
 
 /**
@@ -33,6 +33,12 @@ public class ImageSpreadingFitnessCalculator implements VMTaskFitnessCalculator
     private static final double MATCHING_TASK_SCORE = 0.5;
     private static final double NO_MATCHING_TASK_SCORE = 1.0;
 
+    private final TaskStateSnapshotManager taskStateSnapshotManager;
+
+    public ImageSpreadingFitnessCalculator(TaskStateSnapshotManager taskStateSnapshotManager) {
+        this.taskStateSnapshotManager = taskStateSnapshotManager;
+    }
+
     @Override
     public String getName() {
         return "Image Spreading Fitness Calculator";
@@ -40,12 +46,13 @@ public class ImageSpreadingFitnessCalculator implements VMTaskFitnessCalculator
 
     @Override
     public double calculateFitness(TaskRequest taskRequest, VirtualMachineCurrentState targetVM, TaskTrackerState taskTrackerState) {
-        List<TaskRequest> allTasksOnAgent = FitnessCalculatorFunctions.getAllTasksOnAgent(targetVM);
-        AgentResourceCacheImage taskRequestImage = AgentResourceCacheFunctions.getImage(taskRequest);
-        long matchingTaskCount = FitnessCalculatorFunctions.countMatchingTasks(allTasksOnAgent, taskOnAgent -> {
-            AgentResourceCacheImage taskOnAgentImage = AgentResourceCacheFunctions.getImage(taskOnAgent);
-            return taskRequestImage.equals(taskOnAgentImage);
-        });
+        AgentResourceCacheImage taskRequestImage = SchedulingAttributes.of(taskRequest).getImage();
+        long matchingTaskCount = taskStateSnapshotManager.getSnapshot().getRunningTaskSummary(targetVM).getImageCount(taskRequestImage);
+        for (TaskAssignmentResult result : targetVM.getTasksCurrentlyAssigned()) {
+            if (taskRequestImage.equals(SchedulingAttributes.of(result.getRequest()).getImage())) {
+                matchingTaskCount++;
+            }
+        }
 
         if (matchingTaskCount == 0) {
             return NO_MATCHING_TASK_SCORE;
@@ -27,6 +27,7 @@ import com.netflix.fenzo.plugins.BinPackingFitnessCalculators;
 import com.netflix.fenzo.plugins.WeightedAverageFitnessCalculator;
 import com.netflix.fenzo.plugins.WeightedAverageFitnessCalculator.WeightedFitnessCalculator;
 import com.netflix.titus.master.scheduler.SchedulerConfiguration;
+import com.netflix.titus.master.scheduler.TaskStateSnapshotManager;
 import com.netflix.titus.master.scheduler.resourcecache.AgentResourceCache;
 
 import static com.netflix.titus.master.scheduler.fitness.FitnessCalculatorFunctions.isCriticalTier;
@@ -42,11 +43,13 @@ public class TitusFitnessCalculator implements VMTaskFitnessCalculator {
     public static final com.netflix.fenzo.functions.Func1<Double, Boolean> fitnessGoodEnoughFunction =
             f -> f > 0.9;
 
-    public TitusFitnessCalculator(SchedulerConfiguration configuration, AgentResourceCache agentResourceCache) {
+    public TitusFitnessCalculator(SchedulerConfiguration configuration,
+                                  AgentResourceCache agentResourceCache,
+                                  TaskStateSnapshotManager taskStateSnapshotManager) {
         this.configuration = configuration;
-        this.criticalServiceJobSpreader = criticalServiceJobSpreader();
-        this.criticalServiceJobBinPacker = criticalServiceJobBinPacker(agentResourceCache);
-        this.defaultFitnessCalculator = defaultFitnessCalculator(agentResourceCache);
+        this.criticalServiceJobSpreader = criticalServiceJobSpreader(taskStateSnapshotManager);
+        this.criticalServiceJobBinPacker = criticalServiceJobBinPacker(agentResourceCache, taskStateSnapshotManager);
+        this.defaultFitnessCalculator = defaultFitnessCalculator(agentResourceCache, taskStateSnapshotManager);
     }
 
     @Override
@@ -66,28 +69,30 @@ public class TitusFitnessCalculator implements VMTaskFitnessCalculator {
         return defaultFitnessCalculator.calculateFitness(taskRequest, targetVM, taskTrackerState);
     }
 
-    private VMTaskFitnessCalculator criticalServiceJobSpreader() {
+    private VMTaskFitnessCalculator criticalServiceJobSpreader(TaskStateSnapshotManager taskStateSnapshotManager) {
         List<WeightedFitnessCalculator> calculators = new ArrayList<>();
         calculators.add(new WeightedFitnessCalculator(BinPackingFitnessCalculators.cpuMemBinPacker, 0.1));
-        calculators.add(new WeightedFitnessCalculator(new JobTypeFitnessCalculator(), 0.1));
-        calculators.add(new WeightedFitnessCalculator(new ImageSpreadingFitnessCalculator(), 0.2));
-        calculators.add(new WeightedFitnessCalculator(new SecurityGroupSpreadingFitnessCalculator(), 0.6));
+        calculators.add(new WeightedFitnessCalculator(new JobTypeFitnessCalculator(taskStateSnapshotManager), 0.1));
+        calculators.add(new WeightedFitnessCalculator(new ImageSpreadingFitnessCalculator(taskStateSnapshotManager), 0.2));
+        calculators.add(new WeightedFitnessCalculator(new SecurityGroupSpreadingFitnessCalculator(taskStateSnapshotManager), 0.6));
         return new WeightedAverageFitnessCalculator(calculators);
     }
 
-    private VMTaskFitnessCalculator criticalServiceJobBinPacker(AgentResourceCache agentResourceCache) {
+    private VMTaskFitnessCalculator criticalServiceJobBinPacker(AgentResourceCache agentResourceCache,
+                                                                 TaskStateSnapshotManager taskStateSnapshotManager) {
         List<WeightedFitnessCalculator> calculators = new ArrayList<>();
-        calculators.add(new WeightedFitnessCalculator(new JobTypeFitnessCalculator(), 0.1));
+        calculators.add(new WeightedFitnessCalculator(new JobTypeFitnessCalculator(taskStateSnapshotManager), 0.1));
         calculators.add(new WeightedFitnessCalculator(BinPackingFitnessCalculators.cpuMemBinPacker, 0.2));
         calculators.add(new WeightedFitnessCalculator(new CachedImageFitnessCalculator(agentResourceCache), 0.3));
         calculators.add(new WeightedFitnessCalculator(new CachedSecurityGroupFitnessCalculator(agentResourceCache), 0.4));
         return new WeightedAverageFitnessCalculator(calculators);
     }
 
-    private VMTaskFitnessCalculator defaultFitnessCalculator(AgentResourceCache agentResourceCache) {
+    private VMTaskFitnessCalculator defaultFitnessCalculator(AgentResourceCache agentResourceCache,
+                                                             TaskStateSnapshotManager taskStateSnapshotManager) {
         List<WeightedFitnessCalculator> calculators = new ArrayList<>();
         calculators.add(new WeightedFitnessCalculator(BinPackingFitnessCalculators.cpuMemBinPacker, 0.2));
-        calculators.add(new WeightedFitnessCalculator(new JobTypeFitnessCalculator(), 0.2));
+        calculators.add(new WeightedFitnessCalculator(new JobTypeFitnessCalculator(taskStateSnapshotManager), 0.2));
         calculators.add(new WeightedFitnessCalculator(new CachedImageFitnessCalculator(agentResourceCache), 0.3));
         calculators.add(new WeightedFitnessCalculator(new CachedSecurityGroupFitnessCalculator(agentResourceCache), 0.3));
         return new WeightedAverageFitnessCalculator(calculators);
@@ -43,6 +43,7 @@ import com.netflix.titus.common.util.StringExt;
 import com.netflix.titus.master.jobmanager.service.common.V3QueueableTask;
 import com.netflix.titus.master.mesos.TitusExecutorDetails;
 import com.netflix.titus.master.scheduler.ScheduledRequest;
+import com.netflix.titus.master.scheduler.SchedulingAttributes;
 
 public class AgentResourceCacheFunctions {
     public static final String SECURITY_GROUP_ID_DELIMITER = ":";
@@ -114,16 +115,7 @@ public class AgentResourceCacheFunctions {
     }
 
     public static AgentResourceCacheImage getImage(TaskRequest taskRequest) {
-        if (taskRequest instanceof ScheduledRequest) {
-            ScheduledRequest scheduledRequest = (ScheduledRequest) taskRequest;
-            V2JobMetadata job = scheduledRequest.getJob();
-            return createImage(job);
-        } else if (taskRequest instanceof V3QueueableTask) {
-            V3QueueableTask v3QueueableTask = (V3QueueableTask) taskRequest;
-            Job job = v3QueueableTask.getJob();
-            return createImage(job);
-        }
-        return AgentResourceCacheImage.newBuilder().build();
+        return SchedulingAttributes.of(taskRequest).getImage();
     }
 
     public static AgentResourceCacheInstance createInstance(String hostname,
@@ -0,0 +1,752 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.scheduler.systemselector;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.netflix.titus.api.scheduler.service.SchedulerException;
+
+import static com.netflix.titus.common.util.CollectionsExt.asSet;
+
+/**
+ * Compiles system selector expressions into a tree of Java evaluators, so they can be executed without a script engine.
+ * Only a subset of JavaScript, sufficient for selector expressions, is supported: literals, context variables,
+ * property access, method calls on Java objects, indexing, and the logical, comparison and arithmetic operators.
+ * Values are compared following the JavaScript (Nashorn) semantics. An expression that cannot be compiled, or that
+ * at runtime needs a feature that is not supported (for example a JavaScript specific function), results in
+ * {@link UnsupportedExpressionException}, and should be evaluated by the script engine instead.
+ */
+final class SelectorExpressionCompiler {
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /**
+     * JavaScript 'undefined' value, which is distinct from null (for example for the strict equality).
+     */
+    static final Object UNDEFINED = new Object() {
+        @Override
+        public String toString() {
+            return "undefined";
+        }
+    };
+
+    private static final Set<String> RESERVED_WORDS = asSet(
+            "this", "new", "typeof", "instanceof", "in", "void", "delete", "function", "var", "let", "const"
+    );
+
+    interface CompiledExpression {
+        Object evaluate(Map<String, Object> context);
+    }
+
+    static class UnsupportedExpressionException extends RuntimeException {
+        UnsupportedExpressionException(String message, Object... args) {
+            super(String.format(message, args));
+        }
+    }
+
+    private final String expression;
+    private final List<String> tokens;
+    private int position;
+
+    private SelectorExpressionCompiler(String expression) {
+        this.expression = expression;
+        this.tokens = tokenize(expression);
+    }
+
+    static CompiledExpression compile(String expression) {
+        SelectorExpressionCompiler compiler = new SelectorExpressionCompiler(expression);
+        CompiledExpression result = compiler.parseTernary();
+        if (compiler.position < compiler.tokens.size()) {
+            throw new UnsupportedExpressionException("Unexpected token '%s' in expression: %s", compiler.tokens.get(compiler.position), expression);
+        }
+        return result;
+    }
+
+    /*
+     * Parser.
+     */
+
+    private CompiledExpression parseTernary() {
+        CompiledExpression condition = parseOr();
+        if (!accept("?")) {
+            return condition;
+        }
+        CompiledExpression whenTrue = parseTernary();
+        expect(":");
+        CompiledExpression whenFalse = parseTernary();
+        return context -> isTruthy(condition.evaluate(context)) ? whenTrue.evaluate(context) : whenFalse.evaluate(context);
+    }
+
+    private CompiledExpression parseOr() {
+        CompiledExpression left = parseAnd();
+        while (accept("||")) {
+            CompiledExpression first = left;
+            CompiledExpression second = parseAnd();
+            left = context -> {
+                Object value = first.evaluate(context);
+                return isTruthy(value) ? value : second.evaluate(context);
+            };
+        }
+        return left;
+    }
+
+    private CompiledExpression parseAnd() {
+        CompiledExpression left = parseEquality();
+        while (accept("&&")) {
+            CompiledExpression first = left;
+            CompiledExpression second = parseEquality();
+            left = context -> {
+                Object value = first.evaluate(context);
+                return isTruthy(value) ? second.evaluate(context) : value;
+            };
+        }
+        return left;
+    }
+
+    private CompiledExpression parseEquality() {
+        CompiledExpression left = parseRelational();
+        while (true) {
+            CompiledExpression first = left;
+            if (accept("===")) {
+                CompiledExpression second = parseRelational();
+                left = context -> strictEquals(first.evaluate(context), second.evaluate(context));
+            } else if (accept("!==")) {
+                CompiledExpression second = parseRelational();
+                left = context -> !strictEquals(first.evaluate(context), second.evaluate(context));
+            } else if (accept("==")) {
+                CompiledExpression second = parseRelational();
+                left = context -> looseEquals(first.evaluate(context), second.evaluate(context));
+            } else if (accept("!=")) {
+                CompiledExpression second = parseRelational();
+                left = context -> !looseEquals(first.evaluate(context), second.evaluate(context));
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private CompiledExpression parseRelational() {
+        CompiledExpression left = parseAdditive();
+        while (true) {
+            CompiledExpression first = left;
+            if (accept("<")) {
+                CompiledExpression second = parseAdditive();
+                left = context -> compare(first.evaluate(context), second.evaluate(context), false);
+            } else if (accept("<=")) {
+                CompiledExpression second = parseAdditive();
+                left = context -> compare(first.evaluate(context), second.evaluate(context), true);
+            } else if (accept(">")) {
+                CompiledExpression second = parseAdditive();
+                left = context -> compare(second.evaluate(context), first.evaluate(context), false);
+            } else if (accept(">=")) {
+                CompiledExpression second = parseAdditive();
+                left = context -> compare(second.evaluate(context), first.evaluate(context), true);
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private CompiledExpression parseAdditive() {
+        CompiledExpression left = parseMultiplicative();
+        while (true) {
+            CompiledExpression first = left;
+            if (accept("+")) {
+                CompiledExpression second = parseMultiplicative();
+                left = context -> add(first.evaluate(context), second.evaluate(context));
+            } else if (accept("-")) {
+                CompiledExpression second = parseMultiplicative();
+                left = context -> toNumber(first.evaluate(context)) - toNumber(second.evaluate(context));
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private CompiledExpression parseMultiplicative() {
+        CompiledExpression left = parseUnary();
+        while (true) {
+            CompiledExpression first = left;
+            if (accept("*")) {
+                CompiledExpression second = parseUnary();
+                left = context -> toNumber(first.evaluate(context)) * toNumber(second.evaluate(context));
+            } else if (accept("/")) {
+                CompiledExpression second = parseUnary();
+                left = context -> toNumber(first.evaluate(context)) / toNumber(second.evaluate(context));
+            } else if (accept("%")) {
+                CompiledExpression second = parseUnary();
+                left = context -> toNumber(first.evaluate(context)) % toNumber(second.evaluate(context));
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private CompiledExpression parseUnary() {
+        if (accept("!")) {
+            CompiledExpression operand = parseUnary();
+            return context -> !isTruthy(operand.evaluate(context));
+        }
+        if (accept("-")) {
+            CompiledExpression operand = parseUnary();
+            return context -> -toNumber(operand.evaluate(context));
+        }
+        return parsePostfix();
+    }
+
+    private CompiledExpression parsePostfix() {
+        CompiledExpression result = parsePrimary();
+        while (true) {
+            if (accept(".")) {
+                String name = next();
+                if (!isIdentifier(name)) {
+                    throw new UnsupportedExpressionException("Expected property name, but got '%s' in expression: %s", name, expression);
+                }
+                if (accept("(")) {
+                    result = new MethodCall(result, name, parseArguments());
+                } else {
+                    result = new PropertyAccess(result, name);
+                }
+            } else if (accept("[")) {
+                CompiledExpression target = result;
+                CompiledExpression index = parseTernary();
+                expect("]");
+                result = context -> getIndexed(target.evaluate(context), index.evaluate(context));
+            } else {
+                return result;
+            }
+        }
+    }
+
+    private CompiledExpression[] parseArguments() {
+        List<CompiledExpression> arguments = new ArrayList<>();
+        if (!accept(")")) {
+            do {
+                arguments.add(parseTernary());
+            } while (accept(","));
+            expect(")");
+        }
+        return arguments.toArray(new CompiledExpression[0]);
+    }
+
+    private CompiledExpression parsePrimary() {
+        String token = next();
+        if (token.equals("(")) {
+            CompiledExpression result = parseTernary();
+            expect(")");
+            return result;
+        }
+        if (token.charAt(0) == '\'' || token.charAt(0) == '"') {
+            String value = token.substring(1);
+            return context -> value;
+        }
+        if (Character.isDigit(token.charAt(0))) {
+            Double value;
+            try {
+                value = Double.valueOf(token);
+            } catch (NumberFormatException e) {
+                throw new UnsupportedExpressionException("Unsupported number literal '%s' in expression: %s", token, expression);
+            }
+            return context -> value;
+        }
+        switch (token) {
+            case "true":
+                return context -> Boolean.TRUE;
+            case "false":
+                return context -> Boolean.FALSE;
+            case "null":
+                return context -> null;
+            case "undefined":
+                return context -> UNDEFINED;
+        }
+        if (!isIdentifier(token) || RESERVED_WORDS.contains(token) || (position < tokens.size() && tokens.get(position).equals("("))) {
+            throw new UnsupportedExpressionException("Unsupported token '%s' in expression: %s", token, expression);
+        }
+        return context -> {
+            Object value = context.get(token);
+            if (value == null && !context.containsKey(token)) {
+                throw SchedulerException.systemSelectorEvaluationError("%s is not defined", null, token);
+            }
+            return value;
+        };
+    }
+
+    private boolean accept(String token) {
+        if (position < tokens.size() && tokens.get(position).equals(token)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token)) {
+            throw new UnsupportedExpressionException("Expected '%s' in expression: %s", token, expression);
+        }
+    }
+
+    private String next() {
+        if (position >= tokens.size()) {
+            throw new UnsupportedExpressionException("Unexpected end of expression: %s", expression);
+        }
+        return tokens.get(position++);
+    }
+
+    private static boolean isIdentifier(String token) {
+        return Character.isJavaIdentifierStart(token.charAt(0));
+    }
+
+    /**
+     * Splits an expression into tokens. String literals are returned with their opening quote character, followed
+     * by the unescaped content.
+     */
+    private static List<String> tokenize(String expression) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < expression.length() && Character.isJavaIdentifierPart(expression.charAt(i))) {
+                    i++;
+                }
+                tokens.add(expression.substring(start, i));
+            } else if (Character.isDigit(c)) {
+                int start = i;
+                while (i < expression.length() && (Character.isDigit(expression.charAt(i)) || expression.charAt(i) == '.')) {
+                    i++;
+                }
+                tokens.add(expression.substring(start, i));
+            } else if (c == '\'' || c == '"') {
+                StringBuilder sb = new StringBuilder().append(c);
+                i++;
+                while (i < expression.length() && expression.charAt(i) != c) {
+                    char current = expression.charAt(i);
+                    if (current == '\\' && i + 1 < expression.length()) {
+                        i++;
+                        current = unescape(expression.charAt(i), expression);
+                    }
+                    sb.append(current);
+                    i++;
+                }
+                if (i >= expression.length()) {
+                    throw new UnsupportedExpressionException("Unterminated string literal in expression: %s", expression);
+                }
+                i++;
+                tokens.add(sb.toString());
+            } else {
+                String operator = matchOperator(expression, i);
+                tokens.add(operator);
+                i += operator.length();
+            }
+        }
+        return tokens;
+    }
+
+    private static char unescape(char c, String expression) {
+        switch (c) {
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case '\\':
+            case '\'':
+            case '"':
+                return c;
+        }
+        throw new UnsupportedExpressionException("Unsupported escape sequence '\\%s' in expression: %s", c, expression);
+    }
+
+    private static final String[] OPERATORS = {
+            "===", "!==", "==", "!=", "<=", ">=", "&&", "||",
+            "<", ">", "!", "+", "-", "*", "/", "%", "(", ")", ".", "[", "]", ",", "?", ":"
+    };
+
+    private static String matchOperator(String expression, int offset) {
+        for (String operator : OPERATORS) {
+            if (expression.startsWith(operator, offset)) {
+                return operator;
+            }
+        }
+        throw new UnsupportedExpressionException("Unsupported character '%s' in expression: %s", expression.charAt(offset), expression);
+    }
+
+    /*
+     * Runtime support, following JavaScript conversion rules.
+     */
+
+    static boolean isTruthy(Object value) {
+        if (value == null || value == UNDEFINED) {
+            return false;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            return number != 0 && !Double.isNaN(number);
+        }
+        if (value instanceof String) {
+            return !((String) value).isEmpty();
+        }
+        return true;
+    }
+
+    static boolean strictEquals(Object left, Object right) {
+        if (left == null || right == null) {
+            return left == right;
+        }
+        if (left instanceof Number && right instanceof Number) {
+            return ((Number) left).doubleValue() == ((Number) right).doubleValue();
+        }
+        if (isPrimitive(left) || isPrimitive(right)) {
+            return left.equals(right);
+        }
+        return left == right;
+    }
+
+    static boolean looseEquals(Object left, Object right) {
+        if (isNullOrUndefined(left) || isNullOrUndefined(right)) {
+            return isNullOrUndefined(left) && isNullOrUndefined(right);
+        }
+        if (left instanceof Boolean) {
+            return looseEquals(toNumber(left), right);
+        }
+        if (right instanceof Boolean) {
+            return looseEquals(left, toNumber(right));
+        }
+        if (left instanceof Number && right instanceof Number) {
+            return ((Number) left).doubleValue() == ((Number) right).doubleValue();
+        }
+        if (left instanceof Number || right instanceof Number) {
+            return toNumber(left) == toNumber(right);
+        }
+        if (left instanceof String || right instanceof String) {
+            return toJsString(left).equals(toJsString(right));
+        }
+        return left == right;
+    }
+
+    private static boolean compare(Object left, Object right, boolean orEqual) {
+        Object leftPrimitive = toPrimitive(left);
+        Object rightPrimitive = toPrimitive(right);
+        if (leftPrimitive instanceof String && rightPrimitive instanceof String) {
+            int result = ((String) leftPrimitive).compareTo((String) rightPrimitive);
+            return orEqual ? result <= 0 : result < 0;
+        }
+        double leftNumber = toNumber(leftPrimitive);
+        double rightNumber = toNumber(rightPrimitive);
+        return orEqual ? leftNumber <= rightNumber : leftNumber < rightNumber;
+    }
+
+    private static Object add(Object left, Object right) {
+        Object leftPrimitive = toPrimitive(left);
+        Object rightPrimitive = toPrimitive(right);
+        if (leftPrimitive instanceof String || rightPrimitive instanceof String) {
+            return toJsString(leftPrimitive) + toJsString(rightPrimitive);
+        }
+        return toNumber(leftPrimitive) + toNumber(rightPrimitive);
+    }
+
+    private static boolean isNullOrUndefined(Object value) {
+        return value == null || value == UNDEFINED;
+    }
+
+    private static boolean isPrimitive(Object value) {
+        return value instanceof String || value instanceof Number || value instanceof Boolean;
+    }
+
+    private static Object toPrimitive(Object value) {
+        return isNullOrUndefined(value) || isPrimitive(value) ? value : value.toString();
+    }
+
+    static double toNumber(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value == UNDEFINED) {
+            return Double.NaN;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        String text = value.toString().trim();
+        if (text.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    static String toJsString(Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            if (number == Math.rint(number) && Math.abs(number) < 1e21) {
+                return Long.toString((long) number);
+            }
+        }
+        return String.valueOf(value);
+    }
+
+    private static Object getIndexed(Object target, Object index) {
+        if (isNullOrUndefined(target)) {
+            throw SchedulerException.systemSelectorEvaluationError("Cannot read property '%s' of %s", null, index, target);
+        }
+        if (target instanceof Map) {
+            return ((Map<?, ?>) target).get(index instanceof String ? index : toJsString(index));
+        }
+        if (index instanceof Number) {
+            int position = ((Number) index).intValue();
+            boolean isList = target instanceof List;
+            if (isList || target.getClass().isArray()) {
+                int size = isList ? ((List<?>) target).size() : Array.getLength(target);
+                if (position < 0 || position >= size) {
+                    throw SchedulerException.systemSelectorEvaluationError("Index %s out of bounds", null, position);
+                }
+                return isList ? ((List<?>) target).get(position) : Array.get(target, position);
+            }
+        }
+        return new PropertyAccess(context -> target, toJsString(index)).evaluate(null);
+    }
+
+    /**
+     * Returns a method that can be invoked reflectively, which for methods of non-public classes requires
+     * finding the same method in a public super class or an interface.
+     */
+    private static Method findAccessibleMethod(Class<?> type, String name, Class<?>[] parameterTypes) {
+        if (Modifier.isPublic(type.getModifiers())) {
+            try {
+                return type.getMethod(name, parameterTypes);
+            } catch (NoSuchMethodException ignored) {
+                return null;
+            }
+        }
+        for (Class<?> interfaceType : type.getInterfaces()) {
+            Method method = findAccessibleMethod(interfaceType, name, parameterTypes);
+            if (method != null) {
+                return method;
+            }
+        }
+        return type.getSuperclass() == null ? null : findAccessibleMethod(type.getSuperclass(), name, parameterTypes);
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw SchedulerException.systemSelectorEvaluationError("Method %s failed", e.getCause(), method.getName());
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedExpressionException("Method %s is not accessible", method.getName());
+        }
+    }
+
+    /**
+     * Property access on a Java object. The resolved accessor is cached for the last seen target type, as the same
+     * expression is evaluated against objects of the same type most of the time.
+     */
+    private static class PropertyAccess implements CompiledExpression {
+
+        private final CompiledExpression target;
+        private final String name;
+
+        private volatile ResolvedAccessor cached;
+
+        private PropertyAccess(CompiledExpression target, String name) {
+            this.target = target;
+            this.name = name;
+        }
+
+        @Override
+        public Object evaluate(Map<String, Object> context) {
+            Object value = target.evaluate(context);
+            if (isNullOrUndefined(value)) {
+                throw SchedulerException.systemSelectorEvaluationError("Cannot read property '%s' of %s", null, name, value);
+            }
+            if (value instanceof Map) {
+                return ((Map<?, ?>) value).get(name);
+            }
+            if (name.equals("length")) {
+                if (value instanceof String) {
+                    return ((String) value).length();
+                }
+                if (value instanceof List) {
+                    return ((List<?>) value).size();
+                }
+                if (value.getClass().isArray()) {
+                    return Array.getLength(value);
+                }
+            }
+            ResolvedAccessor accessor = cached;
+            if (accessor == null || accessor.type != value.getClass()) {
+                accessor = resolve(value.getClass());
+                cached = accessor;
+            }
+            return accessor.get(value);
+        }
+
+        private ResolvedAccessor resolve(Class<?> type) {
+            String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            Method getter = findAccessibleMethod(type, "get" + suffix, new Class<?>[0]);
+            if (getter == null) {
+                getter = findAccessibleMethod(type, "is" + suffix, new Class<?>[0]);
+            }
+            Field field = null;
+            if (getter == null) {
+                try {
+                    field = type.getField(name);
+                } catch (NoSuchFieldException ignored) {
+                }
+            }
+            return new ResolvedAccessor(type, getter, field);
+        }
+    }
+
+    private static class ResolvedAccessor {
+
+        private final Class<?> type;
+        private final Method getter;
+        private final Field field;
+
+        private ResolvedAccessor(Class<?> type, Method getter, Field field) {
+            this.type = type;
+            this.getter = getter;
+            this.field = field;
+        }
+
+        private Object get(Object target) {
+            if (getter != null) {
+                return invoke(getter, target, NO_ARGS);
+            }
+            if (field != null) {
+                try {
+                    return field.get(target);
+                } catch (IllegalAccessException e) {
+                    throw new UnsupportedExpressionException("Field %s is not accessible", field.getName());
+                }
+            }
+            return UNDEFINED;
+        }
+    }
+
+    /**
+     * Java method call. Like {@link PropertyAccess}, the resolved method is cached for the last seen target type.
+     */
+    private static class MethodCall implements CompiledExpression {
+
+        private final CompiledExpression target;
+        private final String name;
+        private final CompiledExpression[] arguments;
+
+        private volatile Method cachedMethod;
+
+        private MethodCall(CompiledExpression target, String name, CompiledExpression[] arguments) {
+            this.target = target;
+            this.name = name;
+            this.arguments = arguments;
+        }
+
+        @Override
+        public Object evaluate(Map<String, Object> context) {
+            Object value = target.evaluate(context);
+            if (isNullOrUndefined(value)) {
+                throw SchedulerException.systemSelectorEvaluationError("Cannot call method '%s' of %s", null, name, value);
+            }
+            Object[] args = arguments.length == 0 ? NO_ARGS : new Object[arguments.length];
+            for (int i = 0; i < arguments.length; i++) {
+                args[i] = arguments[i].evaluate(context);
+            }
+
+            Method method = cachedMethod;
+            if (method == null || !method.getDeclaringClass().isInstance(value) || !convertArguments(method, args)) {
+                method = resolve(value.getClass(), args);
+                cachedMethod = method;
+            }
+            return invoke(method, value, args);
+        }
+
+        private Method resolve(Class<?> type, Object[] args) {
+            for (Method candidate : type.getMethods()) {
+                if (candidate.getName().equals(name) && candidate.getParameterCount() == args.length && !candidate.isVarArgs()) {
+                    Method accessible = findAccessibleMethod(type, name, candidate.getParameterTypes());
+                    if (accessible != null && convertArguments(accessible, args)) {
+                        return accessible;
+                    }
+                }
+            }
+            throw new UnsupportedExpressionException("No Java method %s with %s arguments found in %s", name, args.length, type.getName());
+        }
+
+        /**
+         * Converts JavaScript numbers to the method parameter types in place.
+         *
+         * @return false if the arguments cannot be passed to the method
+         */
+        private static boolean convertArguments(Method method, Object[] args) {
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            for (int i = 0; i < args.length; i++) {
+                Class<?> parameterType = parameterTypes[i];
+                Object arg = args[i];
+                if (arg == UNDEFINED) {
+                    arg = args[i] = null;
+                }
+                if (arg == null) {
+                    if (parameterType.isPrimitive()) {
+                        return false;
+                    }
+                } else if (arg instanceof Number && (parameterType.isPrimitive() || Number.class.isAssignableFrom(parameterType))) {
+                    Number number = (Number) arg;
+                    if (parameterType == int.class || parameterType == Integer.class) {
+                        args[i] = number.intValue();
+                    } else if (parameterType == long.class || parameterType == Long.class) {
+                        args[i] = number.longValue();
+                    } else if (parameterType == double.class || parameterType == Double.class) {
+                        args[i] = number.doubleValue();
+                    } else if (parameterType == float.class || parameterType == Float.class) {
+                        args[i] = number.floatValue();
+                    } else if (!parameterType.isInstance(arg)) {
+                        return false;
+                    }
+                } else if (arg instanceof Boolean && parameterType == boolean.class) {
+                    // Unboxed by reflection
+                } else if (!parameterType.isInstance(arg)) {
+                    if (parameterType == String.class || parameterType == CharSequence.class) {
+                        args[i] = toJsString(arg);
+                    } else {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -33,6 +33,8 @@ import com.netflix.titus.common.runtime.TitusRuntime;
 import com.netflix.titus.common.util.cache.Cache;
 import com.netflix.titus.common.util.cache.Caches;
 import com.netflix.titus.master.scheduler.SchedulerConfiguration;
+import com.netflix.titus.master.scheduler.systemselector.SelectorExpressionCompiler.CompiledExpression;
+import com.netflix.titus.master.scheduler.systemselector.SelectorExpressionCompiler.UnsupportedExpressionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,14 +49,30 @@ public class SystemSelectorEvaluator {
     private static final Logger logger = LoggerFactory.getLogger(SystemSelectorEvaluator.class);
     private static final String SCRIPT_ENGINE_NAME = "nashorn";
     private static final String METRIC_SCRIPT_ENGINE_EVALUATORS = "systemSelectorEvaluator.scriptEngineEvaluators";
+    private static final String METRIC_COMPILED_EXPRESSIONS = "systemSelectorEvaluator.compiledExpressions";
+    private static final int MAX_COMPILED_EXPRESSIONS = 1000;
+
+    /**
+     * Marks expressions that must be evaluated by the script engine.
+     */
+    private static final CompiledExpression SCRIPT_ENGINE_ONLY = context -> {
+        throw new IllegalStateException("Not a compiled expression");
+    };
+
+    private final SchedulerConfiguration configuration;
     private final Cache<Long, ScriptEngineEvaluator> scriptEngineEvaluators;
+    private final Cache<String, CompiledExpression> compiledExpressions;
     private final ScriptEngine validatorScriptEngine;
 
     @Inject
     public SystemSelectorEvaluator(SchedulerConfiguration configuration, TitusRuntime titusRuntime) {
+        this.configuration = configuration;
         scriptEngineEvaluators = Caches.instrumentedCacheWithMaxSize(
                 configuration.getSchedulerMaxConcurrent(), METRIC_SCHEDULING_SERVICE + METRIC_SCRIPT_ENGINE_EVALUATORS, titusRuntime.getRegistry()
         );
+        compiledExpressions = Caches.instrumentedCacheWithMaxSize(
+                MAX_COMPILED_EXPRESSIONS, METRIC_SCHEDULING_SERVICE + METRIC_COMPILED_EXPRESSIONS, titusRuntime.getRegistry()
+        );
         validatorScriptEngine = new ScriptEngineManager().getEngineByName(SCRIPT_ENGINE_NAME);
     }
 
@@ -75,6 +93,32 @@ public class SystemSelectorEvaluator {
     }
 
     public boolean evaluate(String expression, Map<String, Object> context) {
+        if (configuration.isSystemSelectorExpressionCompilerEnabled()) {
+            CompiledExpression compiledExpression = compiledExpressions.get(expression, this::compile);
+            if (compiledExpression != SCRIPT_ENGINE_ONLY) {
+                try {
+                    return Boolean.TRUE.equals(compiledExpression.evaluate(context));
+                } catch (UnsupportedExpressionException e) {
+                    logger.info("Expression cannot be evaluated by the compiler, and will be evaluated by the script engine: {} ({})",
+                            expression, e.getMessage());
+                    compiledExpressions.put(expression, SCRIPT_ENGINE_ONLY);
+                }
+            }
+        }
+        return evaluateWithScriptEngine(expression, context);
+    }
+
+    private CompiledExpression compile(String expression) {
+        try {
+            return SelectorExpressionCompiler.compile(expression);
+        } catch (UnsupportedExpressionException e) {
+            logger.info("Expression not supported by the compiler, and will be evaluated by the script engine: {} ({})",
+                    expression, e.getMessage());
+            return SCRIPT_ENGINE_ONLY;
+        }
+    }
+
+    private boolean evaluateWithScriptEngine(String expression, Map<String, Object> context) {
         // Create a script engine per scheduler thread in order to reduce contention
         long threadId = Thread.currentThread().getId();
         ScriptEngineEvaluator scriptEngineEvaluator = scriptEngineEvaluators.get(threadId, t -> new ScriptEngineEvaluator());
@@ -105,7 +149,7 @@ public class SystemSelectorEvaluator {
                 }
                 try {
                     logger.debug("Evaluating expression: {}", expression);
-                    Object result = scriptEngine.eval(expression, scriptContext);
+                    Object result = compiledScript.eval(scriptContext);
                     logger.debug("Evaluated expression: {} and got result: {}", expression, result);
                     if (result == Boolean.TRUE) {
                         return true;
@@ -65,4 +65,16 @@ public interface CapacityManagementConfiguration {
      */
     @DefaultValue("0.05")
     double getFlexTierBuffer();
+
+    /**
+     * Interval at which resource consumption is evaluated, and its changes are published.
+     */
+    @DefaultValue("500")
+    long getResourceConsumptionUpdateIntervalMs();
+
+    /**
+     * Interval at which the incrementally maintained resource consumption is reconciled with the job managers.
+     */
+    @DefaultValue("300000")
+    long getResourceConsumptionReconciliationIntervalMs();
 }
\ No newline at end of file
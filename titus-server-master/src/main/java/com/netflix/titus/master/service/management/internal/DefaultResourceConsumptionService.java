@@ -59,9 +59,8 @@ import rx.subjects.PublishSubject;
 import static com.netflix.titus.common.util.CollectionsExt.copyAndRemove;
 
 /**
- * Periodically checks for SLA violations, and a pre-configured interval.
- *
- * @TODO Improve this implementation by immediately reacting to state changes in the system.
+ * Periodically evaluates resource consumption, and publishes its changes. The consumption is maintained incrementally
+ * by {@link ResourceConsumptionTracker}, so the evaluation is cheap enough to run at a sub-second interval.
  */
 @Singleton
 @ProxyConfiguration(types = ProxyType.ActiveGuard)
@@ -74,6 +73,8 @@ public class DefaultResourceConsumptionService implements ResourceConsumptionSer
     static final long UPDATE_INTERVAL_MS = 5000;
 
     private final Supplier<ConsumptionEvaluationResult> evaluator;
+    private final ResourceConsumptionTracker tracker;
+    private final long updateIntervalMs;
     private final Registry registry;
     private final Scheduler.Worker worker;
 
@@ -90,13 +91,31 @@ public class DefaultResourceConsumptionService implements ResourceConsumptionSer
                                              V3JobOperations v3JobOperations,
                                              CapacityManagementConfiguration config,
                                              Registry registry) {
-        this(ResourceConsumptionEvaluator.newEvaluator(applicationSlaManagementService, v2JobOperations, v3JobOperations, config), registry, Schedulers.computation());
+        this(
+                new ResourceConsumptionTracker(applicationSlaManagementService, v2JobOperations, v3JobOperations, config, registry),
+                config.getResourceConsumptionUpdateIntervalMs(),
+                registry,
+                Schedulers.computation()
+        );
+    }
+
+    private DefaultResourceConsumptionService(ResourceConsumptionTracker tracker,
+                                              long updateIntervalMs,
+                                              Registry registry,
+                                              Scheduler scheduler) {
+        this.evaluator = tracker;
+        this.tracker = tracker;
+        this.updateIntervalMs = updateIntervalMs;
+        this.registry = registry;
+        this.worker = scheduler.createWorker();
     }
 
     /* For testing */ DefaultResourceConsumptionService(Supplier<ConsumptionEvaluationResult> evaluator,
                                                         Registry registry,
                                                         Scheduler scheduler) {
         this.evaluator = evaluator;
+        this.tracker = null;
+        this.updateIntervalMs = UPDATE_INTERVAL_MS;
         this.registry = registry;
         this.worker = scheduler.createWorker();
     }
@@ -105,7 +124,10 @@ public class DefaultResourceConsumptionService implements ResourceConsumptionSer
     public Observable<Void> enterActiveMode() {
         logger.info("Entering active mode");
         this.metrics = new ResourceConsumptionServiceMetrics(registry.createId(METRIC_CONSUMPTION), registry);
-        this.subscription = worker.schedulePeriodically(this::updateInfo, 0, UPDATE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (tracker != null) {
+            tracker.activate();
+        }
+        this.subscription = worker.schedulePeriodically(this::updateInfo, 0, updateIntervalMs, TimeUnit.MILLISECONDS);
         return Observable.empty();
     }
 
@@ -114,6 +136,9 @@ public class DefaultResourceConsumptionService implements ResourceConsumptionSer
         if (subscription != null) {
             subscription.unsubscribe();
         }
+        if (tracker != null) {
+            tracker.shutdown();
+        }
         worker.unsubscribe();
         eventsSubject.onCompleted();
     }
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.service.management.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.netflix.titus.api.model.ResourceDimension;
+import com.netflix.titus.api.model.v2.V2JobState;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.master.service.management.ResourceConsumption;
+import com.netflix.titus.master.service.management.ResourceConsumption.ConsumptionLevel;
+
+import static com.netflix.titus.master.service.management.ApplicationSlaManagementService.DEFAULT_APPLICATION;
+
+/**
+ * Resource consumption of all jobs, aggregated by capacity group and application name, and maintained incrementally
+ * from job and task state changes. The contribution of each job is remembered, so a change is applied to the
+ * aggregates as a delta. The aggregates are kept in {@link LongAdder}s, so concurrent updates of different jobs do not
+ * contend on a lock, and reading them costs proportionally to the number of capacity group/application pairs, not to
+ * the number of tasks.
+ * <p>
+ * Capacity groups are recorded as defined in the job descriptors. Their resolution against the capacity groups with
+ * an SLA is done by {@link ResourceConsumptionEvaluator}, as the set of SLAs changes over time. Tasks in a terminal
+ * state are not tracked.
+ * <p>
+ * The state can be reconciled with a snapshot read from the job managers. As the snapshot is read concurrently with
+ * the event driven updates, each job records the version of the last event applied to it. A snapshot of a job which
+ * was changed by an event after the snapshot was started is out of date, and is skipped. Removed jobs are kept as
+ * tombstones until a snapshot no longer contains them, so neither a late event nor a snapshot can bring them back.
+ */
+class ResourceConsumptionAccumulator {
+
+    private static final double CPU_UNITS = 1_000_000;
+
+    private final ConcurrentMap<String, JobEntry> jobs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ConsumerKey, ConsumerCounters> consumers = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+    private final AtomicInteger activeJobs = new AtomicInteger();
+
+    /**
+     * Adds a new job, or updates the job level consumption parameters.
+     *
+     * @param capacityGroup capacity group as defined in the job descriptor (may be null)
+     * @param appName       application name as defined in the job descriptor (may be null)
+     * @param maxSize       maximum number of tasks the job may run
+     */
+    void updateJob(String jobId, String capacityGroup, String appName, ResourceDimension taskResources, int maxSize) {
+        JobEntry entry = jobs.computeIfAbsent(jobId, id -> new JobEntry());
+        synchronized (entry) {
+            if (!entry.removed) {
+                entry.version = versions.incrementAndGet();
+                updateJob(entry, capacityGroup, appName, taskResources, maxSize);
+            }
+        }
+    }
+
+    /**
+     * Updates state of a task. Tasks of jobs not added yet are ignored. A task in a terminal state is removed.
+     */
+    void updateTask(String jobId, String taskId, V2JobState state, boolean running) {
+        JobEntry entry = jobs.get(jobId);
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            if (!entry.removed) {
+                entry.version = versions.incrementAndGet();
+                updateTask(entry, taskId, state, running);
+            }
+        }
+    }
+
+    /**
+     * Removes a job, and keeps a tombstone for it, so later updates of the job are ignored.
+     */
+    void removeJob(String jobId) {
+        JobEntry entry = jobs.computeIfAbsent(jobId, id -> new JobEntry());
+        synchronized (entry) {
+            entry.version = versions.incrementAndGet();
+            deactivate(entry);
+        }
+    }
+
+    /**
+     * Starts a reconciliation. The state read from the job managers after this call is at least as recent as all
+     * updates applied before it.
+     *
+     * @return version to pass to {@link #reconcileJob} and {@link #reconcileRemovedJobs}
+     */
+    long startReconciliation() {
+        return versions.get();
+    }
+
+    /**
+     * Replaces the job level consumption parameters, and all tasks of a job with a snapshot read from the job manager.
+     * The snapshot is ignored if the job was removed, or was updated by an event after the reconciliation started.
+     */
+    void reconcileJob(String jobId, String capacityGroup, String appName, ResourceDimension taskResources, int maxSize,
+                      Map<String, Pair<V2JobState, Boolean>> taskStates, long reconciliationVersion) {
+        JobEntry entry = jobs.computeIfAbsent(jobId, id -> new JobEntry());
+        synchronized (entry) {
+            if (entry.removed || entry.version > reconciliationVersion) {
+                return;
+            }
+            updateJob(entry, capacityGroup, appName, taskResources, maxSize);
+            for (String taskId : new ArrayList<>(entry.tasks.keySet())) {
+                if (!taskStates.containsKey(taskId)) {
+                    updateTask(entry, taskId, V2JobState.Completed, false);
+                }
+            }
+            taskStates.forEach((taskId, state) -> updateTask(entry, taskId, state.getLeft(), state.getRight()));
+        }
+    }
+
+    /**
+     * Removes jobs which are not present in a job manager snapshot, unless they were updated by an event after the
+     * reconciliation started. Tombstones of jobs not present in the snapshot are dropped, as no more events are
+     * expected for them.
+     */
+    void reconcileRemovedJobs(Set<String> presentJobIds, long reconciliationVersion) {
+        jobs.forEach((jobId, entry) -> {
+            if (presentJobIds.contains(jobId)) {
+                return;
+            }
+            synchronized (entry) {
+                if (entry.version > reconciliationVersion) {
+                    return;
+                }
+                deactivate(entry);
+                jobs.remove(jobId, entry);
+            }
+        });
+    }
+
+    int getJobCount() {
+        return activeJobs.get();
+    }
+
+    /**
+     * Returns the application level consumptions, each paired with a capacity group as defined in the job descriptors.
+     */
+    List<Pair<String, ResourceConsumption>> getConsumptions() {
+        List<Pair<String, ResourceConsumption>> result = new ArrayList<>();
+        consumers.forEach((key, counters) -> {
+            if (counters.jobs.sum() > 0) {
+                result.add(Pair.of(key.capacityGroup, new ResourceConsumption(
+                        key.appName,
+                        ConsumptionLevel.Application,
+                        counters.current.sum(),
+                        counters.max.sum(),
+                        counters.getTaskStates()
+                )));
+            }
+        });
+        return result;
+    }
+
+    private void updateJob(JobEntry entry, String capacityGroup, String appName, ResourceDimension taskResources, int maxSize) {
+        ConsumerKey key = new ConsumerKey(capacityGroup, appName == null ? DEFAULT_APPLICATION : appName);
+        if (key.equals(entry.key) && taskResources.equals(entry.taskResources) && maxSize == entry.maxSize) {
+            return;
+        }
+        if (entry.key == null) {
+            activeJobs.incrementAndGet();
+        } else {
+            applyJob(entry, -1);
+        }
+        entry.key = key;
+        entry.taskResources = taskResources;
+        entry.maxSize = maxSize;
+        applyJob(entry, 1);
+    }
+
+    private void deactivate(JobEntry entry) {
+        if (entry.removed) {
+            return;
+        }
+        if (entry.key != null) {
+            applyJob(entry, -1);
+            activeJobs.decrementAndGet();
+        }
+        entry.removed = true;
+    }
+
+    private void updateTask(JobEntry entry, String taskId, V2JobState state, boolean running) {
+        TaskEntry previous = entry.tasks.get(taskId);
+        if (previous != null && previous.state == state && previous.running == running) {
+            return;
+        }
+        if (previous != null) {
+            applyTask(entry, previous, -1);
+        }
+        if (V2JobState.isTerminalState(state)) {
+            entry.tasks.remove(taskId);
+        } else {
+            TaskEntry current = new TaskEntry(state, running);
+            entry.tasks.put(taskId, current);
+            applyTask(entry, current, 1);
+        }
+    }
+
+    private void applyJob(JobEntry entry, int sign) {
+        ConsumerCounters counters = countersOf(entry.key);
+        counters.jobs.add(sign);
+        counters.max.add(entry.taskResources, sign * (long) entry.maxSize);
+        entry.tasks.values().forEach(task -> applyTask(counters, entry.taskResources, task, sign));
+    }
+
+    private void applyTask(JobEntry entry, TaskEntry task, int sign) {
+        if (entry.key != null) {
+            applyTask(countersOf(entry.key), entry.taskResources, task, sign);
+        }
+    }
+
+    private void applyTask(ConsumerCounters counters, ResourceDimension taskResources, TaskEntry task, int sign) {
+        counters.taskStates[task.state.ordinal()].add(sign);
+        if (task.running) {
+            counters.current.add(taskResources, sign);
+        }
+    }
+
+    private ConsumerCounters countersOf(ConsumerKey key) {
+        return consumers.computeIfAbsent(key, k -> new ConsumerCounters());
+    }
+
+    private static class JobEntry {
+
+        private final Map<String, TaskEntry> tasks = new HashMap<>();
+
+        private ConsumerKey key;
+        private ResourceDimension taskResources;
+        private int maxSize;
+        private boolean removed;
+        private long version;
+    }
+
+    private static class TaskEntry {
+
+        private final V2JobState state;
+        private final boolean running;
+
+        private TaskEntry(V2JobState state, boolean running) {
+            this.state = state;
+            this.running = running;
+        }
+    }
+
+    private static class ConsumerKey {
+
+        private final String capacityGroup;
+        private final String appName;
+
+        private ConsumerKey(String capacityGroup, String appName) {
+            this.capacityGroup = capacityGroup;
+            this.appName = appName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ConsumerKey that = (ConsumerKey) o;
+            return Objects.equals(capacityGroup, that.capacityGroup) && Objects.equals(appName, that.appName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(capacityGroup, appName);
+        }
+    }
+
+    private static class ConsumerCounters {
+
+        private final LongAdder jobs = new LongAdder();
+        private final ResourceAdder current = new ResourceAdder();
+        private final ResourceAdder max = new ResourceAdder();
+        private final LongAdder[] taskStates = new LongAdder[V2JobState.values().length];
+
+        private ConsumerCounters() {
+            for (int i = 0; i < taskStates.length; i++) {
+                taskStates[i] = new LongAdder();
+            }
+        }
+
+        private Map<String, Object> getTaskStates() {
+            Map<String, Object> result = new HashMap<>();
+            for (V2JobState state : V2JobState.values()) {
+                result.put(state.name(), (int) taskStates[state.ordinal()].sum());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * CPU is accumulated in fixed point units, so adding and subtracting the same values always gives back the
+     * original sum.
+     */
+    private static class ResourceAdder {
+
+        private final LongAdder cpu = new LongAdder();
+        private final LongAdder gpu = new LongAdder();
+        private final LongAdder memoryMB = new LongAdder();
+        private final LongAdder diskMB = new LongAdder();
+        private final LongAdder networkMbs = new LongAdder();
+
+        private void add(ResourceDimension resources, long multiplier) {
+            cpu.add(Math.round(resources.getCpu() * CPU_UNITS) * multiplier);
+            gpu.add(resources.getGpu() * multiplier);
+            memoryMB.add(resources.getMemoryMB() * multiplier);
+            diskMB.add(resources.getDiskMB() * multiplier);
+            networkMbs.add(resources.getNetworkMbs() * multiplier);
+        }
+
+        private ResourceDimension sum() {
+            return new ResourceDimension(cpu.sum() / CPU_UNITS, gpu.sum(), memoryMB.sum(), diskMB.sum(), networkMbs.sum());
+        }
+    }
+}
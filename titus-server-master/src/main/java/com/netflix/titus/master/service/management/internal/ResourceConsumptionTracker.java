@@ -0,0 +1,307 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.service.management.internal;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.JobState;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.event.JobManagerEvent;
+import com.netflix.titus.api.jobmanager.model.job.event.JobUpdateEvent;
+import com.netflix.titus.api.jobmanager.model.job.event.TaskUpdateEvent;
+import com.netflix.titus.api.jobmanager.service.V3JobOperations;
+import com.netflix.titus.api.model.v2.V2JobState;
+import com.netflix.titus.api.model.v2.WorkerNaming;
+import com.netflix.titus.api.model.v2.parameter.Parameters;
+import com.netflix.titus.api.store.v2.V2JobMetadata;
+import com.netflix.titus.api.store.v2.V2StageMetadata;
+import com.netflix.titus.api.store.v2.V2WorkerMetadata;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.master.MetricConstants;
+import com.netflix.titus.master.Status;
+import com.netflix.titus.master.job.V2JobMgrIntf;
+import com.netflix.titus.master.job.V2JobOperations;
+import com.netflix.titus.master.service.management.ApplicationSlaManagementService;
+import com.netflix.titus.master.service.management.CapacityManagementConfiguration;
+import com.netflix.titus.master.service.management.internal.DefaultResourceConsumptionService.ConsumptionEvaluationResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Subscription;
+import rx.subscriptions.CompositeSubscription;
+
+/**
+ * Keeps {@link ResourceConsumptionAccumulator} up to date with V2 and V3 job and task state changes, and evaluates
+ * the resource consumption from it. The evaluation cost depends on the number of capacity groups and applications,
+ * not on the number of tasks.
+ * <p>
+ * To recover from missed events, and from V2 job changes which are not reported as status updates (for example
+ * a job resize), the accumulated state is periodically reconciled with the job managers.
+ */
+class ResourceConsumptionTracker implements Supplier<ConsumptionEvaluationResult> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResourceConsumptionTracker.class);
+
+    private static final String METRIC_ROOT = MetricConstants.METRIC_CAPACITY_MANAGEMENT + "consumption.tracker.";
+
+    private final ApplicationSlaManagementService applicationSlaManagementService;
+    private final V2JobOperations v2JobOperations;
+    private final V3JobOperations v3JobOperations;
+    private final CapacityManagementConfiguration config;
+    private final Registry registry;
+
+    private final ResourceConsumptionAccumulator accumulator = new ResourceConsumptionAccumulator();
+    private final Set<String> subscribedV2Jobs = ConcurrentHashMap.newKeySet();
+    private final CompositeSubscription subscriptions = new CompositeSubscription();
+
+    private final Counter reconciliationCounter;
+
+    private volatile long lastReconciliationTimestamp;
+    private volatile boolean shutdown;
+
+    ResourceConsumptionTracker(ApplicationSlaManagementService applicationSlaManagementService,
+                               V2JobOperations v2JobOperations,
+                               V3JobOperations v3JobOperations,
+                               CapacityManagementConfiguration config,
+                               Registry registry) {
+        this.applicationSlaManagementService = applicationSlaManagementService;
+        this.v2JobOperations = v2JobOperations;
+        this.v3JobOperations = v3JobOperations;
+        this.config = config;
+        this.registry = registry;
+
+        this.reconciliationCounter = registry.counter(METRIC_ROOT + "reconciliations");
+        PolledMeter.using(registry).withName(METRIC_ROOT + "jobs").monitorValue(accumulator, ResourceConsumptionAccumulator::getJobCount);
+    }
+
+    void activate() {
+        subscriptions.add(v3JobOperations.observeJobs()
+                .doOnError(e -> logger.warn("V3 job event stream terminated with an error; re-subscribing", e))
+                .retry()
+                .subscribe(this::onV3Event)
+        );
+        subscriptions.add(v2JobOperations.getJobCreationPublishSubject().subscribe(
+                this::subscribeToV2Job,
+                e -> logger.warn("V2 job creation stream terminated with an error", e)
+        ));
+        v2JobOperations.getAllJobMgrs().forEach(this::subscribeToV2Job);
+        reconcile();
+    }
+
+    void shutdown() {
+        shutdown = true;
+        subscriptions.unsubscribe();
+    }
+
+    @Override
+    public ConsumptionEvaluationResult get() {
+        if (registry.clock().wallTime() - lastReconciliationTimestamp >= config.getResourceConsumptionReconciliationIntervalMs()) {
+            reconcile();
+        }
+        ResourceConsumptionEvaluator evaluator = new ResourceConsumptionEvaluator(
+                applicationSlaManagementService.getApplicationSLAs(), config, accumulator.getConsumptions()
+        );
+        return new ConsumptionEvaluationResult(
+                evaluator.getDefinedCapacityGroups(),
+                evaluator.getUndefinedCapacityGroups(),
+                evaluator.getSystemConsumption()
+        );
+    }
+
+    private void reconcile() {
+        reconcile(accumulator, v2JobOperations, v3JobOperations);
+        lastReconciliationTimestamp = registry.clock().wallTime();
+        reconciliationCounter.increment();
+    }
+
+    /**
+     * Updates the accumulator with the current state of all jobs and tasks. Jobs which are no longer present in the
+     * job managers are removed. Jobs changed by events while the job managers are read are left as updated by the
+     * events (see {@link ResourceConsumptionAccumulator}).
+     */
+    static void reconcile(ResourceConsumptionAccumulator accumulator, V2JobOperations v2JobOperations, V3JobOperations v3JobOperations) {
+        long reconciliationVersion = accumulator.startReconciliation();
+        Set<String> present = new HashSet<>();
+
+        v2JobOperations.getAllJobMgrs().forEach(jobMgr -> {
+            V2JobMetadata jobMetadata = jobMgr.getJobMetadata();
+            if (jobMetadata == null) {
+                return;
+            }
+            present.add(jobMetadata.getJobId());
+            if (jobMetadata.getState() != null && V2JobState.isTerminalState(jobMetadata.getState())) {
+                accumulator.removeJob(jobMetadata.getJobId());
+                return;
+            }
+            V2StageMetadata stageMetadata = jobMetadata.getStageMetadata(1);
+            Map<String, Pair<V2JobState, Boolean>> taskStates = new HashMap<>();
+            for (V2WorkerMetadata worker : stageMetadata.getAllWorkers()) {
+                taskStates.put(WorkerNaming.getTaskId(worker), Pair.of(worker.getState(), V2JobState.isRunningState(worker.getState())));
+            }
+            accumulator.reconcileJob(
+                    jobMetadata.getJobId(),
+                    Parameters.getCapacityGroup(jobMetadata.getParameters()),
+                    Parameters.getAppName(jobMetadata.getParameters()),
+                    ResourceConsumptionEvaluator.toResourceDimension(stageMetadata),
+                    ResourceConsumptionEvaluator.getMaxJobSize(jobMetadata, stageMetadata),
+                    taskStates,
+                    reconciliationVersion
+            );
+        });
+
+        v3JobOperations.getJobsAndTasks().forEach(jobAndTasks -> {
+            Job<?> job = jobAndTasks.getLeft();
+            present.add(job.getId());
+            if (job.getStatus().getState() == JobState.Finished) {
+                accumulator.removeJob(job.getId());
+                return;
+            }
+            Map<String, Pair<V2JobState, Boolean>> taskStates = new HashMap<>();
+            for (Task task : jobAndTasks.getRight()) {
+                taskStates.put(task.getId(), toTaskState(task));
+            }
+            accumulator.reconcileJob(
+                    job.getId(),
+                    job.getJobDescriptor().getCapacityGroup(),
+                    job.getJobDescriptor().getApplicationName(),
+                    ResourceConsumptionEvaluator.toResourceDimension(job),
+                    ResourceConsumptionEvaluator.getMaxJobSize(job),
+                    taskStates,
+                    reconciliationVersion
+            );
+        });
+
+        accumulator.reconcileRemovedJobs(present, reconciliationVersion);
+    }
+
+    private void onV3Event(JobManagerEvent<?> event) {
+        if (shutdown) {
+            return;
+        }
+        if (event instanceof JobUpdateEvent) {
+            updateV3Job(accumulator, ((JobUpdateEvent) event).getCurrent());
+        } else if (event instanceof TaskUpdateEvent) {
+            TaskUpdateEvent taskUpdateEvent = (TaskUpdateEvent) event;
+            Job<?> job = taskUpdateEvent.getCurrentJob();
+            Task task = taskUpdateEvent.getCurrentTask();
+            if (updateV3Job(accumulator, job)) {
+                Pair<V2JobState, Boolean> taskState = toTaskState(task);
+                accumulator.updateTask(job.getId(), task.getId(), taskState.getLeft(), taskState.getRight());
+            }
+        }
+    }
+
+    private void subscribeToV2Job(V2JobMgrIntf jobMgr) {
+        if (shutdown || jobMgr.getStatusSubject() == null || !subscribedV2Jobs.add(jobMgr.getJobId())) {
+            return;
+        }
+        String jobId = jobMgr.getJobId();
+
+        // The subscription is tracked, so shutdown releases it. It is removed once the job status stream terminates.
+        AtomicReference<Subscription> subscriptionRef = new AtomicReference<>();
+        Runnable onTerminated = () -> {
+            subscribedV2Jobs.remove(jobId);
+            Subscription current = subscriptionRef.get();
+            if (current != null) {
+                subscriptions.remove(current);
+            }
+        };
+        Subscription subscription = jobMgr.getStatusSubject().subscribe(
+                status -> onV2Status(jobMgr, status),
+                e -> {
+                    logger.warn("V2 job {} status stream terminated with an error", jobId, e);
+                    onTerminated.run();
+                },
+                () -> {
+                    onTerminated.run();
+                    accumulator.removeJob(jobId);
+                }
+        );
+        subscriptionRef.set(subscription);
+        subscriptions.add(subscription);
+        if (subscription.isUnsubscribed()) {
+            // Terminated before the reference was set
+            subscriptions.remove(subscription);
+        }
+    }
+
+    private void onV2Status(V2JobMgrIntf jobMgr, Status status) {
+        if (shutdown) {
+            return;
+        }
+        V2JobMetadata jobMetadata = jobMgr.getJobMetadata();
+        if (jobMetadata == null || !updateV2Job(accumulator, jobMetadata) || status.getWorkerIndex() < 0 || status.getState() == null) {
+            return;
+        }
+        String taskId = WorkerNaming.getWorkerName(jobMgr.getJobId(), status.getWorkerIndex(), status.getWorkerNumber());
+        accumulator.updateTask(jobMgr.getJobId(), taskId, status.getState(), V2JobState.isRunningState(status.getState()));
+    }
+
+    /**
+     * @return true if the job is active, false if it is finished, and was removed from the accumulator
+     */
+    private static boolean updateV2Job(ResourceConsumptionAccumulator accumulator, V2JobMetadata jobMetadata) {
+        if (jobMetadata.getState() != null && V2JobState.isTerminalState(jobMetadata.getState())) {
+            accumulator.removeJob(jobMetadata.getJobId());
+            return false;
+        }
+        V2StageMetadata stageMetadata = jobMetadata.getStageMetadata(1);
+        accumulator.updateJob(
+                jobMetadata.getJobId(),
+                Parameters.getCapacityGroup(jobMetadata.getParameters()),
+                Parameters.getAppName(jobMetadata.getParameters()),
+                ResourceConsumptionEvaluator.toResourceDimension(stageMetadata),
+                ResourceConsumptionEvaluator.getMaxJobSize(jobMetadata, stageMetadata)
+        );
+        return true;
+    }
+
+    /**
+     * @return true if the job is active, false if it is finished, and was removed from the accumulator
+     */
+    private static boolean updateV3Job(ResourceConsumptionAccumulator accumulator, Job<?> job) {
+        if (job.getStatus().getState() == JobState.Finished) {
+            accumulator.removeJob(job.getId());
+            return false;
+        }
+        accumulator.updateJob(
+                job.getId(),
+                job.getJobDescriptor().getCapacityGroup(),
+                job.getJobDescriptor().getApplicationName(),
+                ResourceConsumptionEvaluator.toResourceDimension(job),
+                ResourceConsumptionEvaluator.getMaxJobSize(job)
+        );
+        return true;
+    }
+
+    private static Pair<V2JobState, Boolean> toTaskState(Task task) {
+        TaskState state = task.getStatus().getState();
+        V2JobState v2State = state == TaskState.Disconnected ? V2JobState.Started : JobFunctions.toV2JobState(state);
+        return Pair.of(v2State, TaskState.isRunning(state));
+    }
+}
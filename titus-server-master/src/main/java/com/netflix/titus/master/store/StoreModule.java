@@ -21,16 +21,20 @@ import javax.inject.Singleton;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
+import com.netflix.archaius.ConfigProxyFactory;
 import com.netflix.titus.api.appscale.store.AppScalePolicyStore;
 import com.netflix.titus.api.jobmanager.store.JobStore;
 import com.netflix.titus.api.loadbalancer.store.LoadBalancerStore;
 import com.netflix.titus.api.scheduler.store.SchedulerStore;
 import com.netflix.titus.common.model.sanitizer.EntitySanitizer;
+import com.netflix.titus.common.runtime.TitusRuntime;
 import com.netflix.titus.master.scheduler.store.InMemorySchedulerStore;
 import com.netflix.titus.master.store.cache.ApplicationSlaStoreCache;
 import com.netflix.titus.master.store.file.SimpleCachedFileStorageProvider;
 import com.netflix.titus.master.store.memory.InMemoryApplicationSlaStore;
 import com.netflix.titus.master.store.sanitizer.ApplicationSlaStoreSanitizer;
+import com.netflix.titus.runtime.store.v3.file.FileJobStore;
+import com.netflix.titus.runtime.store.v3.file.FileJobStoreConfiguration;
 import com.netflix.titus.runtime.store.v3.memory.InMemoryJobStore;
 import com.netflix.titus.runtime.store.v3.memory.InMemoryLoadBalancerStore;
 import com.netflix.titus.runtime.store.v3.memory.InMemoryPolicyStore;
@@ -41,12 +45,23 @@ public class StoreModule extends AbstractModule {
     @Override
     protected void configure() {
         bind(V2StorageProvider.class).to(SimpleCachedFileStorageProvider.class);
-        bind(JobStore.class).to(InMemoryJobStore.class);
         bind(AppScalePolicyStore.class).to(InMemoryPolicyStore.class);
         bind(LoadBalancerStore.class).to(InMemoryLoadBalancerStore.class);
         bind(SchedulerStore.class).to(InMemorySchedulerStore.class);
     }
 
+    @Provides
+    @Singleton
+    public FileJobStoreConfiguration getFileJobStoreConfiguration(ConfigProxyFactory factory) {
+        return factory.newProxy(FileJobStoreConfiguration.class);
+    }
+
+    @Provides
+    @Singleton
+    public JobStore getJobStore(FileJobStoreConfiguration configuration, TitusRuntime titusRuntime) {
+        return configuration.isEnabled() ? new FileJobStore(configuration, titusRuntime) : new InMemoryJobStore();
+    }
+
     @Singleton
     @Provides
     public ApplicationSlaStore getApplicationSlaStore(@Named(JOB_PERMISSIVE_SANITIZER) EntitySanitizer coreModelSanitizers) {
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.job.worker.internal;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.netflix.titus.api.jobmanager.model.job.BatchJobTask;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.jobmanager.service.V3JobOperations;
+import com.netflix.titus.api.jobmanager.service.V3JobOperations.Trigger;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.master.VirtualMachineMasterService;
+import com.netflix.titus.master.job.JobManagerConfiguration;
+import com.netflix.titus.master.job.V2JobOperations;
+import com.netflix.titus.master.mesos.ContainerEvent;
+import com.netflix.titus.master.mesos.V3ContainerEvent;
+import com.netflix.titus.master.mesos.V3ContainerEventBatch;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import rx.Completable;
+import rx.subjects.PublishSubject;
+
+import static com.netflix.titus.testkit.model.job.JobDescriptorGenerator.batchJobDescriptors;
+import static com.netflix.titus.testkit.model.job.JobGenerator.batchJobs;
+import static com.netflix.titus.testkit.model.job.JobGenerator.batchTasks;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultWorkerStateMonitorTest {
+
+    private final PublishSubject<ContainerEvent> containerEvents = PublishSubject.create();
+
+    private final VirtualMachineMasterService vmService = mock(VirtualMachineMasterService.class);
+    private final V2JobOperations v2JobOperations = mock(V2JobOperations.class);
+    private final V3JobOperations v3JobOperations = mock(V3JobOperations.class);
+    private final JobManagerConfiguration configuration = mock(JobManagerConfiguration.class);
+
+    private final List<Job<BatchJobExt>> jobs = batchJobs(batchJobDescriptors().getValue()).toList(2);
+    private final List<BatchJobTask> job1Tasks = batchTasks(jobs.get(0)).toList(2);
+    private final List<BatchJobTask> job2Tasks = batchTasks(jobs.get(1)).toList(1);
+
+    @Before
+    public void setUp() {
+        when(vmService.getTaskStatusObservable()).thenReturn(containerEvents);
+        when(v3JobOperations.updateTasks(anyString(), anyMap(), any(), anyString())).thenReturn(Completable.complete());
+        when(v3JobOperations.updateTask(anyString(), any(), any(), anyString())).thenReturn(Completable.complete());
+        job1Tasks.forEach(task -> addTask(jobs.get(0), task));
+        job2Tasks.forEach(task -> addTask(jobs.get(1), task));
+
+        new DefaultWorkerStateMonitor(vmService, v2JobOperations, v3JobOperations, configuration, TitusRuntimes.test());
+    }
+
+    @Test
+    public void testBatchIsAppliedWithOneChangeActionPerJob() {
+        containerEvents.onNext(newBatch(job1Tasks.get(0), job2Tasks.get(0), job1Tasks.get(1)));
+
+        assertThat(captureBatchUpdate(jobs.get(0).getId()).keySet()).containsExactlyInAnyOrder(job1Tasks.get(0).getId(), job1Tasks.get(1).getId());
+        assertThat(captureBatchUpdate(jobs.get(1).getId()).keySet()).containsExactly(job2Tasks.get(0).getId());
+        verify(v3JobOperations, never()).updateTask(anyString(), any(), any(), anyString());
+    }
+
+    @Test
+    public void testFailedBatchDoesNotDropOtherTaskUpdates() {
+        when(v3JobOperations.updateTasks(eq(jobs.get(0).getId()), anyMap(), any(), anyString()))
+                .thenReturn(Completable.error(new RuntimeException("simulated batch error")));
+
+        containerEvents.onNext(newBatch(job1Tasks.get(0), job1Tasks.get(1), job2Tasks.get(0)));
+
+        // Updates of the failed batch are retried one by one
+        verify(v3JobOperations, times(1)).updateTask(eq(job1Tasks.get(0).getId()), any(), eq(Trigger.Mesos), anyString());
+        verify(v3JobOperations, times(1)).updateTask(eq(job1Tasks.get(1).getId()), any(), eq(Trigger.Mesos), anyString());
+
+        // The batch of the other job is not affected
+        assertThat(captureBatchUpdate(jobs.get(1).getId()).keySet()).containsExactly(job2Tasks.get(0).getId());
+        verify(v3JobOperations, never()).updateTask(eq(job2Tasks.get(0).getId()), any(), any(), anyString());
+    }
+
+    @Test
+    public void testFailedEventDoesNotDropOtherUpdatesInBatch() {
+        when(v3JobOperations.findTaskById(job1Tasks.get(0).getId())).thenThrow(new RuntimeException("simulated lookup error"));
+
+        containerEvents.onNext(newBatch(job1Tasks.get(0), job1Tasks.get(1), job2Tasks.get(0)));
+
+        assertThat(captureBatchUpdate(jobs.get(0).getId()).keySet()).containsExactly(job1Tasks.get(1).getId());
+        assertThat(captureBatchUpdate(jobs.get(1).getId()).keySet()).containsExactly(job2Tasks.get(0).getId());
+    }
+
+    private void addTask(Job<BatchJobExt> job, BatchJobTask task) {
+        when(v3JobOperations.findTaskById(task.getId())).thenReturn(Optional.of(Pair.<Job<?>, Task>of(job, task)));
+    }
+
+    private V3ContainerEventBatch newBatch(Task... tasks) {
+        return new V3ContainerEventBatch(Arrays.stream(tasks)
+                .map(task -> new V3ContainerEvent(task.getId(), TaskState.Started, "started", "Task started", 0, Optional.empty()))
+                .collect(Collectors.toList())
+        );
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Function<Task, Optional<Task>>> captureBatchUpdate(String jobId) {
+        ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(v3JobOperations, times(1)).updateTasks(eq(jobId), captor.capture(), eq(Trigger.Mesos), anyString());
+        return captor.getValue();
+    }
+}
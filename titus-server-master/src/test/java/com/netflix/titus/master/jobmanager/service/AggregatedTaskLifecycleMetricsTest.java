@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.jobmanager.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.spectator.api.Id;
+import com.netflix.spectator.api.Meter;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.Timer;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.JobModel;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.TaskStatus;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AggregatedTaskLifecycleMetricsTest {
+
+    private final Registry registry = new DefaultRegistry();
+
+    private final AggregatedTaskLifecycleMetrics metrics = new AggregatedTaskLifecycleMetrics(0.0, registry);
+
+    private final Job<BatchJobExt> job = JobGenerator.batchJobs(
+            JobFunctions.changeBatchJobSize(JobDescriptorGenerator.oneTaskBatchJobDescriptor(), 2)
+    ).getValue();
+
+    @Test
+    public void testTransitionsAreAggregatedPerApplication() {
+        Task task1 = JobGenerator.batchTasks(job).getValue();
+        Task task2 = JobGenerator.batchTasks(job).skip(1).getValue();
+
+        metrics.updateTaskMetrics(job, withState(task1, TaskState.Accepted, 1_000));
+        metrics.updateTaskMetrics(job, withState(task2, TaskState.Accepted, 1_000));
+        metrics.updateTaskMetrics(job, withState(task1, TaskState.Started, 3_000));
+
+        assertThat(currentState(TaskStateReport.Accepted)).isEqualTo(1);
+        assertThat(currentState(TaskStateReport.Started)).isEqualTo(1);
+        assertThat(transitions("None", TaskStateReport.Accepted)).isEqualTo(2);
+        assertThat(transitions("Accepted", TaskStateReport.Started)).isEqualTo(1);
+
+        metrics.updateTaskMetrics(job, withState(task1, TaskState.Finished, 5_000));
+        assertThat(currentState(TaskStateReport.Started)).isEqualTo(0);
+        assertThat(transitions("Started", TaskStateReport.Finished)).isEqualTo(1);
+
+        metrics.removeJob(job.getId());
+        assertThat(currentState(TaskStateReport.Accepted)).isEqualTo(0);
+    }
+
+    @Test
+    public void testNoTaskIdTags() {
+        Task task = JobGenerator.batchTasks(job).getValue();
+        metrics.updateTaskMetrics(job, withState(task, TaskState.Accepted, 1_000));
+        metrics.updateTaskMetrics(job, withState(task, TaskState.Started, 2_000));
+
+        for (Meter meter : registry) {
+            meter.id().tags().forEach(tag -> {
+                assertThat(tag.key()).isNotEqualTo("t.taskId");
+                assertThat(tag.key()).isNotEqualTo("t.jobId");
+            });
+        }
+    }
+
+    @Test
+    public void testDwellTimePercentilesAreAggregatedPerCapacityGroup() {
+        Task task = JobGenerator.batchTasks(job).getValue();
+        metrics.updateTaskMetrics(job, withState(task, TaskState.Accepted, 1_000));
+        metrics.updateTaskMetrics(job, withState(task, TaskState.Started, 3_000));
+
+        Timer dwellTime = registry.timer(groupId("dwellTime").withTag("state", TaskStateReport.Accepted.name()));
+        assertThat(dwellTime.count()).isEqualTo(1);
+        assertThat(dwellTime.totalTime()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(2_000));
+
+        List<Meter> percentiles = registry.stream()
+                .filter(meter -> meter.id().name().endsWith("dwellTimePercentiles"))
+                .collect(Collectors.toList());
+        assertThat(percentiles).isNotEmpty();
+        percentiles.forEach(meter -> meter.id().tags().forEach(tag -> assertThat(tag.key()).isNotEqualTo("t.application")));
+    }
+
+    private Task withState(Task task, TaskState state, long timestamp) {
+        TaskStatus status = JobModel.newTaskStatus()
+                .withState(state)
+                .withReasonCode(TaskStatus.REASON_NORMAL)
+                .withTimestamp(timestamp)
+                .build();
+        return JobFunctions.changeTaskStatus(task, status);
+    }
+
+    private long currentState(TaskStateReport state) {
+        PolledMeter.update(registry);
+        Id id = groupId("currentState").withTag("state", state.name());
+        return (long) registry.gauge(id).value();
+    }
+
+    private long transitions(String from, TaskStateReport to) {
+        return registry.counter(groupId("transitions").withTag("from", from).withTag("to", to.name())).count();
+    }
+
+    private Id groupId(String name) {
+        return registry.createId("titusMaster.job.lifecycle." + name)
+                .withTag("t.engine", "V3")
+                .withTag("t.capacityGroup", job.getJobDescriptor().getCapacityGroup())
+                .withTag("t.application", job.getJobDescriptor().getApplicationName());
+    }
+}
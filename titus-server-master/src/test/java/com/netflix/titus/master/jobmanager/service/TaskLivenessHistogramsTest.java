@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.jobmanager.service;
+
+import java.util.List;
+import java.util.Map;
+
+import com.netflix.titus.common.util.histogram.HistogramDescriptor;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TaskLivenessHistogramsTest {
+
+    private static final HistogramDescriptor DESCRIPTOR = HistogramDescriptor.histogramOf(10, 100, 1_000);
+
+    private final TaskLivenessHistograms histograms = new TaskLivenessHistograms(DESCRIPTOR);
+
+    @Test
+    public void testTasksMoveToNextBucketsAsTimePasses() {
+        histograms.update("task1", "groupA", "Started", 1_000, 1_000);
+        histograms.update("task2", "groupA", "Started", 950, 1_000);
+        assertThat(countersOf(histograms.snapshot(1_000), "groupA", "Started")).containsExactly(1L, 1L, 0L, 0L);
+
+        // A duration equal to a bucket bound stays in that bucket
+        assertThat(countersOf(histograms.snapshot(1_010), "groupA", "Started")).containsExactly(1L, 1L, 0L, 0L);
+        assertThat(countersOf(histograms.snapshot(1_011), "groupA", "Started")).containsExactly(0L, 2L, 0L, 0L);
+        assertThat(countersOf(histograms.snapshot(1_051), "groupA", "Started")).containsExactly(0L, 1L, 1L, 0L);
+        assertThat(countersOf(histograms.snapshot(5_000), "groupA", "Started")).containsExactly(0L, 0L, 0L, 2L);
+    }
+
+    @Test
+    public void testStateTransitionMovesTaskBetweenHistograms() {
+        histograms.update("task1", "groupA", "Launched", 1_000, 1_000);
+        histograms.update("task1", "groupA", "Started", 1_500, 1_500);
+
+        Map<String, Map<String, List<Long>>> snapshot = histograms.snapshot(1_700);
+        assertThat(snapshot.get("groupA")).containsOnlyKeys("Started");
+        assertThat(countersOf(snapshot, "groupA", "Started")).containsExactly(0L, 0L, 1L, 0L);
+    }
+
+    @Test
+    public void testRepeatedAndStaleUpdatesAreIgnored() {
+        histograms.update("task1", "groupA", "Started", 1_000, 1_000);
+        histograms.update("task1", "groupA", "Started", 1_900, 1_900);
+        histograms.update("task1", "groupA", "Launched", 500, 1_900);
+
+        Map<String, Map<String, List<Long>>> snapshot = histograms.snapshot(2_000);
+        assertThat(snapshot.get("groupA")).containsOnlyKeys("Started");
+        assertThat(countersOf(snapshot, "groupA", "Started")).containsExactly(0L, 0L, 1L, 0L);
+    }
+
+    @Test
+    public void testRemovedTasksAreNotCounted() {
+        histograms.update("task1", "groupA", "Started", 1_000, 1_000);
+        histograms.update("task2", "groupB", "Started", 1_000, 1_000);
+        histograms.remove("task1");
+
+        Map<String, Map<String, List<Long>>> snapshot = histograms.snapshot(5_000);
+        assertThat(snapshot).containsOnlyKeys("groupB");
+        assertThat(histograms.size()).isEqualTo(1);
+    }
+
+    private List<Long> countersOf(Map<String, Map<String, List<Long>>> snapshot, String capacityGroup, String state) {
+        return snapshot.get(capacityGroup).get(state);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.jobmanager.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.titus.api.jobmanager.model.job.BatchJobTask;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.event.JobManagerEvent;
+import com.netflix.titus.api.jobmanager.model.job.event.TaskUpdateEvent;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.jobmanager.service.V3JobOperations;
+import com.netflix.titus.master.Status;
+import com.netflix.titus.master.job.V2JobOperations;
+import com.netflix.titus.master.job.worker.WorkerStateMonitor;
+import com.netflix.titus.master.service.management.ApplicationSlaManagementService;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TaskLivenessMetricsTest {
+
+    private final TestScheduler testScheduler = new TestScheduler();
+
+    private final V2JobOperations v2JobOperations = mock(V2JobOperations.class);
+    private final V3JobOperations v3JobOperations = mock(V3JobOperations.class);
+    private final WorkerStateMonitor workerStateMonitor = mock(WorkerStateMonitor.class);
+    private final JobManagerConfiguration configuration = mock(JobManagerConfiguration.class);
+
+    private final PublishSubject<JobManagerEvent<?>> v3Events = PublishSubject.create();
+    private final PublishSubject<JobManagerEvent<?>> v3EventsAfterError = PublishSubject.create();
+    private final PublishSubject<Status> v2Statuses = PublishSubject.create();
+
+    private final Job<BatchJobExt> job = JobGenerator.batchJobs(
+            JobFunctions.changeBatchJobSize(JobDescriptorGenerator.oneTaskBatchJobDescriptor(), 3)
+    ).getValue();
+    private final List<BatchJobTask> tasks = JobGenerator.batchTasks(job).toList(3);
+
+    private TaskLivenessMetrics metrics;
+
+    @Before
+    public void setUp() {
+        when(configuration.getTaskLivenessPollerIntervalMs()).thenReturn(60_000L);
+        when(v2JobOperations.getAllJobMgrs()).thenReturn(Collections.emptyList());
+        when(v3JobOperations.getJobs()).thenReturn(Collections.<Job>singletonList(job));
+        when(v3JobOperations.observeJobs()).thenReturn(v3Events, v3EventsAfterError);
+        when(workerStateMonitor.getAllStatusObservable()).thenReturn(v2Statuses);
+
+        metrics = new TaskLivenessMetrics(
+                mock(ApplicationSlaManagementService.class), v2JobOperations, v3JobOperations, workerStateMonitor,
+                configuration, new DefaultRegistry(), testScheduler
+        );
+    }
+
+    @After
+    public void tearDown() {
+        metrics.shutdown();
+    }
+
+    @Test
+    public void testEventStreamErrorReseedsHistograms() {
+        Task startedFirst = started(tasks.get(0));
+        when(v3JobOperations.getTasks(job.getId())).thenReturn(Collections.singletonList(startedFirst));
+        metrics.enterActiveMode();
+        assertThat(metrics.getTrackedTaskCount()).isEqualTo(1);
+
+        // The first task finishes, and two other tasks start, while the event stream is down.
+        v3Events.onError(new RuntimeException("simulated event stream error"));
+        Task startedSecond = started(tasks.get(1));
+        Task startedThird = started(tasks.get(2));
+        when(v3JobOperations.getTasks(job.getId())).thenReturn(Arrays.asList(startedSecond, startedThird));
+
+        testScheduler.triggerActions();
+        assertThat(v3EventsAfterError.hasObservers()).isTrue();
+        assertThat(metrics.getTrackedTaskCount()).isEqualTo(2);
+
+        // Events from the re-subscribed stream are applied.
+        Task finishedSecond = JobFunctions.changeTaskStatus(startedSecond, TaskState.Finished, "completed", "test");
+        v3EventsAfterError.onNext(TaskUpdateEvent.taskChange(job, finishedSecond, startedSecond));
+        assertThat(metrics.getTrackedTaskCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testShutdownReleasesEventSubscriptions() {
+        when(v3JobOperations.getTasks(job.getId())).thenReturn(Collections.emptyList());
+        metrics.enterActiveMode();
+        assertThat(v3Events.hasObservers()).isTrue();
+        assertThat(v2Statuses.hasObservers()).isTrue();
+
+        metrics.shutdown();
+        assertThat(v3Events.hasObservers()).isFalse();
+        assertThat(v2Statuses.hasObservers()).isFalse();
+    }
+
+    private static Task started(Task task) {
+        return JobFunctions.changeTaskStatus(task, TaskState.Started, "started", "test");
+    }
+}
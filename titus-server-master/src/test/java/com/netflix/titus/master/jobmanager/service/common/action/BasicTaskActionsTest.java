@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.jobmanager.service.common.action;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.netflix.titus.api.jobmanager.model.job.BatchJobTask;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.TaskStatus;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.jobmanager.service.V3JobOperations.Trigger;
+import com.netflix.titus.common.framework.reconciler.EntityHolder;
+import com.netflix.titus.common.framework.reconciler.ModelActionHolder;
+import com.netflix.titus.common.framework.reconciler.ReconciliationEngine;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.master.jobmanager.service.JobManagerConfiguration;
+import com.netflix.titus.master.jobmanager.service.common.action.task.BasicTaskActions;
+import com.netflix.titus.master.jobmanager.service.event.JobManagerReconcilerEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.netflix.titus.testkit.model.job.JobDescriptorGenerator.batchJobDescriptors;
+import static com.netflix.titus.testkit.model.job.JobGenerator.batchJobs;
+import static com.netflix.titus.testkit.model.job.JobGenerator.batchTasks;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BasicTaskActionsTest {
+
+    private final Job<BatchJobExt> job = batchJobs(batchJobDescriptors().getValue()).getValue();
+    private final List<BatchJobTask> tasks = batchTasks(job).toList(3);
+
+    private final JobManagerConfiguration configuration = mock(JobManagerConfiguration.class);
+
+    @SuppressWarnings("unchecked")
+    private final ReconciliationEngine<JobManagerReconcilerEvent> engine = mock(ReconciliationEngine.class);
+
+    private EntityHolder root;
+
+    @Before
+    public void setUp() {
+        root = EntityHolder.newRoot(job.getId(), job);
+        for (BatchJobTask task : tasks) {
+            root = root.addChild(EntityHolder.newRoot(task.getId(), task));
+        }
+        when(engine.getReferenceView()).thenReturn(root);
+    }
+
+    @Test
+    public void testBatchIsAppliedInOneChangeAction() {
+        Map<String, Function<Task, Optional<Task>>> changeFunctions = new LinkedHashMap<>();
+        tasks.forEach(task -> changeFunctions.put(task.getId(), changeStateTo(TaskState.Started)));
+
+        TitusChangeAction changeAction = BasicTaskActions.updateTasksInRunningModel(
+                job.getId(), changeFunctions, Trigger.Mesos, configuration, engine, "test batch", TitusRuntimes.test()
+        );
+        assertThat(changeAction.getId()).isEqualTo(job.getId());
+
+        List<ModelActionHolder> modelActionHolders = changeAction.apply().toBlocking().first();
+
+        // One reference and one running model update per task
+        assertThat(modelActionHolders).hasSize(2 * tasks.size());
+        assertThat(updatedTaskIds(modelActionHolders, ModelActionHolder.Model.Running))
+                .containsExactlyElementsOf(tasks.stream().map(Task::getId).collect(Collectors.toList()));
+
+        EntityHolder newRoot = applyReferenceUpdates(modelActionHolders);
+        tasks.forEach(task -> assertThat(taskState(newRoot, task)).isEqualTo(TaskState.Started));
+    }
+
+    @Test
+    public void testFailedTaskUpdateDoesNotDropOtherUpdatesInBatch() {
+        BatchJobTask failingTask = tasks.get(1);
+
+        Function<Task, Optional<Task>> failingChangeFunction = task -> {
+            throw new IllegalStateException("simulated change function error");
+        };
+
+        Map<String, Function<Task, Optional<Task>>> changeFunctions = new LinkedHashMap<>();
+        tasks.forEach(task -> changeFunctions.put(task.getId(), task == failingTask ? failingChangeFunction : changeStateTo(TaskState.Started)));
+
+        List<ModelActionHolder> modelActionHolders = BasicTaskActions.updateTasksInRunningModel(
+                job.getId(), changeFunctions, Trigger.Mesos, configuration, engine, "test batch", TitusRuntimes.test()
+        ).apply().toBlocking().first();
+
+        assertThat(updatedTaskIds(modelActionHolders, ModelActionHolder.Model.Running))
+                .containsExactly(tasks.get(0).getId(), tasks.get(2).getId());
+
+        EntityHolder newRoot = applyReferenceUpdates(modelActionHolders);
+        assertThat(taskState(newRoot, tasks.get(0))).isEqualTo(TaskState.Started);
+        assertThat(taskState(newRoot, failingTask)).isEqualTo(failingTask.getStatus().getState());
+        assertThat(taskState(newRoot, tasks.get(2))).isEqualTo(TaskState.Started);
+    }
+
+    private Function<Task, Optional<Task>> changeStateTo(TaskState taskState) {
+        return task -> Optional.of(BatchJobTask.newBuilder((BatchJobTask) task)
+                .withStatus(TaskStatus.newBuilder().withState(taskState).build())
+                .build()
+        );
+    }
+
+    private List<String> updatedTaskIds(List<ModelActionHolder> modelActionHolders, ModelActionHolder.Model model) {
+        return modelActionHolders.stream()
+                .filter(holder -> holder.getModel() == model)
+                .map(holder -> ((TitusModelAction) holder.getAction()).getId())
+                .collect(Collectors.toList());
+    }
+
+    private EntityHolder applyReferenceUpdates(List<ModelActionHolder> modelActionHolders) {
+        EntityHolder current = root;
+        for (ModelActionHolder holder : modelActionHolders) {
+            if (holder.getModel() == ModelActionHolder.Model.Reference) {
+                current = holder.getAction().apply(current).get().getLeft();
+            }
+        }
+        return current;
+    }
+
+    private TaskState taskState(EntityHolder rootHolder, Task task) {
+        Task current = rootHolder.findById(task.getId()).get().getEntity();
+        return current.getStatus().getState();
+    }
+}
@@ -16,8 +16,17 @@
 
 package com.netflix.titus.master.jobmanager.service.integration;
 
+import com.netflix.titus.api.jobmanager.model.job.JobDescriptor;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.master.jobmanager.service.integration.scenario.JobsScenarioBuilder;
+import com.netflix.titus.master.jobmanager.service.integration.scenario.ScenarioTemplates;
 import org.junit.Test;
 
+import static com.netflix.titus.api.jobmanager.model.job.JobFunctions.changeBatchJobSize;
+import static com.netflix.titus.testkit.model.job.JobDescriptorGenerator.oneTaskBatchJobDescriptor;
+import static org.assertj.core.api.Assertions.assertThat;
+
 /**
  * Collection of tests focusing on Mesos integration.
  * <p>
@@ -25,6 +34,26 @@ import org.junit.Test;
  */
 public class BatchJobMesosIntegrationTest {
 
+    private final JobsScenarioBuilder jobsScenarioBuilder = new JobsScenarioBuilder();
+
+    /**
+     * Status updates of multiple tasks of a job, delivered in one batch, are all applied.
+     */
+    @Test
+    public void testBatchedTaskStatusUpdates() throws Exception {
+        JobDescriptor<BatchJobExt> twoTaskJob = changeBatchJobSize(oneTaskBatchJobDescriptor(), 2);
+        jobsScenarioBuilder.scheduleJob(twoTaskJob, jobScenario -> jobScenario
+                .expectJobEvent()
+                .advance()
+                .inActiveTasks((taskIdx, resubmit) -> ScenarioTemplates.acceptTask(taskIdx, resubmit))
+                .inActiveTasks((taskIdx, resubmit) -> ScenarioTemplates.startTask(taskIdx, resubmit, TaskState.StartInitiated))
+                .triggerMesosBatchEvent(TaskState.Started, 0, 1)
+                .expectTaskUpdatedInStore(0, 0, task -> assertThat(task.getStatus().getState()).isEqualTo(TaskState.Started))
+                .expectTaskUpdatedInStore(1, 0, task -> assertThat(task.getStatus().getState()).isEqualTo(TaskState.Started))
+                .expectTaskStateChangeEvent(0, 0, TaskState.Started)
+                .expectTaskStateChangeEvent(1, 0, TaskState.Started)
+        );
+    }
 
     @Test
     public void testStartInitiatedFailure() throws Exception {
@@ -19,7 +19,9 @@ package com.netflix.titus.master.jobmanager.service.integration.scenario;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
@@ -477,6 +479,30 @@ public class JobScenarioBuilder<E extends JobDescriptor.JobDescriptorExt> {
         return triggerMesosEvent(taskIdx, resubmit, TaskState.Finished, reasonCode, errorCode);
     }
 
+    /**
+     * Sends the same Mesos state change for the given tasks (first submit) in one {@link V3JobOperations#updateTasks} batch.
+     */
+    public JobScenarioBuilder<E> triggerMesosBatchEvent(TaskState taskState, int... taskIdxs) {
+        Map<String, Function<Task, Optional<Task>>> changeFunctions = new LinkedHashMap<>();
+        for (int taskIdx : taskIdxs) {
+            Task task = jobStore.expectTaskInStore(jobId, taskIdx, 0);
+            TaskStatus taskStatus = JobModel.newTaskStatus()
+                    .withState(taskState)
+                    .withReasonCode(TaskStatus.REASON_NORMAL)
+                    .withReasonMessage("Task changed state to " + taskState)
+                    .withTimestamp(testScheduler.now())
+                    .build();
+            changeFunctions.put(task.getId(), JobManagerUtil.newMesosTaskStateUpdater(taskStatus, Optional.empty(), titusRuntime));
+        }
+
+        AtomicBoolean done = new AtomicBoolean();
+        jobOperations.updateTasks(jobId, changeFunctions, Trigger.Mesos, "Mesos callback batch taskStatus=" + taskState).subscribe(() -> done.set(true));
+        autoAdvanceUntil(done::get);
+        assertThat(done.get()).isTrue();
+
+        return this;
+    }
+
     private Task expectTaskEvent(int taskIdx, int resubmit, StoreEvent eventType) {
         Task lastInStore = autoAdvance(() -> eventType == StoreEvent.TaskRemoved
                 ? jobStore.expectTaskInStoreArchive(jobId, taskIdx, resubmit)
@@ -47,6 +47,7 @@ import com.netflix.titus.master.scheduler.constraint.ConstraintEvaluatorTransfor
 import com.netflix.titus.master.scheduler.constraint.SystemHardConstraint;
 import com.netflix.titus.master.scheduler.constraint.SystemSoftConstraint;
 import com.netflix.titus.master.service.management.ApplicationSlaManagementService;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.JobQueryIndex;
 import com.netflix.titus.testkit.rx.ExtTestSubscriber;
 import rx.schedulers.Schedulers;
 import rx.schedulers.TestScheduler;
@@ -164,6 +165,7 @@ public class JobsScenarioBuilder {
                         titusRuntime,
                         Optional.of(testScheduler)
                 ),
+                new JobQueryIndex(),
                 titusRuntime
         );
         jobOperations.enterActiveMode();
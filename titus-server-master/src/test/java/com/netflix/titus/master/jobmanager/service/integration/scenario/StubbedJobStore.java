@@ -36,6 +36,7 @@ import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
 import com.netflix.titus.api.jobmanager.model.job.Task;
 import com.netflix.titus.api.jobmanager.store.JobStore;
 import com.netflix.titus.common.util.rx.ObservableExt;
+import com.netflix.titus.common.util.tuple.Either;
 import com.netflix.titus.common.util.tuple.Pair;
 import org.assertj.core.api.Assertions;
 import rx.Completable;
@@ -197,6 +198,11 @@ class StubbedJobStore implements JobStore {
         return Observable.just(Pair.of(new ArrayList<>(jobs.values()), 0));
     }
 
+    @Override
+    public Observable<Either<Job<?>, Throwable>> streamJobs() {
+        return Observable.defer(() -> Observable.from(new ArrayList<>(jobs.values()))).map(Either::ofValue);
+    }
+
     @Override
     public Observable<Job<?>> retrieveJob(String jobId) {
         Callable<Job<?>> jobCallable = () -> jobs.get(jobId);
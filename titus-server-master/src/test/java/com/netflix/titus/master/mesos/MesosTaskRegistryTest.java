@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.mesos;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.titus.api.jobmanager.TaskAttributes;
+import com.netflix.titus.api.jobmanager.model.job.BatchJobTask;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.event.JobManagerEvent;
+import com.netflix.titus.api.jobmanager.model.job.event.TaskUpdateEvent;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.jobmanager.service.V3JobOperations;
+import com.netflix.titus.master.Status;
+import com.netflix.titus.master.job.V2JobMgrIntf;
+import com.netflix.titus.master.job.V2JobOperations;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.apache.mesos.Protos;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.subjects.PublishSubject;
+import rx.subjects.ReplaySubject;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MesosTaskRegistryTest {
+
+    private final V2JobOperations v2JobOperations = mock(V2JobOperations.class);
+    private final V3JobOperations v3JobOperations = mock(V3JobOperations.class);
+    private final MesosConfiguration configuration = mock(MesosConfiguration.class);
+
+    private final PublishSubject<JobManagerEvent<?>> v3Events = PublishSubject.create();
+
+    private final Job<BatchJobExt> job = JobGenerator.batchJobs(
+            JobFunctions.changeBatchJobSize(JobDescriptorGenerator.oneTaskBatchJobDescriptor(), 2)
+    ).getValue();
+    private final List<BatchJobTask> tasks = JobGenerator.batchTasks(job).toList(2);
+
+    private MesosTaskRegistry taskRegistry;
+
+    @Before
+    public void setUp() {
+        when(configuration.getTaskRegistryResyncIntervalMs()).thenReturn(Long.MAX_VALUE);
+        when(v2JobOperations.getAllJobMgrs()).thenReturn(Collections.emptyList());
+        when(v2JobOperations.getJobCreationPublishSubject()).thenReturn(PublishSubject.<V2JobMgrIntf>create());
+        when(v3JobOperations.observeJobs()).thenReturn(v3Events);
+    }
+
+    @After
+    public void tearDown() {
+        if (taskRegistry != null) {
+            taskRegistry.shutdown();
+        }
+    }
+
+    @Test
+    public void testInitialStateIsLoadedFromJobManager() {
+        Task started = startedOn(tasks.get(0), "agent1");
+        when(v3JobOperations.getTasks()).thenReturn(Collections.singletonList(started));
+        activate();
+
+        assertThat(taskRegistry.isKnown(started.getId())).isTrue();
+        assertThat(taskRegistry.isKnown(tasks.get(1).getId())).isFalse();
+
+        List<Protos.TaskStatus> toReconcile = taskRegistry.getTasksToReconcile();
+        assertThat(toReconcile).hasSize(1);
+        assertThat(toReconcile.get(0).getTaskId().getValue()).isEqualTo(started.getId());
+        assertThat(toReconcile.get(0).getState()).isEqualTo(Protos.TaskState.TASK_RUNNING);
+        assertThat(toReconcile.get(0).getSlaveId().getValue()).isEqualTo("agent1");
+    }
+
+    @Test
+    public void testTaskEventsUpdateRegistry() {
+        when(v3JobOperations.getTasks()).thenReturn(Collections.emptyList());
+        activate();
+
+        Task accepted = tasks.get(0);
+        v3Events.onNext(TaskUpdateEvent.newTask(job, accepted));
+        assertThat(taskRegistry.isKnown(accepted.getId())).isTrue();
+        assertThat(taskRegistry.getTasksToReconcile()).isEmpty();
+
+        Task started = startedOn(accepted, "agent1");
+        v3Events.onNext(TaskUpdateEvent.taskChange(job, started, accepted));
+        assertThat(taskRegistry.getTasksToReconcile()).hasSize(1);
+
+        Task finished = JobFunctions.changeTaskStatus(started, TaskState.Finished, "completed", "test");
+        v3Events.onNext(TaskUpdateEvent.taskChange(job, finished, started));
+        assertThat(taskRegistry.isKnown(accepted.getId())).isFalse();
+        assertThat(taskRegistry.getTasksToReconcile()).isEmpty();
+    }
+
+    @Test
+    public void testResyncRepairsDrift() {
+        Task started = startedOn(tasks.get(0), "agent1");
+        when(v3JobOperations.getTasks()).thenReturn(Collections.singletonList(started));
+        activate();
+        assertThat(taskRegistry.size()).isEqualTo(1);
+
+        // Task removed without a corresponding event
+        when(v3JobOperations.getTasks()).thenReturn(Collections.emptyList());
+        when(configuration.getTaskRegistryResyncIntervalMs()).thenReturn(0L);
+
+        assertThat(taskRegistry.getTasksToReconcile()).isEmpty();
+        assertThat(taskRegistry.isKnown(started.getId())).isFalse();
+    }
+
+    @Test
+    public void testShutdownReleasesV2JobSubscriptions() {
+        when(v3JobOperations.getTasks()).thenReturn(Collections.emptyList());
+        ReplaySubject<Status> statusSubject = ReplaySubject.create();
+        V2JobMgrIntf jobMgr = mock(V2JobMgrIntf.class);
+        when(jobMgr.getJobId()).thenReturn("Titus-1");
+        when(jobMgr.getStatusSubject()).thenReturn(statusSubject);
+        when(v2JobOperations.getAllJobMgrs()).thenReturn(Collections.singletonList(jobMgr));
+        activate();
+        assertThat(statusSubject.hasObservers()).isTrue();
+
+        taskRegistry.shutdown();
+        assertThat(statusSubject.hasObservers()).isFalse();
+    }
+
+    private void activate() {
+        taskRegistry = new MesosTaskRegistry(v2JobOperations, v3JobOperations, configuration, new DefaultRegistry());
+        taskRegistry.activate();
+    }
+
+    private static Task startedOn(Task task, String agentId) {
+        return JobFunctions.changeTaskStatus(task, TaskState.Started, "started", "test")
+                .toBuilder()
+                .addToTaskContext(TaskAttributes.TASK_ATTRIBUTES_AGENT_HOST, agentId)
+                .build();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.mesos;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.titus.master.mesos.TaskStatusUpdateQueue.OverflowPolicy;
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.TaskState;
+import org.apache.mesos.Protos.TaskStatus;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TaskStatusUpdateQueueTest {
+
+    private static final long TIMEOUT_MS = 5_000;
+
+    private final List<List<TaskStatus>> batches = new CopyOnWriteArrayList<>();
+
+    /**
+     * One permit per processed update, released by the consumer.
+     */
+    private final Semaphore processedUpdates = new Semaphore(0);
+
+    /**
+     * Blocks the first batch, so the tests can fill the queue while the drain thread is busy.
+     */
+    private final CountDownLatch firstBatchStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+
+    private TaskStatusUpdateQueue queue;
+
+    @After
+    public void tearDown() {
+        releaseFirstBatch.countDown();
+        if (queue != null) {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void testUpdatesOfSameTaskAreCoalesced() throws Exception {
+        queue = newQueue(10, OverflowPolicy.CallerRuns);
+        blockDrainThread();
+
+        queue.offer(newStatus("task1", TaskState.TASK_STARTING));
+        queue.offer(newStatus("task1", TaskState.TASK_RUNNING));
+        queue.offer(newStatus("task2", TaskState.TASK_RUNNING));
+        assertThat(queue.getQueueDepth()).isEqualTo(2);
+
+        releaseFirstBatch.countDown();
+        List<TaskStatus> processed = awaitUpdates(3);
+        assertThat(processed).extracting(TaskStatus::getState)
+                .containsExactly(TaskState.TASK_RUNNING, TaskState.TASK_RUNNING, TaskState.TASK_RUNNING);
+    }
+
+    @Test
+    public void testTerminalUpdateIsNotReplaced() throws Exception {
+        queue = newQueue(10, OverflowPolicy.CallerRuns);
+        blockDrainThread();
+
+        queue.offer(newStatus("task1", TaskState.TASK_RUNNING));
+        queue.offer(newStatus("task1", TaskState.TASK_FINISHED));
+        queue.offer(newStatus("task1", TaskState.TASK_LOST));
+
+        releaseFirstBatch.countDown();
+        List<TaskStatus> processed = awaitUpdates(2);
+        assertThat(processed.get(1).getState()).isEqualTo(TaskState.TASK_FINISHED);
+    }
+
+    @Test
+    public void testDropOverflowPolicy() throws Exception {
+        queue = newQueue(1, OverflowPolicy.Drop);
+        blockDrainThread();
+
+        queue.offer(newStatus("task1", TaskState.TASK_RUNNING));
+        queue.offer(newStatus("task2", TaskState.TASK_RUNNING));
+        assertThat(queue.getQueueDepth()).isEqualTo(1);
+
+        releaseFirstBatch.countDown();
+        List<TaskStatus> processed = awaitUpdates(2);
+        assertThat(processed).extracting(status -> status.getTaskId().getValue()).containsExactly("task0", "task1");
+    }
+
+    @Test
+    public void testCallerRunsOverflowPolicy() throws Exception {
+        queue = newQueue(1, OverflowPolicy.CallerRuns);
+        blockDrainThread();
+
+        queue.offer(newStatus("task1", TaskState.TASK_RUNNING));
+
+        // The caller is blocked until the batch in progress completes.
+        Thread caller = new Thread(() -> queue.offer(newStatus("task2", TaskState.TASK_RUNNING)));
+        caller.start();
+        caller.join(100);
+        assertThat(caller.isAlive()).isTrue();
+
+        releaseFirstBatch.countDown();
+        caller.join(TIMEOUT_MS);
+        assertThat(caller.isAlive()).isFalse();
+
+        List<TaskStatus> processed = awaitUpdates(3);
+        assertThat(processed).extracting(status -> status.getTaskId().getValue()).containsExactlyInAnyOrder("task0", "task1", "task2");
+    }
+
+    private TaskStatusUpdateQueue newQueue(int capacity, OverflowPolicy overflowPolicy) {
+        return new TaskStatusUpdateQueue(capacity, 100, overflowPolicy, batch -> {
+            batches.add(batch);
+            processedUpdates.release(batch.size());
+            firstBatchStarted.countDown();
+            try {
+                releaseFirstBatch.await();
+            } catch (InterruptedException ignore) {
+            }
+        }, new DefaultRegistry());
+    }
+
+    private void blockDrainThread() throws InterruptedException {
+        queue.offer(newStatus("task0", TaskState.TASK_RUNNING));
+        assertThat(firstBatchStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    }
+
+    private List<TaskStatus> awaitUpdates(int expected) throws InterruptedException {
+        assertThat(processedUpdates.tryAcquire(expected, TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+        List<TaskStatus> all = new CopyOnWriteArrayList<>();
+        batches.forEach(all::addAll);
+        assertThat(all).hasSize(expected);
+        return all;
+    }
+
+    private static TaskStatus newStatus(String taskId, TaskState state) {
+        return TaskStatus.newBuilder()
+                .setTaskId(Protos.TaskID.newBuilder().setValue(taskId))
+                .setState(state)
+                .build();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.scheduler;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.netflix.fenzo.TaskRequest;
+import com.netflix.fenzo.VirtualMachineCurrentState;
+import com.netflix.titus.api.jobmanager.model.job.BatchJobTask;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobDescriptor;
+import com.netflix.titus.api.jobmanager.model.job.JobModel;
+import com.netflix.titus.api.jobmanager.model.job.SecurityProfile;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.TaskStatus;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.jobmanager.model.job.ext.ServiceJobExt;
+import com.netflix.titus.api.model.Tier;
+import com.netflix.titus.common.data.generator.DataGenerator;
+import com.netflix.titus.master.jobmanager.service.common.V3QueueableTask;
+import org.junit.Test;
+
+import static com.netflix.titus.testkit.model.job.JobDescriptorGenerator.batchJobDescriptors;
+import static com.netflix.titus.testkit.model.job.JobDescriptorGenerator.serviceJobDescriptors;
+import static com.netflix.titus.testkit.model.job.JobGenerator.batchJobs;
+import static com.netflix.titus.testkit.model.job.JobGenerator.batchTasks;
+import static com.netflix.titus.testkit.model.job.JobGenerator.serviceJobs;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TaskStateSnapshotTest {
+
+    private final Job<BatchJobExt> job = batchJobs(batchJobDescriptors().getValue()).getValue();
+    private final DataGenerator<BatchJobTask> taskGenerator = batchTasks(job);
+
+    private final BatchJobTask launchedTask = taskInState(taskGenerator.getValue(), TaskState.Launched);
+    private final BatchJobTask startedTask = taskInState(taskGenerator.apply().getValue(), TaskState.Started);
+    private final BatchJobTask unknownTask = taskInState(taskGenerator.apply().apply().getValue(), TaskState.Launched);
+
+    private final TaskStateSnapshot snapshot = TaskStateSnapshot.newSnapshot(Arrays.asList(launchedTask, startedTask));
+
+    @Test
+    public void testTaskStates() {
+        assertThat(snapshot.size()).isEqualTo(2);
+        assertThat(snapshot.findV3TaskState(startedTask.getId())).contains(TaskState.Started);
+        assertThat(snapshot.isTaskLaunching(queueableTask(launchedTask))).isTrue();
+        assertThat(snapshot.isTaskLaunching(queueableTask(startedTask))).isFalse();
+        assertThat(snapshot.isTaskLaunching(queueableTask(unknownTask))).isFalse();
+    }
+
+    @Test
+    public void testLaunchingTaskCountIsComputedOncePerHost() {
+        VirtualMachineCurrentState vm = mock(VirtualMachineCurrentState.class);
+        when(vm.getHostname()).thenReturn("host1");
+        when(vm.getRunningTasks()).thenReturn(Arrays.<TaskRequest>asList(queueableTask(launchedTask), queueableTask(startedTask)));
+        assertThat(snapshot.getLaunchingTaskCount(vm)).isEqualTo(1);
+
+        // Running tasks do not change during a scheduling iteration, so the first result is reused.
+        when(vm.getRunningTasks()).thenReturn(Collections.<TaskRequest>emptyList());
+        assertThat(snapshot.getLaunchingTaskCount(vm)).isEqualTo(1);
+        assertThat(snapshot.copy().getLaunchingTaskCount(vm)).isEqualTo(0);
+    }
+
+    @Test
+    public void testRunningTaskSummary() {
+        JobDescriptor<ServiceJobExt> serviceJobDescriptor = serviceJobDescriptors().getValue().but(jd ->
+                JobModel.newContainer(jd.getContainer())
+                        .withImage(JobModel.newImage().withName("service/image").withTag("latest").build())
+                        .withSecurityProfile(SecurityProfile.newBuilder().withSecurityGroups(Collections.singletonList("sg-service")).withIamRole("serviceRole").build())
+        );
+        Job<ServiceJobExt> serviceJob = serviceJobs(serviceJobDescriptor).getValue();
+        V3QueueableTask serviceTask = mock(V3QueueableTask.class);
+        when(serviceTask.getSchedulingAttributes()).thenReturn(SchedulingAttributes.newV3Attributes(serviceJob, Tier.Critical.ordinal()));
+
+        VirtualMachineCurrentState vm = mock(VirtualMachineCurrentState.class);
+        when(vm.getHostname()).thenReturn("host1");
+        when(vm.getRunningTasks()).thenReturn(Arrays.<TaskRequest>asList(queueableTask(launchedTask), queueableTask(startedTask), serviceTask));
+
+        RunningTaskSummary summary = snapshot.getRunningTaskSummary(vm);
+        assertThat(summary.getTotalTasks()).isEqualTo(3);
+        assertThat(summary.getServiceJobTasks()).isEqualTo(1);
+        assertThat(summary.getBatchJobTasks()).isEqualTo(2);
+
+        SchedulingAttributes batchAttributes = SchedulingAttributes.newV3Attributes(job, Tier.Flex.ordinal());
+        assertThat(summary.getImageCount(batchAttributes.getImage())).isEqualTo(2);
+        assertThat(summary.getSecurityGroupCount(batchAttributes.getJoinedSecurityGroupIds())).isEqualTo(2);
+        assertThat(snapshot.getRunningTaskSummary(vm)).isSameAs(summary);
+    }
+
+    private static BatchJobTask taskInState(BatchJobTask task, TaskState taskState) {
+        return BatchJobTask.newBuilder(task).withStatus(TaskStatus.newBuilder().withState(taskState).build()).build();
+    }
+
+    private V3QueueableTask queueableTask(BatchJobTask task) {
+        V3QueueableTask queueableTask = mock(V3QueueableTask.class);
+        when(queueableTask.getTask()).thenReturn(task);
+        when(queueableTask.getSchedulingAttributes()).thenReturn(SchedulingAttributes.newV3Attributes(job, Tier.Flex.ordinal()));
+        return queueableTask;
+    }
+}
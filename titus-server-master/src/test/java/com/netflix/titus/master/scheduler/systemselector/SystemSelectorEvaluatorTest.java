@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.scheduler.systemselector;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+import com.netflix.titus.api.scheduler.service.SchedulerException;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.master.scheduler.SchedulerConfiguration;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SystemSelectorEvaluatorTest {
+
+    private static final List<String> EXPRESSIONS = Arrays.asList(
+            "job.appName == 'myApp'",
+            "job.getAppName() === 'myApp' && job.cpu >= 4",
+            "job.attributes.k == 'v' && job.attributes['n'] == 5",
+            "job.attributes.n === 5",
+            "job.state == 'Started'",
+            "job.state === 'Started'",
+            "job.tags[1] == 'b' && job.tags.length == 2",
+            "job.tags.contains('a')",
+            "job.appName.startsWith('my') || job.cpu > 100",
+            "job.appName + job.cpu == 'myApp4'",
+            "job.missingProperty === undefined",
+            "job.missingProperty === null",
+            "job.attributes.missing === null",
+            "job.cpu > 10 ? false : true",
+            "!job.service",
+            "job.appName.match(/^my/) != null",
+            "typeof job == 'object'"
+    );
+
+    private static final Map<String, Object> CONTEXT = Collections.singletonMap("job", new TestJob());
+
+    private final SystemSelectorEvaluator compilingEvaluator = newEvaluator(true);
+    private final SystemSelectorEvaluator scriptEngineEvaluator = newEvaluator(false);
+
+    @Test
+    public void testCompiledEvaluationMatchesScriptEngine() {
+        for (String expression : EXPRESSIONS) {
+            assertThat(compilingEvaluator.evaluate(expression, CONTEXT))
+                    .describedAs(expression)
+                    .isEqualTo(scriptEngineEvaluator.evaluate(expression, CONTEXT));
+        }
+    }
+
+    @Test
+    public void testUnsupportedExpressionsAreCompiledAsScriptEngineOnly() {
+        assertThat(catchThrowable(() -> SelectorExpressionCompiler.compile("job.appName.match(/^my/) != null")))
+                .isInstanceOf(SelectorExpressionCompiler.UnsupportedExpressionException.class);
+        assertThat(compilingEvaluator.evaluate("job.appName.match(/^my/) != null", CONTEXT)).isTrue();
+    }
+
+    @Test
+    public void testMalformedNumberIsCompiledAsScriptEngineOnly() {
+        assertThat(catchThrowable(() -> SelectorExpressionCompiler.compile("job.instances == 1.2.3")))
+                .isInstanceOf(SelectorExpressionCompiler.UnsupportedExpressionException.class);
+    }
+
+    @Test
+    public void testEvaluationErrors() {
+        assertThat(catchThrowable(() -> compilingEvaluator.evaluate("job.nothing.foo == 1", CONTEXT)))
+                .isInstanceOf(SchedulerException.class);
+        assertThat(catchThrowable(() -> compilingEvaluator.evaluate("undefinedVariable == 1", CONTEXT)))
+                .isInstanceOf(SchedulerException.class);
+    }
+
+    private static SystemSelectorEvaluator newEvaluator(boolean compilerEnabled) {
+        SchedulerConfiguration configuration = mock(SchedulerConfiguration.class);
+        when(configuration.getSchedulerMaxConcurrent()).thenReturn(1);
+        when(configuration.isSystemSelectorExpressionCompilerEnabled()).thenReturn(compilerEnabled);
+        return new SystemSelectorEvaluator(configuration, TitusRuntimes.internal());
+    }
+
+    public enum TestState {Accepted, Started}
+
+    public static class TestJob {
+
+        public String getAppName() {
+            return "myApp";
+        }
+
+        public int getCpu() {
+            return 4;
+        }
+
+        public boolean isService() {
+            return true;
+        }
+
+        public TestState getState() {
+            return TestState.Started;
+        }
+
+        public Map<String, String> getAttributes() {
+            return ImmutableMap.of("k", "v", "n", "5");
+        }
+
+        public List<String> getTags() {
+            return Arrays.asList("a", "b");
+        }
+
+        public Object getNothing() {
+            return null;
+        }
+    }
+}
@@ -27,6 +27,8 @@ public class BeanCapacityManagementConfiguration implements CapacityManagementCo
     private final long availableCapacityUpdateIntervalMs;
     private final double criticalTierBuffer;
     private final double flexTierBuffer;
+    private final long resourceConsumptionUpdateIntervalMs;
+    private final long resourceConsumptionReconciliationIntervalMs;
 
     public BeanCapacityManagementConfiguration(Builder builder) {
         this.defaultApplicationResourceDimension = builder.defaultApplicationResourceDimension;
@@ -34,6 +36,8 @@ public class BeanCapacityManagementConfiguration implements CapacityManagementCo
         this.availableCapacityUpdateIntervalMs = builder.availableCapacityUpdateIntervalMs;
         this.criticalTierBuffer = builder.criticalTierBuffer;
         this.flexTierBuffer = builder.flexTierBuffer;
+        this.resourceConsumptionUpdateIntervalMs = builder.resourceConsumptionUpdateIntervalMs;
+        this.resourceConsumptionReconciliationIntervalMs = builder.resourceConsumptionReconciliationIntervalMs;
     }
 
     @Override
@@ -61,6 +65,16 @@ public class BeanCapacityManagementConfiguration implements CapacityManagementCo
         return flexTierBuffer;
     }
 
+    @Override
+    public long getResourceConsumptionUpdateIntervalMs() {
+        return resourceConsumptionUpdateIntervalMs;
+    }
+
+    @Override
+    public long getResourceConsumptionReconciliationIntervalMs() {
+        return resourceConsumptionReconciliationIntervalMs;
+    }
+
     public static Builder newBuilder() {
         return new Builder();
     }
@@ -72,6 +86,8 @@ public class BeanCapacityManagementConfiguration implements CapacityManagementCo
         private long availableCapacityUpdateIntervalMs;
         private double criticalTierBuffer;
         private double flexTierBuffer;
+        private long resourceConsumptionUpdateIntervalMs;
+        private long resourceConsumptionReconciliationIntervalMs;
 
         private Builder() {
         }
@@ -105,6 +121,16 @@ public class BeanCapacityManagementConfiguration implements CapacityManagementCo
             return this;
         }
 
+        public Builder withResourceConsumptionUpdateIntervalMs(long resourceConsumptionUpdateIntervalMs) {
+            this.resourceConsumptionUpdateIntervalMs = resourceConsumptionUpdateIntervalMs;
+            return this;
+        }
+
+        public Builder withResourceConsumptionReconciliationIntervalMs(long resourceConsumptionReconciliationIntervalMs) {
+            this.resourceConsumptionReconciliationIntervalMs = resourceConsumptionReconciliationIntervalMs;
+            return this;
+        }
+
         public BeanCapacityManagementConfiguration build() {
             return new BeanCapacityManagementConfiguration(this);
         }
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.service.management.internal;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.netflix.titus.api.model.ResourceDimension;
+import com.netflix.titus.api.model.v2.V2JobState;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.master.model.ResourceDimensions;
+import com.netflix.titus.master.service.management.ResourceConsumption;
+import org.junit.Test;
+
+import static com.netflix.titus.master.service.management.ApplicationSlaManagementService.DEFAULT_APPLICATION;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResourceConsumptionAccumulatorTest {
+
+    private static final ResourceDimension TASK_RESOURCES = new ResourceDimension(0.5, 0, 512, 1024, 128);
+
+    private final ResourceConsumptionAccumulator accumulator = new ResourceConsumptionAccumulator();
+
+    @Test
+    public void testTaskStateChangesUpdateConsumption() {
+        accumulator.updateJob("job1", "groupA", "app1", TASK_RESOURCES, 3);
+        accumulator.updateTask("job1", "task1", V2JobState.Accepted, false);
+        accumulator.updateTask("job1", "task2", V2JobState.Started, true);
+
+        ResourceConsumption consumption = singleConsumption("groupA");
+        assertThat(consumption.getConsumerName()).isEqualTo("app1");
+        assertThat(consumption.getCurrentConsumption()).isEqualTo(TASK_RESOURCES);
+        assertThat(consumption.getMaxConsumption()).isEqualTo(ResourceDimensions.multiply(TASK_RESOURCES, 3));
+        assertThat(consumption.getAttributes()).containsEntry("Accepted", 1).containsEntry("Started", 1);
+
+        accumulator.updateTask("job1", "task1", V2JobState.Started, true);
+        assertThat(singleConsumption("groupA").getCurrentConsumption()).isEqualTo(ResourceDimensions.multiply(TASK_RESOURCES, 2));
+
+        // Terminal tasks are no longer counted
+        accumulator.updateTask("job1", "task1", V2JobState.Completed, false);
+        accumulator.updateTask("job1", "task2", V2JobState.Failed, false);
+        consumption = singleConsumption("groupA");
+        assertThat(consumption.getCurrentConsumption()).isEqualTo(ResourceDimension.empty());
+        assertThat(consumption.getAttributes()).containsEntry("Started", 0).containsEntry("Completed", 0);
+    }
+
+    @Test
+    public void testJobsOfSameApplicationAreAggregated() {
+        accumulator.updateJob("job1", "groupA", null, TASK_RESOURCES, 1);
+        accumulator.updateJob("job2", "groupA", null, TASK_RESOURCES, 2);
+        accumulator.updateTask("job1", "task1", V2JobState.Started, true);
+        accumulator.updateTask("job2", "task2", V2JobState.Started, true);
+
+        ResourceConsumption consumption = singleConsumption("groupA");
+        assertThat(consumption.getConsumerName()).isEqualTo(DEFAULT_APPLICATION);
+        assertThat(consumption.getCurrentConsumption()).isEqualTo(ResourceDimensions.multiply(TASK_RESOURCES, 2));
+        assertThat(consumption.getMaxConsumption()).isEqualTo(ResourceDimensions.multiply(TASK_RESOURCES, 3));
+    }
+
+    @Test
+    public void testJobUpdateMovesItsTasks() {
+        accumulator.updateJob("job1", "groupA", "app1", TASK_RESOURCES, 1);
+        accumulator.updateTask("job1", "task1", V2JobState.Started, true);
+
+        accumulator.updateJob("job1", "groupB", "app1", TASK_RESOURCES, 2);
+
+        ResourceConsumption consumption = singleConsumption("groupB");
+        assertThat(consumption.getCurrentConsumption()).isEqualTo(TASK_RESOURCES);
+        assertThat(consumption.getMaxConsumption()).isEqualTo(ResourceDimensions.multiply(TASK_RESOURCES, 2));
+    }
+
+    @Test
+    public void testJobRemoval() {
+        accumulator.updateJob("job1", "groupA", "app1", TASK_RESOURCES, 1);
+        accumulator.updateTask("job1", "task1", V2JobState.Started, true);
+        accumulator.removeJob("job1");
+
+        // Updates of removed jobs are ignored
+        accumulator.updateTask("job1", "task2", V2JobState.Started, true);
+
+        assertThat(accumulator.getConsumptions()).isEmpty();
+        assertThat(accumulator.getJobCount()).isZero();
+    }
+
+    @Test
+    public void testReconcileJobReplacesTasks() {
+        accumulator.updateJob("job1", "groupA", "app1", TASK_RESOURCES, 2);
+        accumulator.updateTask("job1", "task1", V2JobState.Started, true);
+
+        long version = accumulator.startReconciliation();
+        accumulator.reconcileJob("job1", "groupA", "app1", TASK_RESOURCES, 2,
+                Collections.singletonMap("task2", Pair.of(V2JobState.Launched, true)), version);
+
+        ResourceConsumption consumption = singleConsumption("groupA");
+        assertThat(consumption.getCurrentConsumption()).isEqualTo(TASK_RESOURCES);
+        assertThat(consumption.getAttributes()).containsEntry("Started", 0).containsEntry("Launched", 1);
+    }
+
+    @Test
+    public void testReconcileSkipsJobsUpdatedAfterSnapshot() {
+        accumulator.updateJob("job1", "groupA", "app1", TASK_RESOURCES, 1);
+        accumulator.updateTask("job1", "task1", V2JobState.Started, true);
+
+        // The snapshot is read, and then the task finishes before the snapshot is applied.
+        long version = accumulator.startReconciliation();
+        accumulator.updateTask("job1", "task1", V2JobState.Completed, false);
+        accumulator.reconcileJob("job1", "groupA", "app1", TASK_RESOURCES, 1,
+                Collections.singletonMap("task1", Pair.of(V2JobState.Started, true)), version);
+        accumulator.reconcileRemovedJobs(Collections.emptySet(), version);
+
+        ResourceConsumption consumption = singleConsumption("groupA");
+        assertThat(consumption.getCurrentConsumption()).isEqualTo(ResourceDimension.empty());
+        assertThat(consumption.getAttributes()).containsEntry("Started", 0);
+        assertThat(accumulator.getJobCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRemovedJobIsNotRecreatedByReconciliation() {
+        accumulator.updateJob("job1", "groupA", "app1", TASK_RESOURCES, 1);
+
+        long version = accumulator.startReconciliation();
+        accumulator.removeJob("job1");
+        accumulator.reconcileJob("job1", "groupA", "app1", TASK_RESOURCES, 1,
+                Collections.singletonMap("task1", Pair.of(V2JobState.Started, true)), version);
+        accumulator.updateJob("job1", "groupA", "app1", TASK_RESOURCES, 1);
+
+        assertThat(accumulator.getConsumptions()).isEmpty();
+        assertThat(accumulator.getJobCount()).isZero();
+    }
+
+    @Test
+    public void testReconcileRemovesJobsMissingFromSnapshot() {
+        accumulator.updateJob("job1", "groupA", "app1", TASK_RESOURCES, 1);
+        accumulator.updateJob("job2", "groupA", "app1", TASK_RESOURCES, 1);
+
+        // job1 is not in the snapshot. job3 is added by an event after the snapshot is started, so it is kept.
+        long version = accumulator.startReconciliation();
+        accumulator.updateJob("job3", "groupA", "app1", TASK_RESOURCES, 1);
+        accumulator.reconcileRemovedJobs(Collections.singleton("job2"), version);
+
+        assertThat(accumulator.getJobCount()).isEqualTo(2);
+        assertThat(singleConsumption("groupA").getMaxConsumption()).isEqualTo(ResourceDimensions.multiply(TASK_RESOURCES, 2));
+    }
+
+    private ResourceConsumption singleConsumption(String capacityGroup) {
+        List<Pair<String, ResourceConsumption>> consumptions = accumulator.getConsumptions();
+        assertThat(consumptions).hasSize(1);
+        assertThat(consumptions.get(0).getLeft()).isEqualTo(capacityGroup);
+        return consumptions.get(0).getRight();
+    }
+}
@@ -29,7 +29,6 @@ import com.netflix.titus.api.store.v2.V2JobMetadata;
 import com.netflix.titus.master.job.V2JobMgrIntf;
 import com.netflix.titus.master.job.V2JobOperations;
 import com.netflix.titus.master.model.ResourceDimensions;
-import com.netflix.titus.master.service.management.ApplicationSlaManagementService;
 import com.netflix.titus.master.service.management.BeanCapacityManagementConfiguration;
 import com.netflix.titus.master.service.management.CompositeResourceConsumption;
 import com.netflix.titus.master.service.management.ResourceConsumption;
@@ -51,8 +50,6 @@ public class ResourceConsumptionEvaluatorTest {
             .withFlexTierBuffer(BUFFER)
             .build();
 
-    private final ApplicationSlaManagementService applicationSlaManagementService = mock(ApplicationSlaManagementService.class);
-
     private final V2JobOperations v2JobOperations = mock(V2JobOperations.class);
     private final V3JobOperations v3JobOperations = mock(V3JobOperations.class);
 
@@ -60,8 +57,6 @@ public class ResourceConsumptionEvaluatorTest {
 
     @Test
     public void testEvaluation() throws Exception {
-        when(applicationSlaManagementService.getApplicationSLAs()).thenReturn(asList(ConsumptionModelGenerator.DEFAULT_SLA, ConsumptionModelGenerator.CRITICAL_SLA_1, ConsumptionModelGenerator.NOT_USED_SLA));
-
         // Job with defined capacity group SLA
         V2JobMetadata goodCapacityJob = runtimeModelGenerator.newJobMetadata(Parameters.JobType.Service, "goodCapacityJob", ConsumptionModelGenerator.CRITICAL_SLA_1.getAppName());
         runtimeModelGenerator.scheduleJob(goodCapacityJob.getJobId());
@@ -92,7 +87,13 @@ public class ResourceConsumptionEvaluatorTest {
         when(v2JobOperations.getAllJobMgrs()).thenReturn(asList(goodCapacityJobMgr, noAppNameJobMgr, badCapacityJobMgr));
 
         // Evaluate
-        ResourceConsumptionEvaluator evaluator = new ResourceConsumptionEvaluator(applicationSlaManagementService, v2JobOperations, v3JobOperations, config);
+        ResourceConsumptionAccumulator accumulator = new ResourceConsumptionAccumulator();
+        ResourceConsumptionTracker.reconcile(accumulator, v2JobOperations, v3JobOperations);
+        ResourceConsumptionEvaluator evaluator = new ResourceConsumptionEvaluator(
+                asList(ConsumptionModelGenerator.DEFAULT_SLA, ConsumptionModelGenerator.CRITICAL_SLA_1, ConsumptionModelGenerator.NOT_USED_SLA),
+                config,
+                accumulator.getConsumptions()
+        );
 
         Set<String> undefined = evaluator.getUndefinedCapacityGroups();
         assertThat(undefined).contains("missingCapacityGroup");
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.master.service.management.internal;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.netflix.spectator.api.DefaultRegistry;
+import com.netflix.titus.api.jobmanager.model.job.BatchJobTask;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.JobState;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.event.JobManagerEvent;
+import com.netflix.titus.api.jobmanager.model.job.event.JobUpdateEvent;
+import com.netflix.titus.api.jobmanager.model.job.event.TaskUpdateEvent;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.jobmanager.service.V3JobOperations;
+import com.netflix.titus.api.model.ResourceDimension;
+import com.netflix.titus.api.model.Tier;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.master.Status;
+import com.netflix.titus.master.job.V2JobMgrIntf;
+import com.netflix.titus.master.job.V2JobOperations;
+import com.netflix.titus.master.service.management.ApplicationSlaManagementService;
+import com.netflix.titus.master.service.management.CapacityManagementConfiguration;
+import com.netflix.titus.master.service.management.ResourceConsumption;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.subjects.PublishSubject;
+import rx.subjects.ReplaySubject;
+
+import static com.netflix.titus.master.service.management.ResourceConsumptions.findConsumption;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ResourceConsumptionTrackerTest {
+
+    private final ApplicationSlaManagementService applicationSlaManagementService = mock(ApplicationSlaManagementService.class);
+    private final V2JobOperations v2JobOperations = mock(V2JobOperations.class);
+    private final V3JobOperations v3JobOperations = mock(V3JobOperations.class);
+    private final CapacityManagementConfiguration config = mock(CapacityManagementConfiguration.class);
+
+    private final PublishSubject<JobManagerEvent<?>> v3Events = PublishSubject.create();
+
+    private final Job<BatchJobExt> job = JobGenerator.batchJobs(
+            JobDescriptorGenerator.oneTaskBatchJobDescriptor().toBuilder()
+                    .withCapacityGroup(ConsumptionModelGenerator.CRITICAL_SLA_1.getAppName())
+                    .build()
+    ).getValue();
+    private final BatchJobTask task = JobGenerator.batchTasks(job).getValue();
+    private final ResourceDimension taskResources = ResourceConsumptionEvaluator.toResourceDimension(job);
+
+    private ResourceConsumptionTracker tracker;
+
+    @Before
+    public void setUp() {
+        when(applicationSlaManagementService.getApplicationSLAs()).thenReturn(asList(ConsumptionModelGenerator.DEFAULT_SLA, ConsumptionModelGenerator.CRITICAL_SLA_1));
+        when(config.getResourceConsumptionReconciliationIntervalMs()).thenReturn(Long.MAX_VALUE);
+        when(v2JobOperations.getAllJobMgrs()).thenReturn(Collections.emptyList());
+        when(v2JobOperations.getJobCreationPublishSubject()).thenReturn(PublishSubject.<V2JobMgrIntf>create());
+        when(v3JobOperations.observeJobs()).thenReturn(v3Events);
+        when(v3JobOperations.getJobsAndTasks()).thenReturn(Collections.emptyList());
+
+        tracker = new ResourceConsumptionTracker(applicationSlaManagementService, v2JobOperations, v3JobOperations, config, new DefaultRegistry());
+    }
+
+    @After
+    public void tearDown() {
+        tracker.shutdown();
+    }
+
+    @Test
+    public void testV3EventsUpdateConsumption() {
+        tracker.activate();
+
+        v3Events.onNext(JobUpdateEvent.newJob(job));
+        assertConsumption(ResourceDimension.empty(), taskResources);
+
+        Task started = JobFunctions.changeTaskStatus(task, TaskState.Started, "started", "test");
+        v3Events.onNext(TaskUpdateEvent.newTask(job, task));
+        v3Events.onNext(TaskUpdateEvent.taskChange(job, started, task));
+        assertConsumption(taskResources, taskResources);
+
+        Task finished = JobFunctions.changeTaskStatus(started, TaskState.Finished, "completed", "test");
+        v3Events.onNext(TaskUpdateEvent.taskChange(job, finished, started));
+        assertConsumption(ResourceDimension.empty(), taskResources);
+
+        v3Events.onNext(JobUpdateEvent.jobChange(finishedJob(), job));
+        assertConsumption(ResourceDimension.empty(), ResourceDimension.empty());
+    }
+
+    @Test
+    public void testReconciliationDoesNotOverrideNewerTaskEvent() {
+        tracker.activate();
+        Task started = JobFunctions.changeTaskStatus(task, TaskState.Started, "started", "test");
+        v3Events.onNext(JobUpdateEvent.newJob(job));
+        v3Events.onNext(TaskUpdateEvent.taskChange(job, started, task));
+        assertConsumption(taskResources, taskResources);
+
+        // The task finishes while the job manager snapshot is read, so the snapshot still shows it as started.
+        Task finished = JobFunctions.changeTaskStatus(started, TaskState.Finished, "completed", "test");
+        when(v3JobOperations.getJobsAndTasks()).thenAnswer(invocation -> {
+            v3Events.onNext(TaskUpdateEvent.taskChange(job, finished, started));
+            return snapshotOf(started);
+        });
+        reconcileOnNextEvaluation();
+
+        assertConsumption(ResourceDimension.empty(), taskResources);
+    }
+
+    @Test
+    public void testReconciliationRacingJobRemovalDoesNotRecreateJob() {
+        tracker.activate();
+        Task started = JobFunctions.changeTaskStatus(task, TaskState.Started, "started", "test");
+        v3Events.onNext(JobUpdateEvent.newJob(job));
+        v3Events.onNext(TaskUpdateEvent.taskChange(job, started, task));
+
+        // The job finishes while the job manager snapshot is read, so the snapshot still shows it as active.
+        when(v3JobOperations.getJobsAndTasks()).thenAnswer(invocation -> {
+            v3Events.onNext(JobUpdateEvent.jobChange(finishedJob(), job));
+            return snapshotOf(started);
+        });
+        reconcileOnNextEvaluation();
+        assertConsumption(ResourceDimension.empty(), ResourceDimension.empty());
+
+        // The job is still reported by the job manager, but no longer re-created from a snapshot.
+        when(v3JobOperations.getJobsAndTasks()).thenReturn(snapshotOf(started));
+        reconcileOnNextEvaluation();
+        assertConsumption(ResourceDimension.empty(), ResourceDimension.empty());
+    }
+
+    @Test
+    public void testShutdownReleasesV2JobSubscriptions() {
+        ReplaySubject<Status> statusSubject = ReplaySubject.create();
+        V2JobMgrIntf jobMgr = mock(V2JobMgrIntf.class);
+        when(jobMgr.getJobId()).thenReturn("Titus-1");
+        when(jobMgr.getStatusSubject()).thenReturn(statusSubject);
+        when(v2JobOperations.getAllJobMgrs()).thenReturn(Collections.singletonList(jobMgr));
+        tracker.activate();
+        assertThat(statusSubject.hasObservers()).isTrue();
+
+        tracker.shutdown();
+        assertThat(statusSubject.hasObservers()).isFalse();
+    }
+
+    private void reconcileOnNextEvaluation() {
+        when(config.getResourceConsumptionReconciliationIntervalMs()).thenReturn(0L);
+        tracker.get();
+        when(config.getResourceConsumptionReconciliationIntervalMs()).thenReturn(Long.MAX_VALUE);
+    }
+
+    private List<Pair<Job, List<Task>>> snapshotOf(Task task) {
+        return Collections.singletonList(Pair.<Job, List<Task>>of(job, Collections.singletonList(task)));
+    }
+
+    private Job<BatchJobExt> finishedJob() {
+        return JobFunctions.changeJobStatus(job, JobState.Finished, "completed");
+    }
+
+    private void assertConsumption(ResourceDimension expectedCurrent, ResourceDimension expectedMax) {
+        ResourceConsumption consumption = findConsumption(
+                tracker.get().getSystemConsumption(), Tier.Critical.name(), ConsumptionModelGenerator.CRITICAL_SLA_1.getAppName()
+        ).get();
+        assertThat(consumption.getCurrentConsumption()).isEqualTo(expectedCurrent);
+        assertThat(consumption.getMaxConsumption()).isEqualTo(expectedMax);
+    }
+}
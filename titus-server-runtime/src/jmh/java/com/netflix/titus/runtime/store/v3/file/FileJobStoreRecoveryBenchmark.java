@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.runtime.store.v3.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.titus.api.jobmanager.model.job.BatchJobTask;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures {@link FileJobStore} recovery time (snapshot load and/or log replay) followed by loading all jobs,
+ * which is what a master does on restart. With 'snapshot' enabled all data is loaded from a snapshot, otherwise
+ * all records are replayed from the write-ahead log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileJobStoreRecoveryBenchmark {
+
+    @Param({"10000", "100000"})
+    public int jobCount;
+
+    @Param({"true", "false"})
+    public boolean snapshot;
+
+    private File storeDirectory;
+    private FileJobStoreConfiguration configuration;
+
+    @Setup
+    public void setUp() throws IOException {
+        storeDirectory = Files.createTempDirectory("fileJobStoreBenchmark").toFile();
+        configuration = mock(FileJobStoreConfiguration.class);
+        when(configuration.getStoreDirectory()).thenReturn(storeDirectory.getAbsolutePath());
+        when(configuration.getLogSegmentSizeBytes()).thenReturn(64 * 1024 * 1024);
+        when(configuration.getSnapshotRecordThreshold()).thenReturn(snapshot ? 2 * jobCount : Integer.MAX_VALUE);
+
+        FileJobStore store = new FileJobStore(configuration, TitusRuntimes.internal());
+        store.init().await();
+        List<Job<BatchJobExt>> jobs = JobGenerator.batchJobs(JobDescriptorGenerator.oneTaskBatchJobDescriptor()).toList(jobCount);
+        for (Job<BatchJobExt> job : jobs) {
+            store.storeJob(job).await();
+            BatchJobTask task = JobGenerator.batchTasks(job).getValue();
+            store.storeTask(task).await();
+        }
+        store.shutdown();
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = storeDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        storeDirectory.delete();
+    }
+
+    @Benchmark
+    public int recover() {
+        FileJobStore store = new FileJobStore(configuration, TitusRuntimes.internal());
+        try {
+            store.init().await();
+            return store.retrieveJobs().toBlocking().first().getLeft().size();
+        } finally {
+            store.shutdown();
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package com.netflix.titus.runtime.endpoint.common.grpc;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 
 import com.google.protobuf.Empty;
@@ -35,9 +36,11 @@ import org.slf4j.Logger;
 import rx.Completable;
 import rx.Emitter;
 import rx.Observable;
+import rx.Subscriber;
 import rx.Subscription;
 import rx.functions.Action0;
 import rx.functions.Action1;
+import rx.functions.Func1;
 
 import static io.grpc.stub.ClientCalls.asyncUnaryCall;
 
@@ -193,6 +196,23 @@ public class GrpcUtil {
         serverObserver.setOnCancelHandler(subscription::unsubscribe);
     }
 
+    /**
+     * Subscribes the GRPC response observer to the given stream, requesting the next item only when the GRPC transport
+     * is ready to send it. The stream is flow controlled by the client connection, instead of queueing the items
+     * in the GRPC outbound buffer. Must be called from the service method, before it returns.
+     */
+    public static <T> Subscription subscribeWithFlowControl(Observable<T> stream,
+                                                            StreamObserver<T> responseObserver,
+                                                            Func1<Throwable, Throwable> errorMapper) {
+        ServerCallStreamObserver<T> serverObserver = (ServerCallStreamObserver<T>) responseObserver;
+        FlowControlledSubscriber<T> subscriber = new FlowControlledSubscriber<>(serverObserver, errorMapper);
+        serverObserver.setOnReadyHandler(subscriber::requestIfReady);
+        serverObserver.setOnCancelHandler(subscriber::unsubscribe);
+        stream.subscribe(subscriber);
+        subscriber.requestIfReady();
+        return subscriber;
+    }
+
     public static <T> Observable<T> createRequestObservable(Action1<Emitter<T>> emitter) {
         return Observable.create(
                 emitter,
@@ -215,4 +235,48 @@ public class GrpcUtil {
     public static boolean isNotOK(Status oneStatus) {
         return !Status.Code.OK.equals(oneStatus.getCode());
     }
+
+    private static class FlowControlledSubscriber<T> extends Subscriber<T> {
+
+        private final ServerCallStreamObserver<T> serverObserver;
+        private final Func1<Throwable, Throwable> errorMapper;
+
+        /**
+         * Set when an item is requested, and cleared when it is received, so at most one item is in flight.
+         */
+        private final AtomicBoolean itemRequested = new AtomicBoolean();
+
+        private FlowControlledSubscriber(ServerCallStreamObserver<T> serverObserver, Func1<Throwable, Throwable> errorMapper) {
+            this.serverObserver = serverObserver;
+            this.errorMapper = errorMapper;
+        }
+
+        @Override
+        public void onStart() {
+            request(0);
+        }
+
+        @Override
+        public void onNext(T item) {
+            itemRequested.set(false);
+            serverObserver.onNext(item);
+            requestIfReady();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            serverObserver.onError(errorMapper.call(error));
+        }
+
+        @Override
+        public void onCompleted() {
+            serverObserver.onCompleted();
+        }
+
+        private void requestIfReady() {
+            if (!isUnsubscribed() && serverObserver.isReady() && itemRequested.compareAndSet(false, true)) {
+                request(1);
+            }
+        }
+    }
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.runtime.endpoint.v3.grpc.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.netflix.titus.api.model.Page;
+import com.netflix.titus.api.model.Pagination;
+import com.netflix.titus.api.model.PaginationUtil;
+import com.netflix.titus.common.util.collections.PersistentSortedMap;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.JobQueryIndex.CursorKey;
+import com.netflix.titus.runtime.jobmanager.JobManagerCursors;
+
+/**
+ * Cursor based pagination over the {@link JobQueryPlan} candidates, which does not materialize and sort all query
+ * results. Candidates are visited in the cursor order, starting right after the cursor, and the scan stops as soon
+ * as the page is full. For a full scan plan, the cursor ordered index is used directly, so a page costs
+ * O(log n + visited candidates).
+ * <p>
+ * The page items and the <tt>hasMore</tt> flag are exact. The position related values (total items, page number and
+ * cursor position) are computed from the candidate counts, counting the not visited candidates as matching. They are
+ * exact if all candidates match the query (for example a query without criteria), and upper bound estimates otherwise.
+ * <p>
+ * Page number based requests are served by {@link #takePageByNumber}, which also visits the candidates in the cursor
+ * order, and only evaluates the remaining ones to count all matches.
+ */
+public final class CursorPagination {
+
+    private CursorPagination() {
+    }
+
+    /**
+     * @param allInCursorOrder all ids of the query domain (jobs or tasks) in the cursor order
+     * @param cursorKeyResolver cursor key of a candidate, or empty if the candidate is no longer in the index
+     * @param matcher returns the entity with the given id, if it exists, and it matches the query
+     */
+    public static <T> Pair<List<T>, Pagination> takePageAfterCursor(Page page,
+                                                                    JobQueryPlan plan,
+                                                                    PersistentSortedMap<CursorKey, String> allInCursorOrder,
+                                                                    Function<String, Optional<CursorKey>> cursorKeyResolver,
+                                                                    Function<String, Optional<T>> matcher,
+                                                                    Function<T, String> cursorFactory) {
+        CursorKey after = JobManagerCursors.decode(page.getCursor())
+                .map(idAndTimestamp -> new CursorKey(idAndTimestamp.getLeft(), idAndTimestamp.getRight()))
+                .orElseThrow(() -> new IllegalArgumentException("Invalid cursor: " + page.getCursor()));
+        if (page.getPageSize() <= 0) {
+            return Pair.of(Collections.emptyList(), new Pagination(page, false, 0, 0, "", 0));
+        }
+
+        int candidatesBefore;
+        int candidatesTotal;
+        Iterator<String> candidatesAfter;
+        if (plan.isFullScan()) {
+            candidatesBefore = allInCursorOrder.headCount(after, true);
+            candidatesTotal = allInCursorOrder.size();
+            candidatesAfter = allInCursorOrder.valuesAfter(after);
+        } else {
+            // Selective plan, so the candidate set is small. The heap is built in linear time, and only the visited
+            // candidates are ordered.
+            List<CursorKey> keysAfter = new ArrayList<>();
+            int resolved = 0;
+            for (String id : plan.getCandidateIds()) {
+                Optional<CursorKey> cursorKey = cursorKeyResolver.apply(id);
+                if (cursorKey.isPresent()) {
+                    resolved++;
+                    if (cursorKey.get().compareTo(after) > 0) {
+                        keysAfter.add(cursorKey.get());
+                    }
+                }
+            }
+            candidatesTotal = resolved;
+            candidatesBefore = resolved - keysAfter.size();
+            PriorityQueue<CursorKey> queue = new PriorityQueue<>(keysAfter);
+            candidatesAfter = new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    return !queue.isEmpty();
+                }
+
+                @Override
+                public String next() {
+                    return queue.remove().getId();
+                }
+            };
+        }
+
+        List<T> pageItems = new ArrayList<>();
+        int visited = 0;
+        boolean hasMore = false;
+        while (candidatesAfter.hasNext()) {
+            visited++;
+            Optional<T> match = matcher.apply(candidatesAfter.next());
+            if (match.isPresent()) {
+                if (pageItems.size() == page.getPageSize()) {
+                    hasMore = true;
+                    break;
+                }
+                pageItems.add(match.get());
+            }
+        }
+
+        int offset = candidatesBefore;
+        int notVisited = hasMore ? candidatesTotal - candidatesBefore - visited + 1 : 0;
+        int totalItems = offset + pageItems.size() + notVisited;
+        int numberOfPages = PaginationUtil.numberOfPages(page, totalItems);
+        int pageNumber = Math.min(numberOfPages, offset / page.getPageSize());
+
+        String cursor;
+        int cursorPosition;
+        if (pageItems.isEmpty()) {
+            cursor = totalItems == 0 ? "" : page.getCursor();
+            cursorPosition = Math.max(0, totalItems - 1);
+        } else {
+            cursor = cursorFactory.apply(pageItems.get(pageItems.size() - 1));
+            cursorPosition = offset + pageItems.size() - 1;
+        }
+
+        Pagination pagination = new Pagination(
+                page.toBuilder().withPageNumber(pageNumber).build(),
+                hasMore,
+                numberOfPages,
+                totalItems,
+                cursor,
+                cursorPosition
+        );
+        return Pair.of(pageItems, pagination);
+    }
+
+    /**
+     * Page number based pagination, with the same result as sorting all matching items in the cursor order and
+     * taking the requested page. The candidates are visited in the cursor order until the page is full, and the
+     * remaining ones are evaluated in any order, to compute the exact number of matching items. A full scan plan
+     * iterates the cursor ordered index, and a selective plan heapifies its candidates, so no sort of all matches
+     * is needed.
+     *
+     * @param allInCursorOrder all ids of the query domain (jobs or tasks) in the cursor order
+     * @param cursorKeyResolver cursor key of a candidate, or empty if the candidate is no longer in the index
+     * @param matcher returns the entity with the given id, if it exists, and it matches the query
+     */
+    public static <T> Pair<List<T>, Pagination> takePageByNumber(Page page,
+                                                                 JobQueryPlan plan,
+                                                                 PersistentSortedMap<CursorKey, String> allInCursorOrder,
+                                                                 Function<String, Optional<CursorKey>> cursorKeyResolver,
+                                                                 Function<String, Optional<T>> matcher,
+                                                                 Function<T, String> cursorFactory) {
+        if (page.getPageSize() <= 0) {
+            return Pair.of(Collections.emptyList(), new Pagination(page, false, 0, 0, "", 0));
+        }
+
+        Iterator<String> candidatesInOrder;
+        Supplier<Iterator<String>> remainingCandidates;
+        if (plan.isFullScan()) {
+            Iterator<String> values = allInCursorOrder.values().iterator();
+            candidatesInOrder = values;
+            remainingCandidates = () -> values;
+        } else {
+            List<CursorKey> keys = new ArrayList<>();
+            for (String id : plan.getCandidateIds()) {
+                cursorKeyResolver.apply(id).ifPresent(keys::add);
+            }
+            PriorityQueue<CursorKey> queue = new PriorityQueue<>(keys);
+            candidatesInOrder = new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    return !queue.isEmpty();
+                }
+
+                @Override
+                public String next() {
+                    return queue.remove().getId();
+                }
+            };
+            // Candidates not polled while filling the page, which are only counted, so their order does not matter
+            remainingCandidates = () -> queue.stream().map(CursorKey::getId).iterator();
+        }
+
+        long firstItem = (long) page.getPageNumber() * page.getPageSize();
+        long endItem = firstItem + page.getPageSize();
+
+        List<T> pageItems = new ArrayList<>();
+        int totalItems = 0;
+        while (totalItems < endItem && candidatesInOrder.hasNext()) {
+            Optional<T> match = matcher.apply(candidatesInOrder.next());
+            if (match.isPresent()) {
+                if (totalItems >= firstItem) {
+                    pageItems.add(match.get());
+                }
+                totalItems++;
+            }
+        }
+        for (Iterator<String> it = remainingCandidates.get(); it.hasNext(); ) {
+            if (matcher.apply(it.next()).isPresent()) {
+                totalItems++;
+            }
+        }
+
+        if (totalItems <= 0) {
+            return Pair.of(Collections.emptyList(), new Pagination(page, false, 0, 0, "", 0));
+        }
+
+        long lastItem = Math.min(totalItems, endItem);
+        String cursor = pageItems.isEmpty() ? "" : cursorFactory.apply(pageItems.get(pageItems.size() - 1));
+        int cursorPosition = pageItems.isEmpty() ? 0 : (int) (lastItem - 1);
+
+        return Pair.of(pageItems, new Pagination(page, totalItems > lastItem, PaginationUtil.numberOfPages(page, totalItems), totalItems, cursor, cursorPosition));
+    }
+}
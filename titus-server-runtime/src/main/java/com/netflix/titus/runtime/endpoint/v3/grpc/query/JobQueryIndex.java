@@ -0,0 +1,399 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.runtime.endpoint.v3.grpc.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import javax.inject.Singleton;
+
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobDescriptor;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.common.util.collections.PersistentSortedMap;
+import com.netflix.titus.runtime.jobmanager.JobManagerCursors;
+
+/**
+ * Secondary indexes over the active jobs and tasks, used by {@link JobQueryPlanner} to avoid full scans when
+ * evaluating job/task queries. The index is maintained by the job manager from the reconciliation events. It holds
+ * only identifiers, and the query results must be always re-validated against the current job/task state, as
+ * the index may lag behind the reference model for a short period of time.
+ * <p>
+ * All identifier sets returned by this class are read-only, live views in the identifier order. Updates are
+ * serialized, while reads are lock free.
+ */
+@Singleton
+public class JobQueryIndex {
+
+    public enum JobField {
+        ApplicationName,
+        Owner,
+        CapacityGroup,
+        ImageName,
+        JobState,
+        /**
+         * Values are the names of {@link com.netflix.titus.grpc.protogen.JobDescriptor.JobSpecCase} (BATCH or SERVICE).
+         */
+        JobType
+    }
+
+    private static final String BATCH_JOB_TYPE = "BATCH";
+    private static final String SERVICE_JOB_TYPE = "SERVICE";
+
+    private final ConcurrentMap<IndexKey, NavigableSet<String>> jobIdsByKey = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<IndexKey>> jobKeys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<TaskState, NavigableSet<String>> taskIdsByState = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, NavigableSet<String>> taskIdsByJobId = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, IndexedTask> tasks = new ConcurrentHashMap<>();
+
+    private final NavigableSet<String> allJobIds = new ConcurrentSkipListSet<>();
+    private final NavigableSet<String> allTaskIds = new ConcurrentSkipListSet<>();
+
+    private final ConcurrentMap<String, CursorKey> jobCursorKeys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CursorKey> taskCursorKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Job/task ids in the cursor order. Replaced on each update, so readers get a consistent snapshot without locking.
+     */
+    private volatile PersistentSortedMap<CursorKey, String> jobsInCursorOrder = PersistentSortedMap.empty();
+    private volatile PersistentSortedMap<CursorKey, String> tasksInCursorOrder = PersistentSortedMap.empty();
+
+    public int getJobCount() {
+        return jobsInCursorOrder.size();
+    }
+
+    public int getTaskCount() {
+        return tasksInCursorOrder.size();
+    }
+
+    public NavigableSet<String> getJobIds() {
+        return Collections.unmodifiableNavigableSet(allJobIds);
+    }
+
+    public NavigableSet<String> getTaskIds() {
+        return Collections.unmodifiableNavigableSet(allTaskIds);
+    }
+
+    public NavigableSet<String> findJobIds(JobField field, String value) {
+        return readOnly(jobIdsByKey.get(new IndexKey(field.name(), value, null)));
+    }
+
+    /**
+     * Returns identifiers of jobs with the given attribute (label) key, irrespective of its value.
+     */
+    public NavigableSet<String> findJobIdsWithLabel(String key) {
+        return readOnly(jobIdsByKey.get(new IndexKey(null, key, null)));
+    }
+
+    public NavigableSet<String> findJobIdsWithLabel(String key, String value) {
+        return readOnly(jobIdsByKey.get(new IndexKey(null, key, value)));
+    }
+
+    public NavigableSet<String> findTaskIds(TaskState taskState) {
+        return readOnly(taskIdsByState.get(taskState));
+    }
+
+    public NavigableSet<String> getTaskIdsOfJob(String jobId) {
+        return readOnly(taskIdsByJobId.get(jobId));
+    }
+
+    /**
+     * Returns job ids ordered by the job cursor order (see {@link JobManagerCursors#coreJobCursorOrderComparator()}).
+     */
+    public PersistentSortedMap<CursorKey, String> getJobsInCursorOrder() {
+        return jobsInCursorOrder;
+    }
+
+    /**
+     * Returns task ids ordered by the task cursor order (see {@link JobManagerCursors#coreTaskCursorOrderComparator()}).
+     */
+    public PersistentSortedMap<CursorKey, String> getTasksInCursorOrder() {
+        return tasksInCursorOrder;
+    }
+
+    public Optional<CursorKey> findJobCursorKey(String jobId) {
+        return Optional.ofNullable(jobCursorKeys.get(jobId));
+    }
+
+    public Optional<CursorKey> findTaskCursorKey(String taskId) {
+        return Optional.ofNullable(taskCursorKeys.get(taskId));
+    }
+
+    public Optional<String> findJobIdOfTask(String taskId) {
+        IndexedTask indexedTask = tasks.get(taskId);
+        return indexedTask == null ? Optional.empty() : Optional.of(indexedTask.jobId);
+    }
+
+    public synchronized void updateJob(Job<?> job) {
+        String jobId = job.getId();
+        Set<IndexKey> newKeys = buildKeys(job);
+        Set<IndexKey> previousKeys = jobKeys.put(jobId, newKeys);
+        if (previousKeys != null) {
+            for (IndexKey key : previousKeys) {
+                if (!newKeys.contains(key)) {
+                    removeFrom(jobIdsByKey, key, jobId);
+                }
+            }
+        }
+        for (IndexKey key : newKeys) {
+            if (previousKeys == null || !previousKeys.contains(key)) {
+                jobIdsByKey.computeIfAbsent(key, k -> new ConcurrentSkipListSet<>()).add(jobId);
+            }
+        }
+        allJobIds.add(jobId);
+
+        CursorKey cursorKey = new CursorKey(jobId, JobManagerCursors.getCoreCursorTimestamp(job));
+        CursorKey previousCursorKey = jobCursorKeys.put(jobId, cursorKey);
+        if (!cursorKey.equals(previousCursorKey)) {
+            PersistentSortedMap<CursorKey, String> updated = previousCursorKey == null ? jobsInCursorOrder : jobsInCursorOrder.remove(previousCursorKey);
+            jobsInCursorOrder = updated.put(cursorKey, jobId);
+        }
+    }
+
+    /**
+     * Removes a job and all its tasks from the index.
+     */
+    public synchronized void removeJob(String jobId) {
+        Set<IndexKey> keys = jobKeys.remove(jobId);
+        if (keys != null) {
+            keys.forEach(key -> removeFrom(jobIdsByKey, key, jobId));
+        }
+        NavigableSet<String> jobTaskIds = taskIdsByJobId.get(jobId);
+        if (jobTaskIds != null) {
+            new ArrayList<>(jobTaskIds).forEach(this::removeTaskInternal);
+        }
+        allJobIds.remove(jobId);
+        CursorKey cursorKey = jobCursorKeys.remove(jobId);
+        if (cursorKey != null) {
+            jobsInCursorOrder = jobsInCursorOrder.remove(cursorKey);
+        }
+    }
+
+    public synchronized void updateTask(Task task) {
+        String taskId = task.getId();
+        CursorKey cursorKey = new CursorKey(taskId, JobManagerCursors.getCoreCursorTimestamp(task));
+        CursorKey previousCursorKey = taskCursorKeys.put(taskId, cursorKey);
+        if (!cursorKey.equals(previousCursorKey)) {
+            PersistentSortedMap<CursorKey, String> updated = previousCursorKey == null ? tasksInCursorOrder : tasksInCursorOrder.remove(previousCursorKey);
+            tasksInCursorOrder = updated.put(cursorKey, taskId);
+        }
+
+        TaskState newState = task.getStatus().getState();
+        IndexedTask previous = tasks.put(taskId, new IndexedTask(task.getJobId(), newState));
+        if (previous != null) {
+            if (previous.state == newState && previous.jobId.equals(task.getJobId())) {
+                return;
+            }
+            removeFrom(taskIdsByState, previous.state, taskId);
+            removeFrom(taskIdsByJobId, previous.jobId, taskId);
+        }
+        taskIdsByState.computeIfAbsent(newState, s -> new ConcurrentSkipListSet<>()).add(taskId);
+        taskIdsByJobId.computeIfAbsent(task.getJobId(), j -> new ConcurrentSkipListSet<>()).add(taskId);
+        allTaskIds.add(taskId);
+    }
+
+    public synchronized void removeTask(String taskId) {
+        removeTaskInternal(taskId);
+    }
+
+    /**
+     * Removes from the index all tasks of a job, which are not in the provided set. Task removal from a job is
+     * observable only as a job model update, so the job's current task set must be provided to detect it.
+     */
+    public synchronized void retainTasks(String jobId, Set<String> taskIds) {
+        NavigableSet<String> jobTaskIds = taskIdsByJobId.get(jobId);
+        if (jobTaskIds == null) {
+            return;
+        }
+        List<String> removed = new ArrayList<>();
+        for (String taskId : jobTaskIds) {
+            if (!taskIds.contains(taskId)) {
+                removed.add(taskId);
+            }
+        }
+        removed.forEach(this::removeTaskInternal);
+    }
+
+    public synchronized void clear() {
+        jobIdsByKey.clear();
+        jobKeys.clear();
+        taskIdsByState.clear();
+        taskIdsByJobId.clear();
+        tasks.clear();
+        allJobIds.clear();
+        allTaskIds.clear();
+        jobCursorKeys.clear();
+        taskCursorKeys.clear();
+        jobsInCursorOrder = PersistentSortedMap.empty();
+        tasksInCursorOrder = PersistentSortedMap.empty();
+    }
+
+    private void removeTaskInternal(String taskId) {
+        IndexedTask indexedTask = tasks.remove(taskId);
+        if (indexedTask != null) {
+            removeFrom(taskIdsByState, indexedTask.state, taskId);
+            removeFrom(taskIdsByJobId, indexedTask.jobId, taskId);
+        }
+        allTaskIds.remove(taskId);
+        CursorKey cursorKey = taskCursorKeys.remove(taskId);
+        if (cursorKey != null) {
+            tasksInCursorOrder = tasksInCursorOrder.remove(cursorKey);
+        }
+    }
+
+    private static Set<IndexKey> buildKeys(Job<?> job) {
+        JobDescriptor<?> jobDescriptor = job.getJobDescriptor();
+        Set<IndexKey> keys = new HashSet<>();
+        addKey(keys, JobField.ApplicationName, jobDescriptor.getApplicationName());
+        if (jobDescriptor.getOwner() != null) {
+            addKey(keys, JobField.Owner, jobDescriptor.getOwner().getTeamEmail());
+        }
+        addKey(keys, JobField.CapacityGroup, jobDescriptor.getCapacityGroup());
+        if (jobDescriptor.getContainer() != null && jobDescriptor.getContainer().getImage() != null) {
+            addKey(keys, JobField.ImageName, jobDescriptor.getContainer().getImage().getName());
+        }
+        addKey(keys, JobField.JobState, job.getStatus().getState().name());
+        addKey(keys, JobField.JobType, jobDescriptor.getExtensions() instanceof BatchJobExt ? BATCH_JOB_TYPE : SERVICE_JOB_TYPE);
+        for (Map.Entry<String, String> entry : jobDescriptor.getAttributes().entrySet()) {
+            keys.add(new IndexKey(null, entry.getKey(), null));
+            keys.add(new IndexKey(null, entry.getKey(), entry.getValue()));
+        }
+        return keys;
+    }
+
+    private static void addKey(Set<IndexKey> keys, JobField field, String value) {
+        if (value != null) {
+            keys.add(new IndexKey(field.name(), value, null));
+        }
+    }
+
+    private static <K> void removeFrom(ConcurrentMap<K, NavigableSet<String>> index, K key, String id) {
+        NavigableSet<String> ids = index.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static NavigableSet<String> readOnly(NavigableSet<String> ids) {
+        return ids == null ? Collections.emptyNavigableSet() : Collections.unmodifiableNavigableSet(ids);
+    }
+
+    /**
+     * Position of a job or a task in the cursor order, which is by the accepted timestamp first, and the id second.
+     */
+    public static final class CursorKey implements Comparable<CursorKey> {
+
+        private final String id;
+        private final long timestamp;
+
+        public CursorKey(String id, long timestamp) {
+            this.id = id;
+            this.timestamp = timestamp;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public int compareTo(CursorKey other) {
+            int cmp = Long.compare(timestamp, other.timestamp);
+            return cmp != 0 ? cmp : id.compareTo(other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CursorKey cursorKey = (CursorKey) o;
+            return timestamp == cursorKey.timestamp && Objects.equals(id, cursorKey.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, timestamp);
+        }
+    }
+
+    /**
+     * Job field values and labels share the same index. A label key has the field name set to null.
+     */
+    private static final class IndexKey {
+
+        private final String field;
+        private final String value;
+        private final String labelValue;
+
+        private IndexKey(String field, String value, String labelValue) {
+            this.field = field;
+            this.value = value;
+            this.labelValue = labelValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            IndexKey indexKey = (IndexKey) o;
+            return Objects.equals(field, indexKey.field) &&
+                    Objects.equals(value, indexKey.value) &&
+                    Objects.equals(labelValue, indexKey.labelValue);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(field, value, labelValue);
+        }
+    }
+
+    private static final class IndexedTask {
+
+        private final String jobId;
+        private final TaskState state;
+
+        private IndexedTask(String jobId, TaskState state) {
+            this.jobId = jobId;
+            this.state = state;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.runtime.endpoint.v3.grpc.query;
+
+import java.util.NavigableSet;
+
+/**
+ * Result of {@link JobQueryPlanner} planning. Provides a superset of the identifiers (job ids for job queries,
+ * task ids for task queries) of the entities matching the query, in the identifier order. The full query predicate
+ * must still be evaluated for each candidate.
+ */
+public class JobQueryPlan {
+
+    static final String FULL_SCAN = "fullScan";
+
+    private final String indexName;
+    private final NavigableSet<String> candidateIds;
+
+    JobQueryPlan(String indexName, NavigableSet<String> candidateIds) {
+        this.indexName = indexName;
+        this.candidateIds = candidateIds;
+    }
+
+    /**
+     * Name of the index used to compute the candidate set, or 'fullScan' if no index was applicable.
+     */
+    public String getIndexName() {
+        return indexName;
+    }
+
+    public boolean isFullScan() {
+        return FULL_SCAN.equals(indexName);
+    }
+
+    public NavigableSet<String> getCandidateIds() {
+        return candidateIds;
+    }
+
+    @Override
+    public String toString() {
+        return "JobQueryPlan{" +
+                "indexName='" + indexName + '\'' +
+                ", candidates=" + candidateIds.size() +
+                '}';
+    }
+}
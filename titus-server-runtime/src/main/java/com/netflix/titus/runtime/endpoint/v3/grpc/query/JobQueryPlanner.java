@@ -0,0 +1,194 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.runtime.endpoint.v3.grpc.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.grpc.protogen.JobDescriptor;
+import com.netflix.titus.grpc.protogen.JobStatus;
+import com.netflix.titus.grpc.protogen.TaskStatus;
+import com.netflix.titus.runtime.endpoint.JobQueryCriteria;
+import com.netflix.titus.runtime.endpoint.v3.grpc.V3GrpcModelConverters;
+import com.netflix.titus.runtime.endpoint.v3.grpc.query.JobQueryIndex.JobField;
+
+/**
+ * Chooses the most selective {@link JobQueryIndex} lookup for a query. Each query criterion that has an index
+ * (job/task ids, job state, job type, owner, application name, capacity group, image name, labels and task states)
+ * produces a candidate set, which is a superset of the query result. As all criteria are AND-ed, any of the candidate
+ * sets can be used, and the one with the smallest estimated size is selected. Task level criteria are mapped to
+ * job ids for job queries, and job level criteria to task ids for task queries.
+ */
+public final class JobQueryPlanner {
+
+    private JobQueryPlanner() {
+    }
+
+    public static JobQueryPlan planJobQuery(JobQueryCriteria<TaskStatus.TaskState, JobDescriptor.JobSpecCase> criteria,
+                                            JobQueryIndex index) {
+        List<Lookup> lookups = new ArrayList<>();
+        addJobLookups(criteria, index, lookups);
+        addTaskLookups(criteria, index, lookups);
+
+        Optional<Lookup> best = selectBest(lookups, index.getJobCount(), true, index);
+        return best.map(lookup -> new JobQueryPlan(lookup.name, lookup.isJobLookup ? lookup.ids.get() : toJobIds(lookup.ids.get(), index)))
+                .orElseGet(() -> new JobQueryPlan(JobQueryPlan.FULL_SCAN, index.getJobIds()));
+    }
+
+    public static JobQueryPlan planTaskQuery(JobQueryCriteria<TaskStatus.TaskState, JobDescriptor.JobSpecCase> criteria,
+                                             JobQueryIndex index) {
+        List<Lookup> lookups = new ArrayList<>();
+        addJobLookups(criteria, index, lookups);
+        addTaskLookups(criteria, index, lookups);
+
+        Optional<Lookup> best = selectBest(lookups, index.getTaskCount(), false, index);
+        return best.map(lookup -> new JobQueryPlan(lookup.name, lookup.isJobLookup ? toTaskIds(lookup.ids.get(), index) : lookup.ids.get()))
+                .orElseGet(() -> new JobQueryPlan(JobQueryPlan.FULL_SCAN, index.getTaskIds()));
+    }
+
+    private static void addJobLookups(JobQueryCriteria<TaskStatus.TaskState, JobDescriptor.JobSpecCase> criteria,
+                                      JobQueryIndex index,
+                                      List<Lookup> lookups) {
+        if (!criteria.getJobIds().isEmpty()) {
+            NavigableSet<String> jobIds = new TreeSet<>(criteria.getJobIds());
+            lookups.add(new Lookup("jobIds", true, jobIds.size(), () -> jobIds));
+        }
+        criteria.getJobState().ifPresent(state -> {
+            String coreState = V3GrpcModelConverters.toCoreJobState((JobStatus.JobState) state).name();
+            lookups.add(fieldLookup(JobField.JobState, coreState, index));
+        });
+        criteria.getJobType().ifPresent(jobType -> lookups.add(fieldLookup(JobField.JobType, jobType.name(), index)));
+        criteria.getOwner().ifPresent(owner -> lookups.add(fieldLookup(JobField.Owner, owner, index)));
+        criteria.getAppName().ifPresent(appName -> lookups.add(fieldLookup(JobField.ApplicationName, appName, index)));
+        criteria.getCapacityGroup().ifPresent(capacityGroup -> lookups.add(fieldLookup(JobField.CapacityGroup, capacityGroup, index)));
+        criteria.getImageName().ifPresent(imageName -> lookups.add(fieldLookup(JobField.ImageName, imageName, index)));
+
+        Map<String, Set<String>> labels = criteria.getLabels();
+        if (!labels.isEmpty()) {
+            if (criteria.isLabelsAndOp()) {
+                // Each label must match, so each one can be used separately.
+                labels.forEach((key, values) -> lookups.add(union("labels", true, labelSets(key, values, index))));
+            } else {
+                List<NavigableSet<String>> sets = new ArrayList<>();
+                labels.forEach((key, values) -> sets.addAll(labelSets(key, values, index)));
+                lookups.add(union("labels", true, sets));
+            }
+        }
+    }
+
+    private static void addTaskLookups(JobQueryCriteria<TaskStatus.TaskState, JobDescriptor.JobSpecCase> criteria,
+                                       JobQueryIndex index,
+                                       List<Lookup> lookups) {
+        if (!criteria.getTaskIds().isEmpty()) {
+            NavigableSet<String> taskIds = new TreeSet<>(criteria.getTaskIds());
+            lookups.add(new Lookup("taskIds", false, taskIds.size(), () -> taskIds));
+        }
+        if (!criteria.getTaskStates().isEmpty()) {
+            List<NavigableSet<String>> sets = new ArrayList<>();
+            for (TaskStatus.TaskState taskState : criteria.getTaskStates()) {
+                TaskState coreTaskState = V3GrpcModelConverters.toCoreTaskState(taskState);
+                sets.add(index.findTaskIds(coreTaskState));
+            }
+            lookups.add(union("taskStates", false, sets));
+        }
+    }
+
+    private static List<NavigableSet<String>> labelSets(String key, Set<String> values, JobQueryIndex index) {
+        List<NavigableSet<String>> sets = new ArrayList<>();
+        if (values.isEmpty()) {
+            sets.add(index.findJobIdsWithLabel(key));
+        } else {
+            values.forEach(value -> sets.add(index.findJobIdsWithLabel(key, value)));
+        }
+        return sets;
+    }
+
+    private static Lookup fieldLookup(JobField field, String value, JobQueryIndex index) {
+        NavigableSet<String> jobIds = index.findJobIds(field, value);
+        return new Lookup(field.name(), true, jobIds.size(), () -> jobIds);
+    }
+
+    private static Lookup union(String name, boolean isJobLookup, List<NavigableSet<String>> sets) {
+        if (sets.size() == 1) {
+            NavigableSet<String> single = sets.get(0);
+            return new Lookup(name, isJobLookup, single.size(), () -> single);
+        }
+        long estimate = 0;
+        for (NavigableSet<String> set : sets) {
+            estimate += set.size();
+        }
+        return new Lookup(name, isJobLookup, estimate, () -> {
+            NavigableSet<String> result = new TreeSet<>();
+            sets.forEach(result::addAll);
+            return result;
+        });
+    }
+
+    /**
+     * Estimates are expressed in the number of entities of the query type. A job lookup used in a task query is
+     * scaled by the average number of tasks per job, and a task lookup in a job query is bounded by its size.
+     */
+    private static Optional<Lookup> selectBest(List<Lookup> lookups, int domainSize, boolean jobQuery, JobQueryIndex index) {
+        double tasksPerJob = index.getJobCount() == 0 ? 0 : (double) index.getTaskCount() / index.getJobCount();
+        Lookup best = null;
+        double bestEstimate = Double.MAX_VALUE;
+        for (Lookup lookup : lookups) {
+            double estimate = !jobQuery && lookup.isJobLookup ? lookup.estimate * tasksPerJob : lookup.estimate;
+            if (estimate < bestEstimate) {
+                best = lookup;
+                bestEstimate = estimate;
+            }
+        }
+        // An index lookup is not cheaper than a full scan if it does not reduce the number of candidates.
+        return best != null && bestEstimate < domainSize ? Optional.of(best) : Optional.empty();
+    }
+
+    private static NavigableSet<String> toJobIds(Collection<String> taskIds, JobQueryIndex index) {
+        NavigableSet<String> jobIds = new TreeSet<>();
+        taskIds.forEach(taskId -> index.findJobIdOfTask(taskId).ifPresent(jobIds::add));
+        return jobIds;
+    }
+
+    private static NavigableSet<String> toTaskIds(Collection<String> jobIds, JobQueryIndex index) {
+        NavigableSet<String> taskIds = new TreeSet<>();
+        jobIds.forEach(jobId -> taskIds.addAll(index.getTaskIdsOfJob(jobId)));
+        return taskIds;
+    }
+
+    private static class Lookup {
+
+        private final String name;
+        private final boolean isJobLookup;
+        private final long estimate;
+        private final Supplier<NavigableSet<String>> ids;
+
+        private Lookup(String name, boolean isJobLookup, long estimate, Supplier<NavigableSet<String>> ids) {
+            this.name = name;
+            this.isJobLookup = isJobLookup;
+            this.estimate = estimate;
+            this.ids = ids;
+        }
+    }
+}
@@ -21,9 +21,12 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.ToIntFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.netflix.titus.api.jobmanager.model.job.JobState;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
 import com.netflix.titus.common.util.tuple.Pair;
 import com.netflix.titus.grpc.protogen.Job;
 import com.netflix.titus.grpc.protogen.JobStatus;
@@ -112,6 +115,72 @@ public final class JobManagerCursors {
         });
     }
 
+    /**
+     * Compare two core job entities by the creation time (first), and a job id (second). The order is the same
+     * as for the GRPC model in {@link #jobCursorOrderComparator()}.
+     */
+    public static Comparator<com.netflix.titus.api.jobmanager.model.job.Job<?>> coreJobCursorOrderComparator() {
+        return (first, second) -> {
+            int cmp = Long.compare(getCoreCursorTimestamp(first), getCoreCursorTimestamp(second));
+            if (cmp != 0) {
+                return cmp;
+            }
+            return first.getId().compareTo(second.getId());
+        };
+    }
+
+    /**
+     * Compare two core task entities by the creation time (first), and a task id (second). The order is the same
+     * as for the GRPC model in {@link #taskCursorOrderComparator()}.
+     */
+    public static Comparator<com.netflix.titus.api.jobmanager.model.job.Task> coreTaskCursorOrderComparator() {
+        return (first, second) -> {
+            int cmp = Long.compare(getCoreCursorTimestamp(first), getCoreCursorTimestamp(second));
+            if (cmp != 0) {
+                return cmp;
+            }
+            return first.getId().compareTo(second.getId());
+        };
+    }
+
+    /**
+     * Core model counterpart of {@link #jobIndexOf(List, String)}.
+     */
+    public static Optional<Integer> coreJobIndexOf(List<com.netflix.titus.api.jobmanager.model.job.Job<?>> jobs, String cursor) {
+        return decode(cursor).map(cursorValues -> {
+            String jobId = cursorValues.getLeft();
+            long timestamp = cursorValues.getRight();
+            int idx = binarySearch(jobs, job -> {
+                int cmp = Long.compare(getCoreCursorTimestamp(job), timestamp);
+                return cmp != 0 ? cmp : job.getId().compareTo(jobId);
+            });
+            return idx >= 0 ? idx : Math.max(-1, -idx - 2);
+        });
+    }
+
+    /**
+     * Core model counterpart of {@link #taskIndexOf(List, String)}.
+     */
+    public static Optional<Integer> coreTaskIndexOf(List<com.netflix.titus.api.jobmanager.model.job.Task> tasks, String cursor) {
+        return decode(cursor).map(cursorValues -> {
+            String taskId = cursorValues.getLeft();
+            long timestamp = cursorValues.getRight();
+            int idx = binarySearch(tasks, task -> {
+                int cmp = Long.compare(getCoreCursorTimestamp(task), timestamp);
+                return cmp != 0 ? cmp : task.getId().compareTo(taskId);
+            });
+            return idx >= 0 ? idx : Math.max(-1, -idx - 2);
+        });
+    }
+
+    public static String newCoreJobCursorFrom(com.netflix.titus.api.jobmanager.model.job.Job<?> job) {
+        return encode(job.getId(), getCoreCursorTimestamp(job));
+    }
+
+    public static String newCoreTaskCursorFrom(com.netflix.titus.api.jobmanager.model.job.Task task) {
+        return encode(task.getId(), getCoreCursorTimestamp(task));
+    }
+
     public static String newCursorFrom(Job job) {
         return encode(job.getId(), getCursorTimestamp(job));
     }
@@ -146,12 +215,68 @@ public final class JobManagerCursors {
         return task.getStatus().getTimestamp();
     }
 
+    /**
+     * Returns the job timestamp used for the cursor ordering, which is the time the job was accepted.
+     */
+    public static long getCoreCursorTimestamp(com.netflix.titus.api.jobmanager.model.job.Job<?> job) {
+        if (job.getStatus().getState() == JobState.Accepted) {
+            return job.getStatus().getTimestamp();
+        }
+        for (com.netflix.titus.api.jobmanager.model.job.JobStatus next : job.getStatusHistory()) {
+            if (next.getState() == JobState.Accepted) {
+                return next.getTimestamp();
+            }
+        }
+        // Fallback, in case Accepted state is not found which should never happen.
+        return job.getStatus().getTimestamp();
+    }
+
+    /**
+     * Returns the task timestamp used for the cursor ordering, which is the time the task was accepted.
+     */
+    public static long getCoreCursorTimestamp(com.netflix.titus.api.jobmanager.model.job.Task task) {
+        if (task.getStatus().getState() == TaskState.Accepted) {
+            return task.getStatus().getTimestamp();
+        }
+        for (com.netflix.titus.api.jobmanager.model.job.TaskStatus next : task.getStatusHistory()) {
+            if (next.getState() == TaskState.Accepted) {
+                return next.getTimestamp();
+            }
+        }
+        // Fallback, in case Accepted state is not found which should never happen.
+        return task.getStatus().getTimestamp();
+    }
+
+    /**
+     * Same contract as {@link Collections#binarySearch(List, Object, Comparator)}, with the comparison result
+     * of a list element against the searched key provided by the given function.
+     */
+    private static <T> int binarySearch(List<T> items, ToIntFunction<T> compareWithKey) {
+        int low = 0;
+        int high = items.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareWithKey.applyAsInt(items.get(mid));
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
     private static String encode(String id, long timestamp) {
         String value = id + '@' + timestamp;
         return Base64.getEncoder().encodeToString(value.getBytes());
     }
 
-    private static Optional<Pair<String, Long>> decode(String encodedValue) {
+    /**
+     * Decodes a cursor into the entity id and its cursor timestamp.
+     */
+    public static Optional<Pair<String, Long>> decode(String encodedValue) {
         String decoded;
         try {
             decoded = new String(Base64.getDecoder().decode(encodedValue.getBytes()));
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.runtime.store.v3.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-ahead log, split into fixed size, memory mapped segment files. Segments are identified by increasing
+ * sequence numbers, and the records are only appended to the most recent one. Once a segment cannot fit the next
+ * record, a new one is started. Segments fully covered by a snapshot are removed with {@link #deleteSegmentsBefore(long)}.
+ */
+final class AppendOnlyLog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AppendOnlyLog.class);
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String DISCARDED_SUFFIX = ".discarded";
+
+    private final File directory;
+    private final int segmentSizeBytes;
+    private final boolean syncOnWrite;
+
+    private long currentSegmentId = -1;
+    private MappedByteBuffer currentBuffer;
+
+    AppendOnlyLog(File directory, int segmentSizeBytes, boolean syncOnWrite) {
+        Preconditions.checkArgument(segmentSizeBytes > LogRecord.FRAME_HEADER_SIZE, "Log segment too small: %s", segmentSizeBytes);
+        this.directory = directory;
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.syncOnWrite = syncOnWrite;
+    }
+
+    /**
+     * Reads all records from the segments with sequence numbers equal or greater than the given one, in the
+     * order they were appended. Segments created afterwards are numbered after the given one, even if it does
+     * not exist.
+     * <p>
+     * Replay stops at the first truncated or corrupted record. The damaged segment is truncated after its last
+     * valid record, and the segments following it are renamed, so they are excluded from this and later replays.
+     * Applying them would leave a gap in the change history.
+     */
+    synchronized List<LogRecord> replay(long firstSegmentId) throws IOException {
+        currentSegmentId = Math.max(currentSegmentId, firstSegmentId - 1);
+        List<LogRecord> records = new ArrayList<>();
+        boolean damaged = false;
+        for (long segmentId : listSegmentIds()) {
+            if (segmentId < firstSegmentId) {
+                continue;
+            }
+            File segmentFile = segmentFile(segmentId);
+            if (damaged) {
+                discardSegment(segmentFile);
+                continue;
+            }
+            // Read into the heap, as mapped buffers are only released when garbage collected
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segmentFile.toPath()));
+            records.addAll(LogRecord.readAll(buffer, segmentFile.getName()));
+            if (!LogRecord.isEndOfData(buffer)) {
+                damaged = true;
+                try (FileChannel channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(buffer.position());
+                }
+                logger.warn("Truncated log segment {} to its last valid record at position {}", segmentFile, buffer.position());
+            }
+        }
+        return records;
+    }
+
+    synchronized void append(LogRecord record) throws IOException {
+        int frameSize = record.getFrameSize();
+        if (currentBuffer == null || currentBuffer.remaining() < frameSize) {
+            startSegment(frameSize);
+        }
+        record.writeTo(currentBuffer);
+        if (syncOnWrite) {
+            currentBuffer.force();
+        }
+    }
+
+    /**
+     * Closes the current segment, and starts a new one. All records appended after this call are written to
+     * segments with the returned or higher sequence number.
+     */
+    synchronized long roll() throws IOException {
+        return startSegment(0);
+    }
+
+    synchronized void deleteSegmentsBefore(long segmentId) {
+        for (long id : listSegmentIds()) {
+            if (id < segmentId && id != currentSegmentId) {
+                File segmentFile = segmentFile(id);
+                if (!segmentFile.delete()) {
+                    logger.warn("Cannot delete log segment {}", segmentFile);
+                }
+            }
+        }
+    }
+
+    synchronized int getSegmentCount() {
+        return listSegmentIds().size();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (currentBuffer != null) {
+            currentBuffer.force();
+            currentBuffer = null;
+        }
+    }
+
+    private long startSegment(int minimumSize) throws IOException {
+        close();
+
+        List<Long> segmentIds = listSegmentIds();
+        long nextSegmentId = Math.max(currentSegmentId, segmentIds.isEmpty() ? -1 : segmentIds.get(segmentIds.size() - 1)) + 1;
+        File segmentFile = segmentFile(nextSegmentId);
+        try (FileChannel channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            currentBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSizeBytes, minimumSize));
+        }
+        currentSegmentId = nextSegmentId;
+        return nextSegmentId;
+    }
+
+    private void discardSegment(File segmentFile) {
+        File discardedFile = new File(directory, segmentFile.getName() + DISCARDED_SUFFIX);
+        if (segmentFile.renameTo(discardedFile)) {
+            logger.warn("Discarded log segment {} following a damaged one; kept as {}", segmentFile, discardedFile);
+        } else {
+            logger.warn("Cannot discard log segment {} following a damaged one", segmentFile);
+        }
+    }
+
+    private List<Long> listSegmentIds() {
+        List<Long> segmentIds = new ArrayList<>();
+        String[] fileNames = directory.list();
+        if (fileNames != null) {
+            for (String fileName : fileNames) {
+                if (fileName.startsWith(SEGMENT_PREFIX) && fileName.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        segmentIds.add(Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        logger.warn("Ignoring unrecognized file in the job store directory: {}", fileName);
+                    }
+                }
+            }
+        }
+        segmentIds.sort(Long::compare);
+        return segmentIds;
+    }
+
+    private File segmentFile(long segmentId) {
+        return new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, segmentId, SEGMENT_SUFFIX));
+    }
+}
@@ -0,0 +1,603 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.runtime.store.v3.file;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.netflix.spectator.api.Counter;
+import com.netflix.spectator.api.Registry;
+import com.netflix.spectator.api.Timer;
+import com.netflix.spectator.api.patterns.PolledMeter;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.store.JobStore;
+import com.netflix.titus.api.jobmanager.store.JobStoreException;
+import com.netflix.titus.api.json.ObjectMappers;
+import com.netflix.titus.common.runtime.TitusRuntime;
+import com.netflix.titus.common.util.ExecutorsExt;
+import com.netflix.titus.common.util.tuple.Either;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.runtime.store.v3.file.LogRecord.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Completable;
+import rx.Observable;
+
+/**
+ * {@link JobStore} implementation keeping all data in memory, and persisting it in a local directory. Each
+ * modification is appended to a memory mapped write-ahead log ({@link AppendOnlyLog}) before it is applied to the
+ * in-memory state. Once enough records are appended, a compacted snapshot of the whole state is written in the
+ * background, and the log segments covered by it are removed. On startup the most recent snapshot is loaded, and
+ * the remaining log segments are replayed. Record deserialization, which dominates the recovery time, runs in parallel.
+ * <p>
+ * This store is intended for development cells, integration tests, and benchmarking master restart time.
+ * It has no replication, and it is not meant to be used in production.
+ */
+public class FileJobStore implements JobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileJobStore.class);
+
+    private static final String METRIC_ROOT = "titus.runtime.jobStore.file.";
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final FileJobStoreConfiguration configuration;
+    private final File directory;
+    private final ObjectMapper mapper;
+    private final AppendOnlyLog log;
+    private final ExecutorService snapshotExecutor;
+
+    private final Map<String, Job<?>> jobs = new ConcurrentHashMap<>();
+    private final Map<String, Task> tasks = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> taskIdsByJobId = new ConcurrentHashMap<>();
+    private final Map<String, Job<?>> archivedJobs = new ConcurrentHashMap<>();
+    private final Map<String, Task> archivedTasks = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> archivedTaskIdsByJobId = new ConcurrentHashMap<>();
+
+    private final List<Throwable> jobLoadErrors = new ArrayList<>();
+    private final AtomicBoolean snapshotInProgress = new AtomicBoolean();
+
+    private volatile boolean initialized;
+    private long recordsSinceSnapshot;
+
+    private final Registry registry;
+    private final Counter appendedRecordsCounter;
+    private final Counter appendedBytesCounter;
+    private final Timer appendLatency;
+    private final Timer snapshotLatency;
+    private final Timer recoveryLatency;
+
+    public FileJobStore(FileJobStoreConfiguration configuration, TitusRuntime titusRuntime) {
+        this.configuration = configuration;
+        this.directory = new File(configuration.getStoreDirectory());
+        this.mapper = ObjectMappers.storeMapper();
+        this.log = new AppendOnlyLog(directory, configuration.getLogSegmentSizeBytes(), configuration.isSyncOnWrite());
+        this.snapshotExecutor = ExecutorsExt.namedFixedThreadPool("file-job-store-snapshot", 1);
+
+        this.registry = titusRuntime.getRegistry();
+        this.appendedRecordsCounter = registry.counter(METRIC_ROOT + "appendedRecords");
+        this.appendedBytesCounter = registry.counter(METRIC_ROOT + "appendedBytes");
+        this.appendLatency = registry.timer(METRIC_ROOT + "appendLatency");
+        this.snapshotLatency = registry.timer(METRIC_ROOT + "snapshotLatency");
+        this.recoveryLatency = registry.timer(METRIC_ROOT + "recoveryLatency");
+        PolledMeter.using(registry).withName(METRIC_ROOT + "logSegments").monitorValue(log, AppendOnlyLog::getSegmentCount);
+        PolledMeter.using(registry).withName(METRIC_ROOT + "activeJobs").monitorValue(jobs, Map::size);
+        PolledMeter.using(registry).withName(METRIC_ROOT + "activeTasks").monitorValue(tasks, Map::size);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        snapshotExecutor.shutdown();
+        try {
+            snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            log.close();
+            initialized = false;
+        }
+    }
+
+    @Override
+    public Completable init() {
+        return Completable.fromAction(() -> {
+            synchronized (this) {
+                if (initialized) {
+                    return;
+                }
+                try {
+                    recover();
+                    log.roll();
+                } catch (IOException e) {
+                    throw JobStoreException.storeIOError(e);
+                }
+                initialized = true;
+                if (recordsSinceSnapshot >= getSnapshotRecordThreshold()) {
+                    scheduleSnapshot();
+                }
+            }
+        });
+    }
+
+    @Override
+    public Observable<Pair<List<Job<?>>, Integer>> retrieveJobs() {
+        return Observable.fromCallable(() -> Pair.of(new ArrayList<>(jobs.values()), jobLoadErrors.size()));
+    }
+
+    @Override
+    public Observable<Either<Job<?>, Throwable>> streamJobs() {
+        return Observable.defer(() -> {
+            List<Either<Job<?>, Throwable>> result = new ArrayList<>(jobs.size() + jobLoadErrors.size());
+            jobs.values().forEach(job -> result.add(Either.ofValue(job)));
+            jobLoadErrors.forEach(error -> result.add(Either.ofError(error)));
+            return Observable.from(result);
+        });
+    }
+
+    @Override
+    public Observable<Job<?>> retrieveJob(String jobId) {
+        return Observable.fromCallable(() -> {
+            Job<?> job = jobs.get(jobId);
+            if (job == null) {
+                throw JobStoreException.jobDoesNotExist(jobId);
+            }
+            return job;
+        });
+    }
+
+    @Override
+    public Completable storeJob(Job job) {
+        return Completable.fromAction(() -> {
+            synchronized (this) {
+                if (jobs.containsKey(job.getId())) {
+                    throw JobStoreException.jobAlreadyExists(job.getId());
+                }
+                append(LogRecord.of(Type.JobPut, encode(job)));
+                applyJobPut(job);
+            }
+        });
+    }
+
+    @Override
+    public Completable updateJob(Job job) {
+        return Completable.fromAction(() -> {
+            synchronized (this) {
+                checkIfJobIsActive(job.getId());
+                append(LogRecord.of(Type.JobPut, encode(job)));
+                applyJobPut(job);
+            }
+        });
+    }
+
+    @Override
+    public Completable deleteJob(Job job) {
+        return Completable.fromAction(() -> {
+            synchronized (this) {
+                checkIfJobIsActive(job.getId());
+                append(LogRecord.of(Type.JobArchive, encode(job)));
+                applyJobArchive(job);
+            }
+        });
+    }
+
+    @Override
+    public Observable<Pair<List<Task>, Integer>> retrieveTasksForJob(String jobId) {
+        return Observable.fromCallable(() -> {
+            checkIfJobIsActive(jobId);
+            return Pair.of(findTasks(taskIdsByJobId, tasks, jobId), 0);
+        });
+    }
+
+    @Override
+    public Observable<Task> retrieveTask(String taskId) {
+        return Observable.fromCallable(() -> {
+            Task task = tasks.get(taskId);
+            if (task == null) {
+                throw JobStoreException.taskDoesNotExist(taskId);
+            }
+            return task;
+        });
+    }
+
+    @Override
+    public Completable storeTask(Task task) {
+        return updateTask(task);
+    }
+
+    @Override
+    public Completable updateTask(Task task) {
+        return Completable.fromAction(() -> {
+            synchronized (this) {
+                checkIfJobIsActive(task.getJobId());
+                append(LogRecord.of(Type.TaskPut, encode(task)));
+                applyTaskPut(task);
+            }
+        });
+    }
+
+    @Override
+    public Completable replaceTask(Task oldTask, Task newTask) {
+        return Completable.fromAction(() -> {
+            synchronized (this) {
+                checkIfJobIsActive(newTask.getJobId());
+                append(LogRecord.of(Type.TaskReplace, encode(oldTask), encode(newTask)));
+                applyTaskArchive(oldTask);
+                applyTaskPut(newTask);
+            }
+        });
+    }
+
+    @Override
+    public Completable deleteTask(Task task) {
+        return Completable.fromAction(() -> {
+            synchronized (this) {
+                checkIfJobIsActive(task.getJobId());
+                append(LogRecord.of(Type.TaskArchive, encode(task)));
+                applyTaskArchive(task);
+            }
+        });
+    }
+
+    @Override
+    public Observable<Job<?>> retrieveArchivedJob(String jobId) {
+        return Observable.fromCallable(() -> {
+            Job<?> job = archivedJobs.get(jobId);
+            if (job == null) {
+                throw JobStoreException.jobDoesNotExist(jobId);
+            }
+            return job;
+        });
+    }
+
+    @Override
+    public Observable<Task> retrieveArchivedTasksForJob(String jobId) {
+        return Observable.defer(() -> Observable.from(findTasks(archivedTaskIdsByJobId, archivedTasks, jobId)));
+    }
+
+    @Override
+    public Observable<Task> retrieveArchivedTask(String taskId) {
+        return Observable.fromCallable(() -> {
+            Task task = archivedTasks.get(taskId);
+            if (task == null) {
+                throw JobStoreException.taskDoesNotExist(taskId);
+            }
+            return task;
+        });
+    }
+
+    private void checkIfJobIsActive(String jobId) {
+        if (!jobs.containsKey(jobId)) {
+            throw JobStoreException.jobMustBeActive(jobId);
+        }
+    }
+
+    private List<Task> findTasks(Map<String, Set<String>> taskIdsByJobId, Map<String, Task> tasks, String jobId) {
+        Set<String> taskIds = taskIdsByJobId.get(jobId);
+        if (taskIds == null) {
+            return Collections.emptyList();
+        }
+        return taskIds.stream().map(tasks::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    private void append(LogRecord record) {
+        Preconditions.checkState(initialized, "Job store not initialized");
+        long startTime = registry.clock().monotonicTime();
+        try {
+            log.append(record);
+        } catch (IOException e) {
+            throw JobStoreException.storeIOError(e);
+        }
+        appendLatency.record(registry.clock().monotonicTime() - startTime, TimeUnit.NANOSECONDS);
+        appendedRecordsCounter.increment();
+        appendedBytesCounter.increment(record.getFrameSize());
+
+        recordsSinceSnapshot++;
+        if (recordsSinceSnapshot >= getSnapshotRecordThreshold()) {
+            scheduleSnapshot();
+        }
+    }
+
+    private void applyJobPut(Job<?> job) {
+        jobs.put(job.getId(), job);
+    }
+
+    private void applyJobArchive(Job<?> job) {
+        Set<String> taskIds = taskIdsByJobId.remove(job.getId());
+        if (taskIds != null) {
+            for (String taskId : taskIds) {
+                Task task = tasks.remove(taskId);
+                if (task != null) {
+                    applyArchivedTaskPut(task);
+                }
+            }
+        }
+        jobs.remove(job.getId());
+        archivedJobs.put(job.getId(), job);
+    }
+
+    private void applyTaskPut(Task task) {
+        tasks.put(task.getId(), task);
+        taskIdsByJobId.computeIfAbsent(task.getJobId(), jobId -> ConcurrentHashMap.newKeySet()).add(task.getId());
+    }
+
+    private void applyTaskArchive(Task task) {
+        tasks.remove(task.getId());
+        Set<String> taskIds = taskIdsByJobId.get(task.getJobId());
+        if (taskIds != null) {
+            taskIds.remove(task.getId());
+        }
+        applyArchivedTaskPut(task);
+    }
+
+    private void applyArchivedTaskPut(Task task) {
+        archivedTasks.put(task.getId(), task);
+        archivedTaskIdsByJobId.computeIfAbsent(task.getJobId(), jobId -> ConcurrentHashMap.newKeySet()).add(task.getId());
+    }
+
+    private void apply(Type type, List<Object> entities) {
+        switch (type) {
+            case JobPut:
+                applyJobPut((Job<?>) entities.get(0));
+                break;
+            case JobArchive:
+                applyJobArchive((Job<?>) entities.get(0));
+                break;
+            case TaskPut:
+                applyTaskPut((Task) entities.get(0));
+                break;
+            case TaskArchive:
+                applyTaskArchive((Task) entities.get(0));
+                break;
+            case TaskReplace:
+                applyTaskArchive((Task) entities.get(0));
+                applyTaskPut((Task) entities.get(1));
+                break;
+            case ArchivedJobPut:
+                archivedJobs.put(((Job<?>) entities.get(0)).getId(), (Job<?>) entities.get(0));
+                break;
+            case ArchivedTaskPut:
+                applyArchivedTaskPut((Task) entities.get(0));
+                break;
+        }
+    }
+
+    /**
+     * Loads the latest snapshot, and replays the log segments written after it.
+     */
+    private void recover() throws IOException {
+        long startTime = registry.clock().monotonicTime();
+        if (!directory.exists()) {
+            Preconditions.checkState(directory.mkdirs(), "Cannot create job store directory: %s", directory);
+        }
+        deleteFiles(name -> name.endsWith(TMP_SUFFIX));
+
+        List<LogRecord> records = new ArrayList<>();
+        long firstSegmentId = 0;
+        List<Long> snapshotIds = listSnapshotIds();
+        if (!snapshotIds.isEmpty()) {
+            firstSegmentId = snapshotIds.get(snapshotIds.size() - 1);
+            records.addAll(readSnapshot(firstSegmentId));
+        }
+        int snapshotRecordCount = records.size();
+        records.addAll(log.replay(firstSegmentId));
+
+        // Records are decoded in parallel, but applied in the log order
+        List<Either<List<Object>, Throwable>> decoded = records.parallelStream().map(this::decode).collect(Collectors.toList());
+        int errorCount = 0;
+        for (int i = 0; i < records.size(); i++) {
+            Type type = records.get(i).getType();
+            Either<List<Object>, Throwable> entities = decoded.get(i);
+            if (entities.hasValue()) {
+                apply(type, entities.getValue());
+            } else {
+                errorCount++;
+                logger.warn("Cannot decode job store record of type {}", type, entities.getError());
+                if (type == Type.JobPut) {
+                    jobLoadErrors.add(entities.getError());
+                }
+            }
+        }
+        recordsSinceSnapshot = records.size() - snapshotRecordCount;
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(registry.clock().monotonicTime() - startTime);
+        recoveryLatency.record(elapsedMs, TimeUnit.MILLISECONDS);
+        logger.info("Job store recovered from {} in {}ms: snapshotRecords={}, logRecords={}, decodingErrors={}, activeJobs={}, activeTasks={}",
+                directory, elapsedMs, snapshotRecordCount, recordsSinceSnapshot, errorCount, jobs.size(), tasks.size());
+    }
+
+    private Either<List<Object>, Throwable> decode(LogRecord record) {
+        try {
+            List<Object> entities = new ArrayList<>(record.getDocuments().size());
+            for (byte[] document : record.getDocuments()) {
+                entities.add(mapper.readValue(document, isJobRecord(record.getType()) ? Job.class : Task.class));
+            }
+            return Either.ofValue(entities);
+        } catch (Exception e) {
+            return Either.ofError(e);
+        }
+    }
+
+    private static boolean isJobRecord(Type type) {
+        return type == Type.JobPut || type == Type.JobArchive || type == Type.ArchivedJobPut;
+    }
+
+    private byte[] encode(Object entity) {
+        try {
+            return mapper.writeValueAsBytes(entity);
+        } catch (IOException e) {
+            throw JobStoreException.storeIOError(e);
+        }
+    }
+
+    private int getSnapshotRecordThreshold() {
+        return Math.max(1, configuration.getSnapshotRecordThreshold());
+    }
+
+    private void scheduleSnapshot() {
+        if (snapshotInProgress.compareAndSet(false, true)) {
+            try {
+                snapshotExecutor.execute(() -> {
+                    try {
+                        createSnapshot();
+                    } catch (Exception e) {
+                        logger.warn("Cannot create job store snapshot", e);
+                    } finally {
+                        snapshotInProgress.set(false);
+                    }
+                });
+            } catch (Exception e) {
+                snapshotInProgress.set(false);
+                logger.warn("Cannot schedule job store snapshot: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot of the current state. The state is captured together with the log roll, so the snapshot
+     * covers exactly the log segments preceding the new one. Serialization and file IO run outside of the lock.
+     */
+    private void createSnapshot() throws IOException {
+        long startTime = registry.clock().monotonicTime();
+
+        long segmentId;
+        List<Job<?>> jobsCopy;
+        List<Task> tasksCopy;
+        List<Job<?>> archivedJobsCopy;
+        List<Task> archivedTasksCopy;
+        synchronized (this) {
+            if (!initialized) {
+                return;
+            }
+            segmentId = log.roll();
+            jobsCopy = new ArrayList<>(jobs.values());
+            tasksCopy = new ArrayList<>(tasks.values());
+            archivedJobsCopy = new ArrayList<>(archivedJobs.values());
+            archivedTasksCopy = new ArrayList<>(archivedTasks.values());
+            recordsSinceSnapshot = 0;
+        }
+
+        File snapshotFile = snapshotFile(segmentId);
+        File tmpFile = new File(snapshotFile.getPath() + TMP_SUFFIX);
+        try (FileOutputStream fileOutput = new FileOutputStream(tmpFile)) {
+            OutputStream output = new BufferedOutputStream(fileOutput, 1024 * 1024);
+            for (Job<?> job : jobsCopy) {
+                writeRecord(output, LogRecord.of(Type.JobPut, encode(job)));
+            }
+            for (Task task : tasksCopy) {
+                writeRecord(output, LogRecord.of(Type.TaskPut, encode(task)));
+            }
+            for (Job<?> job : archivedJobsCopy) {
+                writeRecord(output, LogRecord.of(Type.ArchivedJobPut, encode(job)));
+            }
+            for (Task task : archivedTasksCopy) {
+                writeRecord(output, LogRecord.of(Type.ArchivedTaskPut, encode(task)));
+            }
+            output.flush();
+            fileOutput.getFD().sync();
+        }
+        Files.move(tmpFile.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        log.deleteSegmentsBefore(segmentId);
+        deleteFiles(name -> isSnapshotFile(name) && parseSnapshotId(name) < segmentId);
+
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(registry.clock().monotonicTime() - startTime);
+        snapshotLatency.record(elapsedMs, TimeUnit.MILLISECONDS);
+        logger.info("Created job store snapshot {} in {}ms: activeJobs={}, activeTasks={}, archivedJobs={}, archivedTasks={}",
+                snapshotFile.getName(), elapsedMs, jobsCopy.size(), tasksCopy.size(), archivedJobsCopy.size(), archivedTasksCopy.size());
+    }
+
+    private static void writeRecord(OutputStream output, LogRecord record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(record.getFrameSize());
+        record.writeTo(buffer);
+        output.write(buffer.array());
+    }
+
+    private List<LogRecord> readSnapshot(long snapshotId) throws IOException {
+        File snapshotFile = snapshotFile(snapshotId);
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(snapshotFile.toPath()));
+        List<LogRecord> records = LogRecord.readAll(buffer, snapshotFile.getName());
+        if (!LogRecord.isEndOfData(buffer)) {
+            logger.warn("Snapshot {} is damaged; recovered {} records preceding position {}", snapshotFile.getName(), records.size(), buffer.position());
+        }
+        return records;
+    }
+
+    private List<Long> listSnapshotIds() {
+        List<Long> snapshotIds = new ArrayList<>();
+        String[] fileNames = directory.list();
+        if (fileNames != null) {
+            for (String fileName : fileNames) {
+                if (isSnapshotFile(fileName)) {
+                    snapshotIds.add(parseSnapshotId(fileName));
+                }
+            }
+        }
+        snapshotIds.sort(Long::compare);
+        return snapshotIds;
+    }
+
+    private void deleteFiles(Predicate<String> fileNamePredicate) {
+        String[] fileNames = directory.list();
+        if (fileNames != null) {
+            for (String fileName : fileNames) {
+                if (fileNamePredicate.test(fileName) && !new File(directory, fileName).delete()) {
+                    logger.warn("Cannot delete file {} in the job store directory", fileName);
+                }
+            }
+        }
+    }
+
+    private File snapshotFile(long snapshotId) {
+        return new File(directory, String.format("%s%020d%s", SNAPSHOT_PREFIX, snapshotId, SNAPSHOT_SUFFIX));
+    }
+
+    private static boolean isSnapshotFile(String fileName) {
+        return fileName.startsWith(SNAPSHOT_PREFIX)
+                && fileName.endsWith(SNAPSHOT_SUFFIX)
+                && fileName.length() > SNAPSHOT_PREFIX.length() + SNAPSHOT_SUFFIX.length()
+                && fileName.substring(SNAPSHOT_PREFIX.length(), fileName.length() - SNAPSHOT_SUFFIX.length()).chars().allMatch(Character::isDigit);
+    }
+
+    private static long parseSnapshotId(String fileName) {
+        return Long.parseLong(fileName.substring(SNAPSHOT_PREFIX.length(), fileName.length() - SNAPSHOT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.runtime.store.v3.file;
+
+import com.netflix.archaius.api.annotations.Configuration;
+import com.netflix.archaius.api.annotations.DefaultValue;
+
+@Configuration(prefix = "titus.runtime.jobStore.file")
+public interface FileJobStoreConfiguration {
+
+    /**
+     * If enabled, the file backed {@link FileJobStore} is used instead of the in-memory one.
+     */
+    @DefaultValue("false")
+    boolean isEnabled();
+
+    /**
+     * Directory where the write-ahead log segments and snapshots are kept.
+     */
+    @DefaultValue("/tmp/TitusJobStore")
+    String getStoreDirectory();
+
+    /**
+     * Size of a single, memory mapped write-ahead log segment.
+     */
+    @DefaultValue("67108864")
+    int getLogSegmentSizeBytes();
+
+    /**
+     * Number of records appended to the write-ahead log after which a new snapshot is created, and the log
+     * segments covered by it are removed.
+     */
+    @DefaultValue("100000")
+    int getSnapshotRecordThreshold();
+
+    /**
+     * If set, each write is forced to the storage device before it is acknowledged. Otherwise the data survives
+     * a process crash, but not an operating system crash.
+     */
+    @DefaultValue("false")
+    boolean isSyncOnWrite();
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.runtime.store.v3.file;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single record of the write-ahead log or snapshot file. A record has a type, and holds one or more serialized
+ * documents (jobs or tasks). On disk a record is framed as:
+ * <pre>
+ * [int bodyLength][int crc32(body)][body = byte type, (int documentLength, byte[] document)*]
+ * </pre>
+ * A zero body length marks the end of data in a file. A frame with an invalid length or checksum (a write
+ * interrupted by a crash) terminates reading of the file.
+ */
+final class LogRecord {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogRecord.class);
+
+    static final int FRAME_HEADER_SIZE = 8;
+
+    enum Type {
+        JobPut(1, 1),
+        JobArchive(2, 1),
+        TaskPut(3, 1),
+        TaskArchive(4, 1),
+        /**
+         * Documents: archived (old) task, new task.
+         */
+        TaskReplace(5, 2),
+        ArchivedJobPut(6, 1),
+        ArchivedTaskPut(7, 1);
+
+        private final byte code;
+        private final int documentCount;
+
+        Type(int code, int documentCount) {
+            this.code = (byte) code;
+            this.documentCount = documentCount;
+        }
+
+        int getDocumentCount() {
+            return documentCount;
+        }
+
+        static Type fromCode(byte code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown record type: " + code);
+        }
+    }
+
+    private final Type type;
+    private final List<byte[]> documents;
+
+    private LogRecord(Type type, List<byte[]> documents) {
+        this.type = type;
+        this.documents = documents;
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    List<byte[]> getDocuments() {
+        return documents;
+    }
+
+    /**
+     * Size of the framed record.
+     */
+    int getFrameSize() {
+        return FRAME_HEADER_SIZE + getBodySize();
+    }
+
+    void writeTo(ByteBuffer buffer) {
+        int bodySize = getBodySize();
+        int frameStart = buffer.position();
+
+        buffer.putInt(bodySize);
+        buffer.putInt(0);
+        int bodyStart = buffer.position();
+        buffer.put(type.code);
+        for (byte[] document : documents) {
+            buffer.putInt(document.length);
+            buffer.put(document);
+        }
+
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(bodyStart);
+        body.limit(bodyStart + bodySize);
+        crc.update(body);
+        buffer.putInt(frameStart + 4, (int) crc.getValue());
+    }
+
+    private int getBodySize() {
+        int size = 1;
+        for (byte[] document : documents) {
+            size += 4 + document.length;
+        }
+        return size;
+    }
+
+    static LogRecord of(Type type, byte[]... documents) {
+        if (documents.length != type.getDocumentCount()) {
+            throw new IllegalArgumentException(String.format("Record %s requires %s documents, but got %s", type, type.getDocumentCount(), documents.length));
+        }
+        return new LogRecord(type, Collections.unmodifiableList(Arrays.asList(documents)));
+    }
+
+    /**
+     * Reads all valid records from the buffer, starting at its current position. Reading stops at the first
+     * truncated or corrupted frame, and the buffer is left positioned right after the last valid record.
+     */
+    static List<LogRecord> readAll(ByteBuffer buffer, String source) {
+        List<LogRecord> records = new ArrayList<>();
+        while (buffer.remaining() >= FRAME_HEADER_SIZE) {
+            int frameStart = buffer.position();
+            int bodySize = buffer.getInt();
+            if (bodySize == 0) {
+                buffer.position(frameStart);
+                break;
+            }
+            int expectedCrc = buffer.getInt();
+            if (bodySize < 0 || bodySize > buffer.remaining()) {
+                logger.warn("Truncated record at position {} of {}; ignoring the remaining data", frameStart, source);
+                buffer.position(frameStart);
+                break;
+            }
+
+            ByteBuffer body = buffer.slice();
+            body.limit(bodySize);
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != expectedCrc) {
+                logger.warn("Corrupted record at position {} of {}; ignoring the remaining data", frameStart, source);
+                buffer.position(frameStart);
+                break;
+            }
+
+            LogRecord record = decodeBody(body);
+            if (record == null) {
+                logger.warn("Malformed record at position {} of {}; ignoring the remaining data", frameStart, source);
+                buffer.position(frameStart);
+                break;
+            }
+            records.add(record);
+            buffer.position(frameStart + FRAME_HEADER_SIZE + bodySize);
+        }
+        return records;
+    }
+
+    /**
+     * Returns true if there is no more data at the buffer position, which is the case at the end of a snapshot
+     * file, or in the zero filled, unused part of a log segment.
+     */
+    static boolean isEndOfData(ByteBuffer buffer) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static LogRecord decodeBody(ByteBuffer body) {
+        Type type;
+        try {
+            type = Type.fromCode(body.get());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        byte[][] documents = new byte[type.getDocumentCount()][];
+        for (int i = 0; i < documents.length; i++) {
+            if (body.remaining() < 4) {
+                return null;
+            }
+            int length = body.getInt();
+            if (length < 0 || length > body.remaining()) {
+                return null;
+            }
+            documents[i] = new byte[length];
+            body.get(documents[i]);
+        }
+        return new LogRecord(type, Collections.unmodifiableList(Arrays.asList(documents)));
+    }
+}
@@ -27,6 +27,7 @@ import com.netflix.titus.api.jobmanager.model.job.Job;
 import com.netflix.titus.api.jobmanager.model.job.Task;
 import com.netflix.titus.api.jobmanager.store.JobStore;
 import com.netflix.titus.api.jobmanager.store.JobStoreException;
+import com.netflix.titus.common.util.tuple.Either;
 import com.netflix.titus.common.util.tuple.Pair;
 import rx.Completable;
 import rx.Observable;
@@ -59,6 +60,11 @@ public class InMemoryJobStore implements JobStore {
         return Observable.just(Pair.of(new ArrayList<>(jobs.asMap().values()), 0));
     }
 
+    @Override
+    public Observable<Either<Job<?>, Throwable>> streamJobs() {
+        return Observable.defer(() -> Observable.from(new ArrayList<>(jobs.asMap().values()))).map(Either::ofValue);
+    }
+
     @Override
     public Observable<Job<?>> retrieveJob(String jobId) {
         return Observable.fromCallable(() -> {
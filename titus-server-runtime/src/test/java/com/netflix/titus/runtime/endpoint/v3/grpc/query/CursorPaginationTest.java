@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.runtime.endpoint.v3.grpc.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.model.Page;
+import com.netflix.titus.api.model.Pagination;
+import com.netflix.titus.common.util.tuple.Pair;
+import com.netflix.titus.runtime.endpoint.JobQueryCriteria;
+import com.netflix.titus.runtime.jobmanager.JobManagerCursors;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.netflix.titus.testkit.model.job.JobDescriptorGenerator.oneTaskBatchJobDescriptor;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class CursorPaginationTest {
+
+    private static final int JOB_COUNT = 10;
+
+    private final JobQueryIndex index = new JobQueryIndex();
+
+    private List<Job<BatchJobExt>> jobsInOrder;
+
+    @Before
+    public void setUp() {
+        jobsInOrder = new ArrayList<>(JobGenerator.batchJobs(oneTaskBatchJobDescriptor()).toList(JOB_COUNT));
+        jobsInOrder.forEach(index::updateJob);
+        jobsInOrder.sort(JobManagerCursors.coreJobCursorOrderComparator());
+    }
+
+    @Test
+    public void testFullScanPagesMatchSortedOrder() {
+        JobQueryPlan plan = JobQueryPlanner.planJobQuery(JobQueryCriteria.newBuilder().build(), index);
+        assertThat(plan.isFullScan()).isTrue();
+
+        String cursor = JobManagerCursors.newCoreJobCursorFrom(jobsInOrder.get(1));
+        Pair<List<Job<?>>, Pagination> result = takePage(plan, cursor, 3, job -> true);
+
+        assertThat(result.getLeft()).containsExactlyElementsOf(jobsInOrder.subList(2, 5));
+        Pagination pagination = result.getRight();
+        assertThat(pagination.hasMore()).isTrue();
+        assertThat(pagination.getTotalItems()).isEqualTo(JOB_COUNT);
+        assertThat(pagination.getCursorPosition()).isEqualTo(4);
+        assertThat(pagination.getCursor()).isEqualTo(JobManagerCursors.newCoreJobCursorFrom(jobsInOrder.get(4)));
+
+        // Last page
+        Pair<List<Job<?>>, Pagination> last = takePage(plan, JobManagerCursors.newCoreJobCursorFrom(jobsInOrder.get(6)), 3, job -> true);
+        assertThat(last.getLeft()).containsExactlyElementsOf(jobsInOrder.subList(7, 10));
+        assertThat(last.getRight().hasMore()).isFalse();
+        assertThat(last.getRight().getCursorPosition()).isEqualTo(9);
+    }
+
+    @Test
+    public void testFilteredScanStopsWhenPageIsFull() {
+        JobQueryPlan plan = JobQueryPlanner.planJobQuery(JobQueryCriteria.newBuilder().build(), index);
+        Job<BatchJobExt> excluded = jobsInOrder.get(3);
+
+        List<String> visited = new ArrayList<>();
+        Pair<List<Job<?>>, Pagination> result = takePage(plan, JobManagerCursors.newCoreJobCursorFrom(jobsInOrder.get(1)), 2, job -> {
+            visited.add(job.getId());
+            return job != excluded;
+        });
+
+        assertThat(result.getLeft()).containsExactly(jobsInOrder.get(2), jobsInOrder.get(4));
+        assertThat(result.getRight().hasMore()).isTrue();
+        // Two matches, one excluded, and one extra to detect more items.
+        assertThat(visited).hasSize(4);
+    }
+
+    @Test
+    public void testSelectivePlan() {
+        JobQueryPlan plan = new JobQueryPlan("test", new TreeSet<>(Arrays.asList(
+                jobsInOrder.get(8).getId(), jobsInOrder.get(2).getId(), jobsInOrder.get(5).getId()
+        )));
+
+        Pair<List<Job<?>>, Pagination> result = takePage(plan, JobManagerCursors.newCoreJobCursorFrom(jobsInOrder.get(3)), 5, job -> true);
+
+        assertThat(result.getLeft()).containsExactly(jobsInOrder.get(5), jobsInOrder.get(8));
+        assertThat(result.getRight().hasMore()).isFalse();
+        assertThat(result.getRight().getTotalItems()).isEqualTo(3);
+        assertThat(result.getRight().getCursorPosition()).isEqualTo(2);
+    }
+
+    @Test
+    public void testInvalidCursor() {
+        JobQueryPlan plan = JobQueryPlanner.planJobQuery(JobQueryCriteria.newBuilder().build(), index);
+        assertThat(catchThrowable(() -> takePage(plan, "bad_cursor_value", 2, job -> true))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testPageNumberFullScanMatchesSortedOrder() {
+        JobQueryPlan plan = JobQueryPlanner.planJobQuery(JobQueryCriteria.newBuilder().build(), index);
+        Job<BatchJobExt> excluded = jobsInOrder.get(1);
+
+        Pair<List<Job<?>>, Pagination> result = takePageByNumber(plan, 1, 3, job -> job != excluded);
+
+        assertThat(result.getLeft()).containsExactlyElementsOf(jobsInOrder.subList(4, 7));
+        Pagination pagination = result.getRight();
+        assertThat(pagination.hasMore()).isTrue();
+        assertThat(pagination.getTotalItems()).isEqualTo(JOB_COUNT - 1);
+        assertThat(pagination.getTotalPages()).isEqualTo(3);
+        assertThat(pagination.getCursorPosition()).isEqualTo(5);
+        assertThat(pagination.getCursor()).isEqualTo(JobManagerCursors.newCoreJobCursorFrom(jobsInOrder.get(6)));
+
+        // Last, partial page
+        Pair<List<Job<?>>, Pagination> last = takePageByNumber(plan, 2, 3, job -> job != excluded);
+        assertThat(last.getLeft()).containsExactlyElementsOf(jobsInOrder.subList(7, 10));
+        assertThat(last.getRight().hasMore()).isFalse();
+
+        // Beyond the last page
+        Pair<List<Job<?>>, Pagination> beyond = takePageByNumber(plan, 5, 3, job -> true);
+        assertThat(beyond.getLeft()).isEmpty();
+        assertThat(beyond.getRight().getTotalItems()).isEqualTo(JOB_COUNT);
+    }
+
+    @Test
+    public void testPageNumberSelectivePlan() {
+        JobQueryPlan plan = new JobQueryPlan("test", new TreeSet<>(Arrays.asList(
+                jobsInOrder.get(8).getId(), jobsInOrder.get(2).getId(), jobsInOrder.get(5).getId(), jobsInOrder.get(0).getId()
+        )));
+
+        Pair<List<Job<?>>, Pagination> first = takePageByNumber(plan, 0, 2, job -> true);
+        assertThat(first.getLeft()).containsExactly(jobsInOrder.get(0), jobsInOrder.get(2));
+        assertThat(first.getRight().hasMore()).isTrue();
+        assertThat(first.getRight().getTotalItems()).isEqualTo(4);
+
+        Pair<List<Job<?>>, Pagination> second = takePageByNumber(plan, 1, 2, job -> true);
+        assertThat(second.getLeft()).containsExactly(jobsInOrder.get(5), jobsInOrder.get(8));
+        assertThat(second.getRight().hasMore()).isFalse();
+        assertThat(second.getRight().getCursorPosition()).isEqualTo(3);
+    }
+
+    private Pair<List<Job<?>>, Pagination> takePageByNumber(JobQueryPlan plan, int pageNumber, int pageSize, Predicate<Job<?>> predicate) {
+        return CursorPagination.takePageByNumber(
+                Page.newBuilder().withPageNumber(pageNumber).withPageSize(pageSize).build(),
+                plan,
+                index.getJobsInCursorOrder(),
+                index::findJobCursorKey,
+                jobId -> findJob(jobId, predicate),
+                JobManagerCursors::newCoreJobCursorFrom
+        );
+    }
+
+    private Pair<List<Job<?>>, Pagination> takePage(JobQueryPlan plan, String cursor, int pageSize, Predicate<Job<?>> predicate) {
+        return CursorPagination.takePageAfterCursor(
+                Page.newBuilder().withPageSize(pageSize).withCursor(cursor).build(),
+                plan,
+                index.getJobsInCursorOrder(),
+                index::findJobCursorKey,
+                jobId -> findJob(jobId, predicate),
+                JobManagerCursors::newCoreJobCursorFrom
+        );
+    }
+
+    private Optional<Job<?>> findJob(String jobId, Predicate<Job<?>> predicate) {
+        return jobsInOrder.stream().filter(job -> job.getId().equals(jobId)).<Job<?>>map(job -> job).filter(predicate).findFirst();
+    }
+}
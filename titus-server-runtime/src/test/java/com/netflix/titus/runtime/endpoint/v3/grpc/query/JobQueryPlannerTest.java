@@ -0,0 +1,166 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.runtime.endpoint.v3.grpc.query;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import com.google.common.collect.ImmutableMap;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobDescriptor;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.JobState;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.jobmanager.model.job.ext.ServiceJobExt;
+import com.netflix.titus.grpc.protogen.JobDescriptor.JobSpecCase;
+import com.netflix.titus.grpc.protogen.TaskStatus;
+import com.netflix.titus.runtime.endpoint.JobQueryCriteria;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.netflix.titus.testkit.model.job.JobDescriptorGenerator.oneTaskBatchJobDescriptor;
+import static com.netflix.titus.testkit.model.job.JobDescriptorGenerator.oneTaskServiceJobDescriptor;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JobQueryPlannerTest {
+
+    private final JobQueryIndex index = new JobQueryIndex();
+
+    private Job<BatchJobExt> batchJobA;
+    private Job<BatchJobExt> batchJobB;
+    private Job<ServiceJobExt> serviceJobA;
+
+    private Task batchTaskA;
+    private Task batchTaskB;
+    private Task serviceTaskA;
+
+    @Before
+    public void setUp() {
+        JobDescriptor<BatchJobExt> batchDescriptorA = oneTaskBatchJobDescriptor().but(jd -> jd.toBuilder()
+                .withApplicationName("appA")
+                .withAttributes(ImmutableMap.of("team", "a"))
+        );
+        JobDescriptor<BatchJobExt> batchDescriptorB = oneTaskBatchJobDescriptor().but(jd -> jd.toBuilder()
+                .withApplicationName("appB")
+                .withAttributes(ImmutableMap.of("team", "b"))
+        );
+        JobDescriptor<ServiceJobExt> serviceDescriptorA = oneTaskServiceJobDescriptor().but(jd -> jd.toBuilder()
+                .withApplicationName("appA")
+                .withAttributes(ImmutableMap.of("team", "b", "stack", "test"))
+        );
+
+        batchJobA = JobGenerator.batchJobs(batchDescriptorA).getValue();
+        batchJobB = JobGenerator.batchJobs(batchDescriptorB).getValue();
+        serviceJobA = JobGenerator.serviceJobs(serviceDescriptorA).getValue();
+
+        batchTaskA = JobGenerator.batchTasks(batchJobA).getValue();
+        batchTaskB = JobGenerator.batchTasks(batchJobB).getValue();
+        serviceTaskA = JobGenerator.serviceTasks(serviceJobA).getValue();
+
+        Arrays.asList(batchJobA, batchJobB, serviceJobA).forEach(index::updateJob);
+        Arrays.asList(batchTaskA, batchTaskB, serviceTaskA).forEach(index::updateTask);
+    }
+
+    @Test
+    public void testQueryWithoutIndexedCriteriaIsFullScan() {
+        JobQueryPlan plan = JobQueryPlanner.planJobQuery(newCriteria().withImageTag("latest").build(), index);
+
+        assertThat(plan.isFullScan()).isTrue();
+        assertThat(plan.getCandidateIds()).containsExactlyInAnyOrder(batchJobA.getId(), batchJobB.getId(), serviceJobA.getId());
+    }
+
+    @Test
+    public void testMostSelectiveIndexIsChosen() {
+        JobQueryPlan plan = JobQueryPlanner.planJobQuery(
+                newCriteria().withJobType(JobSpecCase.BATCH).withAppName("appB").build(),
+                index
+        );
+
+        assertThat(plan.getIndexName()).isEqualTo(JobQueryIndex.JobField.ApplicationName.name());
+        assertThat(plan.getCandidateIds()).containsExactly(batchJobB.getId());
+    }
+
+    @Test
+    public void testLabelQueries() {
+        JobQueryPlan andPlan = JobQueryPlanner.planJobQuery(
+                newCriteria().withLabels(ImmutableMap.of("team", Collections.singleton("b"), "stack", Collections.<String>emptySet())).withLabelsAndOp(true).build(),
+                index
+        );
+        assertThat(andPlan.getCandidateIds()).containsExactly(serviceJobA.getId());
+
+        JobQueryPlan orPlan = JobQueryPlanner.planJobQuery(
+                newCriteria().withLabels(ImmutableMap.of("team", new HashSet<>(Arrays.asList("a", "x")), "stack", Collections.<String>emptySet())).build(),
+                index
+        );
+        assertThat(orPlan.getCandidateIds()).containsExactlyInAnyOrder(batchJobA.getId(), serviceJobA.getId());
+    }
+
+    @Test
+    public void testTaskStateIndexFollowsTaskUpdates() {
+        index.updateTask(JobFunctions.changeTaskStatus(batchTaskA, TaskState.Started, "test", "test"));
+
+        JobQueryCriteria<TaskStatus.TaskState, JobSpecCase> startedTasks = newCriteria()
+                .withTaskStates(Collections.singleton(TaskStatus.TaskState.Started))
+                .build();
+        assertThat(JobQueryPlanner.planTaskQuery(startedTasks, index).getCandidateIds()).containsExactly(batchTaskA.getId());
+
+        // Task state criteria in a job query select jobs owning the matching tasks
+        assertThat(JobQueryPlanner.planJobQuery(startedTasks, index).getCandidateIds()).containsExactly(batchJobA.getId());
+
+        index.updateTask(JobFunctions.changeTaskStatus(batchTaskA, TaskState.Finished, "test", "test"));
+        assertThat(JobQueryPlanner.planTaskQuery(startedTasks, index).getCandidateIds()).isEmpty();
+    }
+
+    @Test
+    public void testJobLevelCriteriaInTaskQuery() {
+        JobQueryPlan plan = JobQueryPlanner.planTaskQuery(newCriteria().withAppName("appA").build(), index);
+        assertThat(plan.getCandidateIds()).containsExactlyInAnyOrder(batchTaskA.getId(), serviceTaskA.getId());
+    }
+
+    @Test
+    public void testJobStateChangeAndRemoval() {
+        index.updateJob(JobFunctions.changeJobStatus(batchJobA, JobState.KillInitiated, "test"));
+
+        JobQueryPlan plan = JobQueryPlanner.planJobQuery(
+                newCriteria().withJobState(com.netflix.titus.grpc.protogen.JobStatus.JobState.KillInitiated).build(),
+                index
+        );
+        assertThat(plan.getCandidateIds()).containsExactly(batchJobA.getId());
+
+        index.removeJob(batchJobA.getId());
+        assertThat(index.getJobIds()).doesNotContain(batchJobA.getId());
+        assertThat(index.getTaskIds()).doesNotContain(batchTaskA.getId());
+        assertThat(index.findJobIds(JobQueryIndex.JobField.ApplicationName, "appA")).containsExactly(serviceJobA.getId());
+    }
+
+    @Test
+    public void testRetainTasks() {
+        index.retainTasks(serviceJobA.getId(), Collections.emptySet());
+
+        assertThat(index.getTaskIdsOfJob(serviceJobA.getId())).isEmpty();
+        assertThat(index.findJobIdOfTask(serviceTaskA.getId())).isEmpty();
+        assertThat(index.getTaskCount()).isEqualTo(2);
+    }
+
+    private JobQueryCriteria.Builder<TaskStatus.TaskState, JobSpecCase> newCriteria() {
+        return JobQueryCriteria.newBuilder();
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.runtime.store.v3.file;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import com.netflix.titus.api.jobmanager.model.job.BatchJobTask;
+import com.netflix.titus.api.jobmanager.model.job.Job;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.api.jobmanager.model.job.Task;
+import com.netflix.titus.api.jobmanager.model.job.TaskState;
+import com.netflix.titus.api.jobmanager.model.job.ext.BatchJobExt;
+import com.netflix.titus.api.jobmanager.store.JobStoreException;
+import com.netflix.titus.common.runtime.TitusRuntimes;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import com.netflix.titus.testkit.model.job.JobGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FileJobStoreTest {
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final FileJobStoreConfiguration configuration = mock(FileJobStoreConfiguration.class);
+
+    private File storeDirectory;
+    private FileJobStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        storeDirectory = tempFolder.newFolder("jobStore");
+        when(configuration.getStoreDirectory()).thenReturn(storeDirectory.getAbsolutePath());
+        when(configuration.getLogSegmentSizeBytes()).thenReturn(64 * 1024);
+        when(configuration.getSnapshotRecordThreshold()).thenReturn(1000);
+        store = newStore();
+    }
+
+    @After
+    public void tearDown() {
+        store.shutdown();
+    }
+
+    @Test
+    public void testStoreAndRecover() {
+        Job<BatchJobExt> job = newJob();
+        List<BatchJobTask> tasks = JobGenerator.batchTasks(job).toList(3);
+        store.storeJob(job).await();
+        tasks.forEach(task -> store.storeTask(task).await());
+
+        Task startedTask = JobFunctions.changeTaskStatus(tasks.get(0), TaskState.Started, "started", "Task started");
+        store.updateTask(startedTask).await();
+
+        FileJobStore recovered = restart();
+        assertThat(recovered.retrieveJobs().toBlocking().first().getLeft()).containsExactly(job);
+        assertThat(recovered.retrieveTasksForJob(job.getId()).toBlocking().first().getLeft())
+                .containsExactlyInAnyOrder(startedTask, tasks.get(1), tasks.get(2));
+        assertThat(recovered.streamJobs().toList().toBlocking().first()).hasSize(1);
+    }
+
+    @Test
+    public void testArchivedDataIsRecovered() {
+        Job<BatchJobExt> job = newJob();
+        List<BatchJobTask> tasks = JobGenerator.batchTasks(job).toList(3);
+        store.storeJob(job).await();
+        tasks.forEach(task -> store.storeTask(task).await());
+
+        store.deleteTask(tasks.get(0)).await();
+        Task replacement = JobGenerator.batchTasks(job).toList(4).get(3);
+        store.replaceTask(tasks.get(1), replacement).await();
+        store.deleteJob(job).await();
+
+        FileJobStore recovered = restart();
+        assertThat(recovered.retrieveJobs().toBlocking().first().getLeft()).isEmpty();
+        assertThat(recovered.retrieveArchivedJob(job.getId()).toBlocking().first()).isEqualTo(job);
+        assertThat(recovered.retrieveArchivedTasksForJob(job.getId()).toList().toBlocking().first())
+                .containsExactlyInAnyOrder(tasks.get(0), tasks.get(1), tasks.get(2), replacement);
+        assertThat(recovered.retrieveTask(replacement.getId()).toCompletable().get()).isInstanceOf(JobStoreException.class);
+    }
+
+    @Test
+    public void testSnapshotAndLogReplay() {
+        when(configuration.getSnapshotRecordThreshold()).thenReturn(10);
+        store.shutdown();
+        store = newStore();
+
+        Job<BatchJobExt> job = newJob();
+        store.storeJob(job).await();
+        Task task = JobGenerator.batchTasks(job).getValue();
+        for (int i = 0; i < 25; i++) {
+            task = JobFunctions.changeTaskStatus(task, TaskState.Started, "update", "Update " + i);
+            store.updateTask(task).await();
+        }
+
+        store.shutdown();
+        assertThat(storeDirectory.list((dir, name) -> name.startsWith("snapshot-"))).hasSize(1);
+
+        FileJobStore recovered = restart();
+        assertThat(recovered.retrieveJobs().toBlocking().first().getLeft()).containsExactly(job);
+        assertThat(recovered.retrieveTask(task.getId()).toBlocking().first()).isEqualTo(task);
+    }
+
+    @Test
+    public void testReplayStopsAtCorruptedRecord() throws Exception {
+        Job<BatchJobExt> job = newJob();
+        store.storeJob(job).await();
+        Task task = JobGenerator.batchTasks(job).getValue();
+        store.storeTask(task).await();
+        Task startedTask = JobFunctions.changeTaskStatus(task, TaskState.Started, "started", "Task started");
+        store.updateTask(startedTask).await();
+        store.shutdown();
+
+        // Flip the last written byte, which belongs to the task update record
+        File[] segments = storeDirectory.listFiles((dir, name) -> name.startsWith("wal-") && name.endsWith(".log"));
+        assertThat(segments).hasSize(1);
+        try (RandomAccessFile file = new RandomAccessFile(segments[0], "rw")) {
+            long position = file.length() - 1;
+            while (position > 0) {
+                file.seek(position);
+                if (file.read() != 0) {
+                    break;
+                }
+                position--;
+            }
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+
+        FileJobStore recovered = restart();
+        assertThat(recovered.retrieveJobs().toBlocking().first().getLeft()).containsExactly(job);
+        assertThat(recovered.retrieveTask(task.getId()).toBlocking().first()).isEqualTo(task);
+
+        // The damaged tail is truncated, so new records are replayed after the valid ones
+        recovered.updateTask(startedTask).await();
+        assertThat(restart().retrieveTask(task.getId()).toBlocking().first()).isEqualTo(startedTask);
+    }
+
+    @Test
+    public void testStoreContractViolations() {
+        List<Job<BatchJobExt>> jobs = JobGenerator.batchJobs(JobDescriptorGenerator.oneTaskBatchJobDescriptor()).toList(2);
+        Job<BatchJobExt> job = jobs.get(0);
+        store.storeJob(job).await();
+
+        assertErrorCode(store.storeJob(job).get(), JobStoreException.ErrorCode.JOB_ALREADY_EXISTS);
+
+        Job<BatchJobExt> inactiveJob = jobs.get(1);
+        assertErrorCode(store.updateJob(inactiveJob).get(), JobStoreException.ErrorCode.JOB_MUST_BE_ACTIVE);
+        assertErrorCode(store.storeTask(JobGenerator.batchTasks(inactiveJob).getValue()).get(), JobStoreException.ErrorCode.JOB_MUST_BE_ACTIVE);
+        assertErrorCode(store.retrieveJob(inactiveJob.getId()).toCompletable().get(), JobStoreException.ErrorCode.JOB_DOES_NOT_EXIST);
+    }
+
+    private void assertErrorCode(Throwable error, JobStoreException.ErrorCode errorCode) {
+        assertThat(error).isInstanceOf(JobStoreException.class);
+        assertThat(((JobStoreException) error).getErrorCode()).isEqualTo(errorCode);
+    }
+
+    private FileJobStore restart() {
+        store.shutdown();
+        store = newStore();
+        return store;
+    }
+
+    private FileJobStore newStore() {
+        FileJobStore newStore = new FileJobStore(configuration, TitusRuntimes.test());
+        newStore.init().await();
+        return newStore;
+    }
+
+    private static Job<BatchJobExt> newJob() {
+        return JobGenerator.batchJobs(JobDescriptorGenerator.oneTaskBatchJobDescriptor()).getValue();
+    }
+}
@@ -137,6 +137,10 @@ public class EmbeddedTitusGateway {
         return this;
     }
 
+    public <T> T getInstance(Class<T> type) {
+        return injector.getInstance(type);
+    }
+
     public JobManagementServiceGrpc.JobManagementServiceStub getV3GrpcClient() {
         JobManagementServiceGrpc.JobManagementServiceStub client = JobManagementServiceGrpc.newStub(getOrCreateGrpcChannel());
         return attachCallHeaders(client);
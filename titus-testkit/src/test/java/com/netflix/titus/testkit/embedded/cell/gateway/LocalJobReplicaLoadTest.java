@@ -0,0 +1,224 @@
+/*
+ * Copyright 2018 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.titus.testkit.embedded.cell.gateway;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.netflix.spectator.api.Registry;
+import com.netflix.titus.api.jobmanager.model.job.JobFunctions;
+import com.netflix.titus.common.util.AwaitExt;
+import com.netflix.titus.gateway.service.v3.internal.LocalJobReplica;
+import com.netflix.titus.grpc.protogen.Job;
+import com.netflix.titus.grpc.protogen.JobId;
+import com.netflix.titus.grpc.protogen.JobManagementServiceGrpc.JobManagementServiceBlockingStub;
+import com.netflix.titus.grpc.protogen.JobQuery;
+import com.netflix.titus.grpc.protogen.Page;
+import com.netflix.titus.grpc.protogen.Task;
+import com.netflix.titus.grpc.protogen.TaskId;
+import com.netflix.titus.grpc.protogen.TaskQuery;
+import com.netflix.titus.runtime.endpoint.v3.grpc.V3GrpcModelConverters;
+import com.netflix.titus.testkit.embedded.cell.EmbeddedTitusCell;
+import com.netflix.titus.testkit.embedded.cell.master.EmbeddedTitusMasters;
+import com.netflix.titus.testkit.embedded.cloud.SimulatedClouds;
+import com.netflix.titus.testkit.junit.category.IntegrationTest;
+import com.netflix.titus.testkit.model.job.JobDescriptorGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs concurrent job/task queries against a gateway with the job replica enabled, and checks that the replica
+ * serves them with the same results as the master.
+ */
+@Category(IntegrationTest.class)
+public class LocalJobReplicaLoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalJobReplicaLoadTest.class);
+
+    private static final int JOB_COUNT = 50;
+    private static final int JOB_SIZE = 4;
+    private static final int CLIENT_THREADS = 8;
+    private static final int QUERIES_PER_THREAD = 250;
+
+    private static final String ACTIVE_TASK_STATES = "Accepted,Launched,StartInitiated,Started,KillInitiated,Disconnected";
+
+    private static final Page PAGE = Page.newBuilder().setPageSize(1_000).build();
+
+    private EmbeddedTitusCell titusCell;
+    private JobManagementServiceBlockingStub gatewayClient;
+    private JobManagementServiceBlockingStub masterClient;
+
+    private final List<String> jobIds = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        titusCell = EmbeddedTitusCell.aTitusCell()
+                .withMaster(EmbeddedTitusMasters.basicMaster(SimulatedClouds.basicCloud(2)).toBuilder()
+                        .withProperty("titus.master.grpcServer.v3EnabledApps", ".*")
+                        .withV2Engine(false)
+                        .build()
+                )
+                .withGateway(EmbeddedTitusGateway.aDefaultTitusGateway()
+                                .withProperty("titus.jobManager.jobReplicaEnabled", "true")
+                                .build(),
+                        false
+                )
+                .build();
+        titusCell.boot();
+
+        gatewayClient = titusCell.getGateway().getV3BlockingGrpcClient();
+        masterClient = titusCell.getMaster().getV3BlockingGrpcClient();
+
+        for (int i = 0; i < JOB_COUNT; i++) {
+            jobIds.add(gatewayClient.createJob(V3GrpcModelConverters.toGrpcJobDescriptor(
+                    JobFunctions.changeBatchJobSize(JobDescriptorGenerator.oneTaskBatchJobDescriptor(), JOB_SIZE)
+            )).getId());
+        }
+
+        // The simulated tasks move through Launched and StartInitiated, and settle once Started. Waiting until all of
+        // them are started, both in the master and in the replica, makes the final comparison independent of timing.
+        LocalJobReplica replica = titusCell.getGateway().getInstance(LocalJobReplica.class);
+        boolean synced = AwaitExt.awaitUntil(
+                () -> replica.isInSync()
+                        && taskIds(masterClient, "Started").size() == JOB_COUNT * JOB_SIZE
+                        && taskIds(gatewayClient, "Started").size() == JOB_COUNT * JOB_SIZE,
+                30, TimeUnit.SECONDS
+        );
+        assertThat(synced).describedAs("Job replica not synchronized with the master, or tasks not started").isTrue();
+    }
+
+    @After
+    public void tearDown() {
+        if (titusCell != null) {
+            titusCell.shutdown();
+        }
+    }
+
+    @Test(timeout = 120_000)
+    public void testConcurrentQueriesServedFromReplica() throws Exception {
+        List<String> taskIds = taskIds(masterClient, ACTIVE_TASK_STATES);
+        Registry registry = titusCell.getGateway().getInstance(Registry.class);
+        long servedBefore = servedByReplica(registry);
+
+        ExecutorService executor = Executors.newFixedThreadPool(CLIENT_THREADS);
+        List<Future<long[]>> futures = new ArrayList<>();
+        long startTime = System.currentTimeMillis();
+        try {
+            for (int t = 0; t < CLIENT_THREADS; t++) {
+                int seed = t;
+                futures.add(executor.submit(() -> runQueries(new Random(seed), taskIds)));
+            }
+            List<Long> latencies = new ArrayList<>();
+            for (Future<long[]> future : futures) {
+                Arrays.stream(future.get()).forEach(latencies::add);
+            }
+            long elapsedMs = System.currentTimeMillis() - startTime;
+            Collections.sort(latencies);
+
+            logger.info("Executed {} queries in {}ms ({} queries/sec); latency p50={}us, p99={}us, max={}us",
+                    latencies.size(),
+                    elapsedMs,
+                    latencies.size() * 1000L / Math.max(1, elapsedMs),
+                    latencies.get(latencies.size() / 2) / 1_000,
+                    latencies.get(latencies.size() * 99 / 100) / 1_000,
+                    latencies.get(latencies.size() - 1) / 1_000
+            );
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(servedByReplica(registry) - servedBefore).isEqualTo((long) CLIENT_THREADS * QUERIES_PER_THREAD);
+
+        // All tasks were started before the test, and stay in that state, so the replica and the master must return
+        // identical results.
+        for (String jobId : jobIds) {
+            JobQuery jobQuery = JobQuery.newBuilder().putFilteringCriteria("jobIds", jobId).setPage(PAGE).build();
+            assertThat(gatewayClient.findJobs(jobQuery).getItemsList()).isEqualTo(masterClient.findJobs(jobQuery).getItemsList());
+
+            TaskQuery taskQuery = TaskQuery.newBuilder()
+                    .putFilteringCriteria("jobIds", jobId)
+                    .putFilteringCriteria("taskStates", ACTIVE_TASK_STATES)
+                    .setPage(PAGE)
+                    .build();
+            assertThat(gatewayClient.findTasks(taskQuery).getItemsList()).isEqualTo(masterClient.findTasks(taskQuery).getItemsList());
+        }
+    }
+
+    private long[] runQueries(Random random, List<String> taskIds) {
+        long[] latencies = new long[QUERIES_PER_THREAD];
+        for (int i = 0; i < QUERIES_PER_THREAD; i++) {
+            String jobId = jobIds.get(random.nextInt(jobIds.size()));
+            long startTime = System.nanoTime();
+            switch (i % 4) {
+                case 0:
+                    Job job = gatewayClient.findJob(JobId.newBuilder().setId(jobId).build());
+                    assertThat(job.getId()).isEqualTo(jobId);
+                    break;
+                case 1:
+                    String taskId = taskIds.get(random.nextInt(taskIds.size()));
+                    Task task = gatewayClient.findTask(TaskId.newBuilder().setId(taskId).build());
+                    assertThat(task.getId()).isEqualTo(taskId);
+                    break;
+                case 2:
+                    assertThat(gatewayClient.findJobs(JobQuery.newBuilder()
+                            .putFilteringCriteria("jobIds", jobId)
+                            .setPage(Page.newBuilder().setPageSize(10))
+                            .build()
+                    ).getItemsCount()).isEqualTo(1);
+                    break;
+                default:
+                    assertThat(gatewayClient.findTasks(TaskQuery.newBuilder()
+                            .putFilteringCriteria("jobIds", jobId)
+                            .putFilteringCriteria("taskStates", ACTIVE_TASK_STATES)
+                            .setPage(Page.newBuilder().setPageSize(10))
+                            .build()
+                    ).getItemsCount()).isEqualTo(JOB_SIZE);
+            }
+            latencies[i] = System.nanoTime() - startTime;
+        }
+        return latencies;
+    }
+
+    private static long servedByReplica(Registry registry) {
+        return Stream.of("findJob", "findJobs", "findTask", "findTasks")
+                .mapToLong(query -> registry.counter("titusGateway.jobReplica.queries", "query", query, "outcome", "replica").count())
+                .sum();
+    }
+
+    private static List<String> taskIds(JobManagementServiceBlockingStub client, String taskStates) {
+        return client.findTasks(TaskQuery.newBuilder()
+                .putFilteringCriteria("taskStates", taskStates)
+                .setPage(PAGE)
+                .build()
+        ).getItemsList().stream().map(Task::getId).collect(Collectors.toList());
+    }
+}